@@ -0,0 +1,73 @@
+package org.kaczucha.benchmarks;
+
+import org.kaczucha.Client;
+import org.kaczucha.repository.AccountTable;
+import org.kaczucha.repository.ClientRepository;
+import org.kaczucha.repository.CompactAccountTable;
+import org.kaczucha.repository.InMemoryClientRepository;
+import org.kaczucha.repository.IndexedClientRepository;
+import org.kaczucha.repository.JdbcClientRepository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+final class AccountBooks {
+    static final double INITIAL_BALANCE = 1_000_000_000;
+
+    private AccountBooks() {
+    }
+
+    static ClientRepository create(String kind, int accounts) {
+        final ClientRepository repository;
+        switch (kind) {
+            case "list":
+                repository = new InMemoryClientRepository(new ArrayList<>(accounts));
+                break;
+            case "indexed":
+                repository = new IndexedClientRepository(accounts);
+                break;
+            case "table":
+                repository = new AccountTable(accounts);
+                break;
+            case "compact":
+                repository = new CompactAccountTable(accounts);
+                break;
+            case "h2":
+                repository = JdbcClientRepository.open("jdbc:h2:" + temporaryDirectory() + "/bank");
+                break;
+            default:
+                throw new IllegalArgumentException(String.format("Unknown repository kind: %s", kind));
+        }
+        final List<Client> clients = new ArrayList<>(accounts);
+        for (int i = 0; i < accounts; i++) {
+            clients.add(new Client("Client" + i, email(i), INITIAL_BALANCE));
+        }
+        repository.saveAll(clients, (client, error) -> {
+            throw error;
+        });
+        return repository;
+    }
+
+    private static String temporaryDirectory() {
+        try {
+            return Files.createTempDirectory("bank-h2").toAbsolutePath().toString();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static String[] emails(int accounts) {
+        final String[] emails = new String[accounts];
+        for (int i = 0; i < accounts; i++) {
+            emails[i] = email(i);
+        }
+        return emails;
+    }
+
+    static String email(int i) {
+        return "client" + i + "@bank.pl";
+    }
+}
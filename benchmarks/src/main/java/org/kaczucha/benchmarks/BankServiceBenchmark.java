@@ -0,0 +1,76 @@
+package org.kaczucha.benchmarks;
+
+import org.kaczucha.service.BankService;
+import org.kaczucha.service.StripedAccountLocks;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+@State(Scope.Benchmark)
+public class BankServiceBenchmark {
+    private static final int HOT_ACCOUNTS = 16;
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int accounts;
+
+    @Param({"indexed", "table", "compact"})
+    public String repository;
+
+    private BankService service;
+    private String[] emails;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        service = new BankService(AccountBooks.create(repository, accounts), new StripedAccountLocks());
+        emails = AccountBooks.emails(accounts);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void transfer() {
+        transferAmong(accounts);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void transferContended() {
+        transferAmong(HOT_ACCOUNTS);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void withdraw() {
+        service.withdraw(emails[ThreadLocalRandom.current().nextInt(accounts)], 1);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void withdrawContended() {
+        service.withdraw(emails[ThreadLocalRandom.current().nextInt(HOT_ACCOUNTS)], 1);
+    }
+
+    private void transferAmong(int range) {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final int from = random.nextInt(range);
+        final int to = (from + 1 + random.nextInt(range - 1)) % range;
+        service.transfer(emails[from], emails[to], 1);
+    }
+}
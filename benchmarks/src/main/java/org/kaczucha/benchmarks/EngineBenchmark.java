@@ -0,0 +1,90 @@
+package org.kaczucha.benchmarks;
+
+import org.kaczucha.engine.BankEngine;
+import org.kaczucha.service.BankService;
+import org.kaczucha.service.StripedAccountLocks;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transfer throughput of the single-writer {@link BankEngine} against direct, lock-striped calls
+ * into {@link BankService} on the same kind of account book.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+@State(Scope.Benchmark)
+public class EngineBenchmark {
+    private static final int PIPELINE_DEPTH = 64;
+
+    @Param({"16", "1000000"})
+    public int accounts;
+
+    private BankService service;
+    private BankEngine engine;
+    private String[] emails;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        service = new BankService(AccountBooks.create("table", accounts), new StripedAccountLocks());
+        engine = new BankEngine(AccountBooks.create("table", accounts), 64 * 1024);
+        emails = AccountBooks.emails(accounts);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        engine.close();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void serviceTransfer() {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final int from = random.nextInt(accounts);
+        service.transfer(emails[from], emails[other(random, from)], 1);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void engineTransfer() {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final int from = random.nextInt(accounts);
+        engine.transfer(emails[from], emails[other(random, from)], 1).join();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    @OperationsPerInvocation(PIPELINE_DEPTH)
+    public void engineTransferPipelined() {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        CompletableFuture<Void> last = null;
+        for (int i = 0; i < PIPELINE_DEPTH; i++) {
+            final int from = random.nextInt(accounts);
+            last = engine.transfer(emails[from], emails[other(random, from)], 1);
+        }
+        last.join();
+    }
+
+    private int other(ThreadLocalRandom random, int from) {
+        return (from + 1 + random.nextInt(accounts - 1)) % accounts;
+    }
+}
@@ -0,0 +1,42 @@
+package org.kaczucha.benchmarks;
+
+import org.kaczucha.repository.ClientRepository;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+
+/**
+ * Prints the retained heap per account of each repository kind, measured as the difference in
+ * used heap after a full collection before and after building the book. Run it in a fresh JVM
+ * with a heap large enough for the biggest book, e.g.
+ * {@code java -Xmx4g -cp target/benchmarks.jar org.kaczucha.benchmarks.FootprintReport 1000000}.
+ */
+public class FootprintReport {
+    private static final String[] KINDS = {"indexed", "table", "compact"};
+
+    public static void main(String[] args) {
+        final int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        final String[] kinds = args.length > 1 ? args[1].split(",") : KINDS;
+        for (String kind : kinds) {
+            final long before = usedHeapAfterGc();
+            ClientRepository repository = AccountBooks.create(kind, accounts);
+            final long after = usedHeapAfterGc();
+            System.out.printf("%-8s %,d accounts: %,d bytes, %.1f bytes/account%n",
+                    kind, accounts, after - before, (double) (after - before) / accounts);
+            if (repository.findByEmail(AccountBooks.email(0)) == null) {
+                throw new IllegalStateException("Book was collected before it was measured");
+            }
+            repository = null;
+        }
+    }
+
+    private static long usedHeapAfterGc() {
+        final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            used = Math.min(used, memory.getHeapMemoryUsage().getUsed());
+        }
+        return used;
+    }
+}
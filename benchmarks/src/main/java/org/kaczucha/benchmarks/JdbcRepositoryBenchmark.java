@@ -0,0 +1,108 @@
+package org.kaczucha.benchmarks;
+
+import org.kaczucha.Client;
+import org.kaczucha.repository.ClientRepository;
+import org.kaczucha.service.BankService;
+import org.kaczucha.service.StripedAccountLocks;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the embedded-database repository with the list-backed one through {@link BankService},
+ * to show what durability costs per operation and where the list's linear lookups overtake it.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class JdbcRepositoryBenchmark {
+    private static final int SAVE_BATCH = 1000;
+
+    @Param({"1000", "100000"})
+    public int accounts;
+
+    @Param({"list", "h2"})
+    public String repository;
+
+    private ClientRepository clientRepository;
+    private BankService service;
+    private String[] emails;
+    private int savedBatches;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        clientRepository = AccountBooks.create(repository, accounts);
+        service = new BankService(clientRepository, new StripedAccountLocks());
+        emails = AccountBooks.emails(accounts);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (clientRepository instanceof Closeable) {
+            ((Closeable) clientRepository).close();
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Client findByEmail() {
+        return service.findByEmail(emails[ThreadLocalRandom.current().nextInt(accounts)]);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void transfer() {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final int from = random.nextInt(accounts);
+        final int to = (from + 1 + random.nextInt(accounts - 1)) % accounts;
+        service.transfer(emails[from], emails[to], 1);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void transferParallel() {
+        transfer();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void withdraw() {
+        service.withdraw(emails[ThreadLocalRandom.current().nextInt(accounts)], 1);
+    }
+
+    @Benchmark
+    @Threads(1)
+    @OperationsPerInvocation(SAVE_BATCH)
+    public void saveAll() {
+        final List<Client> clients = new ArrayList<>(SAVE_BATCH);
+        final int batch = savedBatches++;
+        for (int i = 0; i < SAVE_BATCH; i++) {
+            clients.add(new Client("Fresh", "fresh" + batch + "." + i + "@bank.pl", 0));
+        }
+        clientRepository.saveAll(clients, (client, error) -> {
+            throw error;
+        });
+    }
+}
@@ -0,0 +1,199 @@
+package org.kaczucha.benchmarks;
+
+import org.kaczucha.Money;
+import org.kaczucha.metrics.LatencyHistogram;
+import org.kaczucha.repository.ClientRepository;
+import org.kaczucha.service.BankService;
+import org.kaczucha.service.NoSufficientFundsException;
+import org.kaczucha.service.StripedAccountLocks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-loop soak test of {@link BankService}: seeds a book of accounts, then drives a mix of
+ * finds, transfers and withdrawals from several threads at a fixed target rate, with account
+ * popularity following a Zipf distribution. Every operation has an intended start time taken from
+ * the schedule, and its latency is measured from that time rather than from when it actually
+ * started, so a stalled service is charged for the operations it held up (coordinated omission).
+ * Optional bursts multiply the rate for {@code burstMillis} out of every {@code burstEveryMillis}.
+ *
+ * <p>At the end the book is checked for conservation: the total balance must equal the opening
+ * total minus everything withdrawn, and no balance may be negative. Options are
+ * {@code key=value} arguments, for example
+ * {@code java -cp target/benchmarks.jar org.kaczucha.benchmarks.LoadGenerator accounts=1000000
+ * threads=8 rate=200000 seconds=60 mix=80,18,2 zipf=1.1 burst=4 burstMillis=500 burstEveryMillis=5000}.
+ */
+public class LoadGenerator {
+    private static final long INITIAL_MINOR = Money.toMinor(AccountBooks.INITIAL_BALANCE);
+    private static final String[] OPERATIONS = {"find", "transfer", "withdraw"};
+
+    private final int accounts;
+    private final int threads;
+    private final double rate;
+    private final long durationNanos;
+    private final int findPercent;
+    private final int transferPercent;
+    private final double zipfExponent;
+    private final double burstFactor;
+    private final long burstNanos;
+    private final long burstEveryNanos;
+    private final String repositoryKind;
+
+    private final LatencyHistogram[] latencies = new LatencyHistogram[OPERATIONS.length];
+    private final LongAdder insufficientFunds = new LongAdder();
+    private final LongAdder otherFailures = new LongAdder();
+    private final LongAdder withdrawnMinor = new LongAdder();
+    private final LongAdder behindSchedule = new LongAdder();
+
+    LoadGenerator(Map<String, String> options) {
+        accounts = Integer.parseInt(options.getOrDefault("accounts", "100000"));
+        threads = Integer.parseInt(options.getOrDefault("threads", "4"));
+        rate = Double.parseDouble(options.getOrDefault("rate", "50000"));
+        durationNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(options.getOrDefault("seconds", "10")));
+        final String[] mix = options.getOrDefault("mix", "80,18,2").split(",");
+        findPercent = Integer.parseInt(mix[0]);
+        transferPercent = Integer.parseInt(mix[1]);
+        if (mix.length != 3 || findPercent + transferPercent + Integer.parseInt(mix[2]) != 100) {
+            throw new IllegalArgumentException("Mix must be three percentages (find,transfer,withdraw) adding up to 100!");
+        }
+        zipfExponent = Double.parseDouble(options.getOrDefault("zipf", "1.0"));
+        burstFactor = Double.parseDouble(options.getOrDefault("burst", "1"));
+        burstNanos = TimeUnit.MILLISECONDS.toNanos(Long.parseLong(options.getOrDefault("burstMillis", "0")));
+        burstEveryNanos = TimeUnit.MILLISECONDS.toNanos(Long.parseLong(options.getOrDefault("burstEveryMillis", "1000")));
+        repositoryKind = options.getOrDefault("repository", "table");
+        if (accounts < 2 || threads <= 0 || rate <= 0 || burstFactor < 1) {
+            throw new IllegalArgumentException("Need at least 2 accounts, 1 thread, a positive rate and burst >= 1!");
+        }
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencyHistogram();
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        final Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            final int separator = arg.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException(String.format("Expected key=value, got: %s", arg));
+            }
+            options.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        final boolean conserved = new LoadGenerator(options).run();
+        if (!conserved) {
+            System.exit(1);
+        }
+    }
+
+    boolean run() throws InterruptedException {
+        final long seedStart = System.nanoTime();
+        final ClientRepository repository = AccountBooks.create(repositoryKind, accounts);
+        final BankService service = new BankService(repository, new StripedAccountLocks());
+        final String[] emails = AccountBooks.emails(accounts);
+        final ZipfDistribution popularity = new ZipfDistribution(accounts, zipfExponent);
+        System.out.printf("Seeded %,d accounts (%s) in %d ms; top 1%% of accounts get %.1f%% of picks%n",
+                accounts, repositoryKind, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - seedStart),
+                100 * popularity.probabilityOfTop(Math.max(1, accounts / 100)));
+
+        final Thread[] workers = new Thread[threads];
+        final long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(50);
+        for (int t = 0; t < threads; t++) {
+            final SplittableRandom random = new SplittableRandom(t * 0x9E3779B97F4A7C15L);
+            final long firstOffset = (long) (t * 1e9 / rate);
+            workers[t] = new Thread(() -> drive(service, emails, popularity, random, start + firstOffset),
+                    "load-" + t);
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        final long elapsed = System.nanoTime() - start;
+        return report(repository, elapsed);
+    }
+
+    private void drive(BankService service, String[] emails, ZipfDistribution popularity,
+                       SplittableRandom random, long firstIntendedStart) {
+        final long end = firstIntendedStart + durationNanos;
+        final double baseInterval = threads * 1e9 / rate;
+        long intendedStart = firstIntendedStart;
+        while (intendedStart < end) {
+            long now = System.nanoTime();
+            if (now < intendedStart) {
+                LockSupport.parkNanos(intendedStart - now);
+            } else if (now - intendedStart > baseInterval) {
+                behindSchedule.increment();
+            }
+            final int roll = random.nextInt(100);
+            final int operation = roll < findPercent ? 0 : roll < findPercent + transferPercent ? 1 : 2;
+            final int account = popularity.sample(random);
+            try {
+                switch (operation) {
+                    case 0:
+                        service.findByEmail(emails[account]);
+                        break;
+                    case 1:
+                        int counterparty = popularity.sample(random);
+                        if (counterparty == account) {
+                            counterparty = (account + 1) % emails.length;
+                        }
+                        service.transfer(emails[account], emails[counterparty], 0.01 * (1 + random.nextInt(100)));
+                        break;
+                    default:
+                        service.withdraw(emails[account], 1);
+                        withdrawnMinor.add(Money.toMinor(1));
+                        break;
+                }
+            } catch (NoSufficientFundsException e) {
+                insufficientFunds.increment();
+            } catch (RuntimeException e) {
+                otherFailures.increment();
+            }
+            now = System.nanoTime();
+            latencies[operation].record(now - intendedStart);
+            intendedStart += (long) (inBurst(intendedStart - firstIntendedStart) ? baseInterval / burstFactor : baseInterval);
+        }
+    }
+
+    private double averageRate() {
+        final double burstShare = burstNanos == 0 ? 0 : (double) Math.min(burstNanos, burstEveryNanos) / burstEveryNanos;
+        return rate * (1 + (burstFactor - 1) * burstShare);
+    }
+
+    private boolean inBurst(long sinceStart) {
+        return burstNanos > 0 && sinceStart % burstEveryNanos < burstNanos;
+    }
+
+    private boolean report(ClientRepository repository, long elapsedNanos) {
+        long operations = 0;
+        System.out.printf("%-9s %10s %10s %10s %10s %10s%n", "op", "count", "p50 us", "p99 us", "p999 us", "max us");
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            final LatencyHistogram.Snapshot snapshot = latencies[i].snapshot();
+            operations += snapshot.getCount();
+            System.out.printf("%-9s %10d %10.1f %10.1f %10.1f %10.1f%n", OPERATIONS[i], snapshot.getCount(),
+                    snapshot.valueAtPercentile(50) / 1e3, snapshot.valueAtPercentile(99) / 1e3,
+                    snapshot.valueAtPercentile(99.9) / 1e3, snapshot.getMax() / 1e3);
+        }
+        System.out.printf("Throughput %.0f ops/s (target %.0f), %d started behind schedule, "
+                        + "%d insufficient funds, %d other failures%n",
+                operations * 1e9 / elapsedNanos, averageRate(), behindSchedule.sum(), insufficientFunds.sum(),
+                otherFailures.sum());
+
+        final long[] total = {0};
+        final long[] negative = {0};
+        repository.forEach(client -> {
+            total[0] += client.getBalanceMinor();
+            if (client.getBalanceMinor() < 0) {
+                negative[0]++;
+            }
+        });
+        final long expected = INITIAL_MINOR * accounts - withdrawnMinor.sum();
+        final boolean conserved = total[0] == expected && negative[0] == 0;
+        System.out.printf("Balance %s: total %d, expected %d, %d negative balances%n",
+                conserved ? "conserved" : "NOT CONSERVED", total[0], expected, negative[0]);
+        return conserved;
+    }
+}
@@ -0,0 +1,90 @@
+package org.kaczucha.benchmarks;
+
+import org.kaczucha.service.BankService;
+import org.kaczucha.service.StripedAccountLocks;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Balance reads on a few hot accounts while one thread keeps transferring between them, comparing
+ * the optimistic {@link BankService#balanceOf(String)} with reading under the stripe lock. Scale
+ * the readers with {@code -tg 1,N} to see how each read path behaves as cores are added.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Group)
+public class ReadBenchmark {
+    @Param({"16"})
+    public int accounts;
+
+    private StripedAccountLocks locks;
+    private BankService service;
+    private String[] emails;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        locks = new StripedAccountLocks();
+        service = new BankService(AccountBooks.create("table", accounts), locks);
+        emails = AccountBooks.emails(accounts);
+    }
+
+    @Benchmark
+    @Group("optimistic")
+    @GroupThreads(1)
+    public void optimisticWriter() {
+        transfer();
+    }
+
+    @Benchmark
+    @Group("optimistic")
+    @GroupThreads(3)
+    public long optimisticRead() {
+        return service.balanceOf(emails[ThreadLocalRandom.current().nextInt(accounts)]);
+    }
+
+    @Benchmark
+    @Group("locked")
+    @GroupThreads(1)
+    public void lockedWriter() {
+        transfer();
+    }
+
+    @Benchmark
+    @Group("locked")
+    @GroupThreads(3)
+    public long lockedRead() {
+        final String email = emails[ThreadLocalRandom.current().nextInt(accounts)];
+        final int stripe = locks.stripeOf(email);
+        locks.lock(stripe);
+        try {
+            return service.findByEmail(email).getBalanceMinor();
+        } finally {
+            locks.unlock(stripe);
+        }
+    }
+
+    private void transfer() {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final int from = random.nextInt(accounts);
+        final int to = (from + 1 + random.nextInt(accounts - 1)) % accounts;
+        service.transfer(emails[from], emails[to], 1);
+    }
+}
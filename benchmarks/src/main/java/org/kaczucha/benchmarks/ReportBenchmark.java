@@ -0,0 +1,61 @@
+package org.kaczucha.benchmarks;
+
+import org.kaczucha.service.AccountBookReport;
+import org.kaczucha.service.BankService;
+import org.kaczucha.repository.ClientRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-of-day aggregation over the whole book: the parallel {@link BankService#report(long...)}
+ * against a single-threaded walk summing doubles. Vary the cores used with
+ * {@code -jvmArgsAppend -Djava.util.concurrent.ForkJoinPool.common.parallelism=N}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+@State(Scope.Benchmark)
+public class ReportBenchmark {
+    private static final long[] BOUNDS = {100_00, 10_000_00, 1_000_000_00};
+
+    @Param({"1000000", "10000000"})
+    public int accounts;
+
+    @Param({"indexed", "table"})
+    public String repository;
+
+    private ClientRepository clientRepository;
+    private BankService service;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        clientRepository = AccountBooks.create(repository, accounts);
+        service = new BankService(clientRepository);
+    }
+
+    @Benchmark
+    public AccountBookReport parallelReport() {
+        return service.report(BOUNDS);
+    }
+
+    @Benchmark
+    public double sequentialDoubleSum() {
+        final double[] total = {0};
+        clientRepository.forEach(client -> total[0] += client.getBalance());
+        return total[0];
+    }
+}
@@ -0,0 +1,82 @@
+package org.kaczucha.benchmarks;
+
+import org.kaczucha.Client;
+import org.kaczucha.repository.ClientRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+@State(Scope.Benchmark)
+public class RepositoryBenchmark {
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int accounts;
+
+    @Param({"list", "indexed", "table", "compact"})
+    public String repository;
+
+    private ClientRepository clientRepository;
+    private String[] emails;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        clientRepository = AccountBooks.create(repository, accounts);
+        emails = AccountBooks.emails(accounts);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Client findByEmail() {
+        return clientRepository.findByEmail(emails[ThreadLocalRandom.current().nextInt(accounts)]);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public Client findByEmailContended() {
+        return clientRepository.findByEmail(emails[ThreadLocalRandom.current().nextInt(accounts)]);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void saveAndDelete(FreshClients freshClients) {
+        final Client client = freshClients.next();
+        clientRepository.save(client);
+        clientRepository.delete(client);
+    }
+
+    @State(Scope.Thread)
+    public static class FreshClients {
+        private final Client[] clients = new Client[1024];
+        private int next;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            final long thread = Thread.currentThread().getId();
+            for (int i = 0; i < clients.length; i++) {
+                clients[i] = new Client("Fresh", "fresh" + thread + "." + i + "@bank.pl", 0);
+            }
+        }
+
+        Client next() {
+            next = (next + 1) & (clients.length - 1);
+            return clients[next];
+        }
+    }
+}
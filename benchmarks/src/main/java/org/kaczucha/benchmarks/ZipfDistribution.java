@@ -0,0 +1,37 @@
+package org.kaczucha.benchmarks;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Samples ranks {@code 0..n-1} with probability proportional to {@code 1 / (rank + 1)^exponent},
+ * so rank 0 is the hottest. The cumulative distribution is precomputed once and sampled with a
+ * binary search; an exponent of 0 gives a uniform distribution.
+ */
+final class ZipfDistribution {
+    private final double[] cumulative;
+
+    ZipfDistribution(int n, double exponent) {
+        if (n <= 0 || exponent < 0) {
+            throw new IllegalArgumentException("Size must be positive and exponent not negative!");
+        }
+        cumulative = new double[n];
+        double sum = 0;
+        for (int rank = 0; rank < n; rank++) {
+            sum += 1 / Math.pow(rank + 1, exponent);
+            cumulative[rank] = sum;
+        }
+        for (int rank = 0; rank < n; rank++) {
+            cumulative[rank] /= sum;
+        }
+    }
+
+    int sample(SplittableRandom random) {
+        final int position = Arrays.binarySearch(cumulative, random.nextDouble());
+        return Math.min(position >= 0 ? position : -position - 1, cumulative.length - 1);
+    }
+
+    double probabilityOfTop(int ranks) {
+        return cumulative[Math.min(ranks, cumulative.length) - 1];
+    }
+}
@@ -5,47 +5,86 @@ import java.util.Objects;
 public class Client {
     private String name;
     private String email;
-    private double balance;
+    private long balance;
 
     public Client(String name, String email, double balance) {
         this.name = name;
         this.email = email;
-        this.balance = balance;
+        this.balance = Money.toMinor(balance);
+    }
+
+    protected Client() {
+    }
+
+    public static Client ofMinorUnits(String name, String email, long balance) {
+        final Client client = new Client();
+        client.name = name;
+        client.email = email;
+        client.balance = balance;
+        return client;
     }
 
     public double getBalance() {
-        return balance;
+        return Money.toMajor(getBalanceMinor());
     }
 
     public void setBalance(double balance) {
+        setBalanceMinor(Money.toMinor(balance));
+    }
+
+    public long getBalanceMinor() {
+        return balance;
+    }
+
+    public void setBalanceMinor(long balance) {
         this.balance = balance;
     }
 
+    public String getName() {
+        return name;
+    }
+
     public String getEmail() {
         return email;
     }
 
+    /**
+     * Whether {@code other} reads and writes the same stored account as this client. A plain client
+     * is its own account; repositories that hand out a new view of an account per lookup override
+     * this together with {@link #accountHash()}.
+     */
+    public boolean isSameAccount(Client other) {
+        return this == other;
+    }
+
+    public int accountHash() {
+        return System.identityHashCode(this);
+    }
+
     @Override
     public String toString() {
         return "Client{" +
-                "name='" + name + '\'' +
-                ", email='" + email + '\'' +
-                ", balance=" + balance +
+                "name='" + getName() + '\'' +
+                ", email='" + getEmail() + '\'' +
+                ", balance=" + getBalance() +
                 '}';
     }
 
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
+        if (!(o instanceof Client)) return false;
         Client client = (Client) o;
-        return Double.compare(client.balance, balance) == 0 &&
-                Objects.equals(name, client.name) &&
-                Objects.equals(email, client.email);
+        return client.getBalanceMinor() == getBalanceMinor() &&
+                Objects.equals(getName(), client.getName()) &&
+                Objects.equals(getEmail(), client.getEmail());
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(name, email, balance);
+        int result = Objects.hashCode(getName());
+        result = 31 * result + Objects.hashCode(getEmail());
+        result = 31 * result + Long.hashCode(getBalanceMinor());
+        return result;
     }
-}
\ No newline at end of file
+}
@@ -1,21 +1,63 @@
 package org.kaczucha;
 
-import org.kaczucha.repository.InMemoryClientRepository;
+import org.kaczucha.batch.BatchReport;
+import org.kaczucha.batch.BatchRunner;
+import org.kaczucha.repository.IndexedClientRepository;
+import org.kaczucha.server.BankServer;
 import org.kaczucha.service.BankService;
+import org.kaczucha.service.StripedAccountLocks;
 
-import java.util.ArrayList;
-import java.util.HashSet;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Scanner;
+import java.util.concurrent.CountDownLatch;
 
 public class Main {
     private BankService bankService;
 
-    public static void main(String[] args) {
-        new Main().run();
+    public static void main(String[] args) throws InterruptedException, IOException {
+        if (args.length > 0 && args[0].equals("--server")) {
+            final int port = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+            serve(port);
+        } else if (args.length > 0 && args[0].equals("--batch")) {
+            replay(args.length > 1 && !args[1].equals("-") ? Path.of(args[1]) : null);
+        } else {
+            new Main().run();
+        }
+    }
+
+    private static void serve(int port) throws InterruptedException {
+        final BankService service = new BankService(new IndexedClientRepository(), new StripedAccountLocks());
+        final BankServer server = BankServer.startOnLoopback(service, port);
+        final CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            stopped.countDown();
+        }));
+        System.out.println("Listening on port " + server.getPort());
+        stopped.await();
+    }
+
+    private static void replay(Path script) throws IOException {
+        final BankService service = new BankService(new IndexedClientRepository(), new StripedAccountLocks());
+        final BufferedWriter results = new BufferedWriter(
+                new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 64 * 1024);
+        try (Reader reader = script == null
+                ? new InputStreamReader(System.in, StandardCharsets.UTF_8)
+                : Files.newBufferedReader(script, StandardCharsets.UTF_8)) {
+            final BatchReport report = new BatchRunner(service).run(reader, results);
+            System.err.println(report);
+        }
     }
 
     public void run() {
-        final InMemoryClientRepository repository = new InMemoryClientRepository(new ArrayList<>());
+        final IndexedClientRepository repository = new IndexedClientRepository();
         bankService = new BankService(repository);
 
         try (Scanner scanner = new Scanner(System.in)) {
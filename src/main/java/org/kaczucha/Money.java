@@ -0,0 +1,20 @@
+package org.kaczucha;
+
+public final class Money {
+    public static final int SCALE = 100;
+    private static final double MAX_AMOUNT = (double) Long.MAX_VALUE / SCALE;
+
+    private Money() {
+    }
+
+    public static long toMinor(double amount) {
+        if (Double.isNaN(amount) || Math.abs(amount) >= MAX_AMOUNT) {
+            throw new IllegalArgumentException(String.format("Amount %s is out of range!", amount));
+        }
+        return Math.round(amount * SCALE);
+    }
+
+    public static double toMajor(long minorUnits) {
+        return (double) minorUnits / SCALE;
+    }
+}
@@ -0,0 +1,42 @@
+package org.kaczucha.batch;
+
+import java.time.Duration;
+
+/**
+ * Outcome of a {@link BatchRunner} run. Failed commands are the ones that were malformed or that
+ * {@link org.kaczucha.service.BankService} rejected.
+ */
+public class BatchReport {
+    private final long commands;
+    private final long failed;
+    private final Duration elapsed;
+
+    BatchReport(long commands, long failed, Duration elapsed) {
+        this.commands = commands;
+        this.failed = failed;
+        this.elapsed = elapsed;
+    }
+
+    public long getCommands() {
+        return commands;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public Duration getElapsed() {
+        return elapsed;
+    }
+
+    public double getOpsPerSecond() {
+        final long nanos = Math.max(1, elapsed.toNanos());
+        return commands * 1e9 / nanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Ran %d commands, %d failed, in %d ms, %.0f ops/s",
+                commands, failed, elapsed.toMillis(), getOpsPerSecond());
+    }
+}
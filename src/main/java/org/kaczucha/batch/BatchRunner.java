@@ -0,0 +1,210 @@
+package org.kaczucha.batch;
+
+import org.kaczucha.Client;
+import org.kaczucha.service.BankService;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Replays a script of bank commands without the interactive menu, one command per line:
+ * <pre>
+ * add &lt;name&gt; &lt;email&gt; &lt;balance&gt;
+ * find &lt;email&gt;
+ * transfer &lt;fromEmail&gt; &lt;toEmail&gt; &lt;amount&gt;
+ * withdraw &lt;email&gt; &lt;amount&gt;
+ * </pre>
+ * Blank lines and lines starting with {@code #} are skipped. A parser thread reads and tokenizes
+ * the script in batches while the calling thread applies the previous batch in script order and
+ * writes one result line per command to a buffered writer: {@code OK}, the found client, or
+ * {@code ERROR <line>: <message>}.
+ */
+public class BatchRunner {
+    private static final int DEFAULT_BATCH_SIZE = 1024;
+    private static final int BATCHES_IN_FLIGHT = 4;
+    private static final List<Command> END = new ArrayList<>();
+
+    private final BankService bankService;
+    private final int batchSize;
+
+    public BatchRunner(BankService bankService) {
+        this(bankService, DEFAULT_BATCH_SIZE);
+    }
+
+    public BatchRunner(BankService bankService, int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive!");
+        }
+        this.bankService = bankService;
+        this.batchSize = batchSize;
+    }
+
+    public BatchReport run(Reader script, Writer results) {
+        final long start = System.nanoTime();
+        final BlockingQueue<List<Command>> parsed = new ArrayBlockingQueue<>(BATCHES_IN_FLIGHT);
+        final IOException[] readFailure = new IOException[1];
+        final Thread parser = new Thread(() -> parse(script, parsed, readFailure), "batch-parser");
+        parser.setDaemon(true);
+        parser.start();
+        long commands = 0;
+        long failed = 0;
+        final BufferedWriter output = results instanceof BufferedWriter
+                ? (BufferedWriter) results
+                : new BufferedWriter(results, 64 * 1024);
+        try {
+            List<Command> batch;
+            while ((batch = parsed.take()) != END) {
+                for (Command command : batch) {
+                    commands++;
+                    if (!apply(command, output)) {
+                        failed++;
+                    }
+                }
+            }
+            output.flush();
+            parser.join();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while replaying commands", e);
+        }
+        if (readFailure[0] != null) {
+            throw new UncheckedIOException(readFailure[0]);
+        }
+        return new BatchReport(commands, failed, Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    private boolean apply(Command command, BufferedWriter output) throws IOException {
+        try {
+            final String[] args = command.args;
+            switch (command.name) {
+                case "add":
+                    requireArguments(command, 3);
+                    bankService.save(new Client(args[0], args[1], Double.parseDouble(args[2])));
+                    output.write("OK");
+                    break;
+                case "find":
+                    requireArguments(command, 1);
+                    output.write(bankService.findByEmail(args[0]).toString());
+                    break;
+                case "transfer":
+                    requireArguments(command, 3);
+                    bankService.transfer(args[0], args[1], Double.parseDouble(args[2]));
+                    output.write("OK");
+                    break;
+                case "withdraw":
+                    requireArguments(command, 2);
+                    bankService.withdraw(args[0], Integer.parseInt(args[1]));
+                    output.write("OK");
+                    break;
+                default:
+                    throw new IllegalArgumentException(String.format("Unknown command: %s", command.name));
+            }
+            output.newLine();
+            return true;
+        } catch (RuntimeException e) {
+            output.write("ERROR ");
+            output.write(Integer.toString(command.line));
+            output.write(": ");
+            output.write(String.valueOf(e.getMessage()));
+            output.newLine();
+            return false;
+        }
+    }
+
+    private void parse(Reader script, BlockingQueue<List<Command>> parsed, IOException[] readFailure) {
+        final BufferedReader reader = script instanceof BufferedReader
+                ? (BufferedReader) script
+                : new BufferedReader(script, 64 * 1024);
+        List<Command> batch = new ArrayList<>(batchSize);
+        int lineNumber = 0;
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                final Command command = tokenize(line, lineNumber);
+                if (command == null) {
+                    continue;
+                }
+                batch.add(command);
+                if (batch.size() == batchSize) {
+                    put(parsed, batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+        } catch (IOException e) {
+            readFailure[0] = e;
+        } finally {
+            if (!batch.isEmpty()) {
+                put(parsed, batch);
+            }
+            put(parsed, END);
+        }
+    }
+
+    private static Command tokenize(String line, int lineNumber) {
+        final List<String> tokens = new ArrayList<>(4);
+        int position = 0;
+        final int length = line.length();
+        while (position < length) {
+            while (position < length && Character.isWhitespace(line.charAt(position))) {
+                position++;
+            }
+            final int start = position;
+            while (position < length && !Character.isWhitespace(line.charAt(position))) {
+                position++;
+            }
+            if (position > start) {
+                tokens.add(line.substring(start, position));
+            }
+        }
+        if (tokens.isEmpty() || tokens.get(0).startsWith("#")) {
+            return null;
+        }
+        return new Command(lineNumber, tokens.get(0), tokens.subList(1, tokens.size()).toArray(new String[0]));
+    }
+
+    private static void requireArguments(Command command, int expected) {
+        if (command.args.length != expected) {
+            throw new IllegalArgumentException(String.format(
+                    "Command %s takes %d arguments, got %d", command.name, expected, command.args.length));
+        }
+    }
+
+    private static void put(BlockingQueue<List<Command>> queue, List<Command> batch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                queue.put(batch);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Command {
+        private final int line;
+        private final String name;
+        private final String[] args;
+
+        private Command(int line, String name, String[] args) {
+            this.line = line;
+            this.name = name;
+            this.args = args;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package org.kaczucha.engine;
+
+import org.kaczucha.Client;
+import org.kaczucha.journal.Journal;
+import org.kaczucha.repository.ClientRepository;
+import org.kaczucha.service.AccountLocks;
+import org.kaczucha.service.BankService;
+
+import java.io.Closeable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single-writer alternative to calling {@link BankService} from many threads. Operations are
+ * published as commands into a preallocated ring and applied in publication order by one writer
+ * thread, which owns the repository and therefore runs without account locks. The writer drains
+ * every command available at once as a batch; when a journal is attached it is synced once per
+ * batch, before any future of that batch completes, so the journal must be opened without
+ * waiting for durability on each record. If that sync fails, the changes of the batch have already
+ * been applied: their futures complete with {@link NotDurableException} rather than the plain
+ * failure, and the journal rejects every later change before it is applied.
+ *
+ * <p>Futures are completed on the writer thread, so dependent callbacks should be short or use
+ * the async variants of {@link CompletableFuture}.
+ */
+public class BankEngine implements Closeable {
+    private static final byte SAVE = 1;
+    private static final byte DELETE = 2;
+    private static final byte FIND = 3;
+    private static final byte TRANSFER = 4;
+    private static final byte WITHDRAW = 5;
+    private static final int SPINS_BEFORE_PARKING = 1000;
+    private static final long CLOSED = Long.MIN_VALUE;
+
+    private final BankService bankService;
+    private final Journal journal;
+    private final Command[] ring;
+    private final int mask;
+    private final AtomicLong claimed = new AtomicLong();
+    private final Thread writer;
+    private volatile long consumed;
+    private volatile boolean writerParked;
+    private volatile long batches;
+
+    public BankEngine(ClientRepository repository, int ringSize) {
+        this(repository, ringSize, null);
+    }
+
+    public BankEngine(ClientRepository repository, int ringSize, Journal journal) {
+        if (ringSize <= 0 || Integer.bitCount(ringSize) != 1) {
+            throw new IllegalArgumentException("Ring size must be a positive power of two!");
+        }
+        if (journal != null && journal.waitsForDurability()) {
+            throw new IllegalArgumentException("Journal must not wait for durability on each record!");
+        }
+        this.bankService = new BankService(repository, AccountLocks.NONE);
+        this.journal = journal;
+        if (journal != null) {
+            bankService.addListener(journal);
+        }
+        this.ring = new Command[ringSize];
+        for (int i = 0; i < ringSize; i++) {
+            ring[i] = new Command(i - ringSize);
+        }
+        this.mask = ringSize - 1;
+        this.writer = new Thread(this::writeLoop, "bank-engine-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public CompletableFuture<Void> save(Client client) {
+        return publish(SAVE, client, null, null, 0);
+    }
+
+    public CompletableFuture<Void> delete(Client client) {
+        return publish(DELETE, client, null, null, 0);
+    }
+
+    public CompletableFuture<Client> findByEmail(String email) {
+        return publish(FIND, null, email, null, 0);
+    }
+
+    public CompletableFuture<Void> transfer(String fromEmail, String toEmail, double amount) {
+        return publish(TRANSFER, null, fromEmail, toEmail, Double.doubleToRawLongBits(amount));
+    }
+
+    public CompletableFuture<Void> withdraw(String email, int amount) {
+        return publish(WITHDRAW, null, email, null, amount);
+    }
+
+    public long batches() {
+        return batches;
+    }
+
+    @Override
+    public void close() {
+        claimed.getAndUpdate(sequence -> sequence | CLOSED);
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> CompletableFuture<T> publish(byte type, Client client, String email, String toEmail, long amount) {
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if ((sequence & CLOSED) != 0) {
+                throw new IllegalStateException("Engine is closed");
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+        int spins = 0;
+        while (sequence - ring.length >= consumed) {
+            if (++spins < SPINS_BEFORE_PARKING) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(1_000);
+            }
+        }
+        final Command command = ring[(int) sequence & mask];
+        final CompletableFuture<Object> future = new CompletableFuture<>();
+        command.type = type;
+        command.client = client;
+        command.email = email;
+        command.toEmail = toEmail;
+        command.amount = amount;
+        command.future = future;
+        command.sequence = sequence;
+        if (writerParked) {
+            LockSupport.unpark(writer);
+        }
+        return (CompletableFuture<T>) (CompletableFuture<?>) future;
+    }
+
+    private void writeLoop() {
+        long next = 0;
+        int idleSpins = 0;
+        while (true) {
+            long available = next;
+            while (ring[(int) available & mask].sequence == available) {
+                available++;
+            }
+            if (available == next) {
+                if (claimed.get() == (next | CLOSED)) {
+                    return;
+                }
+                if (++idleSpins < SPINS_BEFORE_PARKING) {
+                    Thread.onSpinWait();
+                } else {
+                    writerParked = true;
+                    if (ring[(int) next & mask].sequence != next && (claimed.get() & CLOSED) == 0) {
+                        LockSupport.parkNanos(100_000);
+                    }
+                    writerParked = false;
+                }
+                continue;
+            }
+            idleSpins = 0;
+            drain(next, available);
+            next = available;
+        }
+    }
+
+    private void drain(long from, long to) {
+        final Object[] results = new Object[(int) (to - from)];
+        boolean mutated = false;
+        for (long sequence = from; sequence < to; sequence++) {
+            final Command command = ring[(int) sequence & mask];
+            try {
+                results[(int) (sequence - from)] = apply(command);
+                mutated |= command.type != FIND;
+            } catch (RuntimeException e) {
+                results[(int) (sequence - from)] = e;
+            }
+        }
+        NotDurableException journalFailure = null;
+        if (journal != null && mutated) {
+            try {
+                journal.sync();
+            } catch (RuntimeException e) {
+                journalFailure = new NotDurableException("Applied, but the journal failed before it was durable", e);
+            }
+        }
+        batches++;
+        for (long sequence = from; sequence < to; sequence++) {
+            final Command command = ring[(int) sequence & mask];
+            final CompletableFuture<Object> future = command.future;
+            final Object result = results[(int) (sequence - from)];
+            command.clear();
+            if (result instanceof RuntimeException) {
+                future.completeExceptionally((RuntimeException) result);
+            } else if (journalFailure != null && command.type != FIND) {
+                future.completeExceptionally(journalFailure);
+            } else {
+                future.complete(result);
+            }
+        }
+        consumed = to;
+    }
+
+    private Object apply(Command command) {
+        switch (command.type) {
+            case SAVE:
+                bankService.save(command.client);
+                return null;
+            case DELETE:
+                bankService.delete(command.client);
+                return null;
+            case FIND: {
+                final Client client = bankService.findByEmail(command.email);
+                return Client.ofMinorUnits(client.getName(), client.getEmail(), client.getBalanceMinor());
+            }
+            case TRANSFER:
+                bankService.transfer(command.email, command.toEmail, Double.longBitsToDouble(command.amount));
+                return null;
+            case WITHDRAW:
+                bankService.withdraw(command.email, (int) command.amount);
+                return null;
+            default:
+                throw new IllegalStateException(String.format("Unknown command type: %d", command.type));
+        }
+    }
+
+    private static final class Command {
+        private volatile long sequence;
+        private byte type;
+        private Client client;
+        private String email;
+        private String toEmail;
+        private long amount;
+        private CompletableFuture<Object> future;
+
+        private Command(long sequence) {
+            this.sequence = sequence;
+        }
+
+        private void clear() {
+            client = null;
+            email = null;
+            toEmail = null;
+            future = null;
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package org.kaczucha.engine;
+
+/**
+ * The operation was applied to the account book but the journal failed before its record was
+ * made durable, so it is lost if the process stops now. Retrying it would apply it twice.
+ */
+public class NotDurableException extends RuntimeException {
+    public NotDurableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,159 @@
+package org.kaczucha.history;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Block of up to {@link #CAPACITY} movements of one account, stored column by column in primitive
+ * arrays that start small and double as the segment fills. Entries are only ever appended, so the
+ * first {@code size} entries never change once written; readers work on a {@link #snapshot()}
+ * taken under the owner's lock. Encoded segments store each column as zig-zag varints of the
+ * difference to the previous entry.
+ */
+final class HistorySegment {
+    static final int CAPACITY = 128;
+    private static final int INITIAL_CAPACITY = 8;
+
+    private long[] timestamps;
+    private long[] amounts;
+    private long[] balances;
+    private int[] counterparties;
+    private int size;
+
+    HistorySegment() {
+        this(INITIAL_CAPACITY);
+    }
+
+    private HistorySegment(int capacity) {
+        this.timestamps = new long[capacity];
+        this.amounts = new long[capacity];
+        this.balances = new long[capacity];
+        this.counterparties = new int[capacity];
+    }
+
+    private HistorySegment(HistorySegment source) {
+        this.timestamps = source.timestamps;
+        this.amounts = source.amounts;
+        this.balances = source.balances;
+        this.counterparties = source.counterparties;
+        this.size = source.size;
+    }
+
+    void append(long timestamp, int counterparty, long amount, long balance) {
+        if (size == timestamps.length) {
+            final int capacity = Math.min(CAPACITY, size * 2);
+            timestamps = Arrays.copyOf(timestamps, capacity);
+            amounts = Arrays.copyOf(amounts, capacity);
+            balances = Arrays.copyOf(balances, capacity);
+            counterparties = Arrays.copyOf(counterparties, capacity);
+        }
+        timestamps[size] = timestamp;
+        counterparties[size] = counterparty;
+        amounts[size] = amount;
+        balances[size] = balance;
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isFull() {
+        return size == CAPACITY;
+    }
+
+    HistorySegment snapshot() {
+        return isFull() ? this : new HistorySegment(this);
+    }
+
+    long timestampAt(int entry) {
+        return timestamps[entry];
+    }
+
+    int counterpartyAt(int entry) {
+        return counterparties[entry];
+    }
+
+    long amountAt(int entry) {
+        return amounts[entry];
+    }
+
+    long balanceAt(int entry) {
+        return balances[entry];
+    }
+
+    byte[] encode() {
+        final ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + size * 4 * 10);
+        buffer.putInt(size);
+        putDeltas(buffer, timestamps);
+        putDeltas(buffer, amounts);
+        putDeltas(buffer, balances);
+        int previous = 0;
+        for (int i = 0; i < size; i++) {
+            putVarLong(buffer, zigZag(counterparties[i] - previous));
+            previous = counterparties[i];
+        }
+        final byte[] encoded = new byte[buffer.position()];
+        buffer.flip().get(encoded);
+        return encoded;
+    }
+
+    static HistorySegment decode(ByteBuffer buffer) {
+        final int size = buffer.getInt();
+        final HistorySegment segment = new HistorySegment(size);
+        getDeltas(buffer, segment.timestamps);
+        getDeltas(buffer, segment.amounts);
+        getDeltas(buffer, segment.balances);
+        int previous = 0;
+        for (int i = 0; i < size; i++) {
+            previous += (int) unZigZag(getVarLong(buffer));
+            segment.counterparties[i] = previous;
+        }
+        segment.size = size;
+        return segment;
+    }
+
+    private void putDeltas(ByteBuffer buffer, long[] column) {
+        long previous = 0;
+        for (int i = 0; i < size; i++) {
+            putVarLong(buffer, zigZag(column[i] - previous));
+            previous = column[i];
+        }
+    }
+
+    private static void getDeltas(ByteBuffer buffer, long[] column) {
+        long previous = 0;
+        for (int i = 0; i < column.length; i++) {
+            previous += unZigZag(getVarLong(buffer));
+            column[i] = previous;
+        }
+    }
+
+    private static void putVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) (value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static long getVarLong(ByteBuffer buffer) {
+        long value = 0;
+        int shift = 0;
+        byte next;
+        do {
+            next = buffer.get();
+            value |= (long) (next & 0x7F) << shift;
+            shift += 7;
+        } while (next < 0);
+        return value;
+    }
+
+    private static long zigZag(long value) {
+        return value << 1 ^ value >> 63;
+    }
+
+    private static long unZigZag(long value) {
+        return value >>> 1 ^ -(value & 1);
+    }
+}
@@ -0,0 +1,107 @@
+package org.kaczucha.history;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Append-only file of deflate-compressed, encoded {@link HistorySegment}s. A segment is addressed
+ * by the position and length it was written at. The file is a spill area for the history held in
+ * memory, not a durable log: it is truncated when opened.
+ */
+final class SegmentArchive implements Closeable {
+    private final FileChannel channel;
+    private final AtomicLong end = new AtomicLong();
+    private final AtomicLong rawBytes = new AtomicLong();
+
+    SegmentArchive(Path file) {
+        try {
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    long write(HistorySegment segment) {
+        final byte[] encoded = segment.encode();
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        final ByteBuffer compressed = ByteBuffer.allocate(Integer.BYTES + encoded.length + 64);
+        try {
+            compressed.putInt(encoded.length);
+            deflater.setInput(encoded);
+            deflater.finish();
+            deflater.deflate(compressed);
+            if (!deflater.finished()) {
+                throw new IllegalStateException("Compressed segment does not fit its buffer");
+            }
+        } finally {
+            deflater.end();
+        }
+        compressed.flip();
+        final int length = compressed.remaining();
+        final long position = end.getAndAdd(length);
+        try {
+            long written = 0;
+            while (compressed.hasRemaining()) {
+                written += channel.write(compressed, position + written);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        rawBytes.addAndGet(encoded.length);
+        return position << 24 | length;
+    }
+
+    HistorySegment read(long location) {
+        final long position = location >>> 24;
+        final ByteBuffer compressed = ByteBuffer.allocate((int) (location & 0xFFFFFF));
+        try {
+            while (compressed.hasRemaining()) {
+                if (channel.read(compressed, position + compressed.position()) < 0) {
+                    throw new IllegalStateException("History archive is truncated");
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        compressed.flip();
+        final ByteBuffer encoded = ByteBuffer.allocate(compressed.getInt());
+        final Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            inflater.inflate(encoded);
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("History archive is corrupted", e);
+        } finally {
+            inflater.end();
+        }
+        encoded.flip();
+        return HistorySegment.decode(encoded);
+    }
+
+    long sizeBytes() {
+        return end.get();
+    }
+
+    long rawBytes() {
+        return rawBytes.get();
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package org.kaczucha.history;
+
+import org.kaczucha.Money;
+
+import java.time.Instant;
+import java.util.Objects;
+
+public final class Transaction {
+    private final Instant timestamp;
+    private final String counterparty;
+    private final long amountMinor;
+    private final long balanceAfterMinor;
+
+    public Transaction(Instant timestamp, String counterparty, long amountMinor, long balanceAfterMinor) {
+        this.timestamp = timestamp;
+        this.counterparty = counterparty;
+        this.amountMinor = amountMinor;
+        this.balanceAfterMinor = balanceAfterMinor;
+    }
+
+    public Instant getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Email of the other side of a transfer, or {@code null} for a withdrawal.
+     */
+    public String getCounterparty() {
+        return counterparty;
+    }
+
+    /**
+     * Signed change of the balance: negative for money leaving the account.
+     */
+    public long getAmountMinor() {
+        return amountMinor;
+    }
+
+    public double getAmount() {
+        return Money.toMajor(amountMinor);
+    }
+
+    public long getBalanceAfterMinor() {
+        return balanceAfterMinor;
+    }
+
+    public double getBalanceAfter() {
+        return Money.toMajor(balanceAfterMinor);
+    }
+
+    @Override
+    public String toString() {
+        return "Transaction{" +
+                "timestamp=" + timestamp +
+                ", counterparty='" + counterparty + '\'' +
+                ", amount=" + getAmount() +
+                ", balanceAfter=" + getBalanceAfter() +
+                '}';
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Transaction)) return false;
+        Transaction that = (Transaction) o;
+        return amountMinor == that.amountMinor &&
+                balanceAfterMinor == that.balanceAfterMinor &&
+                Objects.equals(timestamp, that.timestamp) &&
+                Objects.equals(counterparty, that.counterparty);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(timestamp, counterparty, amountMinor, balanceAfterMinor);
+    }
+}
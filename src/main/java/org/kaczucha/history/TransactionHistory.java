@@ -0,0 +1,249 @@
+package org.kaczucha.history;
+
+import org.kaczucha.Client;
+import org.kaczucha.repository.ClientRepository;
+import org.kaczucha.service.BankEventListener;
+import org.kaczucha.service.BankService;
+
+import java.io.Closeable;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Per-account record of every transfer and withdrawal, kept current as a
+ * {@link BankEventListener}. Each account appends its movements to its own chain of
+ * {@link HistorySegment}s, so reading one account's history never looks at another account.
+ * Counterparties are stored as ids into a shared dictionary of emails.
+ *
+ * <p>When created with an archive file, {@link #rollToDisk(int)} moves the older full segments of
+ * every account into a compressed file and reads them back on demand. The archive only outlives
+ * the history in memory, not a restart.
+ */
+public class TransactionHistory implements BankEventListener, Closeable {
+    private static final int NO_COUNTERPARTY = -1;
+    private static final int MAX_PAGE_SIZE = 10_000;
+
+    private final Clock clock;
+    private final SegmentArchive archive;
+    private final ConcurrentHashMap<String, AccountHistory> accounts = new ConcurrentHashMap<>();
+    private volatile AtomicReferenceArray<String> emailsById = new AtomicReferenceArray<>(1024);
+    private int nextAccountId;
+
+    public TransactionHistory() {
+        this(null, Clock.systemUTC());
+    }
+
+    public TransactionHistory(Path archiveFile, Clock clock) {
+        this.clock = clock;
+        this.archive = archiveFile == null ? null : new SegmentArchive(archiveFile);
+    }
+
+    public static TransactionHistory attach(BankService service, ClientRepository repository, Path archiveFile) {
+        final TransactionHistory history = new TransactionHistory(archiveFile, Clock.systemUTC());
+        service.addListener(history);
+        repository.forEach(client -> history.accountOf(client.getEmail()));
+        return history;
+    }
+
+    @Override
+    public void onSave(Client client) {
+        accountOf(client.getEmail());
+    }
+
+    @Override
+    public void onDelete(Client client) {
+        accounts.remove(keyOf(client.getEmail()));
+    }
+
+    @Override
+    public void onTransfer(Client fromClient, Client toClient, long amount) {
+        final long now = clock.millis();
+        final AccountHistory from = accountOf(fromClient.getEmail());
+        final AccountHistory to = accountOf(toClient.getEmail());
+        from.append(now, to.id, -amount, fromClient.getBalanceMinor());
+        to.append(now, from.id, amount, toClient.getBalanceMinor());
+    }
+
+    @Override
+    public void onWithdraw(Client client, long amount) {
+        accountOf(client.getEmail()).append(clock.millis(), NO_COUNTERPARTY, -amount, client.getBalanceMinor());
+    }
+
+    /**
+     * Number of movements recorded for the account.
+     */
+    public int count(String email) {
+        return existing(email).count();
+    }
+
+    /**
+     * One page of the account's movements, most recent first.
+     *
+     * @param offset number of most recent movements to skip
+     * @param limit  maximum number of movements to return
+     */
+    public List<Transaction> recent(String email, int offset, int limit) {
+        if (offset < 0 || limit <= 0 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException(
+                    String.format("Offset must not be negative and limit must be between 1 and %d!", MAX_PAGE_SIZE));
+        }
+        return existing(email).recent(offset, limit);
+    }
+
+    /**
+     * Moves every full segment except the newest {@code keepSegments} of each account to the
+     * compressed archive.
+     *
+     * @return number of segments moved
+     */
+    public int rollToDisk(int keepSegments) {
+        if (archive == null) {
+            throw new IllegalStateException("History was created without an archive file");
+        }
+        if (keepSegments < 0) {
+            throw new IllegalArgumentException("Segments to keep must not be negative!");
+        }
+        int rolled = 0;
+        for (AccountHistory account : accounts.values()) {
+            rolled += account.roll(keepSegments);
+        }
+        return rolled;
+    }
+
+    public long archivedBytes() {
+        return archive == null ? 0 : archive.sizeBytes();
+    }
+
+    public long archivedRawBytes() {
+        return archive == null ? 0 : archive.rawBytes();
+    }
+
+    @Override
+    public void close() {
+        if (archive != null) {
+            archive.close();
+        }
+    }
+
+    private AccountHistory existing(String email) {
+        final AccountHistory account = email == null ? null : accounts.get(keyOf(email));
+        if (account == null) {
+            throw new NoSuchElementException(
+                    String.format("Client with following email: %s not found!", email)
+            );
+        }
+        return account;
+    }
+
+    private AccountHistory accountOf(String email) {
+        return accounts.computeIfAbsent(keyOf(email), key -> new AccountHistory(register(email)));
+    }
+
+    private synchronized int register(String email) {
+        final int id = nextAccountId++;
+        if (id == emailsById.length()) {
+            final AtomicReferenceArray<String> grown = new AtomicReferenceArray<>(id * 2);
+            for (int i = 0; i < id; i++) {
+                grown.set(i, emailsById.get(i));
+            }
+            emailsById = grown;
+        }
+        emailsById.set(id, email);
+        return id;
+    }
+
+    private String emailOf(int id) {
+        return id == NO_COUNTERPARTY ? null : emailsById.get(id);
+    }
+
+    private static String keyOf(String email) {
+        return email.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Chain of segments for one account, oldest first. Archived segments are remembered by their
+     * archive location and the full ones still in memory by reference.
+     */
+    private final class AccountHistory {
+        private final int id;
+        private final List<Object> segments = new ArrayList<>();
+        private HistorySegment active;
+        private int count;
+
+        private AccountHistory(int id) {
+            this.id = id;
+        }
+
+        synchronized void append(long timestamp, int counterparty, long amount, long balance) {
+            if (active == null || active.isFull()) {
+                active = new HistorySegment();
+                segments.add(active);
+            }
+            active.append(timestamp, counterparty, amount, balance);
+            count++;
+        }
+
+        synchronized int count() {
+            return count;
+        }
+
+        List<Transaction> recent(int offset, int limit) {
+            final Object[] captured;
+            final int total;
+            synchronized (this) {
+                captured = segments.toArray();
+                if (active != null) {
+                    captured[captured.length - 1] = active.snapshot();
+                }
+                total = count;
+            }
+            final List<Transaction> page = new ArrayList<>(Math.min(limit, Math.max(0, total - offset)));
+            int entry = total - 1 - offset;
+            HistorySegment segment = null;
+            int segmentIndex = -1;
+            while (entry >= 0 && page.size() < limit) {
+                final int wanted = entry / HistorySegment.CAPACITY;
+                if (wanted != segmentIndex) {
+                    segmentIndex = wanted;
+                    segment = load(captured[wanted]);
+                }
+                final int position = entry % HistorySegment.CAPACITY;
+                page.add(new Transaction(Instant.ofEpochMilli(segment.timestampAt(position)),
+                        emailOf(segment.counterpartyAt(position)), segment.amountAt(position),
+                        segment.balanceAt(position)));
+                entry--;
+            }
+            return page;
+        }
+
+        int roll(int keepSegments) {
+            final List<HistorySegment> toArchive = new ArrayList<>();
+            synchronized (this) {
+                final int full = active == null || active.isFull() ? segments.size() : segments.size() - 1;
+                for (int i = 0; i < full - keepSegments; i++) {
+                    if (segments.get(i) instanceof HistorySegment) {
+                        toArchive.add((HistorySegment) segments.get(i));
+                    }
+                }
+            }
+            for (HistorySegment segment : toArchive) {
+                final long location = archive.write(segment);
+                synchronized (this) {
+                    segments.set(segments.indexOf(segment), location);
+                }
+            }
+            return toArchive.size();
+        }
+
+        private HistorySegment load(Object segment) {
+            return segment instanceof HistorySegment ? (HistorySegment) segment : archive.read((Long) segment);
+        }
+    }
+}
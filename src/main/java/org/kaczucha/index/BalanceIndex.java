@@ -0,0 +1,452 @@
+package org.kaczucha.index;
+
+import org.kaczucha.Client;
+import org.kaczucha.repository.ClientRepository;
+import org.kaczucha.service.BankEventListener;
+import org.kaczucha.service.BankService;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Secondary index of accounts ordered by (balance, email), kept current as a
+ * {@link BankEventListener}. Backed by a treap whose nodes know their subtree sizes, so top-N,
+ * range, count and rank queries cost O(log n) plus the size of the answer. Iterators fetch the
+ * index page by page under the read lock and continue from the last key they returned, so a long
+ * iteration never blocks writers and sees a weakly consistent view.
+ * <p>
+ * Listener calls do not touch the treap: they record the account's latest state in a concurrent
+ * map, replacing any state not yet applied, so writers on different accounts never wait for each
+ * other here. The next query applies the recorded states under the write lock before reading, so
+ * queries pay for the accounts changed since the previous one.
+ */
+public class BalanceIndex implements BankEventListener {
+    private static final int PAGE_SIZE = 256;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Node> nodes = new HashMap<>();
+    private final Map<String, Change> changes = new ConcurrentHashMap<>();
+    private final Set<String> deletedWhileAttaching = ConcurrentHashMap.newKeySet();
+    private volatile boolean attaching;
+    private Node root;
+
+    /**
+     * Accounts deleted while the repository is being loaded are not added, even if the load still
+     * sees them.
+     */
+    public static BalanceIndex attach(BankService service, ClientRepository repository) {
+        final BalanceIndex index = new BalanceIndex();
+        index.attaching = true;
+        service.addListener(index);
+        repository.forEach(index::addIfAbsent);
+        index.attaching = false;
+        index.deletedWhileAttaching.clear();
+        return index;
+    }
+
+    @Override
+    public void onSave(Client client) {
+        update(client);
+    }
+
+    @Override
+    public void onDelete(Client client) {
+        final String key = keyOf(client.getEmail());
+        // recorded before the change, so a load that misses the change sees the key instead
+        if (attaching) {
+            deletedWhileAttaching.add(key);
+        }
+        changes.put(key, new Change(key, null, null, 0));
+    }
+
+    @Override
+    public void onTransfer(Client fromClient, Client toClient, long amount) {
+        update(fromClient);
+        update(toClient);
+    }
+
+    @Override
+    public void onWithdraw(Client client, long amount) {
+        update(client);
+    }
+
+    public int size() {
+        lockForRead();
+        try {
+            return sizeOf(root);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<Client> top(int count) {
+        final List<Client> result = new ArrayList<>(Math.min(count, PAGE_SIZE));
+        final Iterator<Client> richestFirst = descendingIterator();
+        while (result.size() < count && richestFirst.hasNext()) {
+            result.add(richestFirst.next());
+        }
+        return result;
+    }
+
+    public List<Client> range(long fromInclusive, long toExclusive) {
+        final List<Client> result = new ArrayList<>();
+        iterator(fromInclusive, toExclusive).forEachRemaining(result::add);
+        return result;
+    }
+
+    public long countBelow(long balance) {
+        lockForRead();
+        try {
+            return countLess(root, balance, "");
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long countBetween(long fromInclusive, long toExclusive) {
+        lockForRead();
+        try {
+            return Math.max(0, countLess(root, toExclusive, "") - countLess(root, fromInclusive, ""));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Position of the account when ordered from the highest balance down, starting at 1.
+     */
+    public long rankOf(String email) {
+        lockForRead();
+        try {
+            final Node node = nodes.get(keyOf(email));
+            if (node == null) {
+                throw new NoSuchElementException(
+                        String.format("Client with following email: %s not found!", email));
+            }
+            return sizeOf(root) - countLess(root, node.balance, node.key);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Iterator<Client> iterator(long fromInclusive, long toExclusive) {
+        return new PagedIterator(fromInclusive, toExclusive);
+    }
+
+    public Iterator<Client> descendingIterator() {
+        return new DescendingIterator();
+    }
+
+    public Stream<Client> stream(long fromInclusive, long toExclusive) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator(fromInclusive, toExclusive),
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    private void update(Client client) {
+        final String key = keyOf(client.getEmail());
+        changes.put(key, new Change(key, client.getEmail(), client.getName(), client.getBalanceMinor()));
+    }
+
+    /**
+     * A recorded change is newer than the loaded client, and a deleted key is recorded before its
+     * change, which can only be applied once the write lock is released.
+     */
+    private void addIfAbsent(Client client) {
+        final String key = keyOf(client.getEmail());
+        lock.writeLock().lock();
+        try {
+            if (!deletedWhileAttaching.contains(key) && !changes.containsKey(key) && !nodes.containsKey(key)) {
+                put(key, client.getEmail(), client.getName(), client.getBalanceMinor());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void lockForRead() {
+        if (changes.isEmpty()) {
+            lock.readLock().lock();
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            for (Change change : changes.values()) {
+                apply(change);
+                // a newer change recorded meanwhile stays for the next query
+                changes.remove(change.key, change);
+            }
+            lock.readLock().lock();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void apply(Change change) {
+        if (change.email == null) {
+            final Node node = nodes.remove(change.key);
+            if (node != null) {
+                root = remove(root, node.balance, node.key);
+            }
+            return;
+        }
+        put(change.key, change.email, change.name, change.balance);
+    }
+
+    private void put(String key, String email, String name, long balance) {
+        final Node existing = nodes.get(key);
+        if (existing != null) {
+            if (existing.balance == balance) {
+                return;
+            }
+            root = remove(root, existing.balance, key);
+        }
+        final Node node = new Node(balance, key, email, name);
+        nodes.put(key, node);
+        root = insert(root, node);
+    }
+
+    private List<Node> pageAfter(long balance, String key, boolean inclusive, long toExclusive) {
+        final List<Node> page = new ArrayList<>(PAGE_SIZE);
+        lockForRead();
+        try {
+            collectAscending(root, balance, key, inclusive, toExclusive, page);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return page;
+    }
+
+    private List<Node> pageBefore(long balance, String key, boolean first) {
+        final List<Node> page = new ArrayList<>(PAGE_SIZE);
+        lockForRead();
+        try {
+            collectDescending(root, balance, key, first, page);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return page;
+    }
+
+    private static void collectAscending(Node node, long balance, String key, boolean inclusive,
+                                         long toExclusive, List<Node> page) {
+        if (node == null || page.size() == PAGE_SIZE) {
+            return;
+        }
+        final int side = compare(node.balance, node.key, balance, key);
+        final boolean nodeAfterStart = side > 0 || (inclusive && side == 0);
+        if (nodeAfterStart) {
+            collectAscending(node.left, balance, key, inclusive, toExclusive, page);
+        }
+        if (page.size() == PAGE_SIZE || node.balance >= toExclusive) {
+            return;
+        }
+        if (nodeAfterStart) {
+            page.add(node);
+        }
+        collectAscending(node.right, balance, key, inclusive, toExclusive, page);
+    }
+
+    private static void collectDescending(Node node, long balance, String key, boolean first, List<Node> page) {
+        if (node == null || page.size() == PAGE_SIZE) {
+            return;
+        }
+        final boolean nodeBeforeStart = first || compare(node.balance, node.key, balance, key) < 0;
+        if (nodeBeforeStart) {
+            collectDescending(node.right, balance, key, first, page);
+        }
+        if (page.size() == PAGE_SIZE) {
+            return;
+        }
+        if (nodeBeforeStart) {
+            page.add(node);
+        }
+        collectDescending(node.left, balance, key, first, page);
+    }
+
+    private static long countLess(Node node, long balance, String key) {
+        long count = 0;
+        while (node != null) {
+            if (compare(node.balance, node.key, balance, key) < 0) {
+                count += sizeOf(node.left) + 1;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+        return count;
+    }
+
+    private static Node insert(Node root, Node node) {
+        final Node[] parts = split(root, node.balance, node.key);
+        return merge(merge(parts[0], node), parts[1]);
+    }
+
+    private static Node remove(Node node, long balance, String key) {
+        if (node == null) {
+            return null;
+        }
+        final int side = compare(balance, key, node.balance, node.key);
+        if (side == 0) {
+            return merge(node.left, node.right);
+        }
+        if (side < 0) {
+            node.left = remove(node.left, balance, key);
+        } else {
+            node.right = remove(node.right, balance, key);
+        }
+        node.size = 1 + sizeOf(node.left) + sizeOf(node.right);
+        return node;
+    }
+
+    private static Node[] split(Node node, long balance, String key) {
+        if (node == null) {
+            return new Node[2];
+        }
+        if (compare(node.balance, node.key, balance, key) < 0) {
+            final Node[] parts = split(node.right, balance, key);
+            node.right = parts[0];
+            node.size = 1 + sizeOf(node.left) + sizeOf(node.right);
+            parts[0] = node;
+            return parts;
+        }
+        final Node[] parts = split(node.left, balance, key);
+        node.left = parts[1];
+        node.size = 1 + sizeOf(node.left) + sizeOf(node.right);
+        parts[1] = node;
+        return parts;
+    }
+
+    private static Node merge(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            left.size = 1 + sizeOf(left.left) + sizeOf(left.right);
+            return left;
+        }
+        right.left = merge(left, right.left);
+        right.size = 1 + sizeOf(right.left) + sizeOf(right.right);
+        return right;
+    }
+
+    private static int compare(long balance, String key, long otherBalance, String otherKey) {
+        final int byBalance = Long.compare(balance, otherBalance);
+        return byBalance != 0 ? byBalance : key.compareTo(otherKey);
+    }
+
+    private static int sizeOf(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static String keyOf(String email) {
+        return email.toLowerCase(Locale.ROOT);
+    }
+
+    private static Client toClient(Node node) {
+        return Client.ofMinorUnits(node.name, node.email, node.balance);
+    }
+
+    /**
+     * Latest state of one account not yet applied; a {@code null} email marks a deletion.
+     */
+    private static final class Change {
+        private final String key;
+        private final String email;
+        private final String name;
+        private final long balance;
+
+        private Change(String key, String email, String name, long balance) {
+            this.key = key;
+            this.email = email;
+            this.name = name;
+            this.balance = balance;
+        }
+    }
+
+    private static final class Node {
+        private final long balance;
+        private final String key;
+        private final String email;
+        private final String name;
+        private final int priority = ThreadLocalRandom.current().nextInt();
+        private int size = 1;
+        private Node left;
+        private Node right;
+
+        private Node(long balance, String key, String email, String name) {
+            this.balance = balance;
+            this.key = key;
+            this.email = email;
+            this.name = name;
+        }
+    }
+
+    private final class PagedIterator implements Iterator<Client> {
+        private final long toExclusive;
+        private List<Node> page;
+        private int position;
+
+        private PagedIterator(long fromInclusive, long toExclusive) {
+            this.toExclusive = toExclusive;
+            this.page = pageAfter(fromInclusive, "", true, toExclusive);
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (position == page.size() && page.size() == PAGE_SIZE) {
+                final Node last = page.get(page.size() - 1);
+                page = pageAfter(last.balance, last.key, false, toExclusive);
+                position = 0;
+            }
+            return position < page.size();
+        }
+
+        @Override
+        public Client next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return toClient(page.get(position++));
+        }
+    }
+
+    private final class DescendingIterator implements Iterator<Client> {
+        private List<Node> page = pageBefore(0, "", true);
+        private int position;
+
+        @Override
+        public boolean hasNext() {
+            if (position == page.size() && page.size() == PAGE_SIZE) {
+                final Node last = page.get(page.size() - 1);
+                page = pageBefore(last.balance, last.key, false);
+                position = 0;
+            }
+            return position < page.size();
+        }
+
+        @Override
+        public Client next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return toClient(page.get(position++));
+        }
+    }
+}
@@ -0,0 +1,483 @@
+package org.kaczucha.journal;
+
+import org.kaczucha.Client;
+import org.kaczucha.service.BankEventListener;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only binary journal of {@link org.kaczucha.service.BankService} mutations with group
+ * commit: appended records are buffered and a single flusher thread writes and fsyncs them once
+ * {@code groupCommitSize} records are pending or the oldest one has waited {@code maxDelay}.
+ * Every record carries the balances it produced, so replaying a record twice is harmless.
+ * <p>
+ * Records are appended ahead of the change they describe, from the {@code before} listener methods,
+ * so a failed journal aborts the change. Waiting for durability happens in {@link #afterUnlock()},
+ * after {@link org.kaczucha.service.BankService} has released the account locks. A change that is
+ * not applied after its record was appended is followed by an abort record naming it, which replay
+ * skips; the abort is waited for under the locks, so it is durable before the failure is reported.
+ * <p>
+ * Records go to the active segment at {@code file}. {@link #rotate()} seals it under a name carrying
+ * its last sequence, and {@link #discardThrough(long)} drops sealed segments a snapshot covers, so
+ * recovery reads only the segments written since the latest snapshot.
+ */
+public class Journal implements BankEventListener, Closeable {
+    static final byte SAVE = 1;
+    static final byte DELETE = 2;
+    static final byte TRANSFER = 3;
+    static final byte WITHDRAW = 4;
+    static final byte ABORT = 5;
+    static final int HEADER_BYTES = Integer.BYTES + Long.BYTES + 1;
+    static final int TRAILER_BYTES = Integer.BYTES;
+
+    private final Path file;
+    private final int groupCommitSize;
+    private final long maxDelayNanos;
+    private final boolean waitForDurability;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition flushNeeded = lock.newCondition();
+    private final Condition flushed = lock.newCondition();
+    private final Thread flusher;
+    private final CRC32 crc = new CRC32();
+    private final NavigableSet<Long> unapplied = new ConcurrentSkipListSet<>();
+    private final ThreadLocal<Writer> writer = ThreadLocal.withInitial(Writer::new);
+    private final ReentrantLock rotation = new ReentrantLock();
+    // guarded by rotation: the segment being written, and the last sequences written and sealed
+    private FileChannel channel;
+    private long writtenSequence;
+    private long sealedSequence;
+
+    private ByteBuffer pending = ByteBuffer.allocateDirect(64 * 1024);
+    private ByteBuffer spare = ByteBuffer.allocateDirect(64 * 1024);
+    private int pendingRecords;
+    private long oldestPendingNanos;
+    private long lastSequence;
+    private long durableSequence;
+    private long commits;
+    private IOException failure;
+    private boolean flushRequested;
+    private boolean closed;
+
+    public Journal(Path file, int groupCommitSize, Duration maxDelay) {
+        this(file, groupCommitSize, maxDelay, true);
+    }
+
+    public Journal(Path file, int groupCommitSize, Duration maxDelay, boolean waitForDurability) {
+        if (groupCommitSize <= 0) {
+            throw new IllegalArgumentException("Group commit size must be positive!");
+        }
+        this.file = file;
+        this.groupCommitSize = groupCommitSize;
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.waitForDurability = waitForDurability;
+        try {
+            final JournalReader.Tail tail = JournalReader.scan(file);
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            channel.truncate(tail.validBytes);
+            channel.position(tail.validBytes);
+            this.lastSequence = tail.lastSequence;
+            this.durableSequence = tail.lastSequence;
+            this.writtenSequence = tail.lastSequence;
+            this.sealedSequence = tail.sealedSequence;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.flusher = new Thread(this::flushLoop, "journal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    @Override
+    public void beforeSave(Client client) {
+        final byte[] name = bytes(client.getName());
+        final byte[] email = bytes(client.getEmail());
+        append(SAVE, sizeOf(name) + sizeOf(email) + Long.BYTES, buffer -> {
+            putBytes(buffer, name);
+            putBytes(buffer, email);
+            buffer.putLong(client.getBalanceMinor());
+        });
+    }
+
+    @Override
+    public void beforeDelete(Client client) {
+        final byte[] email = bytes(client.getEmail());
+        append(DELETE, sizeOf(email), buffer -> putBytes(buffer, email));
+    }
+
+    @Override
+    public void beforeTransfer(Client fromClient, Client toClient, long amount, long fromBalance, long toBalance) {
+        final byte[] fromEmail = bytes(fromClient.getEmail());
+        final byte[] toEmail = bytes(toClient.getEmail());
+        append(TRANSFER, sizeOf(fromEmail) + sizeOf(toEmail) + 3 * Long.BYTES, buffer -> {
+            putBytes(buffer, fromEmail);
+            putBytes(buffer, toEmail);
+            buffer.putLong(amount);
+            buffer.putLong(fromBalance);
+            buffer.putLong(toBalance);
+        });
+    }
+
+    @Override
+    public void beforeWithdraw(Client client, long amount, long balance) {
+        final byte[] email = bytes(client.getEmail());
+        append(WITHDRAW, sizeOf(email) + 2 * Long.BYTES, buffer -> {
+            putBytes(buffer, email);
+            buffer.putLong(amount);
+            buffer.putLong(balance);
+        });
+    }
+
+    @Override
+    public void onSave(Client client) {
+        applied();
+    }
+
+    @Override
+    public void onDelete(Client client) {
+        applied();
+    }
+
+    @Override
+    public void onTransfer(Client fromClient, Client toClient, long amount) {
+        applied();
+    }
+
+    @Override
+    public void onWithdraw(Client client, long amount) {
+        applied();
+    }
+
+    @Override
+    public void onAbort() {
+        final Writer current = writer.get();
+        final long aborted = current.unapplied;
+        if (aborted == 0) {
+            return;
+        }
+        try {
+            final long sequence = append(ABORT, Long.BYTES, buffer -> buffer.putLong(aborted));
+            applied();
+            if (waitForDurability) {
+                awaitDurable(sequence);
+            }
+        } catch (UncheckedIOException | IllegalStateException e) {
+            // the journal has failed or been closed, and every later append reports that instead
+            applied();
+        }
+    }
+
+    @Override
+    public void afterUnlock() {
+        final Writer current = writer.get();
+        final long upTo = current.appended;
+        current.appended = 0;
+        if (waitForDurability && upTo > 0) {
+            awaitDurable(upTo);
+        }
+    }
+
+    public boolean waitsForDurability() {
+        return waitForDurability;
+    }
+
+    public long lastSequence() {
+        lock.lock();
+        try {
+            return lastSequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Highest sequence at or below which the change of every record has been applied: records are
+     * appended before their change, so {@link #lastSequence()} can run ahead of the account book.
+     * A snapshot labelled with this sequence replays every change it may have missed.
+     */
+    public long appliedSequence() {
+        final long last = lastSequence();
+        final Iterator<Long> oldest = unapplied.iterator();
+        return oldest.hasNext() ? Math.min(last, oldest.next() - 1) : last;
+    }
+
+    public long durableSequence() {
+        lock.lock();
+        try {
+            return durableSequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long commits() {
+        lock.lock();
+        try {
+            return commits;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void awaitDurable(long sequence) {
+        lock.lock();
+        try {
+            while (durableSequence < sequence) {
+                if (failure != null) {
+                    throw new UncheckedIOException("Journal write failed", failure);
+                }
+                if (closed && pendingRecords == 0 && durableSequence < sequence) {
+                    throw new IllegalStateException("Journal is closed");
+                }
+                flushed.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void sync() {
+        final long sequence;
+        lock.lock();
+        try {
+            sequence = lastSequence;
+            flushRequested = true;
+            flushNeeded.signal();
+        } finally {
+            lock.unlock();
+        }
+        awaitDurable(sequence);
+    }
+
+    /**
+     * Makes every record appended so far durable, then seals the active segment, unless it is
+     * empty, and starts a new one. Appends carry on meanwhile; records the flusher has not written
+     * yet go to the new segment.
+     */
+    public void rotate() {
+        sync();
+        rotation.lock();
+        try {
+            if (writtenSequence == sealedSequence) {
+                return;
+            }
+            channel.close();
+            Files.move(file, JournalReader.sealedSegment(file, writtenSequence), StandardCopyOption.ATOMIC_MOVE);
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE);
+            sealedSequence = writtenSequence;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            rotation.unlock();
+        }
+    }
+
+    /**
+     * Drops the sealed segments holding only records at or below {@code sequence}, such as those a
+     * published snapshot covers. The newest of them is truncated instead of deleted: its name keeps
+     * the sequence numbering going when the active segment is empty on the next open.
+     */
+    public void discardThrough(long sequence) {
+        final List<Path> covered = new ArrayList<>();
+        for (Path segment : JournalReader.sealedSegments(file)) {
+            if (JournalReader.lastSequenceOf(segment) <= sequence) {
+                covered.add(segment);
+            }
+        }
+        try {
+            for (int i = 0; i < covered.size() - 1; i++) {
+                Files.deleteIfExists(covered.get(i));
+            }
+            if (!covered.isEmpty()) {
+                try (FileChannel newest = FileChannel.open(covered.get(covered.size() - 1), StandardOpenOption.WRITE)) {
+                    newest.truncate(0);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            flushNeeded.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flusher.join();
+            channel.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    long append(byte type, int payloadBytes, RecordWriter recordWriter) {
+        final int recordBytes = HEADER_BYTES + payloadBytes + TRAILER_BYTES;
+        final Writer appending = writer.get();
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Journal is closed");
+            }
+            if (failure != null) {
+                throw new UncheckedIOException("Journal write failed", failure);
+            }
+            if (pending.remaining() < recordBytes) {
+                pending = grow(pending, recordBytes);
+            }
+            final long sequence = ++lastSequence;
+            final int start = pending.position();
+            pending.putInt(payloadBytes);
+            pending.putLong(sequence);
+            pending.put(type);
+            recordWriter.write(pending);
+            crc.reset();
+            crc.update(pending.duplicate().position(start).limit(pending.position()));
+            pending.putInt((int) crc.getValue());
+            // published under the lock, so appliedSequence() never sees lastSequence without it
+            if (appending.unapplied == 0) {
+                appending.unapplied = sequence;
+                unapplied.add(sequence);
+            }
+            appending.appended = sequence;
+            if (pendingRecords++ == 0) {
+                oldestPendingNanos = System.nanoTime();
+                flushNeeded.signal();
+            } else if (pendingRecords >= groupCommitSize) {
+                flushNeeded.signal();
+            }
+            return sequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void applied() {
+        final Writer current = writer.get();
+        if (current.unapplied != 0) {
+            unapplied.remove(current.unapplied);
+            current.unapplied = 0;
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            final ByteBuffer toWrite;
+            final long upTo;
+            lock.lock();
+            try {
+                while (pendingRecords == 0 && !closed) {
+                    flushNeeded.awaitUninterruptibly();
+                }
+                if (pendingRecords == 0) {
+                    return;
+                }
+                long remaining = oldestPendingNanos + maxDelayNanos - System.nanoTime();
+                while (pendingRecords < groupCommitSize && !closed && !flushRequested && remaining > 0) {
+                    try {
+                        remaining = flushNeeded.awaitNanos(remaining);
+                    } catch (InterruptedException e) {
+                        remaining = 0;
+                    }
+                }
+                flushRequested = false;
+                toWrite = pending;
+                pending = spare;
+                upTo = lastSequence;
+                pendingRecords = 0;
+            } finally {
+                lock.unlock();
+            }
+            IOException writeFailure = null;
+            rotation.lock();
+            try {
+                toWrite.flip();
+                while (toWrite.hasRemaining()) {
+                    channel.write(toWrite);
+                }
+                channel.force(false);
+                writtenSequence = upTo;
+            } catch (IOException e) {
+                writeFailure = e;
+            } finally {
+                rotation.unlock();
+            }
+            toWrite.clear();
+            lock.lock();
+            try {
+                spare = toWrite;
+                if (writeFailure != null) {
+                    failure = writeFailure;
+                } else {
+                    durableSequence = upTo;
+                    commits++;
+                }
+                flushed.signalAll();
+                if (failure != null) {
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private static ByteBuffer grow(ByteBuffer buffer, int needed) {
+        final ByteBuffer grown = ByteBuffer.allocateDirect(Math.max(buffer.capacity() * 2, buffer.position() + needed));
+        buffer.flip();
+        grown.put(buffer);
+        return grown;
+    }
+
+    private static byte[] bytes(String value) {
+        return value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int sizeOf(byte[] bytes) {
+        return Short.BYTES + bytes.length;
+    }
+
+    private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    interface RecordWriter {
+        void write(ByteBuffer buffer);
+    }
+
+    /**
+     * Per-thread bookkeeping: the first record whose change the thread has not applied yet, also
+     * kept in the shared {@code unapplied} set only while it is in flight, and the last record the
+     * thread has to wait for once it unlocks. Nothing outside the thread refers to it, so it goes
+     * away with the thread.
+     */
+    private static final class Writer {
+        private long unapplied;
+        private long appended;
+    }
+}
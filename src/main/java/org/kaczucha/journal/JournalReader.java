@@ -0,0 +1,236 @@
+package org.kaczucha.journal;
+
+import org.kaczucha.Client;
+import org.kaczucha.repository.ClientRepository;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Reads a journal written by {@link Journal}: the sealed segments next to its file, oldest first,
+ * then the active segment itself.
+ */
+public final class JournalReader {
+    private static final int MAX_PAYLOAD_BYTES = 1 << 20;
+    private static final int SEQUENCE_DIGITS = 20;
+
+    private JournalReader() {
+    }
+
+    public static long replay(Path file, ClientRepository repository) {
+        return replay(file, repository, 0);
+    }
+
+    /**
+     * Reads the segments that can hold records above {@code afterSequence} twice: an abort record
+     * follows the record it cancels, so the aborted sequences are collected first and their records
+     * skipped on the second pass. Sealed segments ending at or below it are not opened.
+     *
+     * @return the sequence of the last record read
+     */
+    public static long replay(Path file, ClientRepository repository, long afterSequence) {
+        final List<Path> segments = new ArrayList<>();
+        for (Path sealed : sealedSegments(file)) {
+            if (lastSequenceOf(sealed) > afterSequence) {
+                segments.add(sealed);
+            }
+        }
+        segments.add(file);
+        final Set<Long> aborted = new HashSet<>();
+        for (Path segment : segments) {
+            read(segment, (sequence, type, payload) -> {
+                if (type == Journal.ABORT && sequence > afterSequence) {
+                    aborted.add(payload.getLong());
+                }
+            });
+        }
+        final long[] lastApplied = {afterSequence};
+        for (Path segment : segments) {
+            read(segment, (sequence, type, payload) -> {
+                if (sequence > afterSequence) {
+                    if (!aborted.contains(sequence)) {
+                        apply(type, payload, repository);
+                    }
+                    lastApplied[0] = sequence;
+                }
+            });
+        }
+        return lastApplied[0];
+    }
+
+    static Tail scan(Path file) {
+        final Tail tail = new Tail();
+        final List<Path> sealed = sealedSegments(file);
+        if (!sealed.isEmpty()) {
+            tail.sealedSequence = lastSequenceOf(sealed.get(sealed.size() - 1));
+            tail.lastSequence = tail.sealedSequence;
+        }
+        tail.validBytes = read(file, (sequence, type, payload) -> tail.lastSequence = sequence);
+        return tail;
+    }
+
+    static Path sealedSegment(Path file, long lastSequence) {
+        return file.resolveSibling(file.getFileName() + "." + String.format("%0" + SEQUENCE_DIGITS + "d", lastSequence));
+    }
+
+    static long lastSequenceOf(Path segment) {
+        final String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(name.length() - SEQUENCE_DIGITS));
+    }
+
+    /**
+     * @return the sealed segments of the journal at {@code file}, oldest first
+     */
+    static List<Path> sealedSegments(Path file) {
+        final Path directory = file.toAbsolutePath().getParent();
+        final String prefix = file.getFileName() + ".";
+        if (directory == null || !Files.isDirectory(directory)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                    .filter(segment -> {
+                        final String name = segment.getFileName().toString();
+                        return name.length() == prefix.length() + SEQUENCE_DIGITS && name.startsWith(prefix)
+                                && name.substring(prefix.length()).chars().allMatch(Character::isDigit);
+                    })
+                    .sorted()
+                    .collect(Collectors.toCollection(ArrayList::new));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static long read(Path file, RecordHandler handler) {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        long validBytes = 0;
+        try (InputStream stream = Files.newInputStream(file);
+             DataInputStream input = new DataInputStream(new BufferedInputStream(stream, 1 << 16))) {
+            final CRC32 crc = new CRC32();
+            final ByteBuffer header = ByteBuffer.allocate(Journal.HEADER_BYTES);
+            while (true) {
+                final int payloadBytes;
+                final long sequence;
+                final byte type;
+                final byte[] payload;
+                final int checksum;
+                try {
+                    payloadBytes = input.readInt();
+                    if (payloadBytes < 0 || payloadBytes > MAX_PAYLOAD_BYTES) {
+                        break;
+                    }
+                    sequence = input.readLong();
+                    type = input.readByte();
+                    payload = new byte[payloadBytes];
+                    input.readFully(payload);
+                    checksum = input.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                header.clear();
+                header.putInt(payloadBytes).putLong(sequence).put(type).flip();
+                crc.reset();
+                crc.update(header);
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                handler.handle(sequence, type, ByteBuffer.wrap(payload));
+                validBytes += Journal.HEADER_BYTES + payloadBytes + Journal.TRAILER_BYTES;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return validBytes;
+    }
+
+    private static void apply(byte type, ByteBuffer payload, ClientRepository repository) {
+        switch (type) {
+            case Journal.SAVE: {
+                final String name = getString(payload);
+                final String email = getString(payload);
+                final long balance = payload.getLong();
+                if (find(repository, email) == null) {
+                    repository.save(Client.ofMinorUnits(name, email, balance));
+                }
+                break;
+            }
+            case Journal.DELETE: {
+                final Client client = find(repository, getString(payload));
+                if (client != null) {
+                    repository.delete(client);
+                }
+                break;
+            }
+            case Journal.TRANSFER: {
+                final Client fromClient = find(repository, getString(payload));
+                final Client toClient = find(repository, getString(payload));
+                payload.getLong();
+                final long fromBalance = payload.getLong();
+                final long toBalance = payload.getLong();
+                if (fromClient != null) {
+                    fromClient.setBalanceMinor(fromBalance);
+                }
+                if (toClient != null) {
+                    toClient.setBalanceMinor(toBalance);
+                }
+                break;
+            }
+            case Journal.WITHDRAW: {
+                final Client client = find(repository, getString(payload));
+                payload.getLong();
+                final long balance = payload.getLong();
+                if (client != null) {
+                    client.setBalanceMinor(balance);
+                }
+                break;
+            }
+            case Journal.ABORT:
+                break;
+            default:
+                throw new IllegalStateException(String.format("Unknown journal record type: %d", type));
+        }
+    }
+
+    private static Client find(ClientRepository repository, String email) {
+        try {
+            return repository.findByEmail(email);
+        } catch (NoSuchElementException e) {
+            return null;
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.getShort()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    interface RecordHandler {
+        void handle(long sequence, byte type, ByteBuffer payload);
+    }
+
+    static final class Tail {
+        long validBytes;
+        long lastSequence;
+        long sealedSequence;
+    }
+}
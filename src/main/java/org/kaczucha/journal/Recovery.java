@@ -0,0 +1,68 @@
+package org.kaczucha.journal;
+
+import org.kaczucha.repository.ClientRepository;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Optional;
+
+public final class Recovery {
+    private final long snapshotSequence;
+    private final long lastSequence;
+    private final Duration snapshotLoadTime;
+    private final Duration coldStartTime;
+
+    private Recovery(long snapshotSequence, long lastSequence, Duration snapshotLoadTime, Duration coldStartTime) {
+        this.snapshotSequence = snapshotSequence;
+        this.lastSequence = lastSequence;
+        this.snapshotLoadTime = snapshotLoadTime;
+        this.coldStartTime = coldStartTime;
+    }
+
+    public static Recovery recover(SnapshotStore snapshots, Path journalFile, ClientRepository repository) {
+        final long start = System.nanoTime();
+        final Optional<Path> snapshot = snapshots.latest();
+        final long snapshotSequence = snapshot
+                .map(file -> SnapshotStore.load(file, repository))
+                .orElse(0L);
+        final long snapshotLoaded = System.nanoTime();
+        final long lastSequence = JournalReader.replay(journalFile, repository, snapshotSequence);
+        final long end = System.nanoTime();
+        return new Recovery(
+                snapshotSequence,
+                lastSequence,
+                Duration.ofNanos(snapshotLoaded - start),
+                Duration.ofNanos(end - start)
+        );
+    }
+
+    public long getSnapshotSequence() {
+        return snapshotSequence;
+    }
+
+    public long getLastSequence() {
+        return lastSequence;
+    }
+
+    public long getReplayedRecords() {
+        return lastSequence - snapshotSequence;
+    }
+
+    public Duration getSnapshotLoadTime() {
+        return snapshotLoadTime;
+    }
+
+    public Duration getColdStartTime() {
+        return coldStartTime;
+    }
+
+    @Override
+    public String toString() {
+        return "Recovery{" +
+                "snapshotSequence=" + snapshotSequence +
+                ", replayedRecords=" + getReplayedRecords() +
+                ", snapshotLoadTime=" + snapshotLoadTime.toMillis() + "ms" +
+                ", coldStartTime=" + coldStartTime.toMillis() + "ms" +
+                '}';
+    }
+}
@@ -0,0 +1,71 @@
+package org.kaczucha.journal;
+
+import org.kaczucha.repository.ClientRepository;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Periodically snapshots a repository on a background thread while transfers keep running. The
+ * journal's applied sequence is read before the accounts are walked, so every record at or below it
+ * is already reflected in the snapshot and replaying the records above it restores the exact state;
+ * the journal is synced before the snapshot is published, so it never runs ahead of the journal.
+ * A failed snapshot is logged and counted, and the next one is still taken on schedule.
+ */
+public class SnapshotScheduler implements Closeable {
+    private static final System.Logger LOGGER = System.getLogger(SnapshotScheduler.class.getName());
+
+    private final ClientRepository repository;
+    private final Journal journal;
+    private final SnapshotStore store;
+    private final int retainedSnapshots;
+    private final ScheduledExecutorService executor;
+    private final AtomicLong failures = new AtomicLong();
+
+    public SnapshotScheduler(ClientRepository repository, Journal journal, SnapshotStore store,
+                             Duration interval, int retainedSnapshots) {
+        this.repository = repository;
+        this.journal = journal;
+        this.store = store;
+        this.retainedSnapshots = retainedSnapshots;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "snapshot-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::snapshot, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return {@code false} when the snapshot failed; the failure has been logged
+     */
+    public boolean snapshot() {
+        try {
+            store.write(repository, journal);
+            store.retainLatest(retainedSnapshots);
+            return true;
+        } catch (RuntimeException e) {
+            failures.incrementAndGet();
+            LOGGER.log(System.Logger.Level.ERROR, "Snapshot failed, the next one is taken in the next interval", e);
+            return false;
+        }
+    }
+
+    public long failures() {
+        return failures.get();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package org.kaczucha.journal;
+
+import org.kaczucha.Client;
+import org.kaczucha.repository.ClientRepository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compact binary snapshots of the account book, named after the journal sequence they cover.
+ * A snapshot is written to a temporary file and renamed only once complete, so a crash while
+ * writing never leaves a half-written snapshot behind. When written against a journal, the journal
+ * is synced between the walk and the rename: the walk can see changes whose records are not durable
+ * yet, and a published snapshot must never contain a change that recovery would not know about.
+ * Once published, the journal is rotated and the segments the snapshot covers are discarded.
+ */
+public class SnapshotStore {
+    private static final int MAGIC = 0x534E4150;
+    private static final long MAP_WINDOW = 256L * 1024 * 1024;
+    private static final String PREFIX = "snapshot-";
+    private static final String SUFFIX = ".bin";
+
+    private final Path directory;
+
+    public SnapshotStore(Path directory) {
+        this.directory = directory;
+    }
+
+    public Path write(ClientRepository repository, Journal journal) {
+        final long journalSequence = journal.appliedSequence();
+        final Path snapshot = write(repository, journalSequence, journal::sync);
+        journal.rotate();
+        journal.discardThrough(journalSequence);
+        return snapshot;
+    }
+
+    public Path write(ClientRepository repository, long journalSequence) {
+        return write(repository, journalSequence, () -> {
+        });
+    }
+
+    /**
+     * @param beforePublish runs once the snapshot is on disk and before it is renamed into place;
+     *                      if it throws, no snapshot is published
+     */
+    public Path write(ClientRepository repository, long journalSequence, Runnable beforePublish) {
+        final Path target = directory.resolve(PREFIX + String.format("%020d", journalSequence) + SUFFIX);
+        final Path temporary = directory.resolve(target.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(directory);
+            try (FileChannel channel = FileChannel.open(temporary,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+                buffer.putInt(MAGIC).putLong(journalSequence).putInt(0);
+                final int[] count = {0};
+                repository.forEach(client -> {
+                    final byte[] name = bytes(client.getName());
+                    final byte[] email = bytes(client.getEmail());
+                    final long balance = client.getBalanceMinor();
+                    if (buffer.remaining() < 2 * Short.BYTES + name.length + email.length + Long.BYTES) {
+                        drain(channel, buffer);
+                    }
+                    buffer.putShort((short) name.length).put(name);
+                    buffer.putShort((short) email.length).put(email);
+                    buffer.putLong(balance);
+                    count[0]++;
+                });
+                drain(channel, buffer);
+                buffer.putInt(count[0]).flip();
+                channel.write(buffer, Integer.BYTES + Long.BYTES);
+                channel.force(true);
+            }
+            beforePublish.run();
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            return target;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public Optional<Path> latest() {
+        return list().stream().max(Comparator.naturalOrder());
+    }
+
+    public void retainLatest(int snapshots) {
+        final List<Path> existing = list();
+        existing.sort(Comparator.reverseOrder());
+        for (int i = snapshots; i < existing.size(); i++) {
+            try {
+                Files.deleteIfExists(existing.get(i));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    public static long load(Path snapshot, ClientRepository repository) {
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, MAP_WINDOW));
+            if (window.getInt() != MAGIC) {
+                throw new IllegalArgumentException(String.format("File %s is not a snapshot!", snapshot));
+            }
+            final long journalSequence = window.getLong();
+            final int count = window.getInt();
+            long windowStart = 0;
+            for (int i = 0; i < count; i++) {
+                final int recordStart = window.position();
+                try {
+                    repository.save(readClient(window));
+                } catch (BufferUnderflowException e) {
+                    windowStart += recordStart;
+                    window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart,
+                            Math.min(size - windowStart, MAP_WINDOW));
+                    repository.save(readClient(window));
+                }
+            }
+            return journalSequence;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private List<Path> list() {
+        if (!Files.isDirectory(directory)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                    .filter(file -> {
+                        final String name = file.getFileName().toString();
+                        return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+                    })
+                    .collect(Collectors.toCollection(ArrayList::new));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Client readClient(ByteBuffer buffer) {
+        final String name = readString(buffer);
+        final String email = readString(buffer);
+        return Client.ofMinorUnits(name, email, buffer.getLong());
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.getShort()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buffer.clear();
+    }
+
+    private static byte[] bytes(String value) {
+        return value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+    }
+}
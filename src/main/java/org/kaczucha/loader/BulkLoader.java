@@ -0,0 +1,386 @@
+package org.kaczucha.loader;
+
+import org.kaczucha.Client;
+import org.kaczucha.Money;
+import org.kaczucha.repository.ClientRepository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Imports {@code name,email,balance} CSV files into a {@link ClientRepository}. The file is mapped
+ * in newline-aligned chunks that are parsed on worker threads, while the calling thread inserts the
+ * parsed chunks in file order, so only a bounded number of chunks is ever held in memory and the
+ * first occurrence of a duplicated email is the one that is kept. Balances are in major units with
+ * at most two decimal places; bad rows are counted and skipped.
+ */
+public class BulkLoader {
+    private static final int DEFAULT_CHUNK_BYTES = 4 * 1024 * 1024;
+    private static final int SAMPLE_BYTES = 64 * 1024;
+    private static final int BATCH_SIZE = 4096;
+    private static final String HEADER = "name,email,balance";
+    private static final long INVALID = -1;
+
+    private final ClientRepository repository;
+    private final int parserThreads;
+    private final int chunkBytes;
+
+    public BulkLoader(ClientRepository repository) {
+        this(repository, Runtime.getRuntime().availableProcessors(), DEFAULT_CHUNK_BYTES);
+    }
+
+    public BulkLoader(ClientRepository repository, int parserThreads, int chunkBytes) {
+        if (parserThreads <= 0 || chunkBytes <= 0) {
+            throw new IllegalArgumentException("Parser threads and chunk size must be positive!");
+        }
+        this.repository = repository;
+        this.parserThreads = parserThreads;
+        this.chunkBytes = chunkBytes;
+    }
+
+    public LoadReport load(Path csv) {
+        final long start = System.nanoTime();
+        final AtomicInteger threadIds = new AtomicInteger();
+        final ExecutorService parsers = Executors.newFixedThreadPool(parserThreads, runnable -> {
+            final Thread thread = new Thread(runnable, "bulk-loader-" + threadIds.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try (FileChannel channel = FileChannel.open(csv, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            final int estimatedRows = estimateRows(channel, size);
+            repository.reserve(estimatedRows);
+            final Inserter inserter = new Inserter(estimatedRows);
+            final Deque<Future<ParsedChunk>> inFlight = new ArrayDeque<>();
+            long position = 0;
+            while (position < size) {
+                final ByteBuffer chunk = mapChunk(channel, position, size);
+                final boolean first = position == 0;
+                position += chunk.limit();
+                inFlight.add(parsers.submit(() -> parse(chunk, first)));
+                if (inFlight.size() >= 2 * parserThreads) {
+                    inserter.insert(inFlight.poll().get());
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                inserter.insert(inFlight.poll().get());
+            }
+            inserter.flush();
+            return new LoadReport(inserter.loaded, inserter.duplicates, inserter.refused,
+                    inserter.badBalances, inserter.malformedRows, Duration.ofNanos(System.nanoTime() - start));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Import interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Parsing failed", e.getCause());
+        } finally {
+            parsers.shutdownNow();
+        }
+    }
+
+    private static int estimateRows(FileChannel channel, long size) throws IOException {
+        if (size == 0) {
+            return 0;
+        }
+        final ByteBuffer sample = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, SAMPLE_BYTES));
+        int lines = 0;
+        for (int i = 0; i < sample.limit(); i++) {
+            if (sample.get(i) == '\n') {
+                lines++;
+            }
+        }
+        final double estimate = Math.ceil((double) Math.max(1, lines) * size / sample.limit());
+        return (int) Math.min(estimate, Integer.MAX_VALUE - 8);
+    }
+
+    private ByteBuffer mapChunk(FileChannel channel, long position, long size) throws IOException {
+        long length = Math.min(chunkBytes, size - position);
+        while (true) {
+            final ByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            if (position + length == size) {
+                return chunk;
+            }
+            for (int i = (int) length - 1; i >= 0; i--) {
+                if (chunk.get(i) == '\n') {
+                    chunk.limit(i + 1);
+                    return chunk;
+                }
+            }
+            length = Math.min(length * 2, size - position);
+        }
+    }
+
+    private static ParsedChunk parse(ByteBuffer chunk, boolean mayStartWithHeader) {
+        final ParsedChunk parsed = new ParsedChunk();
+        final int limit = chunk.limit();
+        byte[] scratch = new byte[128];
+        int lineStart = 0;
+        boolean firstLine = mayStartWithHeader;
+        while (lineStart < limit) {
+            int lineEnd = lineStart;
+            while (lineEnd < limit && chunk.get(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            int contentEnd = lineEnd;
+            if (contentEnd > lineStart && chunk.get(contentEnd - 1) == '\r') {
+                contentEnd--;
+            }
+            if (contentEnd - lineStart > scratch.length) {
+                scratch = new byte[Integer.highestOneBit(contentEnd - lineStart) << 1];
+            }
+            if (contentEnd > lineStart && !(firstLine && isHeader(chunk, lineStart, contentEnd, scratch))) {
+                parseLine(chunk, lineStart, contentEnd, parsed, scratch);
+            }
+            firstLine = false;
+            lineStart = lineEnd + 1;
+        }
+        return parsed;
+    }
+
+    private static void parseLine(ByteBuffer chunk, int start, int end, ParsedChunk parsed, byte[] scratch) {
+        int firstComma = -1;
+        int secondComma = -1;
+        for (int i = start; i < end; i++) {
+            if (chunk.get(i) == ',') {
+                if (firstComma < 0) {
+                    firstComma = i;
+                } else if (secondComma < 0) {
+                    secondComma = i;
+                } else {
+                    parsed.malformedRows++;
+                    return;
+                }
+            }
+        }
+        if (secondComma < 0) {
+            parsed.malformedRows++;
+            return;
+        }
+        final String email = decode(chunk, firstComma + 1, secondComma, scratch);
+        if (email.isEmpty()) {
+            parsed.malformedRows++;
+            return;
+        }
+        final long balance = parseMinorUnits(chunk, secondComma + 1, end);
+        if (balance == INVALID) {
+            parsed.badBalances++;
+            return;
+        }
+        parsed.clients.add(Client.ofMinorUnits(decode(chunk, start, firstComma, scratch), email, balance));
+    }
+
+    private static long parseMinorUnits(ByteBuffer chunk, int start, int end) {
+        while (start < end && chunk.get(start) == ' ') {
+            start++;
+        }
+        while (end > start && chunk.get(end - 1) == ' ') {
+            end--;
+        }
+        long whole = 0;
+        int i = start;
+        while (i < end && isDigit(chunk.get(i))) {
+            final int digit = chunk.get(i) - '0';
+            if (whole > (Long.MAX_VALUE / Money.SCALE - digit) / 10) {
+                return INVALID;
+            }
+            whole = whole * 10 + digit;
+            i++;
+        }
+        if (i == start) {
+            return INVALID;
+        }
+        long minor = whole * Money.SCALE;
+        if (i < end && chunk.get(i) == '.') {
+            i++;
+            long unit = Money.SCALE;
+            while (i < end && isDigit(chunk.get(i))) {
+                unit /= 10;
+                if (unit == 0) {
+                    return INVALID;
+                }
+                minor += (chunk.get(i) - '0') * unit;
+                i++;
+            }
+        }
+        return i == end ? minor : INVALID;
+    }
+
+    private static boolean isDigit(byte value) {
+        return value >= '0' && value <= '9';
+    }
+
+    private static boolean isHeader(ByteBuffer chunk, int start, int end, byte[] scratch) {
+        return decode(chunk, start, end, scratch).equalsIgnoreCase(HEADER);
+    }
+
+    private static String decode(ByteBuffer chunk, int start, int end, byte[] scratch) {
+        while (start < end && chunk.get(start) == ' ') {
+            start++;
+        }
+        while (end > start && chunk.get(end - 1) == ' ') {
+            end--;
+        }
+        chunk.get(start, scratch, 0, end - start);
+        return new String(scratch, 0, end - start, StandardCharsets.UTF_8);
+    }
+
+    private static final class ParsedChunk {
+        private final List<Client> clients = new ArrayList<>();
+        private long badBalances;
+        private long malformedRows;
+    }
+
+    /**
+     * Inserts parsed rows in batches of {@link #BATCH_SIZE}. Repeats of an email anywhere in the
+     * file are counted as duplicates here, whether or not the repository would refuse them, using an
+     * {@link EmailSet} that costs about the email's length plus 24 bytes per row.
+     */
+    private final class Inserter {
+        private final List<Client> batch = new ArrayList<>(BATCH_SIZE);
+        private final EmailSet emails;
+        private long loaded;
+        private long duplicates;
+        private long refused;
+        private long badBalances;
+        private long malformedRows;
+
+        private Inserter(int expectedRows) {
+            this.emails = new EmailSet(expectedRows);
+        }
+
+        private void insert(ParsedChunk chunk) {
+            badBalances += chunk.badBalances;
+            malformedRows += chunk.malformedRows;
+            for (Client client : chunk.clients) {
+                if (!emails.add(client.getEmail().toLowerCase(Locale.ROOT))) {
+                    duplicates++;
+                    continue;
+                }
+                batch.add(client);
+                if (batch.size() == BATCH_SIZE) {
+                    flush();
+                }
+            }
+        }
+
+        private void flush() {
+            if (batch.isEmpty()) {
+                return;
+            }
+            final long[] rejected = {0};
+            repository.saveAll(batch, (client, error) -> rejected[0]++);
+            refused += rejected[0];
+            loaded += batch.size() - rejected[0];
+            batch.clear();
+        }
+    }
+
+    /**
+     * Set of strings kept as length-prefixed UTF-8 bytes in paged arrays, indexed by an open
+     * addressing table of positions and hashes, instead of a {@code HashSet} entry and a
+     * {@code String} per element.
+     */
+    private static final class EmailSet {
+        private static final int PAGE_BYTES = 1 << 20;
+        private static final int MAX_INITIAL_CAPACITY = 1 << 23;
+
+        private final List<byte[]> pages = new ArrayList<>();
+        private byte[] page = new byte[0];
+        private int pageUsed;
+        // page index in the high half and offset in the low half, plus one; zero marks a free slot
+        private long[] positions;
+        private int[] hashes;
+        private int size;
+
+        private EmailSet(int expected) {
+            final int capacity = Integer.highestOneBit(Math.max(16, Math.min(expected, MAX_INITIAL_CAPACITY)) * 2 - 1) << 1;
+            this.positions = new long[capacity];
+            this.hashes = new int[capacity];
+        }
+
+        /**
+         * @return {@code false} when the set already holds {@code value}
+         */
+        private boolean add(String value) {
+            final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            final int hash = spread(Arrays.hashCode(bytes));
+            final int mask = positions.length - 1;
+            for (int i = hash & mask; ; i = (i + 1) & mask) {
+                if (positions[i] == 0) {
+                    positions[i] = store(bytes);
+                    hashes[i] = hash;
+                    if (++size * 2 > positions.length) {
+                        grow();
+                    }
+                    return true;
+                }
+                if (hashes[i] == hash && matches(positions[i], bytes)) {
+                    return false;
+                }
+            }
+        }
+
+        private long store(byte[] bytes) {
+            if (pageUsed + Integer.BYTES + bytes.length > page.length) {
+                page = new byte[Math.max(PAGE_BYTES, Integer.BYTES + bytes.length)];
+                pages.add(page);
+                pageUsed = 0;
+            }
+            final long position = ((long) (pages.size() - 1) << 32 | pageUsed) + 1;
+            ByteBuffer.wrap(page, pageUsed, Integer.BYTES).putInt(bytes.length);
+            System.arraycopy(bytes, 0, page, pageUsed + Integer.BYTES, bytes.length);
+            pageUsed += Integer.BYTES + bytes.length;
+            return position;
+        }
+
+        private boolean matches(long position, byte[] bytes) {
+            final byte[] stored = pages.get((int) ((position - 1) >>> 32));
+            final int offset = (int) (position - 1);
+            final int length = ByteBuffer.wrap(stored, offset, Integer.BYTES).getInt();
+            final int start = offset + Integer.BYTES;
+            return Arrays.equals(stored, start, start + length, bytes, 0, bytes.length);
+        }
+
+        private void grow() {
+            final long[] oldPositions = positions;
+            final int[] oldHashes = hashes;
+            positions = new long[oldPositions.length * 2];
+            hashes = new int[oldHashes.length * 2];
+            final int mask = positions.length - 1;
+            for (int j = 0; j < oldPositions.length; j++) {
+                if (oldPositions[j] != 0) {
+                    int i = oldHashes[j] & mask;
+                    while (positions[i] != 0) {
+                        i = (i + 1) & mask;
+                    }
+                    positions[i] = oldPositions[j];
+                    hashes[i] = oldHashes[j];
+                }
+            }
+        }
+
+        private static int spread(int hash) {
+            final int mixed = hash * 0x9E3779B9;
+            return mixed ^ (mixed >>> 16);
+        }
+    }
+}
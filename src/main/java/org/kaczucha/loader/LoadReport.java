@@ -0,0 +1,67 @@
+package org.kaczucha.loader;
+
+import java.time.Duration;
+
+/**
+ * Outcome of a {@link BulkLoader} run. Duplicates are emails repeated within one insert batch of
+ * the file; refused rows are the ones the repository itself rejected, such as emails that already
+ * had an account before the load or were loaded from an earlier batch.
+ */
+public class LoadReport {
+    private final long rowsLoaded;
+    private final long duplicates;
+    private final long refused;
+    private final long badBalances;
+    private final long malformedRows;
+    private final Duration elapsed;
+
+    LoadReport(long rowsLoaded, long duplicates, long refused, long badBalances, long malformedRows, Duration elapsed) {
+        this.rowsLoaded = rowsLoaded;
+        this.duplicates = duplicates;
+        this.refused = refused;
+        this.badBalances = badBalances;
+        this.malformedRows = malformedRows;
+        this.elapsed = elapsed;
+    }
+
+    public long getRowsLoaded() {
+        return rowsLoaded;
+    }
+
+    public long getDuplicates() {
+        return duplicates;
+    }
+
+    public long getRefused() {
+        return refused;
+    }
+
+    public long getBadBalances() {
+        return badBalances;
+    }
+
+    public long getMalformedRows() {
+        return malformedRows;
+    }
+
+    public long getRowsRejected() {
+        return duplicates + refused + badBalances + malformedRows;
+    }
+
+    public Duration getElapsed() {
+        return elapsed;
+    }
+
+    public double getRowsPerSecond() {
+        final long nanos = Math.max(1, elapsed.toNanos());
+        return (rowsLoaded + getRowsRejected()) * 1e9 / nanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Loaded %d rows, rejected %d (%d duplicate emails, %d refused by repository, "
+                        + "%d bad balances, %d malformed) in %d ms, %.0f rows/s",
+                rowsLoaded, getRowsRejected(), duplicates, refused, badBalances, malformedRows,
+                elapsed.toMillis(), getRowsPerSecond());
+    }
+}
@@ -0,0 +1,77 @@
+package org.kaczucha.metrics;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class BankMetrics {
+    private static final double[] PERCENTILES = {50, 99, 99.9};
+    private static final String[] QUANTILE_LABELS = {"0.5", "0.99", "0.999"};
+
+    private final OperationMetrics save = new OperationMetrics("save");
+    private final OperationMetrics delete = new OperationMetrics("delete");
+    private final OperationMetrics findByEmail = new OperationMetrics("findByEmail");
+    private final OperationMetrics balanceOf = new OperationMetrics("balanceOf");
+    private final OperationMetrics snapshotOf = new OperationMetrics("snapshotOf");
+    private final OperationMetrics transfer = new OperationMetrics("transfer");
+    private final OperationMetrics transferAll = new OperationMetrics("transferAll");
+    private final OperationMetrics withdraw = new OperationMetrics("withdraw");
+
+    public OperationMetrics save() {
+        return save;
+    }
+
+    public OperationMetrics delete() {
+        return delete;
+    }
+
+    public OperationMetrics findByEmail() {
+        return findByEmail;
+    }
+
+    public OperationMetrics balanceOf() {
+        return balanceOf;
+    }
+
+    public OperationMetrics snapshotOf() {
+        return snapshotOf;
+    }
+
+    public OperationMetrics transfer() {
+        return transfer;
+    }
+
+    public OperationMetrics transferAll() {
+        return transferAll;
+    }
+
+    public OperationMetrics withdraw() {
+        return withdraw;
+    }
+
+    public List<OperationMetrics> operations() {
+        return Arrays.asList(save, delete, findByEmail, balanceOf, snapshotOf, transfer, transferAll, withdraw);
+    }
+
+    public String report() {
+        final StringBuilder report = new StringBuilder();
+        for (OperationMetrics operation : operations()) {
+            final LatencyHistogram.Snapshot latency = operation.latency();
+            final String name = operation.getOperation();
+            report.append(String.format("bank_operation_calls{operation=\"%s\"} %d%n", name, operation.getCalls()));
+            report.append(String.format("bank_operation_errors{operation=\"%s\",type=\"insufficient_funds\"} %d%n",
+                    name, operation.getInsufficientFunds()));
+            report.append(String.format("bank_operation_errors{operation=\"%s\",type=\"not_found\"} %d%n",
+                    name, operation.getNotFound()));
+            report.append(String.format("bank_operation_errors{operation=\"%s\",type=\"invalid_argument\"} %d%n",
+                    name, operation.getInvalidArguments()));
+            report.append(String.format("bank_operation_errors{operation=\"%s\",type=\"other\"} %d%n",
+                    name, operation.getOtherErrors()));
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                report.append(String.format("bank_operation_latency_ns{operation=\"%s\",quantile=\"%s\"} %d%n",
+                        name, QUANTILE_LABELS[i], latency.valueAtPercentile(PERCENTILES[i])));
+            }
+            report.append(String.format("bank_operation_latency_ns_max{operation=\"%s\"} %d%n", name, latency.getMax()));
+        }
+        return report.toString();
+    }
+}
@@ -0,0 +1,131 @@
+package org.kaczucha.metrics;
+
+import org.kaczucha.Client;
+import org.kaczucha.repository.ClientRepository;
+import org.kaczucha.service.AccountLocks;
+import org.kaczucha.service.BankService;
+import org.kaczucha.service.TransferRequest;
+import org.kaczucha.service.TransferResult;
+
+import java.util.List;
+
+/**
+ * {@link BankService} that records call counts, error counts and latency histograms into
+ * {@link BankMetrics}. Use a plain {@link BankService} to switch instrumentation off entirely.
+ */
+public class InstrumentedBankService extends BankService {
+    private final BankMetrics metrics;
+
+    public InstrumentedBankService(ClientRepository clientRepository, AccountLocks accountLocks, BankMetrics metrics) {
+        super(clientRepository, accountLocks);
+        this.metrics = metrics;
+    }
+
+    public BankMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public void save(Client client) {
+        final long start = System.nanoTime();
+        try {
+            super.save(client);
+        } catch (RuntimeException e) {
+            metrics.save().recordFailure(start, e);
+            throw e;
+        }
+        metrics.save().recordSuccess(start);
+    }
+
+    @Override
+    public void delete(Client client) {
+        final long start = System.nanoTime();
+        try {
+            super.delete(client);
+        } catch (RuntimeException e) {
+            metrics.delete().recordFailure(start, e);
+            throw e;
+        }
+        metrics.delete().recordSuccess(start);
+    }
+
+    @Override
+    public Client findByEmail(String email) {
+        final long start = System.nanoTime();
+        final Client client;
+        try {
+            client = super.findByEmail(email);
+        } catch (RuntimeException e) {
+            metrics.findByEmail().recordFailure(start, e);
+            throw e;
+        }
+        metrics.findByEmail().recordSuccess(start);
+        return client;
+    }
+
+    @Override
+    public long balanceOf(String email) {
+        final long start = System.nanoTime();
+        final long balance;
+        try {
+            balance = super.balanceOf(email);
+        } catch (RuntimeException e) {
+            metrics.balanceOf().recordFailure(start, e);
+            throw e;
+        }
+        metrics.balanceOf().recordSuccess(start);
+        return balance;
+    }
+
+    @Override
+    public Client snapshotOf(String email) {
+        final long start = System.nanoTime();
+        final Client client;
+        try {
+            client = super.snapshotOf(email);
+        } catch (RuntimeException e) {
+            metrics.snapshotOf().recordFailure(start, e);
+            throw e;
+        }
+        metrics.snapshotOf().recordSuccess(start);
+        return client;
+    }
+
+    @Override
+    public void transfer(String fromEmail, String toEmail, double amount) {
+        final long start = System.nanoTime();
+        try {
+            super.transfer(fromEmail, toEmail, amount);
+        } catch (RuntimeException e) {
+            metrics.transfer().recordFailure(start, e);
+            throw e;
+        }
+        metrics.transfer().recordSuccess(start);
+    }
+
+    @Override
+    public List<TransferResult> transferAll(List<TransferRequest> requests) {
+        final long start = System.nanoTime();
+        final List<TransferResult> results;
+        try {
+            results = super.transferAll(requests);
+        } catch (RuntimeException e) {
+            metrics.transferAll().recordFailure(start, e);
+            throw e;
+        }
+        metrics.transferAll().recordSuccess(start);
+        return results;
+    }
+
+    @Override
+    public void withdraw(String email, int amount) {
+        final long start = System.nanoTime();
+        try {
+            super.withdraw(email, amount);
+        } catch (RuntimeException e) {
+            metrics.withdraw().recordFailure(start, e);
+            throw e;
+        }
+        metrics.withdraw().recordSuccess(start);
+    }
+}
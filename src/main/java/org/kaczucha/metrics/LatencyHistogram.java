@@ -0,0 +1,141 @@
+package org.kaczucha.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Log-linear latency histogram in the style of HdrHistogram: every power of two is split into
+ * 128 linear sub-buckets, so a recorded value is reported with less than 1% relative error.
+ * Recording is a single lock-free increment; values above ~18 minutes (in nanoseconds) are
+ * clamped to the highest bucket.
+ * <p>
+ * Counts are striped like a {@link LongAdder}: threads share one array of counts until they
+ * collide on it, and from then on a thread counts into the stripe picked by its id, created on
+ * first contention. {@link #snapshot()} adds the stripes up, so an uncontended histogram holds a
+ * single array.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final long MAX_VALUE = (1L << 40) - 1;
+    private static final int BUCKETS = bucketOf(MAX_VALUE) + 1;
+    private static final int STRIPES = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() - 1)) * 2;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicReferenceArray<AtomicLongArray> stripes = new AtomicReferenceArray<>(STRIPES);
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public void record(long value) {
+        final long clamped = Math.min(Math.max(value, 0), MAX_VALUE);
+        increment(bucketOf(clamped));
+        total.add(clamped);
+        max.accumulate(clamped);
+    }
+
+    public void recordWithExpectedInterval(long value, long expectedInterval) {
+        record(value);
+        if (expectedInterval <= 0) {
+            return;
+        }
+        for (long missing = value - expectedInterval; missing >= expectedInterval; missing -= expectedInterval) {
+            record(missing);
+        }
+    }
+
+    public Snapshot snapshot() {
+        final long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+        }
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            final AtomicLongArray striped = stripes.get(stripe);
+            if (striped != null) {
+                for (int i = 0; i < BUCKETS; i++) {
+                    copy[i] += striped.get(i);
+                }
+            }
+        }
+        long count = 0;
+        for (long bucketCount : copy) {
+            count += bucketCount;
+        }
+        return new Snapshot(copy, count, total.sum(), max.get());
+    }
+
+    private void increment(int bucket) {
+        final int stripe = (int) (Thread.currentThread().getId() * 0x9E3779B97F4A7C15L >>> 32) & (STRIPES - 1);
+        final AtomicLongArray striped = stripes.get(stripe);
+        if (striped != null) {
+            striped.incrementAndGet(bucket);
+            return;
+        }
+        final long current = counts.get(bucket);
+        if (counts.compareAndSet(bucket, current, current + 1)) {
+            return;
+        }
+        stripes.compareAndSet(stripe, null, new AtomicLongArray(BUCKETS));
+        stripes.get(stripe).incrementAndGet(bucket);
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        final int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        final int mantissa = (int) (value >>> shift);
+        return (shift + 1) * SUB_BUCKETS + mantissa - SUB_BUCKETS;
+    }
+
+    static long highestValueIn(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        final int shift = bucket / SUB_BUCKETS - 1;
+        final long mantissa = bucket % SUB_BUCKETS + SUB_BUCKETS;
+        return ((mantissa + 1) << shift) - 1;
+    }
+
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        private Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        public long valueAtPercentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+            long seen = 0;
+            for (int bucket = 0; bucket < counts.length; bucket++) {
+                seen += counts[bucket];
+                if (seen >= rank) {
+                    return Math.min(highestValueIn(bucket), max);
+                }
+            }
+            return max;
+        }
+    }
+}
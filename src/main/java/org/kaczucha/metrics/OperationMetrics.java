@@ -0,0 +1,71 @@
+package org.kaczucha.metrics;
+
+import org.kaczucha.service.NoSufficientFundsException;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.LongAdder;
+
+public class OperationMetrics {
+    private final String operation;
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder insufficientFunds = new LongAdder();
+    private final LongAdder notFound = new LongAdder();
+    private final LongAdder invalidArguments = new LongAdder();
+    private final LongAdder otherErrors = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    public OperationMetrics(String operation) {
+        this.operation = operation;
+    }
+
+    public void recordSuccess(long startNanos) {
+        calls.increment();
+        latency.record(System.nanoTime() - startNanos);
+    }
+
+    public void recordFailure(long startNanos, RuntimeException error) {
+        calls.increment();
+        latency.record(System.nanoTime() - startNanos);
+        if (error instanceof NoSufficientFundsException) {
+            insufficientFunds.increment();
+        } else if (error instanceof NoSuchElementException) {
+            notFound.increment();
+        } else if (error instanceof IllegalArgumentException) {
+            invalidArguments.increment();
+        } else {
+            otherErrors.increment();
+        }
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    public long getInsufficientFunds() {
+        return insufficientFunds.sum();
+    }
+
+    public long getNotFound() {
+        return notFound.sum();
+    }
+
+    public long getInvalidArguments() {
+        return invalidArguments.sum();
+    }
+
+    public long getOtherErrors() {
+        return otherErrors.sum();
+    }
+
+    public long getErrors() {
+        return getInsufficientFunds() + getNotFound() + getInvalidArguments() + getOtherErrors();
+    }
+
+    public LatencyHistogram.Snapshot latency() {
+        return latency.snapshot();
+    }
+}
@@ -0,0 +1,351 @@
+package org.kaczucha.repository;
+
+import org.kaczucha.Client;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Struct-of-arrays account store: names, emails and balances (in minor units) live in parallel,
+ * paged arrays indexed by account slot, and emails are found through an open-addressing index of
+ * slots. Pages are never copied when the table grows, so a balance written through an old page
+ * reference is never lost.
+ * <p>
+ * Slots freed by {@link #delete} are reused by later saves. Each slot carries a generation that a
+ * delete bumps, and a view only reads the slot while its generation is current: a view of a deleted
+ * account reads as deleted (null email, zero balance) and refuses writes, even once its slot holds
+ * another account.
+ * <p>
+ * Every lookup hands out a new view, so the table keeps nothing per viewed account; two views are
+ * the same account, in the sense of {@link Client#isSameAccount(Client)}, when they share a slot
+ * and its generation.
+ */
+public class AccountTable implements ClientRepository {
+    private static final int PAGE_BITS = 14;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    private static final int EMPTY = 0;
+    private static final int DELETED = -1;
+    private static final VarHandle INDEX = MethodHandles.arrayElementVarHandle(int[].class);
+    private static final VarHandle GENERATIONS = MethodHandles.arrayElementVarHandle(int[].class);
+
+    private volatile Page[] pages;
+    private volatile int[] index;
+    private volatile int size;
+    private volatile int slotsUsed;
+    private int indexEntriesUsed;
+    private int[] freeSlots = new int[16];
+    private int freeSlotCount;
+
+    public AccountTable() {
+        this(PAGE_SIZE);
+    }
+
+    public AccountTable(int expectedAccounts) {
+        final int pageCount = Math.max(1, (expectedAccounts + PAGE_MASK) >>> PAGE_BITS);
+        final Page[] initialPages = new Page[pageCount];
+        for (int i = 0; i < pageCount; i++) {
+            initialPages[i] = new Page();
+        }
+        this.pages = initialPages;
+        this.index = new int[indexCapacityFor(expectedAccounts)];
+    }
+
+    @Override
+    public synchronized void save(Client client) {
+        final String email = client.getEmail();
+        if (email == null) {
+            throw new IllegalArgumentException("Email cant be null");
+        }
+        if (slotOf(email) >= 0) {
+            throw new IllegalArgumentException(
+                    String.format("Client with following email: %s already exists!", email)
+            );
+        }
+        if ((indexEntriesUsed + 1) * 2 > index.length) {
+            rehash(indexCapacityFor(size + 1));
+        }
+        final int slot = freeSlotCount > 0 ? freeSlots[--freeSlotCount] : slotsUsed;
+        final Page page = pageForNewSlot(slot);
+        final int offset = slot & PAGE_MASK;
+        page.names[offset] = client.getName();
+        page.emails[offset] = email;
+        page.balances[offset] = client.getBalanceMinor();
+        if (slot == slotsUsed) {
+            slotsUsed = slot + 1;
+        }
+        if (insert(index, email, slot)) {
+            indexEntriesUsed++;
+        }
+        size++;
+    }
+
+    @Override
+    public synchronized void saveAll(List<? extends Client> clients,
+                                     BiConsumer<? super Client, ? super IllegalArgumentException> rejected) {
+        reserve(clients.size());
+        ClientRepository.super.saveAll(clients, rejected);
+    }
+
+    @Override
+    public synchronized void reserve(int additionalAccounts) {
+        final int slotsNeeded = slotsUsed + Math.max(0, additionalAccounts - freeSlotCount);
+        final int pagesNeeded = (slotsNeeded + PAGE_MASK) >>> PAGE_BITS;
+        final Page[] current = pages;
+        if (pagesNeeded > current.length) {
+            final Page[] grown = new Page[pagesNeeded];
+            System.arraycopy(current, 0, grown, 0, current.length);
+            for (int i = current.length; i < grown.length; i++) {
+                grown[i] = new Page();
+            }
+            pages = grown;
+        }
+        final int indexCapacity = indexCapacityFor(size + additionalAccounts);
+        if (indexCapacity > index.length) {
+            rehash(indexCapacity);
+        }
+    }
+
+    @Override
+    public synchronized void delete(Client client) {
+        if (client.getEmail() == null) {
+            return;
+        }
+        final int[] table = index;
+        final int position = positionOf(table, client.getEmail());
+        if (position < 0) {
+            return;
+        }
+        final int slot = table[position] - 1;
+        if (!view(slot).equals(client)) {
+            return;
+        }
+        INDEX.setRelease(table, position, DELETED);
+        final Page page = pages[slot >>> PAGE_BITS];
+        final int offset = slot & PAGE_MASK;
+        GENERATIONS.setOpaque(page.generations, offset, page.generations[offset] + 1);
+        // stale views must see the new generation before they can see the slot's next account
+        VarHandle.storeStoreFence();
+        page.names[offset] = null;
+        page.emails[offset] = null;
+        page.balances[offset] = 0;
+        if (freeSlotCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeSlotCount * 2);
+        }
+        freeSlots[freeSlotCount++] = slot;
+        size--;
+    }
+
+    @Override
+    public Client findByEmail(String email) {
+        while (true) {
+            final int slot = email == null ? -1 : slotOf(email);
+            if (slot < 0) {
+                throw new NoSuchElementException(
+                        String.format("Client with following email: %s not found!", email)
+                );
+            }
+            final Client view = view(slot);
+            // the slot may have been freed and reused since the index pointed at it
+            if (email.equalsIgnoreCase(view.getEmail())) {
+                return view;
+            }
+        }
+    }
+
+    @Override
+    public void forEach(Consumer<? super Client> action) {
+        final int slots = slotCount();
+        for (int slot = 0; slot < slots; slot++) {
+            if (emailAt(slot) != null) {
+                action.accept(view(slot));
+            }
+        }
+    }
+
+    @Override
+    public Stream<Client> stream() {
+        return IntStream.range(0, slotCount())
+                .filter(slot -> emailAt(slot) != null)
+                .mapToObj(this::view);
+    }
+
+    /**
+     * Slots are reused after a delete, so a slot number only names an account while that account
+     * exists; callers of the slot accessors hold whatever lock keeps it from being deleted.
+     */
+    public int slotOf(String email) {
+        final int[] table = index;
+        final int position = positionOf(table, email);
+        return position < 0 ? -1 : table[position] - 1;
+    }
+
+    public long balanceAt(int slot) {
+        return pages[slot >>> PAGE_BITS].balances[slot & PAGE_MASK];
+    }
+
+    public void setBalanceAt(int slot, long balance) {
+        pages[slot >>> PAGE_BITS].balances[slot & PAGE_MASK] = balance;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int slotCount() {
+        return slotsUsed;
+    }
+
+    private Client view(int slot) {
+        return new SlotView(slot, pages[slot >>> PAGE_BITS].generation(slot & PAGE_MASK));
+    }
+
+    private Page pageForNewSlot(int slot) {
+        final int pageIndex = slot >>> PAGE_BITS;
+        Page[] current = pages;
+        if (pageIndex >= current.length) {
+            final Page[] grown = new Page[current.length * 2];
+            System.arraycopy(current, 0, grown, 0, current.length);
+            for (int i = current.length; i < grown.length; i++) {
+                grown[i] = new Page();
+            }
+            pages = grown;
+            current = grown;
+        }
+        return current[pageIndex];
+    }
+
+    private int positionOf(int[] table, String email) {
+        final int mask = table.length - 1;
+        int position = hash(email) & mask;
+        while (true) {
+            final int entry = (int) INDEX.getAcquire(table, position);
+            if (entry == EMPTY) {
+                return -1;
+            }
+            if (entry > 0 && email.equalsIgnoreCase(emailAt(entry - 1))) {
+                return position;
+            }
+            position = (position + 1) & mask;
+        }
+    }
+
+    private String emailAt(int slot) {
+        return pages[slot >>> PAGE_BITS].emails[slot & PAGE_MASK];
+    }
+
+    private boolean insert(int[] table, String email, int slot) {
+        final int mask = table.length - 1;
+        int position = hash(email) & mask;
+        while (table[position] > 0) {
+            position = (position + 1) & mask;
+        }
+        final boolean wasEmpty = table[position] == EMPTY;
+        INDEX.setRelease(table, position, slot + 1);
+        return wasEmpty;
+    }
+
+    private void rehash(int capacity) {
+        final int[] rehashed = new int[capacity];
+        int used = 0;
+        for (int entry : index) {
+            if (entry > 0) {
+                insert(rehashed, emailAt(entry - 1), entry - 1);
+                used++;
+            }
+        }
+        indexEntriesUsed = used;
+        index = rehashed;
+    }
+
+    private static int indexCapacityFor(int accounts) {
+        final int target = Math.max(16, accounts * 2);
+        return Integer.highestOneBit(target - 1) << 1;
+    }
+
+    static int hash(String email) {
+        int hash = 0;
+        for (int i = 0; i < email.length(); i++) {
+            hash = 31 * hash + Character.toLowerCase(Character.toUpperCase(email.charAt(i)));
+        }
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    private static final class Page {
+        private final String[] names = new String[PAGE_SIZE];
+        private final String[] emails = new String[PAGE_SIZE];
+        private final long[] balances = new long[PAGE_SIZE];
+        private final int[] generations = new int[PAGE_SIZE];
+
+        private int generation(int offset) {
+            VarHandle.loadLoadFence();
+            return (int) GENERATIONS.getOpaque(generations, offset);
+        }
+    }
+
+    private final class SlotView extends Client {
+        private final int slot;
+        private final int generation;
+
+        private SlotView(int slot, int generation) {
+            this.slot = slot;
+            this.generation = generation;
+        }
+
+        @Override
+        public String getName() {
+            final String name = pages[slot >>> PAGE_BITS].names[slot & PAGE_MASK];
+            return isCurrent() ? name : null;
+        }
+
+        @Override
+        public String getEmail() {
+            final String email = emailAt(slot);
+            return isCurrent() ? email : null;
+        }
+
+        @Override
+        public long getBalanceMinor() {
+            final long balance = balanceAt(slot);
+            return isCurrent() ? balance : 0;
+        }
+
+        @Override
+        public void setBalanceMinor(long balance) {
+            if (!isCurrent()) {
+                throw new IllegalStateException("Account was deleted: slot " + slot + " has been freed");
+            }
+            setBalanceAt(slot, balance);
+        }
+
+        @Override
+        public boolean isSameAccount(Client other) {
+            if (!(other instanceof SlotView)) {
+                return false;
+            }
+            final SlotView view = (SlotView) other;
+            return view.table() == AccountTable.this && view.slot == slot && view.generation == generation;
+        }
+
+        @Override
+        public int accountHash() {
+            return slot * 31 + generation;
+        }
+
+        private AccountTable table() {
+            return AccountTable.this;
+        }
+
+        private boolean isCurrent() {
+            return pages[slot >>> PAGE_BITS].generation(slot & PAGE_MASK) == generation;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package org.kaczucha.repository;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reclaims the arena bytes of deleted accounts in a {@link CompactAccountTable} on a background
+ * thread. Every interval it runs compaction steps until no chunk is worth compacting; each step
+ * holds the table's write lock for at most {@code recordsPerStep} records, so saves and deletes
+ * wait for one step at most while lookups and transfers never wait. A failed run is logged and
+ * counted, and compaction is still tried again in the next interval.
+ */
+public class ArenaCompactor implements Closeable {
+    private static final System.Logger LOGGER = System.getLogger(ArenaCompactor.class.getName());
+
+    private final CompactAccountTable table;
+    private final int recordsPerStep;
+    private final ScheduledExecutorService executor;
+    private final AtomicLong failures = new AtomicLong();
+
+    public ArenaCompactor(CompactAccountTable table, Duration interval, int recordsPerStep) {
+        if (recordsPerStep <= 0) {
+            throw new IllegalArgumentException("Records per step must be positive!");
+        }
+        this.table = table;
+        this.recordsPerStep = recordsPerStep;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "arena-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::compact, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return {@code false} when compaction failed; the failure has been logged
+     */
+    public boolean compact() {
+        try {
+            while (table.compact(recordsPerStep) && !executor.isShutdown()) {
+                Thread.yield();
+            }
+            return true;
+        } catch (RuntimeException e) {
+            failures.incrementAndGet();
+            LOGGER.log(System.Logger.Level.ERROR, "Compaction failed, it is retried in the next interval", e);
+            return false;
+        }
+    }
+
+    public long failures() {
+        return failures.get();
+    }
+
+    public String report() {
+        return String.format("bank_compaction_dead_bytes %d%n", table.deadArenaBytes())
+                + String.format("bank_compaction_reclaimed_bytes %d%n", table.reclaimedArenaBytes())
+                + String.format("bank_compaction_relocated_records %d%n", table.relocatedRecords())
+                + String.format("bank_compaction_retired_chunks %d%n", table.retiredChunks())
+                + String.format("bank_compaction_progress %.3f%n", table.compactionProgress())
+                + String.format("bank_compaction_failures %d%n", failures());
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
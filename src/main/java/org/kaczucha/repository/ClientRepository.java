@@ -2,10 +2,41 @@ package org.kaczucha.repository;
 
 import org.kaczucha.Client;
 
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
 public interface ClientRepository {
      void save(Client client);
 
      Client findByEmail(String email);
 
      void delete(Client client);
+
+     void forEach(Consumer<? super Client> action);
+
+     /**
+      * Streams every stored client. Implementations stream straight from their storage with a
+      * spliterator that splits well, so the stream can be made parallel.
+      */
+     default Stream<Client> stream() {
+          final Stream.Builder<Client> clients = Stream.builder();
+          forEach(clients);
+          return clients.build();
+     }
+
+     default void reserve(int additionalAccounts) {
+     }
+
+     default void saveAll(List<? extends Client> clients,
+                          BiConsumer<? super Client, ? super IllegalArgumentException> rejected) {
+          for (Client client : clients) {
+               try {
+                    save(client);
+               } catch (IllegalArgumentException e) {
+                    rejected.accept(client, e);
+               }
+          }
+     }
 }
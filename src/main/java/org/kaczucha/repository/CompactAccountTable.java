@@ -0,0 +1,743 @@
+package org.kaczucha.repository;
+
+import org.kaczucha.Client;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Account store without a {@code String} per account: names and emails are kept as UTF-8 bytes
+ * in a shared, chunked byte arena, balances in paged {@code long} arrays, and emails are found
+ * through an open-addressing index of slots and their hashes. Lookups compare the arena bytes
+ * with the requested email in place; a {@link Client} view is only created for accounts a caller
+ * asks for. Emails match case-insensitively for ASCII letters and byte for byte otherwise.
+ *
+ * <p>Deleting an account only marks its index entry as a tombstone; its bytes stay in the arena
+ * as dead bytes (see {@link #deadArenaBytes()}) until {@link #compact(int)} reclaims them. Each
+ * call examines a bounded number of records of a mostly dead chunk, copies the live ones to the
+ * end of the arena and frees the chunk once it is empty. Balances never move, so transfers are
+ * not affected; lookups never block and simply retry if a chunk was freed while they read it.
+ * Index tombstones are purged the same way, a bounded number of index entries per call, by
+ * filling a replacement index that takes over once all entries have been copied.
+ *
+ * <p>Slots freed by {@link #delete} are reused by later saves. Each slot carries a generation that a delete bumps, and a view only reads the slot
+ * while its generation is current: a view of a deleted account reads as deleted (null email, zero
+ * balance) and refuses writes, even once its slot holds another account. Every lookup hands out a
+ * new view, so nothing is kept per viewed account; two views are the same account, in the sense of
+ * {@link Client#isSameAccount(Client)}, when they share a slot and its generation.
+ */
+public class CompactAccountTable implements ClientRepository {
+    private static final int PAGE_BITS = 14;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    private static final int CHUNK_BITS = 20;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int MAX_CHUNKS = 1 << (31 - CHUNK_BITS);
+    private static final int MAX_FIELD_BYTES = 0xFFFE;
+    private static final int NULL_FIELD = 0xFFFF;
+    private static final int EMPTY = 0;
+    private static final int DELETED = -1;
+    private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(int[].class);
+    private static final VarHandle RECORDS = MethodHandles.arrayElementVarHandle(int[].class);
+    private static final VarHandle GENERATIONS = MethodHandles.arrayElementVarHandle(int[].class);
+
+    private volatile Page[] pages;
+    private volatile Index index;
+    private volatile byte[][] chunks = new byte[1][];
+    private volatile int size;
+    private volatile int slotsUsed;
+    private volatile int retiredChunks;
+    private int[] chunkFill = new int[1];
+    private int[] chunkDeadBytes = new int[1];
+    private final ArrayDeque<Integer> freeChunks = new ArrayDeque<>();
+    private int chunksUsed;
+    private int[] freeSlots = new int[16];
+    private int freeSlotCount;
+    private int currentChunk = -1;
+    private int chunkPosition = CHUNK_SIZE;
+    private long deadArenaBytes;
+    private long reclaimedArenaBytes;
+    private long relocatedRecords;
+    private int sourceChunk = -1;
+    private int sourcePosition;
+    private int indexEntriesUsed;
+    private Index purging;
+    private int purgingEntriesUsed;
+    private int purgePosition;
+    private int purgeSlotLimit;
+
+    public CompactAccountTable() {
+        this(PAGE_SIZE);
+    }
+
+    public CompactAccountTable(int expectedAccounts) {
+        final int pageCount = Math.max(1, (expectedAccounts + PAGE_MASK) >>> PAGE_BITS);
+        final Page[] initialPages = new Page[pageCount];
+        for (int i = 0; i < pageCount; i++) {
+            initialPages[i] = new Page();
+        }
+        this.pages = initialPages;
+        this.index = new Index(indexCapacityFor(expectedAccounts));
+    }
+
+    @Override
+    public synchronized void save(Client client) {
+        final String email = client.getEmail();
+        if (email == null) {
+            throw new IllegalArgumentException("Email cant be null");
+        }
+        final byte[] emailBytes = email.getBytes(StandardCharsets.UTF_8);
+        final String name = client.getName();
+        final byte[] nameBytes = name == null ? null : name.getBytes(StandardCharsets.UTF_8);
+        if (emailBytes.length > MAX_FIELD_BYTES || (nameBytes != null && nameBytes.length > MAX_FIELD_BYTES)) {
+            throw new IllegalArgumentException("Name and email must fit in 65534 UTF-8 bytes!");
+        }
+        final int hash = hash(emailBytes, 0, emailBytes.length);
+        if (positionOf(index, hash, email, emailBytes) >= 0) {
+            throw new IllegalArgumentException(
+                    String.format("Client with following email: %s already exists!", email)
+            );
+        }
+        if ((indexEntriesUsed + 1) * 2 > index.slots.length) {
+            rehash(indexCapacityFor(size + 1));
+        }
+        final boolean reuse = freeSlotCount > 0;
+        final int slot = reuse ? freeSlots[--freeSlotCount] : slotsUsed;
+        final Page page = reuse ? pages[slot >>> PAGE_BITS] : pageForNewSlot(slot);
+        final int offset = slot & PAGE_MASK;
+        page.balances[offset] = client.getBalanceMinor();
+        RECORDS.setRelease(page.records, offset, append(emailBytes, nameBytes));
+        if (!reuse) {
+            slotsUsed = slot + 1;
+        }
+        if (insert(index, hash, slot)) {
+            indexEntriesUsed++;
+        }
+        // the purge skips slots already in its index, so saves made during it go straight there
+        if (purging != null && insert(purging, hash, slot)) {
+            purgingEntriesUsed++;
+        }
+        size++;
+    }
+
+    @Override
+    public synchronized void saveAll(List<? extends Client> clients,
+                                     BiConsumer<? super Client, ? super IllegalArgumentException> rejected) {
+        reserve(clients.size());
+        ClientRepository.super.saveAll(clients, rejected);
+    }
+
+    @Override
+    public synchronized void reserve(int additionalAccounts) {
+        final int slotsNeeded = slotsUsed + Math.max(0, additionalAccounts - freeSlotCount);
+        final int pagesNeeded = (slotsNeeded + PAGE_MASK) >>> PAGE_BITS;
+        final Page[] current = pages;
+        if (pagesNeeded > current.length) {
+            final Page[] grown = new Page[pagesNeeded];
+            System.arraycopy(current, 0, grown, 0, current.length);
+            for (int i = current.length; i < grown.length; i++) {
+                grown[i] = new Page();
+            }
+            pages = grown;
+        }
+        final int indexCapacity = indexCapacityFor(size + additionalAccounts);
+        if (indexCapacity > index.slots.length) {
+            rehash(indexCapacity);
+        }
+    }
+
+    @Override
+    public synchronized void delete(Client client) {
+        final String email = client.getEmail();
+        if (email == null) {
+            return;
+        }
+        final Index current = index;
+        final byte[] encoded = isAscii(email) ? null : email.getBytes(StandardCharsets.UTF_8);
+        final int position = positionOf(current, hashOf(email, encoded), email, encoded);
+        if (position < 0) {
+            return;
+        }
+        final int slot = current.slots[position] - 1;
+        if (!view(slot).equals(client)) {
+            return;
+        }
+        SLOTS.setRelease(current.slots, position, DELETED);
+        if (purging != null) {
+            final int copied = positionOfSlot(purging, current.hashes[position], slot);
+            if (copied >= 0) {
+                purging.slots[copied] = DELETED;
+            }
+        }
+        final Page page = pages[slot >>> PAGE_BITS];
+        final int offset = slot & PAGE_MASK;
+        final int record = page.records[offset];
+        final int length = recordLength(chunks[(record - 1) >>> CHUNK_BITS], (record - 1) & CHUNK_MASK);
+        chunkDeadBytes[(record - 1) >>> CHUNK_BITS] += length;
+        deadArenaBytes += length;
+        GENERATIONS.setOpaque(page.generations, offset, page.generations[offset] + 1);
+        // stale views must see the new generation before they can see the slot's next account
+        VarHandle.storeStoreFence();
+        page.records[offset] = 0;
+        page.balances[offset] = 0;
+        if (freeSlotCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeSlotCount * 2);
+        }
+        freeSlots[freeSlotCount++] = slot;
+        size--;
+    }
+
+    @Override
+    public Client findByEmail(String email) {
+        while (true) {
+            final int slot = email == null ? -1 : slotOf(email);
+            if (slot < 0) {
+                throw new NoSuchElementException(
+                        String.format("Client with following email: %s not found!", email)
+                );
+            }
+            final CompactView view = view(slot);
+            // the slot may have been freed and reused between the lookup and the view
+            if (slotOf(email) == slot && view.isCurrent()) {
+                return view;
+            }
+        }
+    }
+
+    @Override
+    public void forEach(Consumer<? super Client> action) {
+        final int slots = slotCount();
+        for (int slot = 0; slot < slots; slot++) {
+            if (recordAt(slot) != 0) {
+                action.accept(view(slot));
+            }
+        }
+    }
+
+    @Override
+    public Stream<Client> stream() {
+        return IntStream.range(0, slotCount())
+                .filter(slot -> recordAt(slot) != 0)
+                .mapToObj(this::view);
+    }
+
+    public int slotOf(String email) {
+        final byte[] encoded = isAscii(email) ? null : email.getBytes(StandardCharsets.UTF_8);
+        final int hash = hashOf(email, encoded);
+        while (true) {
+            final int stamp = retiredChunks;
+            final Index current = index;
+            final int position = positionOf(current, hash, email, encoded);
+            final int slot = position < 0 ? -1 : current.slots[position] - 1;
+            VarHandle.acquireFence();
+            if (retiredChunks == stamp) {
+                return slot;
+            }
+        }
+    }
+
+    public long balanceAt(int slot) {
+        return pages[slot >>> PAGE_BITS].balances[slot & PAGE_MASK];
+    }
+
+    public void setBalanceAt(int slot, long balance) {
+        pages[slot >>> PAGE_BITS].balances[slot & PAGE_MASK] = balance;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int slotCount() {
+        return slotsUsed;
+    }
+
+    /**
+     * Bytes held by the table's own arrays: slot pages, the email index and the arena chunks,
+     * including capacity reserved for growth. The table keeps no views, so this is all it retains.
+     */
+    public synchronized long footprintBytes() {
+        long bytes = (long) freeSlots.length * Integer.BYTES;
+        for (Page page : pages) {
+            bytes += (long) PAGE_SIZE * (Long.BYTES + 2 * Integer.BYTES);
+        }
+        bytes += (long) index.slots.length * 2 * Integer.BYTES;
+        if (purging != null) {
+            bytes += (long) purging.slots.length * 2 * Integer.BYTES;
+        }
+        bytes += (long) (chunksUsed - freeChunks.size()) * CHUNK_SIZE;
+        return bytes;
+    }
+
+    public synchronized long deadArenaBytes() {
+        return deadArenaBytes;
+    }
+
+    public synchronized long reclaimedArenaBytes() {
+        return reclaimedArenaBytes;
+    }
+
+    public synchronized long relocatedRecords() {
+        return relocatedRecords;
+    }
+
+    public int retiredChunks() {
+        return retiredChunks;
+    }
+
+    /**
+     * Share of the chunk being compacted that has been examined so far, or 1 when no chunk is
+     * being compacted.
+     */
+    public synchronized double compactionProgress() {
+        return sourceChunk < 0 ? 1 : (double) sourcePosition / Math.max(1, chunkFill[sourceChunk]);
+    }
+
+    /**
+     * Runs one bounded step of compaction: examines at most {@code maxRecords} arena records,
+     * copying live ones out of the chunk being compacted and freeing the chunk once all of it has
+     * been examined. A chunk is compacted once at least half of its bytes are dead. Index entries
+     * of deleted accounts are purged once they fill a quarter of the index, by copying at most
+     * {@code maxRecords} index entries per step into a replacement index.
+     *
+     * @return whether there is compaction work left
+     */
+    public synchronized boolean compact(int maxRecords) {
+        if (maxRecords <= 0) {
+            throw new IllegalArgumentException("Records per step must be positive!");
+        }
+        if (purging == null && (indexEntriesUsed - size) * 4 > index.slots.length) {
+            purging = new Index(index.slots.length);
+            purgingEntriesUsed = 0;
+            purgePosition = 0;
+            purgeSlotLimit = slotsUsed;
+        }
+        if (purging != null) {
+            purgeStep(maxRecords);
+        }
+        for (int examined = 0; examined < maxRecords; examined++) {
+            if (sourceChunk < 0) {
+                sourceChunk = nextChunkToCompact();
+                sourcePosition = 0;
+                if (sourceChunk < 0) {
+                    return purging != null;
+                }
+            }
+            if (sourcePosition >= chunkFill[sourceChunk]) {
+                retire(sourceChunk);
+                sourceChunk = -1;
+                continue;
+            }
+            final byte[] source = chunks[sourceChunk];
+            final int length = recordLength(source, sourcePosition);
+            final int slot = liveSlotOf(source, sourcePosition, (sourceChunk << CHUNK_BITS | sourcePosition) + 1);
+            if (slot >= 0) {
+                final int moved = appendRecord(source, sourcePosition, length);
+                RECORDS.setRelease(pages[slot >>> PAGE_BITS].records, slot & PAGE_MASK, moved);
+                relocatedRecords++;
+            }
+            sourcePosition += length;
+        }
+        return purging != null || sourceChunk >= 0 || nextChunkToCompact() >= 0;
+    }
+
+    private void purgeStep(int maxEntries) {
+        final Index current = index;
+        final int end = Math.min(current.slots.length, purgePosition + maxEntries);
+        for (int position = purgePosition; position < end; position++) {
+            final int entry = current.slots[position];
+            if (entry > 0 && entry - 1 < purgeSlotLimit
+                    && positionOfSlot(purging, current.hashes[position], entry - 1) < 0
+                    && insert(purging, current.hashes[position], entry - 1)) {
+                purgingEntriesUsed++;
+            }
+        }
+        purgePosition = end;
+        if (end == current.slots.length) {
+            indexEntriesUsed = purgingEntriesUsed;
+            index = purging;
+            purging = null;
+        }
+    }
+
+    private CompactView view(int slot) {
+        return new CompactView(slot, pages[slot >>> PAGE_BITS].generation(slot & PAGE_MASK));
+    }
+
+    private Page pageForNewSlot(int slot) {
+        final int pageIndex = slot >>> PAGE_BITS;
+        Page[] current = pages;
+        if (pageIndex >= current.length) {
+            final Page[] grown = new Page[current.length * 2];
+            System.arraycopy(current, 0, grown, 0, current.length);
+            for (int i = current.length; i < grown.length; i++) {
+                grown[i] = new Page();
+            }
+            pages = grown;
+            current = grown;
+        }
+        return current[pageIndex];
+    }
+
+    private int append(byte[] emailBytes, byte[] nameBytes) {
+        final int length = 2 * Short.BYTES + emailBytes.length + (nameBytes == null ? 0 : nameBytes.length);
+        final byte[] chunk = chunkWithRoom(length);
+        final int start = chunkPosition;
+        int position = putField(chunk, start, emailBytes);
+        position = putField(chunk, position, nameBytes);
+        return appended(start, position);
+    }
+
+    private int appendRecord(byte[] source, int sourceStart, int length) {
+        final byte[] chunk = chunkWithRoom(length);
+        final int start = chunkPosition;
+        System.arraycopy(source, sourceStart, chunk, start, length);
+        return appended(start, start + length);
+    }
+
+    private int appended(int start, int end) {
+        chunkPosition = end;
+        chunkFill[currentChunk] = end;
+        return (currentChunk << CHUNK_BITS | start) + 1;
+    }
+
+    private byte[] chunkWithRoom(int length) {
+        if (chunkPosition + length > CHUNK_SIZE) {
+            final int next;
+            if (!freeChunks.isEmpty()) {
+                next = freeChunks.pop();
+            } else {
+                if (chunksUsed == MAX_CHUNKS) {
+                    throw new IllegalStateException("Account arena is full");
+                }
+                next = chunksUsed++;
+            }
+            byte[][] current = chunks;
+            if (next == current.length) {
+                final int capacity = Math.min(MAX_CHUNKS, current.length * 2);
+                final byte[][] grown = new byte[capacity][];
+                System.arraycopy(current, 0, grown, 0, current.length);
+                current = grown;
+                chunkFill = Arrays.copyOf(chunkFill, capacity);
+                chunkDeadBytes = Arrays.copyOf(chunkDeadBytes, capacity);
+            }
+            current[next] = new byte[CHUNK_SIZE];
+            chunks = current;
+            currentChunk = next;
+            chunkPosition = 0;
+        }
+        return chunks[currentChunk];
+    }
+
+    private int nextChunkToCompact() {
+        int best = -1;
+        for (int chunk = 0; chunk < chunksUsed; chunk++) {
+            if (chunk != currentChunk && chunks[chunk] != null && chunkDeadBytes[chunk] * 2 >= chunkFill[chunk]
+                    && (best < 0 || chunkDeadBytes[chunk] > chunkDeadBytes[best])) {
+                best = chunk;
+            }
+        }
+        return best;
+    }
+
+    private void retire(int chunk) {
+        final int dead = chunkDeadBytes[chunk];
+        deadArenaBytes -= dead;
+        reclaimedArenaBytes += dead;
+        retiredChunks++;
+        chunks[chunk] = null;
+        chunkFill[chunk] = 0;
+        chunkDeadBytes[chunk] = 0;
+        freeChunks.push(chunk);
+    }
+
+    private int liveSlotOf(byte[] chunk, int start, int record) {
+        final Index current = index;
+        final int hash = hash(chunk, start + 2, fieldLength(chunk, start));
+        final int mask = current.slots.length - 1;
+        int position = hash & mask;
+        while (true) {
+            final int entry = current.slots[position];
+            if (entry == EMPTY) {
+                return -1;
+            }
+            if (entry > 0 && current.hashes[position] == hash && recordAt(entry - 1) == record) {
+                return entry - 1;
+            }
+            position = (position + 1) & mask;
+        }
+    }
+
+    private static int putField(byte[] chunk, int position, byte[] bytes) {
+        final int length = bytes == null ? NULL_FIELD : bytes.length;
+        chunk[position] = (byte) (length >>> 8);
+        chunk[position + 1] = (byte) length;
+        if (bytes != null) {
+            System.arraycopy(bytes, 0, chunk, position + 2, bytes.length);
+            return position + 2 + bytes.length;
+        }
+        return position + 2;
+    }
+
+    private int recordAt(int slot) {
+        return (int) RECORDS.getAcquire(pages[slot >>> PAGE_BITS].records, slot & PAGE_MASK);
+    }
+
+    private static int recordLength(byte[] chunk, int start) {
+        final int emailLength = fieldLength(chunk, start);
+        final int nameLength = fieldLength(chunk, start + 2 + emailLength);
+        return 2 * Short.BYTES + emailLength + (nameLength == NULL_FIELD ? 0 : nameLength);
+    }
+
+    /**
+     * Reads a field without locking. The record can be moved by compaction and its old chunk
+     * freed and reused meanwhile, so the read is retried until no chunk was retired during it.
+     */
+    private String field(int slot, boolean name) {
+        while (true) {
+            final int stamp = retiredChunks;
+            final int record = recordAt(slot);
+            if (record == 0) {
+                return null;
+            }
+            final byte[] chunk = chunks[(record - 1) >>> CHUNK_BITS];
+            final String value = chunk == null ? null : fieldAt(chunk, (record - 1) & CHUNK_MASK, name);
+            VarHandle.acquireFence();
+            if (chunk != null && retiredChunks == stamp) {
+                return value;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    private static String fieldAt(byte[] chunk, int position, boolean name) {
+        if (name) {
+            position += 2 + fieldLength(chunk, position);
+            if (position + 2 > CHUNK_SIZE) {
+                return null;
+            }
+        }
+        final int length = fieldLength(chunk, position);
+        if (length == NULL_FIELD || position + 2 + length > CHUNK_SIZE) {
+            return null;
+        }
+        return new String(chunk, position + 2, length, StandardCharsets.UTF_8);
+    }
+
+    private int positionOf(Index current, int hash, String email, byte[] encoded) {
+        final int mask = current.slots.length - 1;
+        int position = hash & mask;
+        while (true) {
+            final int entry = (int) SLOTS.getAcquire(current.slots, position);
+            if (entry == EMPTY) {
+                return -1;
+            }
+            if (entry > 0 && current.hashes[position] == hash && emailMatches(entry - 1, email, encoded)) {
+                return position;
+            }
+            position = (position + 1) & mask;
+        }
+    }
+
+    private boolean emailMatches(int slot, String email, byte[] encoded) {
+        final int record = recordAt(slot);
+        if (record == 0) {
+            return false;
+        }
+        final byte[] chunk = chunks[(record - 1) >>> CHUNK_BITS];
+        if (chunk == null) {
+            return false;
+        }
+        final int start = ((record - 1) & CHUNK_MASK) + 2;
+        final int length = fieldLength(chunk, start - 2);
+        if (length != (encoded == null ? email.length() : encoded.length) || start + length > CHUNK_SIZE) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            final int expected = encoded == null ? email.charAt(i) : encoded[i] & 0xFF;
+            if (lowerAscii(chunk[start + i] & 0xFF) != lowerAscii(expected)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int positionOfSlot(Index current, int hash, int slot) {
+        final int mask = current.slots.length - 1;
+        int position = hash & mask;
+        while (true) {
+            final int entry = current.slots[position];
+            if (entry == EMPTY) {
+                return -1;
+            }
+            if (entry == slot + 1) {
+                return position;
+            }
+            position = (position + 1) & mask;
+        }
+    }
+
+    private static boolean insert(Index current, int hash, int slot) {
+        final int mask = current.slots.length - 1;
+        int position = hash & mask;
+        while (current.slots[position] > 0) {
+            position = (position + 1) & mask;
+        }
+        final boolean wasEmpty = current.slots[position] == EMPTY;
+        current.hashes[position] = hash;
+        SLOTS.setRelease(current.slots, position, slot + 1);
+        return wasEmpty;
+    }
+
+    private void rehash(int capacity) {
+        // a full rehash purges every tombstone, so a purge in progress is dropped
+        purging = null;
+        final Index current = index;
+        final Index rehashed = new Index(capacity);
+        int used = 0;
+        for (int position = 0; position < current.slots.length; position++) {
+            final int entry = current.slots[position];
+            if (entry > 0) {
+                insert(rehashed, current.hashes[position], entry - 1);
+                used++;
+            }
+        }
+        indexEntriesUsed = used;
+        index = rehashed;
+    }
+
+    private static int indexCapacityFor(int accounts) {
+        final int target = Math.max(16, accounts * 2);
+        return Integer.highestOneBit(target - 1) << 1;
+    }
+
+    private static int fieldLength(byte[] chunk, int position) {
+        return (chunk[position] & 0xFF) << 8 | chunk[position + 1] & 0xFF;
+    }
+
+    private static boolean isAscii(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hashOf(String email, byte[] encoded) {
+        if (encoded != null) {
+            return hash(encoded, 0, encoded.length);
+        }
+        int hash = 0;
+        for (int i = 0; i < email.length(); i++) {
+            hash = 31 * hash + lowerAscii(email.charAt(i));
+        }
+        return mix(hash);
+    }
+
+    private static int hash(byte[] bytes, int offset, int length) {
+        int hash = 0;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + lowerAscii(bytes[i] & 0xFF);
+        }
+        return mix(hash);
+    }
+
+    private static int mix(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    private static int lowerAscii(int value) {
+        return value >= 'A' && value <= 'Z' ? value + ('a' - 'A') : value;
+    }
+
+    private static final class Page {
+        private final int[] records = new int[PAGE_SIZE];
+        private final long[] balances = new long[PAGE_SIZE];
+        private final int[] generations = new int[PAGE_SIZE];
+
+        private int generation(int offset) {
+            VarHandle.loadLoadFence();
+            return (int) GENERATIONS.getOpaque(generations, offset);
+        }
+    }
+
+    private static final class Index {
+        private final int[] slots;
+        private final int[] hashes;
+
+        private Index(int capacity) {
+            this.slots = new int[capacity];
+            this.hashes = new int[capacity];
+        }
+    }
+
+    private final class CompactView extends Client {
+        private final int slot;
+        private final int generation;
+
+        private CompactView(int slot, int generation) {
+            this.slot = slot;
+            this.generation = generation;
+        }
+
+        @Override
+        public String getName() {
+            final String name = field(slot, true);
+            return isCurrent() ? name : null;
+        }
+
+        @Override
+        public String getEmail() {
+            final String email = field(slot, false);
+            return isCurrent() ? email : null;
+        }
+
+        @Override
+        public long getBalanceMinor() {
+            final long balance = balanceAt(slot);
+            return isCurrent() ? balance : 0;
+        }
+
+        @Override
+        public void setBalanceMinor(long balance) {
+            if (!isCurrent()) {
+                throw new IllegalStateException("Account was deleted: slot " + slot + " has been freed");
+            }
+            setBalanceAt(slot, balance);
+        }
+
+        @Override
+        public boolean isSameAccount(Client other) {
+            if (!(other instanceof CompactView)) {
+                return false;
+            }
+            final CompactView view = (CompactView) other;
+            return view.table() == CompactAccountTable.this && view.slot == slot && view.generation == generation;
+        }
+
+        @Override
+        public int accountHash() {
+            return slot * 31 + generation;
+        }
+
+        private boolean isCurrent() {
+            return pages[slot >>> PAGE_BITS].generation(slot & PAGE_MASK) == generation;
+        }
+
+        private CompactAccountTable table() {
+            return CompactAccountTable.this;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package org.kaczucha.repository;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Fixed set of JDBC connections opened up front, each with its own cache of prepared statements.
+ * Connections run with auto-commit off; whoever borrows one commits or rolls back before
+ * releasing it.
+ */
+final class ConnectionPool implements Closeable {
+    private final BlockingQueue<PooledConnection> idle;
+    private final List<PooledConnection> connections = new ArrayList<>();
+
+    ConnectionPool(String url, int size) throws SQLException {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Pool size must be positive!");
+        }
+        this.idle = new ArrayBlockingQueue<>(size);
+        try {
+            for (int i = 0; i < size; i++) {
+                final Connection connection = DriverManager.getConnection(url);
+                connection.setAutoCommit(false);
+                connections.add(new PooledConnection(connection));
+            }
+        } catch (SQLException e) {
+            close();
+            throw e;
+        }
+        idle.addAll(connections);
+    }
+
+    PooledConnection borrow() {
+        try {
+            return idle.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a connection", e);
+        }
+    }
+
+    void release(PooledConnection connection) {
+        idle.add(connection);
+    }
+
+    int size() {
+        return connections.size();
+    }
+
+    @Override
+    public void close() {
+        for (PooledConnection pooled : connections) {
+            try {
+                pooled.connection.close();
+            } catch (SQLException ignored) {
+                // closing the remaining connections matters more
+            }
+        }
+    }
+
+    static final class PooledConnection {
+        private final Connection connection;
+        private final Map<String, PreparedStatement> statements = new HashMap<>();
+
+        private PooledConnection(Connection connection) {
+            this.connection = connection;
+        }
+
+        Connection connection() {
+            return connection;
+        }
+
+        PreparedStatement prepare(String sql) throws SQLException {
+            PreparedStatement statement = statements.get(sql);
+            if (statement == null) {
+                statement = connection.prepareStatement(sql);
+                statements.put(sql, statement);
+            }
+            return statement;
+        }
+    }
+}
@@ -2,9 +2,12 @@ package org.kaczucha.repository;
 
 import org.kaczucha.Client;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 public class InMemoryClientRepository implements ClientRepository {
     private List<Client> clients;
@@ -18,6 +21,13 @@ public class InMemoryClientRepository implements ClientRepository {
 
     }
 
+    @Override
+    public void reserve(int additionalAccounts) {
+        if (clients instanceof ArrayList) {
+            ((ArrayList<Client>) clients).ensureCapacity(clients.size() + additionalAccounts);
+        }
+    }
+
     public void delete(Client client) {
         clients.remove(client);
     }
@@ -31,4 +41,13 @@ public class InMemoryClientRepository implements ClientRepository {
                         String.format("Client with following email: %s not found!", email)
                 ));
     }
+
+    public void forEach(Consumer<? super Client> action) {
+        clients.forEach(action);
+    }
+
+    @Override
+    public Stream<Client> stream() {
+        return clients.stream();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,72 @@
+package org.kaczucha.repository;
+
+import org.kaczucha.Client;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+public class IndexedClientRepository implements ClientRepository {
+    private final Map<String, Client> clientsByEmail;
+
+    public IndexedClientRepository() {
+        this(16);
+    }
+
+    public IndexedClientRepository(int expectedSize) {
+        this.clientsByEmail = new ConcurrentHashMap<>(expectedSize);
+    }
+
+    @Override
+    public void save(Client client) {
+        if (client.getEmail() == null) {
+            throw new IllegalArgumentException("Email cant be null");
+        }
+        final String key = normalize(client.getEmail());
+        if (clientsByEmail.putIfAbsent(key, client) != null) {
+            throw new IllegalArgumentException(
+                    String.format("Client with following email: %s already exists!", client.getEmail())
+            );
+        }
+    }
+
+    @Override
+    public void delete(Client client) {
+        if (client.getEmail() == null) {
+            return;
+        }
+        clientsByEmail.remove(normalize(client.getEmail()), client);
+    }
+
+    @Override
+    public Client findByEmail(String email) {
+        final Client client = email == null ? null : clientsByEmail.get(normalize(email));
+        if (client == null) {
+            throw new NoSuchElementException(
+                    String.format("Client with following email: %s not found!", email)
+            );
+        }
+        return client;
+    }
+
+    @Override
+    public void forEach(Consumer<? super Client> action) {
+        clientsByEmail.values().forEach(action);
+    }
+
+    @Override
+    public Stream<Client> stream() {
+        return clientsByEmail.values().stream();
+    }
+
+    public int size() {
+        return clientsByEmail.size();
+    }
+
+    static String normalize(String email) {
+        return email.toLowerCase(Locale.ROOT);
+    }
+}
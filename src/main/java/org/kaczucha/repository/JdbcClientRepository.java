@@ -0,0 +1,461 @@
+package org.kaczucha.repository;
+
+import org.kaczucha.Client;
+
+import java.io.Closeable;
+import java.sql.BatchUpdateException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.Duration;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the account book in an embedded SQL database running in-process, such as H2 with a
+ * {@code jdbc:h2:/path/to/bank} URL, so the book survives restarts without a database server.
+ * Connections come from a fixed pool, by default one per core. {@link #saveAll} inserts in
+ * batched statements, and {@link #transfer} and {@link #withdraw} debit the payer with
+ * {@code UPDATE ... WHERE balance >= ?}, so funds are checked by the same statement that takes
+ * them. Both transactions lock rows in email order, so they cannot deadlock each other.
+ *
+ * <p>Clients returned by {@link #findByEmail(String)} read and write their balance in the
+ * database on every call; {@link #forEach} and {@link #stream()} hand out snapshots. With
+ * write-behind enabled, balance writes through those clients are kept in memory, coalesced per
+ * account, and flushed in one batch per interval; reads see the buffered balance, and every other
+ * operation flushes the buffer first.
+ */
+public class JdbcClientRepository implements LedgerRepository, Closeable {
+    private static final int BATCH_SIZE = 1000;
+    private static final String DUPLICATE_KEY = "23505";
+    private static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS accounts ("
+            + "email_key VARCHAR(320) PRIMARY KEY, email VARCHAR(320) NOT NULL, name VARCHAR(320), "
+            + "balance BIGINT NOT NULL)";
+    private static final String INSERT = "INSERT INTO accounts (email_key, email, name, balance) VALUES (?, ?, ?, ?)";
+    private static final String SELECT = "SELECT email, name FROM accounts WHERE email_key = ?";
+    private static final String SELECT_BALANCE = "SELECT balance FROM accounts WHERE email_key = ?";
+    private static final String SELECT_ALL = "SELECT email, name, balance FROM accounts";
+    private static final String SET_BALANCE = "UPDATE accounts SET balance = ? WHERE email_key = ?";
+    private static final String DEBIT = "UPDATE accounts SET balance = balance - ? WHERE email_key = ? AND balance >= ?";
+    private static final String CREDIT = "UPDATE accounts SET balance = balance + ? WHERE email_key = ?";
+    private static final String DELETE = "DELETE FROM accounts WHERE email_key = ? AND email = ? "
+            + "AND name IS NOT DISTINCT FROM ? AND balance = ?";
+
+    private final ConnectionPool pool;
+    private final Map<String, Long> pendingBalances;
+    private final ScheduledExecutorService flusher;
+    private final Object flushLock = new Object();
+
+    private JdbcClientRepository(ConnectionPool pool, Duration writeBehind) {
+        this.pool = pool;
+        if (writeBehind.isZero()) {
+            this.pendingBalances = null;
+            this.flusher = null;
+        } else {
+            this.pendingBalances = new ConcurrentHashMap<>();
+            this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, "jdbc-write-behind");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(this::flush, writeBehind.toMillis(), writeBehind.toMillis(),
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public static JdbcClientRepository open(String url) {
+        return open(url, Runtime.getRuntime().availableProcessors(), Duration.ZERO);
+    }
+
+    /**
+     * @param writeBehind how often buffered balance writes are flushed, or {@link Duration#ZERO}
+     *                    to write every balance through immediately
+     */
+    public static JdbcClientRepository open(String url, int poolSize, Duration writeBehind) {
+        if (writeBehind.isNegative()) {
+            throw new IllegalArgumentException("Write-behind interval cant be negative!");
+        }
+        final ConnectionPool pool;
+        try {
+            pool = new ConnectionPool(url, poolSize);
+        } catch (SQLException e) {
+            throw failure(e);
+        }
+        final JdbcClientRepository repository = new JdbcClientRepository(pool, writeBehind);
+        try {
+            repository.inTransaction(connection -> {
+                try (Statement statement = connection.connection().createStatement()) {
+                    statement.execute(CREATE_TABLE);
+                }
+                return null;
+            });
+        } catch (RuntimeException e) {
+            repository.close();
+            throw e;
+        }
+        return repository;
+    }
+
+    @Override
+    public void save(Client client) {
+        if (client.getEmail() == null) {
+            throw new IllegalArgumentException("Email cant be null");
+        }
+        flush();
+        inTransaction(connection -> {
+            insert(connection, client);
+            return null;
+        });
+    }
+
+    @Override
+    public void saveAll(List<? extends Client> clients,
+                        BiConsumer<? super Client, ? super IllegalArgumentException> rejected) {
+        flush();
+        for (int start = 0; start < clients.size(); start += BATCH_SIZE) {
+            final List<? extends Client> batch = clients.subList(start, Math.min(clients.size(), start + BATCH_SIZE));
+            if (!insertBatch(batch)) {
+                LedgerRepository.super.saveAll(batch, rejected);
+            }
+        }
+    }
+
+    @Override
+    public Client findByEmail(String email) {
+        if (email == null) {
+            throw notFound(null);
+        }
+        final String key = IndexedClientRepository.normalize(email);
+        return inTransaction(connection -> {
+            final PreparedStatement select = connection.prepare(SELECT);
+            select.setString(1, key);
+            try (ResultSet row = select.executeQuery()) {
+                if (!row.next()) {
+                    throw notFound(email);
+                }
+                return new AccountRow(key, row.getString(1), row.getString(2));
+            }
+        });
+    }
+
+    @Override
+    public void delete(Client client) {
+        if (client.getEmail() == null) {
+            return;
+        }
+        flush();
+        final String email = client.getEmail();
+        final String name = client.getName();
+        final long balance = client.getBalanceMinor();
+        inTransaction(connection -> {
+            final PreparedStatement delete = connection.prepare(DELETE);
+            delete.setString(1, IndexedClientRepository.normalize(email));
+            delete.setString(2, email);
+            delete.setString(3, name);
+            delete.setLong(4, balance);
+            return delete.executeUpdate();
+        });
+    }
+
+    @Override
+    public boolean transfer(String fromEmail, String toEmail, long amountMinor) {
+        final String fromKey = IndexedClientRepository.normalize(fromEmail);
+        final String toKey = IndexedClientRepository.normalize(toEmail);
+        flush();
+        return inTransaction(connection -> {
+            final boolean applied;
+            if (toKey.compareTo(fromKey) < 0) {
+                applied = update(connection, CREDIT, amountMinor, toKey) && debit(connection, fromKey, amountMinor);
+            } else {
+                applied = debit(connection, fromKey, amountMinor) && update(connection, CREDIT, amountMinor, toKey);
+            }
+            if (!applied) {
+                connection.connection().rollback();
+                requireExists(connection, fromEmail, fromKey);
+                requireExists(connection, toEmail, toKey);
+            }
+            return applied;
+        });
+    }
+
+    @Override
+    public boolean withdraw(String email, long amountMinor) {
+        final String key = IndexedClientRepository.normalize(email);
+        flush();
+        return inTransaction(connection -> {
+            final boolean applied = debit(connection, key, amountMinor);
+            if (!applied) {
+                requireExists(connection, email, key);
+            }
+            return applied;
+        });
+    }
+
+    @Override
+    public void forEach(Consumer<? super Client> action) {
+        snapshot().forEach(action);
+    }
+
+    @Override
+    public Stream<Client> stream() {
+        return snapshot().stream();
+    }
+
+    public int size() {
+        return (int) stream().count();
+    }
+
+    public int poolSize() {
+        return pool.size();
+    }
+
+    /**
+     * Writes buffered balances to the database. Does nothing without write-behind.
+     */
+    public void flush() {
+        if (pendingBalances == null || pendingBalances.isEmpty()) {
+            return;
+        }
+        synchronized (flushLock) {
+            final List<Map.Entry<String, Long>> pending = new ArrayList<>(pendingBalances.size());
+            for (Map.Entry<String, Long> entry : pendingBalances.entrySet()) {
+                pending.add(new AbstractMap.SimpleImmutableEntry<>(entry));
+            }
+            inTransaction(connection -> {
+                final PreparedStatement update = connection.prepare(SET_BALANCE);
+                for (Map.Entry<String, Long> entry : pending) {
+                    update.setLong(1, entry.getValue());
+                    update.setString(2, entry.getKey());
+                    update.addBatch();
+                }
+                return update.executeBatch();
+            });
+            for (Map.Entry<String, Long> entry : pending) {
+                pendingBalances.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (flusher != null) {
+            flusher.shutdown();
+            try {
+                flusher.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush();
+        pool.close();
+    }
+
+    private List<Client> snapshot() {
+        flush();
+        return inTransaction(connection -> {
+            final List<Client> clients = new ArrayList<>();
+            try (ResultSet rows = connection.prepare(SELECT_ALL).executeQuery()) {
+                while (rows.next()) {
+                    clients.add(Client.ofMinorUnits(rows.getString(2), rows.getString(1), rows.getLong(3)));
+                }
+            }
+            return clients;
+        });
+    }
+
+    private boolean insertBatch(List<? extends Client> batch) {
+        final ConnectionPool.PooledConnection connection = pool.borrow();
+        try {
+            final PreparedStatement insert = connection.prepare(INSERT);
+            for (Client client : batch) {
+                if (client.getEmail() == null) {
+                    insert.clearBatch();
+                    return false;
+                }
+                bind(insert, client);
+                insert.addBatch();
+            }
+            insert.executeBatch();
+            connection.connection().commit();
+            return true;
+        } catch (BatchUpdateException e) {
+            rollback(connection);
+            try {
+                connection.prepare(INSERT).clearBatch();
+            } catch (SQLException ignored) {
+                // the batch is retried row by row on a clean statement either way
+            }
+            return false;
+        } catch (SQLException e) {
+            rollback(connection);
+            throw failure(e);
+        } finally {
+            pool.release(connection);
+        }
+    }
+
+    private static void insert(ConnectionPool.PooledConnection connection, Client client) throws SQLException {
+        final PreparedStatement insert = connection.prepare(INSERT);
+        bind(insert, client);
+        try {
+            insert.executeUpdate();
+        } catch (SQLException e) {
+            if (DUPLICATE_KEY.equals(e.getSQLState())) {
+                throw new IllegalArgumentException(
+                        String.format("Client with following email: %s already exists!", client.getEmail())
+                );
+            }
+            throw e;
+        }
+    }
+
+    private static void bind(PreparedStatement insert, Client client) throws SQLException {
+        insert.setString(1, IndexedClientRepository.normalize(client.getEmail()));
+        insert.setString(2, client.getEmail());
+        if (client.getName() == null) {
+            insert.setNull(3, Types.VARCHAR);
+        } else {
+            insert.setString(3, client.getName());
+        }
+        insert.setLong(4, client.getBalanceMinor());
+    }
+
+    private static boolean debit(ConnectionPool.PooledConnection connection, String key, long amountMinor)
+            throws SQLException {
+        final PreparedStatement debit = connection.prepare(DEBIT);
+        debit.setLong(1, amountMinor);
+        debit.setString(2, key);
+        debit.setLong(3, amountMinor);
+        return debit.executeUpdate() == 1;
+    }
+
+    private static boolean update(ConnectionPool.PooledConnection connection, String sql, long value, String key)
+            throws SQLException {
+        final PreparedStatement update = connection.prepare(sql);
+        update.setLong(1, value);
+        update.setString(2, key);
+        return update.executeUpdate() == 1;
+    }
+
+    private static void requireExists(ConnectionPool.PooledConnection connection, String email, String key)
+            throws SQLException {
+        if (readBalance(connection, key) == null) {
+            throw notFound(email);
+        }
+    }
+
+    private static Long readBalance(ConnectionPool.PooledConnection connection, String key) throws SQLException {
+        final PreparedStatement select = connection.prepare(SELECT_BALANCE);
+        select.setString(1, key);
+        try (ResultSet row = select.executeQuery()) {
+            return row.next() ? row.getLong(1) : null;
+        }
+    }
+
+    private long storedBalance(String key, String email) {
+        if (pendingBalances != null) {
+            final Long pending = pendingBalances.get(key);
+            if (pending != null) {
+                return pending;
+            }
+        }
+        final Long balance = inTransaction(connection -> readBalance(connection, key));
+        if (balance == null) {
+            throw notFound(email);
+        }
+        return balance;
+    }
+
+    private void storeBalance(String key, String email, long balance) {
+        if (pendingBalances != null) {
+            pendingBalances.put(key, balance);
+            return;
+        }
+        final boolean updated = inTransaction(connection -> update(connection, SET_BALANCE, balance, key));
+        if (!updated) {
+            throw notFound(email);
+        }
+    }
+
+    private <T> T inTransaction(SqlWork<T> work) {
+        final ConnectionPool.PooledConnection connection = pool.borrow();
+        try {
+            final T result = work.run(connection);
+            connection.connection().commit();
+            return result;
+        } catch (SQLException e) {
+            rollback(connection);
+            throw failure(e);
+        } catch (RuntimeException e) {
+            rollback(connection);
+            throw e;
+        } finally {
+            pool.release(connection);
+        }
+    }
+
+    private static void rollback(ConnectionPool.PooledConnection connection) {
+        try {
+            connection.connection().rollback();
+        } catch (SQLException ignored) {
+            // the original failure is the one worth reporting
+        }
+    }
+
+    private static NoSuchElementException notFound(String email) {
+        return new NoSuchElementException(String.format("Client with following email: %s not found!", email));
+    }
+
+    private static IllegalStateException failure(SQLException e) {
+        return new IllegalStateException(String.format("Database operation failed: %s", e.getMessage()), e);
+    }
+
+    @FunctionalInterface
+    private interface SqlWork<T> {
+        T run(ConnectionPool.PooledConnection connection) throws SQLException;
+    }
+
+    private final class AccountRow extends Client {
+        private final String key;
+        private final String email;
+        private final String name;
+
+        private AccountRow(String key, String email, String name) {
+            this.key = key;
+            this.email = email;
+            this.name = name;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String getEmail() {
+            return email;
+        }
+
+        @Override
+        public long getBalanceMinor() {
+            return storedBalance(key, email);
+        }
+
+        @Override
+        public void setBalanceMinor(long balance) {
+            storeBalance(key, email, balance);
+        }
+    }
+}
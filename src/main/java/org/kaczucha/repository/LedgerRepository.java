@@ -0,0 +1,18 @@
+package org.kaczucha.repository;
+
+/**
+ * A repository that applies balance changes itself and checks funds in the same step, so callers
+ * do not read a balance and write it back. Both operations throw
+ * {@link java.util.NoSuchElementException} when an account does not exist.
+ */
+public interface LedgerRepository extends ClientRepository {
+    /**
+     * @return {@code false}, with nothing changed, when the payer has less than {@code amountMinor}
+     */
+    boolean transfer(String fromEmail, String toEmail, long amountMinor);
+
+    /**
+     * @return {@code false}, with nothing changed, when the account has less than {@code amountMinor}
+     */
+    boolean withdraw(String email, long amountMinor);
+}
@@ -0,0 +1,413 @@
+package org.kaczucha.repository;
+
+import org.kaczucha.Client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Keeps fixed-width account records and an open-addressing email index in one memory-mapped file,
+ * so the account book lives outside the Java heap and is still there after a restart. Emails are
+ * stored lower-cased, which is the form {@link #findByEmail(String)} matches on.
+ * <p>
+ * A deleted record keeps the link to the next free slot in its name area and gets a new generation.
+ * A view made for an earlier generation reads as deleted (null email, zero balance) and refuses
+ * writes, even once the slot holds another account.
+ */
+public class MappedClientRepository implements ClientRepository, Closeable {
+    private static final int MAGIC = 0x42414E4B;
+    private static final int FORMAT_VERSION = 2;
+    private static final int HEADER_SIZE = 64;
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int SLOTS_USED_OFFSET = 12;
+    private static final int SIZE_OFFSET = 16;
+    private static final int FREE_HEAD_OFFSET = 20;
+    private static final int INDEX_ENTRIES_OFFSET = 24;
+
+    private static final int RECORD_SIZE = 208;
+    private static final int BALANCE_OFFSET = 0;
+    private static final int STATUS_OFFSET = 8;
+    private static final int GENERATION_OFFSET = 12;
+    private static final int NAME_OFFSET = 16;
+    private static final int NAME_BYTES = 62;
+    private static final int EMAIL_OFFSET = NAME_OFFSET + 2 + NAME_BYTES;
+    private static final int EMAIL_BYTES = 126;
+    private static final int NEXT_FREE_OFFSET = NAME_OFFSET + Short.BYTES;
+
+    private static final byte FREE = 0;
+    private static final byte LIVE = 1;
+    private static final int EMPTY = 0;
+    private static final int DELETED = -1;
+    private static final int NO_SLOT = -1;
+    private static final int MAX_CAPACITY = (Integer.MAX_VALUE - HEADER_SIZE) / (RECORD_SIZE + 4 * Integer.BYTES);
+    private static final VarHandle INDEX = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+    private static final VarHandle INDEX_EPOCH;
+
+    static {
+        try {
+            INDEX_EPOCH = MethodHandles.lookup().findVarHandle(MappedClientRepository.class, "indexEpoch", int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final int indexCapacity;
+    private final int indexOffset;
+    private int indexEpoch;
+
+    private MappedClientRepository(FileChannel channel, MappedByteBuffer buffer, int capacity) {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.capacity = capacity;
+        this.indexCapacity = indexCapacityFor(capacity);
+        this.indexOffset = HEADER_SIZE + capacity * RECORD_SIZE;
+    }
+
+    public static MappedClientRepository open(Path file, int capacity) {
+        try {
+            final boolean exists = Files.exists(file) && Files.size(file) > 0;
+            final FileChannel channel = FileChannel.open(file,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (exists) {
+                final MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+                header.order(ByteOrder.nativeOrder());
+                if (header.getInt(0) != MAGIC || header.getInt(4) != FORMAT_VERSION) {
+                    channel.close();
+                    throw new IllegalArgumentException(String.format("File %s is not an account book!", file));
+                }
+                capacity = header.getInt(CAPACITY_OFFSET);
+            }
+            if (capacity <= 0 || capacity > MAX_CAPACITY) {
+                channel.close();
+                throw new IllegalArgumentException(
+                        String.format("Capacity must be between 1 and %d!", MAX_CAPACITY)
+                );
+            }
+            final long fileSize = fileSizeFor(capacity);
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+            buffer.order(ByteOrder.nativeOrder());
+            final MappedClientRepository repository = new MappedClientRepository(channel, buffer, capacity);
+            if (!exists) {
+                repository.initialize();
+            }
+            return repository;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public synchronized void save(Client client) {
+        final String email = client.getEmail();
+        if (email == null) {
+            throw new IllegalArgumentException("Email cant be null");
+        }
+        final byte[] key = key(email);
+        final byte[] name = client.getName() == null ? new byte[0] : client.getName().getBytes(StandardCharsets.UTF_8);
+        if (key.length > EMAIL_BYTES || name.length > NAME_BYTES) {
+            throw new IllegalArgumentException("Name or email is too long for a mapped record!");
+        }
+        if (positionOf(key) >= 0) {
+            throw new IllegalArgumentException(
+                    String.format("Client with following email: %s already exists!", email)
+            );
+        }
+        final int slot = allocateSlot();
+        final int record = recordOffset(slot);
+        buffer.putLong(record + BALANCE_OFFSET, client.getBalanceMinor());
+        writeBytes(record + NAME_OFFSET, name);
+        writeBytes(record + EMAIL_OFFSET, key);
+        buffer.put(record + STATUS_OFFSET, LIVE);
+        if ((buffer.getInt(INDEX_ENTRIES_OFFSET) + 1) * 4 > indexCapacity * 3) {
+            rebuildIndex();
+        }
+        insert(key, slot);
+        buffer.putInt(SIZE_OFFSET, buffer.getInt(SIZE_OFFSET) + 1);
+    }
+
+    @Override
+    public synchronized void delete(Client client) {
+        if (client.getEmail() == null) {
+            return;
+        }
+        final int position = positionOf(key(client.getEmail()));
+        if (position < 0) {
+            return;
+        }
+        final int slot = indexEntry(position) - 1;
+        final RecordView stored = new RecordView(slot);
+        if (stored.getBalanceMinor() != client.getBalanceMinor()
+                || !Objects.equals(stored.getName(), client.getName())) {
+            return;
+        }
+        INDEX.setRelease(buffer, indexOffset + position * Integer.BYTES, DELETED);
+        final int record = recordOffset(slot);
+        buffer.putInt(record + GENERATION_OFFSET, buffer.getInt(record + GENERATION_OFFSET) + 1);
+        // stale views must see the new generation before they can see the slot's next account
+        VarHandle.storeStoreFence();
+        buffer.put(record + STATUS_OFFSET, FREE);
+        buffer.putInt(record + NEXT_FREE_OFFSET, buffer.getInt(FREE_HEAD_OFFSET));
+        buffer.putInt(FREE_HEAD_OFFSET, slot);
+        buffer.putInt(SIZE_OFFSET, buffer.getInt(SIZE_OFFSET) - 1);
+    }
+
+    @Override
+    public Client findByEmail(String email) {
+        final byte[] key = email == null ? null : key(email);
+        while (true) {
+            final int position = key == null ? -1 : positionOf(key);
+            final int entry = position < 0 ? EMPTY : indexEntry(position);
+            if (entry <= 0) {
+                throw new NoSuchElementException(
+                        String.format("Client with following email: %s not found!", email)
+                );
+            }
+            final RecordView view = new RecordView(entry - 1);
+            // the slot may have been freed and reused since the index pointed at it
+            if (keyEquals(entry - 1, key) && view.isCurrent()) {
+                return view;
+            }
+        }
+    }
+
+    @Override
+    public void forEach(Consumer<? super Client> action) {
+        final int slotsUsed = buffer.getInt(SLOTS_USED_OFFSET);
+        for (int slot = 0; slot < slotsUsed; slot++) {
+            if (buffer.get(recordOffset(slot) + STATUS_OFFSET) == LIVE) {
+                action.accept(new RecordView(slot));
+            }
+        }
+    }
+
+    @Override
+    public Stream<Client> stream() {
+        return IntStream.range(0, buffer.getInt(SLOTS_USED_OFFSET))
+                .filter(slot -> buffer.get(recordOffset(slot) + STATUS_OFFSET) == LIVE)
+                .mapToObj(RecordView::new);
+    }
+
+    public int size() {
+        return buffer.getInt(SIZE_OFFSET);
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public synchronized void force() {
+        buffer.force();
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            buffer.force();
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void initialize() {
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, FORMAT_VERSION);
+        buffer.putInt(CAPACITY_OFFSET, capacity);
+        buffer.putInt(SLOTS_USED_OFFSET, 0);
+        buffer.putInt(SIZE_OFFSET, 0);
+        buffer.putInt(FREE_HEAD_OFFSET, NO_SLOT);
+        buffer.putInt(INDEX_ENTRIES_OFFSET, 0);
+    }
+
+    private int allocateSlot() {
+        final int freeHead = buffer.getInt(FREE_HEAD_OFFSET);
+        if (freeHead != NO_SLOT) {
+            buffer.putInt(FREE_HEAD_OFFSET, buffer.getInt(recordOffset(freeHead) + NEXT_FREE_OFFSET));
+            return freeHead;
+        }
+        final int slotsUsed = buffer.getInt(SLOTS_USED_OFFSET);
+        if (slotsUsed == capacity) {
+            throw new IllegalStateException(String.format("Account book is full (capacity %d)!", capacity));
+        }
+        buffer.putInt(SLOTS_USED_OFFSET, slotsUsed + 1);
+        return slotsUsed;
+    }
+
+    private int positionOf(byte[] key) {
+        while (true) {
+            final int epoch = (int) INDEX_EPOCH.getAcquire(this);
+            if ((epoch & 1) == 0) {
+                final int position = probe(key);
+                VarHandle.loadLoadFence();
+                if (epoch == (int) INDEX_EPOCH.getOpaque(this)) {
+                    return position;
+                }
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    private int probe(byte[] key) {
+        final int mask = indexCapacity - 1;
+        int position = hash(key) & mask;
+        for (int probes = 0; probes < indexCapacity; probes++) {
+            final int entry = indexEntry(position);
+            if (entry == EMPTY) {
+                return -1;
+            }
+            if (entry > 0 && keyEquals(entry - 1, key)) {
+                return position;
+            }
+            position = (position + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void insert(byte[] key, int slot) {
+        final int mask = indexCapacity - 1;
+        int position = hash(key) & mask;
+        while (indexEntry(position) > 0) {
+            position = (position + 1) & mask;
+        }
+        if (indexEntry(position) == EMPTY) {
+            buffer.putInt(INDEX_ENTRIES_OFFSET, buffer.getInt(INDEX_ENTRIES_OFFSET) + 1);
+        }
+        INDEX.setRelease(buffer, indexOffset + position * Integer.BYTES, slot + 1);
+    }
+
+    private void rebuildIndex() {
+        INDEX_EPOCH.setOpaque(this, indexEpoch + 1);
+        // readers must see the odd epoch before any cleared index entry
+        VarHandle.storeStoreFence();
+        try {
+            for (int position = 0; position < indexCapacity; position++) {
+                buffer.putInt(indexOffset + position * Integer.BYTES, EMPTY);
+            }
+            buffer.putInt(INDEX_ENTRIES_OFFSET, 0);
+            final int slotsUsed = buffer.getInt(SLOTS_USED_OFFSET);
+            for (int slot = 0; slot < slotsUsed; slot++) {
+                if (buffer.get(recordOffset(slot) + STATUS_OFFSET) == LIVE) {
+                    insert(readBytes(recordOffset(slot) + EMAIL_OFFSET), slot);
+                }
+            }
+        } finally {
+            INDEX_EPOCH.setRelease(this, indexEpoch + 1);
+        }
+    }
+
+    private int indexEntry(int position) {
+        return (int) INDEX.getAcquire(buffer, indexOffset + position * Integer.BYTES);
+    }
+
+    private boolean keyEquals(int slot, byte[] key) {
+        final int offset = recordOffset(slot) + EMAIL_OFFSET;
+        if (buffer.getShort(offset) != key.length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (buffer.get(offset + 2 + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void writeBytes(int offset, byte[] bytes) {
+        buffer.putShort(offset, (short) bytes.length);
+        buffer.put(offset + 2, bytes);
+    }
+
+    private byte[] readBytes(int offset) {
+        final byte[] bytes = new byte[buffer.getShort(offset)];
+        buffer.get(offset + 2, bytes);
+        return bytes;
+    }
+
+    private int recordOffset(int slot) {
+        return HEADER_SIZE + slot * RECORD_SIZE;
+    }
+
+    private static byte[] key(String email) {
+        return email.toLowerCase(Locale.ROOT).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int hash(byte[] key) {
+        int hash = 0;
+        for (byte b : key) {
+            hash = 31 * hash + b;
+        }
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    private static int indexCapacityFor(int capacity) {
+        final int target = Math.max(16, capacity * 2);
+        return Integer.highestOneBit(target - 1) << 1;
+    }
+
+    private static long fileSizeFor(int capacity) {
+        return HEADER_SIZE + (long) capacity * RECORD_SIZE + (long) indexCapacityFor(capacity) * Integer.BYTES;
+    }
+
+    private final class RecordView extends Client {
+        private final int record;
+        private final int generation;
+
+        private RecordView(int slot) {
+            this.record = recordOffset(slot);
+            this.generation = buffer.getInt(record + GENERATION_OFFSET);
+            VarHandle.loadLoadFence();
+        }
+
+        @Override
+        public String getName() {
+            final byte[] name = readBytes(record + NAME_OFFSET);
+            return isCurrent() ? new String(name, StandardCharsets.UTF_8) : null;
+        }
+
+        @Override
+        public String getEmail() {
+            final byte[] email = readBytes(record + EMAIL_OFFSET);
+            return isCurrent() ? new String(email, StandardCharsets.UTF_8) : null;
+        }
+
+        @Override
+        public long getBalanceMinor() {
+            final long balance = buffer.getLong(record + BALANCE_OFFSET);
+            return isCurrent() ? balance : 0;
+        }
+
+        @Override
+        public void setBalanceMinor(long balance) {
+            if (!isCurrent()) {
+                throw new IllegalStateException("Account was deleted: its record has been freed");
+            }
+            buffer.putLong(record + BALANCE_OFFSET, balance);
+        }
+
+        private boolean isCurrent() {
+            VarHandle.loadLoadFence();
+            return buffer.get(record + STATUS_OFFSET) == LIVE
+                    && buffer.getInt(record + GENERATION_OFFSET) == generation;
+        }
+    }
+}
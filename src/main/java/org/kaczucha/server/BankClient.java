@@ -0,0 +1,142 @@
+package org.kaczucha.server;
+
+import org.kaczucha.Client;
+import org.kaczucha.Money;
+import org.kaczucha.service.NoSufficientFundsException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.NoSuchElementException;
+
+/**
+ * Blocking client for {@link BankServer}. Server-side failures are rethrown as the exceptions
+ * {@link org.kaczucha.service.BankService} would have thrown locally. Not thread-safe; use one
+ * client per thread.
+ */
+public class BankClient implements Closeable {
+    private final Socket socket;
+    private final DataInputStream input;
+    private final DataOutputStream output;
+
+    public BankClient(InetAddress host, int port) {
+        try {
+            this.socket = new Socket(host, port);
+            socket.setTcpNoDelay(true);
+            this.input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            this.output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static BankClient connectToLoopback(int port) {
+        return new BankClient(InetAddress.getLoopbackAddress(), port);
+    }
+
+    public void save(Client client) {
+        try {
+            output.writeByte(BankProtocol.SAVE);
+            output.writeUTF(client.getName() == null ? "" : client.getName());
+            output.writeUTF(requireEmail(client.getEmail()));
+            output.writeLong(client.getBalanceMinor());
+            awaitOk();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public Client findByEmail(String email) {
+        try {
+            output.writeByte(BankProtocol.FIND);
+            output.writeUTF(requireEmail(email));
+            awaitOk();
+            final String name = input.readUTF();
+            final String storedEmail = input.readUTF();
+            return Client.ofMinorUnits(name, storedEmail, input.readLong());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void transfer(String fromEmail, String toEmail, double amount) {
+        transfer(null, fromEmail, toEmail, amount);
+    }
+
+    public void transfer(String idempotencyKey, String fromEmail, String toEmail, double amount) {
+        try {
+            writeOpcode(BankProtocol.TRANSFER, BankProtocol.KEYED_TRANSFER, idempotencyKey);
+            output.writeUTF(requireEmail(fromEmail));
+            output.writeUTF(requireEmail(toEmail));
+            output.writeLong(Money.toMinor(amount));
+            awaitOk();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void withdraw(String email, int amount) {
+        withdraw(null, email, amount);
+    }
+
+    public void withdraw(String idempotencyKey, String email, int amount) {
+        try {
+            writeOpcode(BankProtocol.WITHDRAW, BankProtocol.KEYED_WITHDRAW, idempotencyKey);
+            output.writeUTF(requireEmail(email));
+            output.writeInt(amount);
+            awaitOk();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeOpcode(byte plain, byte keyed, String idempotencyKey) throws IOException {
+        if (idempotencyKey == null) {
+            output.writeByte(plain);
+        } else {
+            output.writeByte(keyed);
+            output.writeUTF(idempotencyKey);
+        }
+    }
+
+    private void awaitOk() throws IOException {
+        output.flush();
+        final byte status = input.readByte();
+        if (status == BankProtocol.OK) {
+            return;
+        }
+        final String message = input.readUTF();
+        switch (status) {
+            case BankProtocol.NOT_FOUND:
+                throw new NoSuchElementException(message);
+            case BankProtocol.INSUFFICIENT_FUNDS:
+                throw new NoSufficientFundsException(message);
+            case BankProtocol.INVALID_ARGUMENT:
+                throw new IllegalArgumentException(message);
+            default:
+                throw new IllegalStateException(message);
+        }
+    }
+
+    private static String requireEmail(String email) {
+        if (email == null) {
+            throw new IllegalArgumentException("Email cant be null");
+        }
+        return email;
+    }
+}
@@ -0,0 +1,26 @@
+package org.kaczucha.server;
+
+/**
+ * Wire format shared by {@link BankServer} and {@link BankClient}. A request is an opcode byte
+ * followed by its fields written with {@link java.io.DataOutput}; amounts and balances travel as
+ * long minor units, except the {@link #WITHDRAW} and {@link #KEYED_WITHDRAW} amount, which is an int
+ * of whole major units like {@code BankService.withdraw} takes, and strings as modified UTF-8. A
+ * response is a status byte followed by either the result (for {@link #FIND}) or an error message.
+ */
+final class BankProtocol {
+    static final byte SAVE = 1;
+    static final byte FIND = 2;
+    static final byte TRANSFER = 3;
+    static final byte WITHDRAW = 4;
+    static final byte KEYED_TRANSFER = 5;
+    static final byte KEYED_WITHDRAW = 6;
+
+    static final byte OK = 0;
+    static final byte NOT_FOUND = 1;
+    static final byte INSUFFICIENT_FUNDS = 2;
+    static final byte INVALID_ARGUMENT = 3;
+    static final byte ERROR = 4;
+
+    private BankProtocol() {
+    }
+}
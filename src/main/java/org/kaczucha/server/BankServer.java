@@ -0,0 +1,336 @@
+package org.kaczucha.server;
+
+import org.kaczucha.Client;
+import org.kaczucha.Money;
+import org.kaczucha.service.BankService;
+import org.kaczucha.service.NoSufficientFundsException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.time.Duration;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Serves {@link BankService} over TCP using {@link BankProtocol}, one handler thread per
+ * connection from a bounded pool. At most {@code maxConnections} connections are served at once;
+ * the acceptor stops accepting at the cap, so further clients wait in the listen backlog until a
+ * connection closes, and idle handler threads exit after a minute. Responses are flushed only when no further pipelined request is already buffered.
+ * Shutting down stops accepting connections, lets every request whose first byte has arrived, and
+ * every pipelined request buffered behind it, finish and then closes the connections. A request
+ * with an unknown opcode cannot be skipped, so it is answered with an error and the connection is
+ * closed.
+ */
+public class BankServer implements Closeable {
+    private static final Duration DEFAULT_DRAIN_TIMEOUT = Duration.ofSeconds(10);
+    private static final int DEFAULT_MAX_CONNECTIONS = 256;
+    private static final long ACCEPT_POLL_MILLIS = 100;
+
+    private final BankService bankService;
+    private final ServerSocket serverSocket;
+    private final ExecutorService connectionExecutor;
+    private final Semaphore connectionSlots;
+    private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+    private final Thread acceptor;
+    private volatile boolean shuttingDown;
+
+    public BankServer(BankService bankService, InetSocketAddress address) {
+        this(bankService, address, DEFAULT_MAX_CONNECTIONS);
+    }
+
+    public BankServer(BankService bankService, InetSocketAddress address, int maxConnections) {
+        if (maxConnections <= 0) {
+            throw new IllegalArgumentException("Max connections must be positive!");
+        }
+        this.bankService = bankService;
+        this.connectionSlots = new Semaphore(maxConnections);
+        try {
+            this.serverSocket = new ServerSocket();
+            serverSocket.bind(address, 1024);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        final AtomicInteger connectionIds = new AtomicInteger();
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(maxConnections, maxConnections,
+                1, TimeUnit.MINUTES, new LinkedBlockingQueue<>(), runnable -> {
+            final Thread thread = new Thread(runnable, "bank-connection-" + connectionIds.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        this.connectionExecutor = executor;
+        this.acceptor = new Thread(this::acceptLoop, "bank-acceptor");
+        acceptor.start();
+    }
+
+    public static BankServer startOnLoopback(BankService bankService, int port) {
+        return new BankServer(bankService, new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    public static BankServer startOnLoopback(BankService bankService, int port, int maxConnections) {
+        return new BankServer(bankService, new InetSocketAddress(InetAddress.getLoopbackAddress(), port),
+                maxConnections);
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public void shutdown(Duration drainTimeout) {
+        shuttingDown = true;
+        try {
+            serverSocket.close();
+            acceptor.join(drainTimeout.toMillis());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        final long deadline = System.nanoTime() + drainTimeout.toNanos();
+        for (Connection connection : connections) {
+            connection.closeWhenIdle(Math.max(0, deadline - System.nanoTime()));
+        }
+        connectionExecutor.shutdown();
+        try {
+            connectionExecutor.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() {
+        shutdown(DEFAULT_DRAIN_TIMEOUT);
+    }
+
+    private void acceptLoop() {
+        while (!shuttingDown) {
+            try {
+                if (!connectionSlots.tryAcquire(ACCEPT_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                    continue;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            // the slot is handed to the connection, which gives it back once it is closed
+            boolean handedOver = false;
+            try {
+                final Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                final Connection connection = new Connection(socket);
+                connections.add(connection);
+                handedOver = true;
+                if (shuttingDown) {
+                    connection.closeWhenIdle(0);
+                    connection.finished();
+                } else {
+                    connectionExecutor.execute(connection);
+                }
+            } catch (IOException e) {
+                if (!shuttingDown) {
+                    throw new UncheckedIOException(e);
+                }
+            } finally {
+                if (!handedOver) {
+                    connectionSlots.release();
+                }
+            }
+        }
+    }
+
+    private final class Connection implements Runnable {
+        private final Socket socket;
+        private final ReentrantLock inFlight = new ReentrantLock();
+        private boolean closing;
+
+        private Connection(Socket socket) {
+            this.socket = socket;
+        }
+
+        @Override
+        public void run() {
+            try (DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                 DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+                while (true) {
+                    // only waiting for the next request happens without the lock, so closeWhenIdle
+                    // never cuts off a request that has started to arrive
+                    byte opcode = input.readByte();
+                    inFlight.lock();
+                    try {
+                        if (closing) {
+                            return;
+                        }
+                        while (true) {
+                            final Request request = Request.read(opcode, input);
+                            if (request == null) {
+                                output.writeByte(BankProtocol.INVALID_ARGUMENT);
+                                output.writeUTF(String.format("Unknown opcode: %d", opcode));
+                                output.flush();
+                                return;
+                            }
+                            handle(request, output);
+                            if (input.available() == 0) {
+                                output.flush();
+                                break;
+                            }
+                            opcode = input.readByte();
+                        }
+                    } finally {
+                        inFlight.unlock();
+                    }
+                }
+            } catch (EOFException | SocketException e) {
+                // client went away or the server is shutting down
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                closeQuietly();
+                finished();
+            }
+        }
+
+        private void finished() {
+            connections.remove(this);
+            connectionSlots.release();
+        }
+
+        private void closeWhenIdle(long timeoutNanos) {
+            try {
+                if (inFlight.tryLock(timeoutNanos, TimeUnit.NANOSECONDS)) {
+                    try {
+                        closing = true;
+                        closeQuietly();
+                    } finally {
+                        inFlight.unlock();
+                    }
+                } else {
+                    closeQuietly();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                closeQuietly();
+            }
+        }
+
+        private void closeQuietly() {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void handle(Request request, DataOutputStream output) throws IOException {
+        try {
+            switch (request.opcode) {
+                case BankProtocol.SAVE:
+                    bankService.save(Client.ofMinorUnits(request.name, request.email, request.amount));
+                    output.writeByte(BankProtocol.OK);
+                    break;
+                case BankProtocol.FIND: {
+                    final Client client = bankService.snapshotOf(request.email);
+                    output.writeByte(BankProtocol.OK);
+                    output.writeUTF(client.getName() == null ? "" : client.getName());
+                    output.writeUTF(client.getEmail());
+                    output.writeLong(client.getBalanceMinor());
+                    break;
+                }
+                case BankProtocol.TRANSFER:
+                    bankService.transfer(request.email, request.toEmail, Money.toMajor(request.amount));
+                    output.writeByte(BankProtocol.OK);
+                    break;
+                case BankProtocol.WITHDRAW:
+                    bankService.withdraw(request.email, (int) request.amount);
+                    output.writeByte(BankProtocol.OK);
+                    break;
+                case BankProtocol.KEYED_TRANSFER:
+                    bankService.transfer(request.key, request.email, request.toEmail, Money.toMajor(request.amount));
+                    output.writeByte(BankProtocol.OK);
+                    break;
+                case BankProtocol.KEYED_WITHDRAW:
+                    bankService.withdraw(request.key, request.email, (int) request.amount);
+                    output.writeByte(BankProtocol.OK);
+                    break;
+                default:
+                    throw new IllegalStateException(String.format("Unknown opcode: %d", request.opcode));
+            }
+        } catch (NoSuchElementException e) {
+            writeError(output, BankProtocol.NOT_FOUND, e);
+        } catch (NoSufficientFundsException e) {
+            writeError(output, BankProtocol.INSUFFICIENT_FUNDS, e);
+        } catch (IllegalArgumentException e) {
+            writeError(output, BankProtocol.INVALID_ARGUMENT, e);
+        } catch (RuntimeException e) {
+            writeError(output, BankProtocol.ERROR, e);
+        }
+    }
+
+    private static void writeError(DataOutputStream output, byte status, RuntimeException error) throws IOException {
+        output.writeByte(status);
+        output.writeUTF(error.getMessage() == null ? error.getClass().getSimpleName() : error.getMessage());
+    }
+
+    private static final class Request {
+        private byte opcode;
+        private String key;
+        private String name;
+        private String email;
+        private String toEmail;
+        private long amount;
+
+        /**
+         * @return {@code null} for an unknown opcode, whose payload length is unknown too
+         */
+        private static Request read(byte opcode, DataInputStream input) throws IOException {
+            final Request request = new Request();
+            request.opcode = opcode;
+            if (request.opcode == BankProtocol.KEYED_TRANSFER || request.opcode == BankProtocol.KEYED_WITHDRAW) {
+                request.key = input.readUTF();
+            }
+            switch (request.opcode) {
+                case BankProtocol.SAVE:
+                    request.name = input.readUTF();
+                    request.email = input.readUTF();
+                    request.amount = input.readLong();
+                    break;
+                case BankProtocol.FIND:
+                    request.email = input.readUTF();
+                    break;
+                case BankProtocol.TRANSFER:
+                case BankProtocol.KEYED_TRANSFER:
+                    request.email = input.readUTF();
+                    request.toEmail = input.readUTF();
+                    request.amount = input.readLong();
+                    break;
+                case BankProtocol.WITHDRAW:
+                case BankProtocol.KEYED_WITHDRAW:
+                    request.email = input.readUTF();
+                    request.amount = input.readInt();
+                    break;
+                default:
+                    return null;
+            }
+            return request;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package org.kaczucha.service;
+
+import org.kaczucha.Money;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Aggregates over the whole account book, in minor units. Histogram bucket {@code i} counts
+ * balances below {@code bounds[i]} and at or above {@code bounds[i - 1]}; the last bucket holds
+ * everything at or above the highest bound.
+ */
+public class AccountBookReport {
+    private final long totalLiabilities;
+    private final long accounts;
+    private final long[] histogramBounds;
+    private final long[] histogramCounts;
+    private final Map<String, Long> totalsByDomain;
+    private final Map<String, Long> accountsByDomain;
+
+    AccountBookReport(long totalLiabilities, long accounts, long[] histogramBounds, long[] histogramCounts,
+                      Map<String, Long> totalsByDomain, Map<String, Long> accountsByDomain) {
+        this.totalLiabilities = totalLiabilities;
+        this.accounts = accounts;
+        this.histogramBounds = histogramBounds;
+        this.histogramCounts = histogramCounts;
+        this.totalsByDomain = Collections.unmodifiableMap(totalsByDomain);
+        this.accountsByDomain = Collections.unmodifiableMap(accountsByDomain);
+    }
+
+    public long getTotalLiabilitiesMinor() {
+        return totalLiabilities;
+    }
+
+    public double getTotalLiabilities() {
+        return Money.toMajor(totalLiabilities);
+    }
+
+    public long getAccounts() {
+        return accounts;
+    }
+
+    public long[] getHistogramBounds() {
+        return histogramBounds.clone();
+    }
+
+    public long[] getHistogramCounts() {
+        return histogramCounts.clone();
+    }
+
+    public Map<String, Long> getTotalsByDomain() {
+        return totalsByDomain;
+    }
+
+    public Map<String, Long> getAccountsByDomain() {
+        return accountsByDomain;
+    }
+}
@@ -0,0 +1,30 @@
+package org.kaczucha.service;
+
+import org.kaczucha.Client;
+
+/**
+ * Map key for the account a client object stands for, compared with
+ * {@link Client#isSameAccount(Client)}, so views a repository hands out anew on every lookup still
+ * find each other.
+ */
+final class AccountKey {
+    private final Client client;
+
+    AccountKey(Client client) {
+        this.client = client;
+    }
+
+    Client client() {
+        return client;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof AccountKey && client.isSameAccount(((AccountKey) o).client);
+    }
+
+    @Override
+    public int hashCode() {
+        return client.accountHash();
+    }
+}
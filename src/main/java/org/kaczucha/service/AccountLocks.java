@@ -0,0 +1,36 @@
+package org.kaczucha.service;
+
+public interface AccountLocks {
+    AccountLocks NONE = new AccountLocks() {
+        @Override
+        public int stripeOf(String email) {
+            return 0;
+        }
+
+        @Override
+        public void lock(int stripe) {
+        }
+
+        @Override
+        public void unlock(int stripe) {
+        }
+    };
+
+    int stripeOf(String email);
+
+    void lock(int stripe);
+
+    void unlock(int stripe);
+
+    /**
+     * Returns a stamp to validate an unlocked read of accounts in {@code stripe} against, or zero
+     * while the stripe is being written.
+     */
+    default long tryOptimisticRead(int stripe) {
+        return 1;
+    }
+
+    default boolean validate(int stripe, long stamp) {
+        return stamp != 0;
+    }
+}
@@ -0,0 +1,133 @@
+package org.kaczucha.service;
+
+import org.kaczucha.Client;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Non-blocking facade over {@link BankService}: every operation is submitted to an executor and
+ * its outcome, including business failures such as {@link NoSufficientFundsException}, is
+ * delivered through the returned future rather than thrown. Futures fail with the original
+ * exception, not a {@link java.util.concurrent.CompletionException} wrapping it.
+ *
+ * <p>Callers may keep many operations in flight at once; operations submitted without waiting for
+ * each other may run in any order, so dependent operations should be chained with
+ * {@link CompletableFuture#thenCompose}.
+ */
+public class AsyncBankService implements Closeable {
+    private static final int THREADS_PER_CPU = 4;
+
+    private final BankService bankService;
+    private final Executor executor;
+    private final ExecutorService ownedExecutor;
+
+    public AsyncBankService(BankService bankService) {
+        this(bankService, defaultExecutor(), true);
+    }
+
+    public AsyncBankService(BankService bankService, Executor executor) {
+        this(bankService, executor, false);
+    }
+
+    private AsyncBankService(BankService bankService, Executor executor, boolean owned) {
+        this.bankService = bankService;
+        this.executor = executor;
+        this.ownedExecutor = owned ? (ExecutorService) executor : null;
+    }
+
+    public CompletableFuture<Void> saveAsync(Client client) {
+        return run(() -> bankService.save(client));
+    }
+
+    public CompletableFuture<Void> deleteAsync(Client client) {
+        return run(() -> bankService.delete(client));
+    }
+
+    public CompletableFuture<Client> findByEmailAsync(String email) {
+        return submit(() -> bankService.snapshotOf(email));
+    }
+
+    public CompletableFuture<Long> balanceOfAsync(String email) {
+        return submit(() -> bankService.balanceOf(email));
+    }
+
+    public CompletableFuture<Void> transferAsync(String fromEmail, String toEmail, double amount) {
+        return run(() -> bankService.transfer(fromEmail, toEmail, amount));
+    }
+
+    public CompletableFuture<Void> transferAsync(String idempotencyKey, String fromEmail, String toEmail,
+                                                 double amount) {
+        return run(() -> bankService.transfer(idempotencyKey, fromEmail, toEmail, amount));
+    }
+
+    public CompletableFuture<List<TransferResult>> transferAllAsync(List<TransferRequest> requests) {
+        return submit(() -> bankService.transferAll(requests));
+    }
+
+    public CompletableFuture<Void> withdrawAsync(String email, int amount) {
+        return run(() -> bankService.withdraw(email, amount));
+    }
+
+    public CompletableFuture<Void> withdrawAsync(String idempotencyKey, String email, int amount) {
+        return run(() -> bankService.withdraw(idempotencyKey, email, amount));
+    }
+
+    public CompletableFuture<AccountBookReport> reportAsync(long... histogramBounds) {
+        return submit(() -> bankService.report(histogramBounds));
+    }
+
+    public BankService getBankService() {
+        return bankService;
+    }
+
+    /**
+     * Stops accepting operations; already submitted ones still complete. An executor passed in by
+     * the caller is left running.
+     */
+    @Override
+    public void close() {
+        if (ownedExecutor != null) {
+            ownedExecutor.shutdown();
+        }
+    }
+
+    private CompletableFuture<Void> run(Runnable operation) {
+        return submit(() -> {
+            operation.run();
+            return null;
+        });
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> operation) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(operation.get());
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private static ExecutorService defaultExecutor() {
+        final AtomicInteger threads = new AtomicInteger();
+        return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() * THREADS_PER_CPU, task -> {
+            final Thread thread = new Thread(task, "bank-async-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
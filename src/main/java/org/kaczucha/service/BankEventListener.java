@@ -0,0 +1,57 @@
+package org.kaczucha.service;
+
+import org.kaczucha.Client;
+
+/**
+ * Notified by {@link BankService} after each successful mutation, while the affected accounts are
+ * still locked, so listeners observe the changes of one account in the order they were applied.
+ * Amounts and balances are in minor units.
+ * <p>
+ * The {@code before} methods are called under the same locks once a mutation has been validated
+ * and just before it is applied, with the balances it will produce; throwing from one aborts the
+ * mutation with nothing changed, which is where a write-ahead log records it. {@link #afterUnlock()}
+ * is called on the same thread once the locks are released, so a listener that has to wait, such as
+ * a journal waiting for its fsync, does not hold up other operations on the same accounts.
+ * <p>
+ * A mutation that fails once its {@code before} methods may have been called, such as one the
+ * repository rejects, is followed by {@link #onAbort()} instead of the {@code on} method.
+ */
+public interface BankEventListener {
+    default void beforeSave(Client client) {
+    }
+
+    default void beforeDelete(Client client) {
+    }
+
+    default void beforeTransfer(Client fromClient, Client toClient, long amount, long fromBalance, long toBalance) {
+    }
+
+    default void beforeWithdraw(Client client, long amount, long balance) {
+    }
+
+    default void onSave(Client client) {
+    }
+
+    default void onDelete(Client client) {
+    }
+
+    default void onTransfer(Client fromClient, Client toClient, long amount) {
+    }
+
+    default void onWithdraw(Client client, long amount) {
+    }
+
+    /**
+     * Called under the same locks when a mutation that took them fails without being applied. That
+     * can happen before any {@code before} method was called, so a listener has to ignore mutations
+     * it has seen nothing of. It must not throw: the caller is told why the mutation failed instead.
+     */
+    default void onAbort() {
+    }
+
+    /**
+     * Throwing reports the mutation as failed although it has been applied.
+     */
+    default void afterUnlock() {
+    }
+}
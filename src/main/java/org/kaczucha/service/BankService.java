@@ -1,47 +1,202 @@
 package org.kaczucha.service;
 
 import org.kaczucha.Client;
+import org.kaczucha.Money;
 import org.kaczucha.repository.ClientRepository;
+import org.kaczucha.repository.LedgerRepository;
 
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Objects;
 
 public class BankService {
+    private static final int DEFAULT_IDEMPOTENCY_KEYS = 100_000;
+    private static final Duration DEFAULT_IDEMPOTENCY_TTL = Duration.ofHours(1);
+
     private final ClientRepository clientRepository;
+    private final LedgerRepository ledger;
+    private final AccountLocks accountLocks;
+    private final IdempotencyCache idempotencyCache;
+    private final HotAccounts hotAccounts;
+    private volatile BankEventListener[] listeners = new BankEventListener[0];
 
     public BankService(ClientRepository clientRepository) {
+        this(clientRepository, AccountLocks.NONE);
+    }
+
+    public BankService(ClientRepository clientRepository, AccountLocks accountLocks) {
+        this(clientRepository, accountLocks, new IdempotencyCache(DEFAULT_IDEMPOTENCY_KEYS, DEFAULT_IDEMPOTENCY_TTL));
+    }
+
+    public BankService(ClientRepository clientRepository, AccountLocks accountLocks,
+                       IdempotencyCache idempotencyCache) {
+        this(clientRepository, accountLocks, idempotencyCache, new HotAccounts());
+    }
+
+    /**
+     * Credits to accounts in {@code hotAccounts} skip the receiving account's lock while no
+     * listeners are registered; listeners need every balance they are shown to be exact, so with
+     * listeners hot accounts are only reconciled. When the repository is a
+     * {@link LedgerRepository}, transfers and withdrawals are handed to it whole instead of being
+     * applied to the clients it returns.
+     */
+    public BankService(ClientRepository clientRepository, AccountLocks accountLocks,
+                       IdempotencyCache idempotencyCache, HotAccounts hotAccounts) {
         this.clientRepository = clientRepository;
+        this.ledger = clientRepository instanceof LedgerRepository ? (LedgerRepository) clientRepository : null;
+        this.accountLocks = accountLocks;
+        this.idempotencyCache = idempotencyCache;
+        this.hotAccounts = hotAccounts;
     }
 
-    public void save(Client client) {
-        clientRepository.save(client);
+    public IdempotencyCache getIdempotencyCache() {
+        return idempotencyCache;
     }
 
-    public void delete(Client client) {
-        String email = null;
+    public HotAccounts getHotAccounts() {
+        return hotAccounts;
+    }
 
-        if ( client.getBalance() == 0) {
-            clientRepository.delete(client);
-        } else {
-        throw new IllegalArgumentException("It is not possible to delete client with funds in account");
+    public void markHot(String email) {
+        hotAccounts.markHot(clientRepository.findByEmail(email));
+    }
 
+    /**
+     * Takes the account off the striped credit path, whether it was marked or detected hot.
+     */
+    public void markCold(String email) {
+        final Client client = clientRepository.findByEmail(email);
+        final int stripe = accountLocks.stripeOf(email);
+        accountLocks.lock(stripe);
+        try {
+            hotAccounts.retire(client);
+            hotAccounts.forget(client);
+        } finally {
+            accountLocks.unlock(stripe);
+        }
     }
-        if(client.getEmail()!= null){
-            clientRepository.delete(client);
-        } else {
+
+    public synchronized void addListener(BankEventListener listener) {
+        final BankEventListener[] extended = Arrays.copyOf(listeners, listeners.length + 1);
+        extended[listeners.length] = listener;
+        listeners = extended;
+    }
+
+    public void save(Client client) {
+        final int stripe = accountLocks.stripeOf(client.getEmail());
+        accountLocks.lock(stripe);
+        boolean applied = false;
+        try {
+            if (listeners.length > 0) {
+                requireAbsent(client.getEmail());
+                for (BankEventListener listener : listeners) {
+                    listener.beforeSave(client);
+                }
+            }
+            clientRepository.save(client);
+            applied = true;
+            for (BankEventListener listener : listeners) {
+                listener.onSave(client);
+            }
+        } finally {
+            if (!applied) {
+                aborted();
+            }
+            accountLocks.unlock(stripe);
+        }
+        afterUnlock();
+    }
+
+    public void delete(Client client) {
+        if (client.getBalanceMinor() != 0) {
+            throw new IllegalArgumentException("It is not possible to delete client with funds in account");
+        }
+        if (client.getEmail() == null) {
             throw new IllegalArgumentException("It is not possible to delete client with empty email");
         }
-        if(client.getEmail().equals(email)){
-            clientRepository.delete(client);
-        } else {
-            throw new NoSuchElementException("It is not possible to delete client with incorrect email");
+        final int stripe = accountLocks.stripeOf(client.getEmail());
+        accountLocks.lock(stripe);
+        try {
+            final Client storedClient = clientRepository.findByEmail(client.getEmail());
+            // credits racing with the delete either land before this or fall back to the locked path
+            hotAccounts.retire(storedClient);
+            boolean deleted = false;
+            try {
+                if (storedClient.getBalanceMinor() != 0) {
+                    throw new IllegalArgumentException("It is not possible to delete client with funds in account");
+                }
+                // repositories clear a deleted account's storage, so listeners get a copy taken before
+                final Client deletedClient = Client.ofMinorUnits(
+                        storedClient.getName(), storedClient.getEmail(), storedClient.getBalanceMinor());
+                for (BankEventListener listener : listeners) {
+                    listener.beforeDelete(deletedClient);
+                }
+                clientRepository.delete(storedClient);
+                deleted = true;
+                hotAccounts.forget(storedClient);
+                for (BankEventListener listener : listeners) {
+                    listener.onDelete(deletedClient);
+                }
+            } finally {
+                if (!deleted) {
+                    aborted();
+                    hotAccounts.reopen(storedClient);
+                }
+            }
+        } finally {
+            accountLocks.unlock(stripe);
+        }
+        afterUnlock();
+    }
 
+    /**
+     * A hot account is returned as a copy holding its stored balance plus its pending credits, read
+     * like {@link #snapshotOf(String)} without taking its lock; pending credits are left for the next
+     * debit to reconcile.
+     */
+    public Client findByEmail(String email) {
+        final Client client = clientRepository.findByEmail(email);
+        return hotAccounts.isHot(client) ? snapshot(client, email) : client;
+    }
+
+    public long balanceOf(String email) {
+        final Client client = clientRepository.findByEmail(email);
+        final int stripe = accountLocks.stripeOf(email);
+        for (int attempt = 0; ; attempt++) {
+            final long stamp = accountLocks.tryOptimisticRead(stripe);
+            final long balance = client.getBalanceMinor();
+            // read in the same window, so a reconcile moving pending credits in cannot be counted twice
+            final long pending = hotAccounts.pending(client);
+            if (accountLocks.validate(stripe, stamp)) {
+                return balance + pending;
+            }
+            backOff(attempt);
         }
     }
 
+    public Client snapshotOf(String email) {
+        return snapshot(clientRepository.findByEmail(email), email);
+    }
 
-    public Client findByEmail(String email) {
-        return clientRepository.findByEmail(email);
+    private Client snapshot(Client client, String email) {
+        final int stripe = accountLocks.stripeOf(email);
+        for (int attempt = 0; ; attempt++) {
+            final long stamp = accountLocks.tryOptimisticRead(stripe);
+            final String name = client.getName();
+            final String storedEmail = client.getEmail();
+            final long balance = client.getBalanceMinor();
+            final long pending = hotAccounts.pending(client);
+            if (accountLocks.validate(stripe, stamp)) {
+                if (storedEmail == null) {
+                    throw new NoSuchElementException(
+                            String.format("Client with following email: %s not found!", email));
+                }
+                return Client.ofMinorUnits(name, storedEmail, balance + pending);
+            }
+            backOff(attempt);
+        }
     }
 
     public void transfer(
@@ -50,16 +205,249 @@ public class BankService {
             double amount
     ) {
         validateAmount(amount);
+        final long minorAmount = Money.toMinor(amount);
+        validateAmount(minorAmount);
         if (fromEmail.equals(toEmail)) {
             throw new IllegalArgumentException("fromEmail and toEmail cant be equal!");
         }
-        Client fromClient = findByEmail(fromEmail);
-        Client toClient = findByEmail(toEmail);
-        if (fromClient.getBalance() - amount >= 0) {
-            fromClient.setBalance(fromClient.getBalance() - amount);
-            toClient.setBalance(toClient.getBalance() + amount);
+        if (ledger != null) {
+            transferInLedger(fromEmail, toEmail, minorAmount);
+            return;
+        }
+        final int fromStripe = accountLocks.stripeOf(fromEmail);
+        final Client hotClient = listeners.length == 0 && hotAccounts.isEngaged()
+                ? clientRepository.findByEmail(toEmail) : null;
+        final HotAccounts.Cells hotCredit = hotClient == null ? null : hotAccounts.cellsFor(hotClient);
+        if (hotCredit != null) {
+            accountLocks.lock(fromStripe);
+            try {
+                final Client fromClient = clientRepository.findByEmail(fromEmail);
+                requireDistinct(fromClient, hotClient);
+                hotAccounts.reconcile(fromClient);
+                final long fromBalance = fromClient.getBalanceMinor();
+                if (fromBalance - minorAmount < 0) {
+                    throw new NoSufficientFundsException("Not enough funds!");
+                }
+                fromClient.setBalanceMinor(fromBalance - minorAmount);
+                if (hotAccounts.credit(hotCredit, minorAmount)) {
+                    return;
+                }
+                // the account is being deleted or demoted: undo and take the locked path
+                fromClient.setBalanceMinor(fromBalance);
+            } finally {
+                accountLocks.unlock(fromStripe);
+            }
+        }
+        final int toStripe = accountLocks.stripeOf(toEmail);
+        lockBoth(fromStripe, toStripe);
+        boolean applied = false;
+        try {
+            final Client fromClient = clientRepository.findByEmail(fromEmail);
+            final Client toClient = clientRepository.findByEmail(toEmail);
+            requireDistinct(fromClient, toClient);
+            hotAccounts.reconcile(fromClient);
+            hotAccounts.reconcile(toClient);
+            final long fromBalance = fromClient.getBalanceMinor();
+            if (fromBalance - minorAmount >= 0) {
+                for (BankEventListener listener : listeners) {
+                    listener.beforeTransfer(fromClient, toClient, minorAmount,
+                            fromBalance - minorAmount, toClient.getBalanceMinor() + minorAmount);
+                }
+                fromClient.setBalanceMinor(fromBalance - minorAmount);
+                // read after the debit, so the two writes can never overwrite each other
+                toClient.setBalanceMinor(toClient.getBalanceMinor() + minorAmount);
+                applied = true;
+                for (BankEventListener listener : listeners) {
+                    listener.onTransfer(fromClient, toClient, minorAmount);
+                }
+            } else {
+                throw new NoSufficientFundsException("Not enough funds!");
+            }
+        } finally {
+            if (!applied) {
+                aborted();
+            }
+            unlockBoth(fromStripe, toStripe);
+        }
+        afterUnlock();
+    }
+
+    /**
+     * Aggregates the whole book in parallel, straight from the repository's storage. Transfers
+     * running at the same time can be seen half-applied; quiesce writers for an exact figure.
+     *
+     * @param histogramBounds strictly increasing bucket bounds, in minor units
+     */
+    public AccountBookReport report(long... histogramBounds) {
+        for (int i = 1; i < histogramBounds.length; i++) {
+            if (histogramBounds[i] <= histogramBounds[i - 1]) {
+                throw new IllegalArgumentException("Histogram bounds must be strictly increasing!");
+            }
+        }
+        final long[] bounds = histogramBounds.clone();
+        for (Client client : hotAccounts.hotClients()) {
+            final int stripe = accountLocks.stripeOf(client.getEmail());
+            accountLocks.lock(stripe);
+            try {
+                hotAccounts.reconcile(client);
+            } finally {
+                accountLocks.unlock(stripe);
+            }
+        }
+        return clientRepository.stream()
+                .parallel()
+                .collect(() -> new ReportAccumulator(bounds), ReportAccumulator::add, ReportAccumulator::combine)
+                .toReport();
+    }
+
+    public void transfer(String idempotencyKey, String fromEmail, String toEmail, double amount) {
+        if (idempotencyKey == null) {
+            transfer(fromEmail, toEmail, amount);
+            return;
+        }
+        final List<Object> request = Arrays.asList("transfer",
+                IdempotencyCache.emailKey(fromEmail), IdempotencyCache.emailKey(toEmail), amount);
+        idempotencyCache.execute(idempotencyKey, request, () -> transfer(fromEmail, toEmail, amount));
+    }
+
+    public List<TransferResult> transferAll(List<TransferRequest> requests) {
+        return new TransferBatch(requests, accountLocks, listeners, hotAccounts).execute(clientRepository::findByEmail);
+    }
+
+    private void transferInLedger(String fromEmail, String toEmail, long minorAmount) {
+        // ledgers match emails case-insensitively, and without listeners no client is looked up
+        if (IdempotencyCache.emailKey(fromEmail).equals(IdempotencyCache.emailKey(toEmail))) {
+            throw new IllegalArgumentException("fromEmail and toEmail cant be equal!");
+        }
+        final int fromStripe = accountLocks.stripeOf(fromEmail);
+        final int toStripe = accountLocks.stripeOf(toEmail);
+        lockBoth(fromStripe, toStripe);
+        boolean applied = false;
+        try {
+            if (listeners.length == 0) {
+                if (!ledger.transfer(fromEmail, toEmail, minorAmount)) {
+                    throw new NoSufficientFundsException("Not enough funds!");
+                }
+                return;
+            }
+            // under the stripe locks nothing else changes these balances, so the check below is the
+            // one the ledger repeats
+            final Client fromClient = clientRepository.findByEmail(fromEmail);
+            final Client toClient = clientRepository.findByEmail(toEmail);
+            final long fromBalance = fromClient.getBalanceMinor();
+            if (fromBalance - minorAmount < 0) {
+                throw new NoSufficientFundsException("Not enough funds!");
+            }
+            for (BankEventListener listener : listeners) {
+                listener.beforeTransfer(fromClient, toClient, minorAmount,
+                        fromBalance - minorAmount, toClient.getBalanceMinor() + minorAmount);
+            }
+            if (!ledger.transfer(fromEmail, toEmail, minorAmount)) {
+                throw new NoSufficientFundsException("Not enough funds!");
+            }
+            applied = true;
+            for (BankEventListener listener : listeners) {
+                listener.onTransfer(fromClient, toClient, minorAmount);
+            }
+        } finally {
+            if (!applied) {
+                aborted();
+            }
+            unlockBoth(fromStripe, toStripe);
+        }
+        afterUnlock();
+    }
+
+    private void withdrawInLedger(String email, long minorAmount) {
+        final int stripe = accountLocks.stripeOf(email);
+        accountLocks.lock(stripe);
+        boolean applied = false;
+        try {
+            if (listeners.length == 0) {
+                if (!ledger.withdraw(email, minorAmount)) {
+                    throw new NoSufficientFundsException("Balance must be higher or equal than amount");
+                }
+                return;
+            }
+            final Client client = clientRepository.findByEmail(email);
+            final long balance = client.getBalanceMinor();
+            if (minorAmount > balance) {
+                throw new NoSufficientFundsException("Balance must be higher or equal than amount");
+            }
+            for (BankEventListener listener : listeners) {
+                listener.beforeWithdraw(client, minorAmount, balance - minorAmount);
+            }
+            if (!ledger.withdraw(email, minorAmount)) {
+                throw new NoSufficientFundsException("Balance must be higher or equal than amount");
+            }
+            applied = true;
+            for (BankEventListener listener : listeners) {
+                listener.onWithdraw(client, minorAmount);
+            }
+        } finally {
+            if (!applied) {
+                aborted();
+            }
+            accountLocks.unlock(stripe);
+        }
+        afterUnlock();
+    }
+
+    /**
+     * Repositories match emails case-insensitively, so two different emails can name one account.
+     */
+    private static void requireDistinct(Client fromClient, Client toClient) {
+        if (fromClient.isSameAccount(toClient) || Objects.equals(fromClient.getEmail(), toClient.getEmail())) {
+            throw new IllegalArgumentException("fromEmail and toEmail cant be equal!");
+        }
+    }
+
+    private void requireAbsent(String email) {
+        try {
+            clientRepository.findByEmail(email);
+        } catch (NoSuchElementException e) {
+            return;
+        }
+        throw new IllegalArgumentException(
+                String.format("Client with following email: %s already exists!", email)
+        );
+    }
+
+    private void aborted() {
+        for (BankEventListener listener : listeners) {
+            listener.onAbort();
+        }
+    }
+
+    private void afterUnlock() {
+        for (BankEventListener listener : listeners) {
+            listener.afterUnlock();
+        }
+    }
+
+    private static void backOff(int attempt) {
+        if (attempt < 64) {
+            Thread.onSpinWait();
+        } else {
+            Thread.yield();
+        }
+    }
+
+    private void lockBoth(int firstStripe, int secondStripe) {
+        if (firstStripe == secondStripe) {
+            accountLocks.lock(firstStripe);
+        } else {
+            accountLocks.lock(Math.min(firstStripe, secondStripe));
+            accountLocks.lock(Math.max(firstStripe, secondStripe));
+        }
+    }
+
+    private void unlockBoth(int firstStripe, int secondStripe) {
+        if (firstStripe == secondStripe) {
+            accountLocks.unlock(firstStripe);
         } else {
-            throw new NoSufficientFundsException("Not enough funds!");
+            accountLocks.unlock(Math.max(firstStripe, secondStripe));
+            accountLocks.unlock(Math.min(firstStripe, secondStripe));
         }
     }
 
@@ -86,6 +474,21 @@ public class BankService {
         }
     }
 
+    private void validateAmount(long minorAmount) {
+        if (minorAmount <= 0) {
+            throw new IllegalArgumentException("Amount must be at least one minor unit!");
+        }
+    }
+
+    public void withdraw(String idempotencyKey, String email, int amount) {
+        if (idempotencyKey == null) {
+            withdraw(email, amount);
+            return;
+        }
+        final List<Object> request = Arrays.asList("withdraw", IdempotencyCache.emailKey(email), amount);
+        idempotencyCache.execute(idempotencyKey, request, () -> withdraw(email, amount));
+    }
+
     public void  withdraw(
             final String email,
             final int amount) {
@@ -97,12 +500,37 @@ public class BankService {
         }
         final String lowerCaseEmail = email.toLowerCase();
 
-        final Client client = findByEmail(lowerCaseEmail);
-        if(amount> client.getBalance()){
-            throw new NoSufficientFundsException("Balance must be higher or equal than amount");
+        final long minorAmount = (long) amount * Money.SCALE;
+        if (ledger != null) {
+            withdrawInLedger(lowerCaseEmail, minorAmount);
+            return;
+        }
+
+        final int stripe = accountLocks.stripeOf(lowerCaseEmail);
+        accountLocks.lock(stripe);
+        boolean applied = false;
+        try {
+            final Client client = clientRepository.findByEmail(lowerCaseEmail);
+            hotAccounts.reconcile(client);
+            final long balance = client.getBalanceMinor();
+            if(minorAmount> balance){
+                throw new NoSufficientFundsException("Balance must be higher or equal than amount");
+            }
+            for (BankEventListener listener : listeners) {
+                listener.beforeWithdraw(client, minorAmount, balance - minorAmount);
+            }
+            client.setBalanceMinor(balance - minorAmount);
+            applied = true;
+            for (BankEventListener listener : listeners) {
+                listener.onWithdraw(client, minorAmount);
+            }
+        } finally {
+            if (!applied) {
+                aborted();
+            }
+            accountLocks.unlock(stripe);
         }
-        final double newBalance = client.getBalance()- amount;
-        client.setBalance(newBalance);
+        afterUnlock();
 
     }
 }
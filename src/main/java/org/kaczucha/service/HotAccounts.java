@@ -0,0 +1,242 @@
+package org.kaczucha.service;
+
+import org.kaczucha.Client;
+
+import java.util.Collections;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Accounts whose incoming credits are split across striped cells instead of being written to the
+ * account under its lock, so many transfers can pay into the same merchant account at once. The
+ * stored balance of a hot account plus its pending cells is always its true balance; the cells
+ * are folded into the stored balance, under the account's lock, only before the balance is
+ * debited, checked or reported.
+ *
+ * <p>Accounts are flagged explicitly or, when detection is enabled, promoted once they receive at
+ * least {@code hotShare} of a sample of recent credits. The sample counts one in 16 credits in a
+ * small count sketch whose counts are halved every 4096 samples, so old traffic fades out. Hot
+ * accounts are matched with {@link Client#isSameAccount(Client)}, so repositories that hand out a
+ * new plain client per lookup never take the striped path. An account stays hot until it is
+ * deleted or {@link BankService#markCold(String)} demotes it; detection never demotes.
+ *
+ * <p>Before an account is deleted or demoted its cells are retired under the account's lock:
+ * credits still in flight are waited for and folded in, and later credits are refused, so their
+ * transfers fall back to the locked path instead of paying into cells nobody reads.
+ */
+public class HotAccounts {
+    private static final int SAMPLE_ONE_IN = 16;
+    private static final int SKETCH_SIZE = 1024;
+    private static final int MIN_SAMPLES = 256;
+    private static final int WINDOW = 4096;
+
+    private final boolean detect;
+    private final double hotShare;
+    private final AtomicIntegerArray sketch = new AtomicIntegerArray(SKETCH_SIZE);
+    private final AtomicInteger windowSamples = new AtomicInteger();
+    private final LongAdder sampledCredits = new LongAdder();
+    private final LongAdder stripedCredits = new LongAdder();
+    private final LongAdder reconciliations = new LongAdder();
+    private final LongAdder promotions = new LongAdder();
+    private volatile Map<AccountKey, Cells> hot = Collections.emptyMap();
+
+    public HotAccounts() {
+        this(false, 1);
+    }
+
+    /**
+     * @param detect   whether accounts are promoted automatically
+     * @param hotShare share of sampled credits, between 0 and 1, that makes an account hot
+     */
+    public HotAccounts(boolean detect, double hotShare) {
+        if (hotShare <= 0 || hotShare > 1) {
+            throw new IllegalArgumentException("Hot share must be in (0, 1]!");
+        }
+        this.detect = detect;
+        this.hotShare = hotShare;
+    }
+
+    public boolean isHot(Client client) {
+        final Map<AccountKey, Cells> current = hot;
+        return !current.isEmpty() && current.containsKey(new AccountKey(client));
+    }
+
+    /**
+     * Whether credits need to be routed through {@link #cellsFor(Client)} at all: detection is on
+     * or some account is hot.
+     */
+    public boolean isEngaged() {
+        return detect || !hot.isEmpty();
+    }
+
+    public int size() {
+        return hot.size();
+    }
+
+    public long getSampledCredits() {
+        return sampledCredits.sum();
+    }
+
+    public long getStripedCredits() {
+        return stripedCredits.sum();
+    }
+
+    public long getReconciliations() {
+        return reconciliations.sum();
+    }
+
+    public long getPromotions() {
+        return promotions.sum();
+    }
+
+    public String report() {
+        return String.format("bank_hot_accounts %d%n", size())
+                + String.format("bank_hot_promotions %d%n", getPromotions())
+                + String.format("bank_hot_sampled_credits %d%n", getSampledCredits())
+                + String.format("bank_hot_striped_credits %d%n", getStripedCredits())
+                + String.format("bank_hot_reconciliations %d%n", getReconciliations());
+    }
+
+    synchronized boolean markHot(Client client) {
+        final AccountKey key = new AccountKey(client);
+        if (hot.containsKey(key)) {
+            return false;
+        }
+        final Map<AccountKey, Cells> extended = new HashMap<>(hot);
+        extended.put(key, new Cells());
+        hot = extended;
+        return true;
+    }
+
+    /**
+     * Refuses further striped credits to {@code client}, waits for those in flight and folds all
+     * pending credits into the stored balance. The caller must hold the account's lock.
+     */
+    void retire(Client client) {
+        final Cells cells = cellsOf(client);
+        if (cells == null) {
+            return;
+        }
+        cells.retired = true;
+        // a credit counts itself started before it checks the flag, so none is missed here
+        while (cells.started.sum() != cells.finished.sum()) {
+            Thread.onSpinWait();
+        }
+        reconcile(client);
+    }
+
+    /**
+     * Accepts striped credits again after {@link #retire(Client)}, when the account stays.
+     */
+    void reopen(Client client) {
+        final Cells cells = cellsOf(client);
+        if (cells != null) {
+            cells.retired = false;
+        }
+    }
+
+    /**
+     * Drops a deleted or demoted account. The caller must hold the account's lock and have
+     * retired it.
+     */
+    synchronized void forget(Client client) {
+        final AccountKey key = new AccountKey(client);
+        if (hot.containsKey(key)) {
+            final Map<AccountKey, Cells> reduced = new HashMap<>(hot);
+            reduced.remove(key);
+            hot = reduced;
+        }
+    }
+
+    /**
+     * Cells to credit {@code client} through, or {@code null} when the credit must be applied to
+     * the account under its lock. Also feeds the credit to hot-account detection.
+     */
+    Cells cellsFor(Client client) {
+        final Cells cells = cellsOf(client);
+        if (cells == null && detect) {
+            sample(client);
+        }
+        return cells;
+    }
+
+    long pending(Client client) {
+        final Cells cells = cellsOf(client);
+        return cells == null ? 0 : cells.pending.sum();
+    }
+
+    /**
+     * Folds pending credits into the stored balance. The caller must hold the account's lock.
+     */
+    void reconcile(Client client) {
+        final Cells cells = cellsOf(client);
+        if (cells != null) {
+            final long pending = cells.pending.sumThenReset();
+            if (pending != 0) {
+                client.setBalanceMinor(client.getBalanceMinor() + pending);
+                reconciliations.increment();
+            }
+        }
+    }
+
+    /**
+     * @return {@code false}, with nothing credited, when the cells have been retired
+     */
+    boolean credit(Cells cells, long amount) {
+        cells.started.increment();
+        try {
+            if (cells.retired) {
+                return false;
+            }
+            cells.pending.add(amount);
+        } finally {
+            cells.finished.increment();
+        }
+        stripedCredits.increment();
+        return true;
+    }
+
+    List<Client> hotClients() {
+        final List<Client> clients = new ArrayList<>();
+        for (AccountKey key : hot.keySet()) {
+            clients.add(key.client());
+        }
+        return clients;
+    }
+
+    private Cells cellsOf(Client client) {
+        final Map<AccountKey, Cells> current = hot;
+        return current.isEmpty() ? null : current.get(new AccountKey(client));
+    }
+
+    private void sample(Client client) {
+        if (ThreadLocalRandom.current().nextInt(SAMPLE_ONE_IN) != 0) {
+            return;
+        }
+        sampledCredits.increment();
+        final int cell = (client.accountHash() * 0x9E3779B9 >>> 16) & (SKETCH_SIZE - 1);
+        final int seen = windowSamples.incrementAndGet();
+        if (sketch.incrementAndGet(cell) >= hotShare * seen && seen >= MIN_SAMPLES && markHot(client)) {
+            promotions.increment();
+        }
+        if (seen >= WINDOW) {
+            windowSamples.set(WINDOW / 2);
+            for (int i = 0; i < SKETCH_SIZE; i++) {
+                sketch.set(i, sketch.get(i) / 2);
+            }
+        }
+    }
+
+    static final class Cells {
+        private final LongAdder pending = new LongAdder();
+        private final LongAdder started = new LongAdder();
+        private final LongAdder finished = new LongAdder();
+        private volatile boolean retired;
+    }
+}
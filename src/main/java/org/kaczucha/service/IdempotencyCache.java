@@ -0,0 +1,177 @@
+package org.kaczucha.service;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers the outcome of recent keyed operations so a retried call returns the original result
+ * instead of running again. Entries are evicted oldest first once there are more than
+ * {@code maxEntries} of them or they are older than {@code timeToLive}. A retry that arrives while
+ * the original call is still running waits for it, and an entry is never evicted before its call
+ * has finished. Only business outcomes are remembered: a call that fails for any other reason may
+ * be retried under the same key.
+ */
+public class IdempotencyCache {
+    private final int maxEntries;
+    private final long timeToLiveNanos;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Entry> insertionOrder = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public IdempotencyCache(int maxEntries, Duration timeToLive) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive!");
+        }
+        this.maxEntries = maxEntries;
+        this.timeToLiveNanos = timeToLive.toNanos();
+    }
+
+    public void execute(String key, Object request, Runnable operation) {
+        final long now = System.nanoTime();
+        evict(now);
+        final Entry entry = new Entry(key, request, now);
+        final Entry existing = entries.putIfAbsent(key, entry);
+        if (existing != null) {
+            if (!existing.request.equals(request)) {
+                throw new IllegalArgumentException(
+                        String.format("Idempotency key %s was already used for a different request!", key));
+            }
+            hits.increment();
+            existing.awaitOutcome();
+            return;
+        }
+        misses.increment();
+        insertionOrder.add(entry);
+        queued.incrementAndGet();
+        evict(now);
+        RuntimeException outcome = null;
+        boolean remembered = false;
+        try {
+            operation.run();
+            remembered = true;
+        } catch (NoSufficientFundsException | NoSuchElementException | IllegalArgumentException e) {
+            outcome = e;
+            remembered = true;
+            throw e;
+        } catch (RuntimeException e) {
+            outcome = e;
+            throw e;
+        } finally {
+            if (!remembered) {
+                entries.remove(key, entry);
+                if (outcome == null) {
+                    outcome = new IllegalStateException(
+                            String.format("Call with idempotency key %s did not finish", key));
+                }
+            }
+            entry.complete(outcome);
+        }
+    }
+
+    /**
+     * Emails are case-insensitive, so requests that name accounts compare them in this form.
+     */
+    public static String emailKey(String email) {
+        return email == null ? null : email.toLowerCase(Locale.ROOT);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public double getHitRate() {
+        final long hitCount = getHits();
+        final long total = hitCount + getMisses();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    public String report() {
+        return String.format("bank_idempotency_hits %d%n", getHits())
+                + String.format("bank_idempotency_misses %d%n", getMisses())
+                + String.format("bank_idempotency_evictions %d%n", getEvictions())
+                + String.format("bank_idempotency_entries %d%n", size());
+    }
+
+    private void evict(long now) {
+        Entry oldest;
+        int running = 0;
+        while ((oldest = insertionOrder.peek()) != null && running < queued.get()
+                && (queued.get() > maxEntries || now - oldest.createdNanos > timeToLiveNanos)) {
+            if (!insertionOrder.remove(oldest)) {
+                continue;
+            }
+            if (!oldest.isDone()) {
+                // a retry must still find it, so it goes to the back until its call finishes
+                insertionOrder.add(oldest);
+                running++;
+                continue;
+            }
+            queued.decrementAndGet();
+            if (entries.remove(oldest.key, oldest)) {
+                evictions.increment();
+            }
+        }
+    }
+
+    private static final class Entry {
+        private final String key;
+        private final Object request;
+        private final long createdNanos;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile RuntimeException failure;
+
+        private Entry(String key, Object request, long createdNanos) {
+            this.key = key;
+            this.request = request;
+            this.createdNanos = createdNanos;
+        }
+
+        private void complete(RuntimeException outcome) {
+            failure = outcome;
+            done.countDown();
+        }
+
+        private boolean isDone() {
+            return done.getCount() == 0;
+        }
+
+        private void awaitOutcome() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    done.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package org.kaczucha.service;
+
+import org.kaczucha.Client;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Mutable per-thread state of an {@link AccountBookReport} being computed by a parallel stream.
+ * Balances are summed as exact long minor units, and email domains are matched in place against
+ * a small open-addressing table so that no string is allocated for a domain already seen.
+ */
+final class ReportAccumulator {
+    private final long[] bounds;
+    private final long[] histogram;
+    private long total;
+    private long accounts;
+    private String[] domains = new String[16];
+    private long[] domainTotals = new long[16];
+    private long[] domainAccounts = new long[16];
+    private int domainCount;
+
+    ReportAccumulator(long[] bounds) {
+        this.bounds = bounds;
+        this.histogram = new long[bounds.length + 1];
+    }
+
+    void add(Client client) {
+        final long balance = client.getBalanceMinor();
+        total = Math.addExact(total, balance);
+        accounts++;
+        final int position = Arrays.binarySearch(bounds, balance);
+        histogram[position >= 0 ? position + 1 : -position - 1]++;
+        final String email = client.getEmail() == null ? "" : client.getEmail();
+        final int start = email.indexOf('@') + 1;
+        final int slot = slotOf(email, start);
+        domainTotals[slot] = Math.addExact(domainTotals[slot], balance);
+        domainAccounts[slot]++;
+    }
+
+    void combine(ReportAccumulator other) {
+        total = Math.addExact(total, other.total);
+        accounts += other.accounts;
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] += other.histogram[i];
+        }
+        for (int i = 0; i < other.domains.length; i++) {
+            if (other.domains[i] != null) {
+                final int slot = slotOf(other.domains[i], 0);
+                domainTotals[slot] = Math.addExact(domainTotals[slot], other.domainTotals[i]);
+                domainAccounts[slot] += other.domainAccounts[i];
+            }
+        }
+    }
+
+    AccountBookReport toReport() {
+        final Map<String, Long> totalsByDomain = new TreeMap<>();
+        final Map<String, Long> accountsByDomain = new TreeMap<>();
+        for (int i = 0; i < domains.length; i++) {
+            if (domains[i] != null) {
+                totalsByDomain.put(domains[i], domainTotals[i]);
+                accountsByDomain.put(domains[i], domainAccounts[i]);
+            }
+        }
+        return new AccountBookReport(total, accounts, bounds.clone(), histogram.clone(),
+                totalsByDomain, accountsByDomain);
+    }
+
+    private int slotOf(String text, int start) {
+        final int length = text.length() - start;
+        final int mask = domains.length - 1;
+        int slot = hash(text, start) & mask;
+        while (domains[slot] != null) {
+            final String domain = domains[slot];
+            if (domain.length() == length && (text.regionMatches(false, start, domain, 0, length)
+                    || text.regionMatches(true, start, domain, 0, length))) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if ((domainCount + 1) * 2 > domains.length) {
+            grow();
+            return slotOf(text, start);
+        }
+        domains[slot] = text.substring(start).toLowerCase(Locale.ROOT);
+        domainCount++;
+        return slot;
+    }
+
+    private void grow() {
+        final String[] oldDomains = domains;
+        final long[] oldTotals = domainTotals;
+        final long[] oldAccounts = domainAccounts;
+        domains = new String[oldDomains.length * 2];
+        domainTotals = new long[domains.length];
+        domainAccounts = new long[domains.length];
+        domainCount = 0;
+        for (int i = 0; i < oldDomains.length; i++) {
+            if (oldDomains[i] != null) {
+                final int slot = slotOf(oldDomains[i], 0);
+                domainTotals[slot] = oldTotals[i];
+                domainAccounts[slot] = oldAccounts[i];
+            }
+        }
+    }
+
+    private static int hash(String text, int start) {
+        int hash = 0;
+        for (int i = start; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            final int folded = c < 128
+                    ? (c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c)
+                    : Character.toLowerCase(Character.toUpperCase(c));
+            hash = 31 * hash + folded;
+        }
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,81 @@
+package org.kaczucha.service;
+
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Power-of-two array of account locks chosen by a case-insensitive email hash. Each stripe also
+ * carries a version that is odd while the stripe is locked for writing and bumped again on unlock,
+ * so readers can validate a lock-free read seqlock-style through {@link #tryOptimisticRead(int)}.
+ */
+public class StripedAccountLocks implements AccountLocks {
+    private static final int VERSION_STRIDE = 8;
+
+    private final ReentrantLock[] locks;
+    private final AtomicLongArray versions;
+    private final int mask;
+
+    public StripedAccountLocks() {
+        this(Runtime.getRuntime().availableProcessors() * 64);
+    }
+
+    public StripedAccountLocks(int stripes) {
+        if (stripes <= 0) {
+            throw new IllegalArgumentException("Number of stripes must be positive!");
+        }
+        final int size = Integer.highestOneBit(stripes - 1) << 1;
+        this.locks = new ReentrantLock[Math.max(size, 1)];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        this.versions = new AtomicLongArray(locks.length * VERSION_STRIDE);
+        this.mask = locks.length - 1;
+    }
+
+    @Override
+    public int stripeOf(String email) {
+        if (email == null) {
+            return 0;
+        }
+        int hash = 0;
+        for (int i = 0; i < email.length(); i++) {
+            hash = 31 * hash + Character.toLowerCase(email.charAt(i));
+        }
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    @Override
+    public void lock(int stripe) {
+        final ReentrantLock lock = locks[stripe];
+        lock.lock();
+        if (lock.getHoldCount() == 1) {
+            versions.incrementAndGet(stripe * VERSION_STRIDE);
+        }
+    }
+
+    @Override
+    public void unlock(int stripe) {
+        final ReentrantLock lock = locks[stripe];
+        if (lock.getHoldCount() == 1) {
+            versions.incrementAndGet(stripe * VERSION_STRIDE);
+        }
+        lock.unlock();
+    }
+
+    @Override
+    public long tryOptimisticRead(int stripe) {
+        final long version = versions.get(stripe * VERSION_STRIDE);
+        return (version & 1) == 0 ? version + 2 : 0;
+    }
+
+    @Override
+    public boolean validate(int stripe, long stamp) {
+        VarHandle.acquireFence();
+        return stamp != 0 && versions.get(stripe * VERSION_STRIDE) + 2 == stamp;
+    }
+
+    public int stripes() {
+        return locks.length;
+    }
+}
@@ -0,0 +1,348 @@
+package org.kaczucha.service;
+
+import org.kaczucha.Client;
+import org.kaczucha.Money;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+/**
+ * Executes a list of transfers as one batch: every distinct email is resolved once, valid
+ * transfers are grouped into components of accounts they connect, and each component is netted
+ * and applied atomically under its account locks. Components share no accounts, so they run in
+ * parallel when the batch is large enough. A component whose netted balances would go negative
+ * is not rejected whole; its items are retried one by one in request order instead. Listeners see
+ * the items one at a time, with the balances each of them leaves.
+ */
+final class TransferBatch {
+    private static final int PARALLEL_THRESHOLD = 1024;
+
+    private final List<TransferRequest> requests;
+    private final AccountLocks accountLocks;
+    private final BankEventListener[] listeners;
+    private final HotAccounts hotAccounts;
+    private final TransferResult[] results;
+    private final int[] fromAccount;
+    private final int[] toAccount;
+    private final long[] amount;
+    private final List<Client> accounts = new ArrayList<>();
+    private final List<String> emails = new ArrayList<>();
+    private final Map<AccountKey, Integer> accountIds = new HashMap<>();
+    private long[] net;
+    private int[] parent;
+    private Function<String, Client> finder;
+
+    TransferBatch(List<TransferRequest> requests, AccountLocks accountLocks, BankEventListener[] listeners,
+                  HotAccounts hotAccounts) {
+        this.requests = requests;
+        this.accountLocks = accountLocks;
+        this.listeners = listeners;
+        this.hotAccounts = hotAccounts;
+        this.results = new TransferResult[requests.size()];
+        this.fromAccount = new int[requests.size()];
+        this.toAccount = new int[requests.size()];
+        this.amount = new long[requests.size()];
+    }
+
+    List<TransferResult> execute(Function<String, Client> finder) {
+        this.finder = finder;
+        resolve(finder);
+        parent = new int[accounts.size()];
+        for (int i = 0; i < parent.length; i++) {
+            parent[i] = i;
+        }
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] == null) {
+                union(fromAccount[i], toAccount[i]);
+            }
+        }
+        net = new long[accounts.size()];
+        final int[][] components = components();
+        if (requests.size() >= PARALLEL_THRESHOLD && components.length > 1) {
+            IntStream.range(0, components.length).parallel().forEach(c -> {
+                apply(components[c]);
+                afterUnlock();
+            });
+        } else {
+            for (int[] component : components) {
+                apply(component);
+            }
+            afterUnlock();
+        }
+        return Arrays.asList(results);
+    }
+
+    private void resolve(Function<String, Client> finder) {
+        final Map<String, Client> resolved = new HashMap<>();
+        for (int i = 0; i < results.length; i++) {
+            final TransferRequest request = requests.get(i);
+            final String fromEmail = request.getFromEmail();
+            final String toEmail = request.getToEmail();
+            if (!Double.isFinite(request.getAmount())) {
+                results[i] = new TransferResult(request, TransferResult.Status.INVALID, "Amount must be a finite number!");
+                continue;
+            }
+            final long minorAmount;
+            try {
+                minorAmount = Money.toMinor(request.getAmount());
+            } catch (IllegalArgumentException e) {
+                results[i] = new TransferResult(request, TransferResult.Status.INVALID, e.getMessage());
+                continue;
+            }
+            if (request.getAmount() <= 0 || minorAmount <= 0) {
+                results[i] = new TransferResult(request, TransferResult.Status.INVALID, "Amount must be positive!");
+                continue;
+            }
+            if (fromEmail == null || toEmail == null) {
+                results[i] = new TransferResult(request, TransferResult.Status.INVALID, "Email cant be null");
+                continue;
+            }
+            final Client fromClient = lookup(resolved, finder, fromEmail);
+            final Client toClient = lookup(resolved, finder, toEmail);
+            if (fromClient == null || toClient == null) {
+                results[i] = new TransferResult(request, TransferResult.Status.NOT_FOUND, String.format(
+                        "Client with following email: %s not found!", fromClient == null ? fromEmail : toEmail));
+                continue;
+            }
+            if (fromClient.isSameAccount(toClient)) {
+                results[i] = new TransferResult(request, TransferResult.Status.INVALID,
+                        "fromEmail and toEmail cant be equal!");
+                continue;
+            }
+            fromAccount[i] = accountId(fromClient, fromEmail);
+            toAccount[i] = accountId(toClient, toEmail);
+            amount[i] = minorAmount;
+        }
+    }
+
+    private int[][] components() {
+        final int[] componentOfRoot = new int[accounts.size()];
+        Arrays.fill(componentOfRoot, -1);
+        int componentCount = 0;
+        final int[] itemCounts = new int[accounts.size()];
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] == null) {
+                final int root = find(fromAccount[i]);
+                if (componentOfRoot[root] < 0) {
+                    componentOfRoot[root] = componentCount++;
+                }
+                itemCounts[componentOfRoot[root]]++;
+            }
+        }
+        final int[][] components = new int[componentCount][];
+        for (int c = 0; c < components.length; c++) {
+            components[c] = new int[itemCounts[c]];
+        }
+        final int[] filled = new int[components.length];
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] == null) {
+                final int c = componentOfRoot[find(fromAccount[i])];
+                components[c][filled[c]++] = i;
+            }
+        }
+        return components;
+    }
+
+    private void apply(int[] items) {
+        final int[] stripes = stripesOf(touchedAccounts(items));
+        for (int stripe : stripes) {
+            accountLocks.lock(stripe);
+        }
+        try {
+            final int[] live = resolveUnderLocks(items);
+            final int[] touched = touchedAccounts(live);
+            for (int account : touched) {
+                hotAccounts.reconcile(accounts.get(account));
+            }
+            if (nettedBalancesValid(live, touched)) {
+                if (listeners.length == 0) {
+                    for (int account : touched) {
+                        final Client client = accounts.get(account);
+                        client.setBalanceMinor(client.getBalanceMinor() + net[account]);
+                    }
+                    for (int item : live) {
+                        results[item] = new TransferResult(requests.get(item), TransferResult.Status.COMPLETED, null);
+                    }
+                } else {
+                    for (int item : live) {
+                        transfer(item);
+                    }
+                }
+                return;
+            }
+            // the netted component is overdrawn, so each item gets its own chance, in request order
+            for (int item : live) {
+                final long fromBalance = accounts.get(fromAccount[item]).getBalanceMinor();
+                final long toBalance = accounts.get(toAccount[item]).getBalanceMinor();
+                if (fromBalance < amount[item]) {
+                    results[item] = new TransferResult(requests.get(item),
+                            TransferResult.Status.INSUFFICIENT_FUNDS, "Not enough funds!");
+                } else if (toBalance > Long.MAX_VALUE - amount[item]) {
+                    results[item] = new TransferResult(requests.get(item),
+                            TransferResult.Status.INVALID, "Balance would overflow!");
+                } else {
+                    transfer(item);
+                }
+            }
+        } finally {
+            for (int i = stripes.length - 1; i >= 0; i--) {
+                accountLocks.unlock(stripes[i]);
+            }
+        }
+    }
+
+    /**
+     * Looks every account of the component up again now that it is locked, and reports the items
+     * of accounts deleted since {@link #resolve} as not found.
+     *
+     * @return the items whose accounts still exist
+     */
+    private int[] resolveUnderLocks(int[] items) {
+        final int[] live = new int[items.length];
+        int liveCount = 0;
+        for (int item : items) {
+            final Client fromClient = relookup(fromAccount[item]);
+            final Client toClient = relookup(toAccount[item]);
+            if (fromClient == null || toClient == null) {
+                results[item] = new TransferResult(requests.get(item), TransferResult.Status.NOT_FOUND, String.format(
+                        "Client with following email: %s not found!",
+                        fromClient == null ? emails.get(fromAccount[item]) : emails.get(toAccount[item])));
+            } else {
+                live[liveCount++] = item;
+            }
+        }
+        return Arrays.copyOf(live, liveCount);
+    }
+
+    private Client relookup(int account) {
+        try {
+            final Client client = finder.apply(emails.get(account));
+            accounts.set(account, client);
+            return client;
+        } catch (NoSuchElementException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Nets the items into {@code net} and checks that every account stays non-negative once all of
+     * them are applied, and that no balance overflows on the way, before anything is changed.
+     */
+    private boolean nettedBalancesValid(int[] items, int[] touched) {
+        for (int account : touched) {
+            net[account] = 0;
+        }
+        try {
+            for (int item : items) {
+                net[fromAccount[item]] = Math.subtractExact(net[fromAccount[item]], amount[item]);
+                net[toAccount[item]] = Math.addExact(net[toAccount[item]], amount[item]);
+                if (listeners.length > 0) {
+                    // listeners see every intermediate balance, so those must not overflow either
+                    Math.addExact(accounts.get(fromAccount[item]).getBalanceMinor(), net[fromAccount[item]]);
+                    Math.addExact(accounts.get(toAccount[item]).getBalanceMinor(), net[toAccount[item]]);
+                }
+            }
+            for (int account : touched) {
+                if (Math.addExact(accounts.get(account).getBalanceMinor(), net[account]) < 0) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (ArithmeticException e) {
+            return false;
+        }
+    }
+
+    private void transfer(int item) {
+        final Client fromClient = accounts.get(fromAccount[item]);
+        final Client toClient = accounts.get(toAccount[item]);
+        final long fromBalance = fromClient.getBalanceMinor() - amount[item];
+        final long toBalance = toClient.getBalanceMinor() + amount[item];
+        boolean applied = false;
+        try {
+            for (BankEventListener listener : listeners) {
+                listener.beforeTransfer(fromClient, toClient, amount[item], fromBalance, toBalance);
+            }
+            fromClient.setBalanceMinor(fromBalance);
+            toClient.setBalanceMinor(toBalance);
+            applied = true;
+        } finally {
+            if (!applied) {
+                for (BankEventListener listener : listeners) {
+                    listener.onAbort();
+                }
+            }
+        }
+        results[item] = new TransferResult(requests.get(item), TransferResult.Status.COMPLETED, null);
+        for (BankEventListener listener : listeners) {
+            listener.onTransfer(fromClient, toClient, amount[item]);
+        }
+    }
+
+    private void afterUnlock() {
+        for (BankEventListener listener : listeners) {
+            listener.afterUnlock();
+        }
+    }
+
+    private int[] touchedAccounts(int[] items) {
+        final int[] touched = new int[items.length * 2];
+        for (int i = 0; i < items.length; i++) {
+            touched[2 * i] = fromAccount[items[i]];
+            touched[2 * i + 1] = toAccount[items[i]];
+        }
+        return Arrays.stream(touched).distinct().toArray();
+    }
+
+    private int[] stripesOf(int[] touched) {
+        final int[] stripes = new int[touched.length];
+        for (int i = 0; i < touched.length; i++) {
+            stripes[i] = accountLocks.stripeOf(emails.get(touched[i]));
+        }
+        return Arrays.stream(stripes).sorted().distinct().toArray();
+    }
+
+    private int accountId(Client client, String email) {
+        return accountIds.computeIfAbsent(new AccountKey(client), key -> {
+            accounts.add(client);
+            emails.add(email);
+            return accounts.size() - 1;
+        });
+    }
+
+    private int find(int account) {
+        while (parent[account] != account) {
+            parent[account] = parent[parent[account]];
+            account = parent[account];
+        }
+        return account;
+    }
+
+    private void union(int first, int second) {
+        final int firstRoot = find(first);
+        final int secondRoot = find(second);
+        if (firstRoot != secondRoot) {
+            parent[firstRoot] = secondRoot;
+        }
+    }
+
+    private static Client lookup(Map<String, Client> resolved, Function<String, Client> finder, String email) {
+        if (resolved.containsKey(email)) {
+            return resolved.get(email);
+        }
+        Client client;
+        try {
+            client = finder.apply(email);
+        } catch (NoSuchElementException e) {
+            client = null;
+        }
+        resolved.put(email, client);
+        return client;
+    }
+}
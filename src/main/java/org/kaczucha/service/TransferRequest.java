@@ -0,0 +1,34 @@
+package org.kaczucha.service;
+
+public class TransferRequest {
+    private final String fromEmail;
+    private final String toEmail;
+    private final double amount;
+
+    public TransferRequest(String fromEmail, String toEmail, double amount) {
+        this.fromEmail = fromEmail;
+        this.toEmail = toEmail;
+        this.amount = amount;
+    }
+
+    public String getFromEmail() {
+        return fromEmail;
+    }
+
+    public String getToEmail() {
+        return toEmail;
+    }
+
+    public double getAmount() {
+        return amount;
+    }
+
+    @Override
+    public String toString() {
+        return "TransferRequest{" +
+                "fromEmail='" + fromEmail + '\'' +
+                ", toEmail='" + toEmail + '\'' +
+                ", amount=" + amount +
+                '}';
+    }
+}
@@ -0,0 +1,45 @@
+package org.kaczucha.service;
+
+public class TransferResult {
+    public enum Status {
+        COMPLETED,
+        INVALID,
+        NOT_FOUND,
+        INSUFFICIENT_FUNDS
+    }
+
+    private final TransferRequest request;
+    private final Status status;
+    private final String message;
+
+    public TransferResult(TransferRequest request, Status status, String message) {
+        this.request = request;
+        this.status = status;
+        this.message = message;
+    }
+
+    public TransferRequest getRequest() {
+        return request;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public boolean isCompleted() {
+        return status == Status.COMPLETED;
+    }
+
+    @Override
+    public String toString() {
+        return "TransferResult{" +
+                "request=" + request +
+                ", status=" + status +
+                ", message='" + message + '\'' +
+                '}';
+    }
+}
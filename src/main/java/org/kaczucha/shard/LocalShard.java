@@ -0,0 +1,222 @@
+package org.kaczucha.shard;
+
+import org.kaczucha.Client;
+import org.kaczucha.repository.AccountTable;
+import org.kaczucha.repository.ClientRepository;
+import org.kaczucha.service.NoSufficientFundsException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * In-process shard that owns its repository and a single executor thread. Every operation runs on
+ * that thread, so the shard's accounts need no locks and prepared transfers are plain map entries.
+ */
+public class LocalShard implements Shard {
+    private final ClientRepository repository;
+    private final ExecutorService executor;
+    private final Map<Long, Prepared> prepared = new HashMap<>();
+
+    public LocalShard(String name) {
+        this(name, new AccountTable());
+    }
+
+    public LocalShard(String name, ClientRepository repository) {
+        this.repository = repository;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void save(Client client) {
+        run(() -> {
+            repository.save(client);
+            return null;
+        });
+    }
+
+    @Override
+    public Client findByEmail(String email) {
+        return run(() -> copyOf(repository.findByEmail(email)));
+    }
+
+    /**
+     * Deletes the account stored under {@code client}'s email. The client is usually a detached
+     * copy, so the stored account is looked up again and is only deleted while its balance is still
+     * the one the caller saw; a delete that removes nothing fails instead of passing silently.
+     */
+    @Override
+    public void delete(Client client) {
+        final String email = client.getEmail();
+        if (email == null) {
+            throw new IllegalArgumentException("It is not possible to delete client with empty email");
+        }
+        run(() -> {
+            if (hasPendingTransfer(email)) {
+                throw new IllegalStateException(
+                        String.format("Client with following email: %s has a pending transfer!", email));
+            }
+            final Client storedClient = repository.findByEmail(email);
+            if (storedClient.getBalanceMinor() != client.getBalanceMinor()) {
+                throw new IllegalStateException(
+                        String.format("Client with following email: %s changed since it was read!", email));
+            }
+            repository.delete(storedClient);
+            if (contains(email)) {
+                throw new IllegalStateException(
+                        String.format("Client with following email: %s was not deleted!", email));
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public void forEach(Consumer<? super Client> action) {
+        final List<Client> clients = run(() -> {
+            final List<Client> copies = new ArrayList<>();
+            repository.forEach(client -> copies.add(copyOf(client)));
+            return copies;
+        });
+        clients.forEach(action);
+    }
+
+    @Override
+    public void withdraw(String email, long amount) {
+        run(() -> {
+            debit(repository.findByEmail(email), amount);
+            return null;
+        });
+    }
+
+    @Override
+    public void transfer(String fromEmail, String toEmail, long amount) {
+        run(() -> {
+            final Client fromClient = repository.findByEmail(fromEmail);
+            final Client toClient = repository.findByEmail(toEmail);
+            debit(fromClient, amount);
+            toClient.setBalanceMinor(toClient.getBalanceMinor() + amount);
+            return null;
+        });
+    }
+
+    @Override
+    public void prepareDebit(long transferId, String email, long amount) {
+        run(() -> {
+            requireNew(transferId);
+            final Client client = repository.findByEmail(email);
+            debit(client, amount);
+            prepared.put(transferId, new Prepared(client.getEmail(), -amount));
+            return null;
+        });
+    }
+
+    @Override
+    public void prepareCredit(long transferId, String email, long amount) {
+        run(() -> {
+            requireNew(transferId);
+            final Client client = repository.findByEmail(email);
+            prepared.put(transferId, new Prepared(client.getEmail(), amount));
+            return null;
+        });
+    }
+
+    @Override
+    public void commit(long transferId) {
+        run(() -> {
+            final Prepared transfer = prepared.remove(transferId);
+            if (transfer != null && transfer.amount > 0) {
+                final Client client = repository.findByEmail(transfer.email);
+                client.setBalanceMinor(client.getBalanceMinor() + transfer.amount);
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public void abort(long transferId) {
+        run(() -> {
+            final Prepared transfer = prepared.remove(transferId);
+            if (transfer != null && transfer.amount < 0) {
+                final Client client = repository.findByEmail(transfer.email);
+                client.setBalanceMinor(client.getBalanceMinor() - transfer.amount);
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    private void requireNew(long transferId) {
+        if (prepared.containsKey(transferId)) {
+            throw new IllegalArgumentException(String.format("Transfer %d is already prepared!", transferId));
+        }
+    }
+
+    private boolean contains(String email) {
+        try {
+            repository.findByEmail(email);
+            return true;
+        } catch (NoSuchElementException e) {
+            return false;
+        }
+    }
+
+    private boolean hasPendingTransfer(String email) {
+        for (Prepared transfer : prepared.values()) {
+            if (transfer.email.equalsIgnoreCase(email)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void debit(Client client, long amount) {
+        final long balance = client.getBalanceMinor();
+        if (amount > balance) {
+            throw new NoSufficientFundsException("Not enough funds!");
+        }
+        client.setBalanceMinor(balance - amount);
+    }
+
+    private static Client copyOf(Client client) {
+        return Client.ofMinorUnits(client.getName(), client.getEmail(), client.getBalanceMinor());
+    }
+
+    private <T> T run(Callable<T> task) {
+        try {
+            return executor.submit(task).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the shard", e);
+        }
+    }
+
+    private static final class Prepared {
+        private final String email;
+        private final long amount;
+
+        private Prepared(String email, long amount) {
+            this.email = email;
+            this.amount = amount;
+        }
+    }
+}
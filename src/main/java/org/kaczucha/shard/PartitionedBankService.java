@@ -0,0 +1,137 @@
+package org.kaczucha.shard;
+
+import org.kaczucha.Client;
+import org.kaczucha.Money;
+import org.kaczucha.service.AccountBookReport;
+import org.kaczucha.service.BankService;
+import org.kaczucha.service.IdempotencyCache;
+import org.kaczucha.service.NoSufficientFundsException;
+import org.kaczucha.service.TransferRequest;
+import org.kaczucha.service.TransferResult;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * The operations of {@link BankService} over a {@link PartitionedClientRepository}. Shards
+ * serialize their own operations, so no account locks are taken here; balance changes are
+ * delegated to the repository, which runs the two-phase protocol for transfers that span shards.
+ * <p>
+ * It is not a {@link BankService}: listeners such as a journal have to see every change while the
+ * account is locked, and only the shards hold their accounts, so there is nothing to attach them
+ * to. Saving, finding, deleting and reporting go through a plain {@link BankService} over the
+ * repository, which only ever handles copies of the shards' accounts.
+ */
+public class PartitionedBankService {
+    private static final int DEFAULT_IDEMPOTENCY_KEYS = 100_000;
+    private static final Duration DEFAULT_IDEMPOTENCY_TTL = Duration.ofHours(1);
+
+    private final PartitionedClientRepository repository;
+    private final BankService accounts;
+    private final IdempotencyCache idempotencyCache;
+
+    public PartitionedBankService(PartitionedClientRepository repository) {
+        this(repository, new IdempotencyCache(DEFAULT_IDEMPOTENCY_KEYS, DEFAULT_IDEMPOTENCY_TTL));
+    }
+
+    public PartitionedBankService(PartitionedClientRepository repository, IdempotencyCache idempotencyCache) {
+        this.repository = repository;
+        this.accounts = new BankService(repository);
+        this.idempotencyCache = idempotencyCache;
+    }
+
+    public IdempotencyCache getIdempotencyCache() {
+        return idempotencyCache;
+    }
+
+    public void save(Client client) {
+        accounts.save(client);
+    }
+
+    public void delete(Client client) {
+        accounts.delete(client);
+    }
+
+    public Client findByEmail(String email) {
+        return accounts.findByEmail(email);
+    }
+
+    public long balanceOf(String email) {
+        return accounts.balanceOf(email);
+    }
+
+    public AccountBookReport report(long... histogramBounds) {
+        return accounts.report(histogramBounds);
+    }
+
+    public void transfer(String idempotencyKey, String fromEmail, String toEmail, double amount) {
+        if (idempotencyKey == null) {
+            transfer(fromEmail, toEmail, amount);
+            return;
+        }
+        final List<Object> request = Arrays.asList("transfer",
+                IdempotencyCache.emailKey(fromEmail), IdempotencyCache.emailKey(toEmail), amount);
+        idempotencyCache.execute(idempotencyKey, request, () -> transfer(fromEmail, toEmail, amount));
+    }
+
+    public void transfer(String fromEmail, String toEmail, double amount) {
+        if (amount <= 0) {
+            throw new IllegalArgumentException("Amount must be positive!");
+        }
+        final long minorAmount = Money.toMinor(amount);
+        if (minorAmount <= 0) {
+            throw new IllegalArgumentException("Amount must be at least one minor unit!");
+        }
+        if (fromEmail.equals(toEmail)) {
+            throw new IllegalArgumentException("fromEmail and toEmail cant be equal!");
+        }
+        repository.transfer(fromEmail, toEmail, minorAmount);
+    }
+
+    public List<TransferResult> transferAll(List<TransferRequest> requests) {
+        final List<TransferResult> results = new ArrayList<>(requests.size());
+        for (TransferRequest request : requests) {
+            results.add(transferOne(request));
+        }
+        return results;
+    }
+
+    public void withdraw(String idempotencyKey, String email, int amount) {
+        if (idempotencyKey == null) {
+            withdraw(email, amount);
+            return;
+        }
+        final List<Object> request = Arrays.asList("withdraw", IdempotencyCache.emailKey(email), amount);
+        idempotencyCache.execute(idempotencyKey, request, () -> withdraw(email, amount));
+    }
+
+    public void withdraw(String email, int amount) {
+        if (amount <= 0) {
+            throw new IllegalArgumentException("Amount have to be positive");
+        }
+        if (Objects.isNull(email)) {
+            throw new IllegalArgumentException("Email cant be null");
+        }
+        repository.withdraw(email.toLowerCase(), (long) amount * Money.SCALE);
+    }
+
+    private TransferResult transferOne(TransferRequest request) {
+        if (request.getFromEmail() == null || request.getToEmail() == null) {
+            return new TransferResult(request, TransferResult.Status.INVALID, "Email cant be null");
+        }
+        try {
+            transfer(request.getFromEmail(), request.getToEmail(), request.getAmount());
+            return new TransferResult(request, TransferResult.Status.COMPLETED, null);
+        } catch (NoSuchElementException e) {
+            return new TransferResult(request, TransferResult.Status.NOT_FOUND, e.getMessage());
+        } catch (NoSufficientFundsException e) {
+            return new TransferResult(request, TransferResult.Status.INSUFFICIENT_FUNDS, e.getMessage());
+        } catch (IllegalArgumentException e) {
+            return new TransferResult(request, TransferResult.Status.INVALID, e.getMessage());
+        }
+    }
+}
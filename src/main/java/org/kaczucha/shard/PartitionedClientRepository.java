@@ -0,0 +1,198 @@
+package org.kaczucha.shard;
+
+import org.kaczucha.Client;
+import org.kaczucha.repository.ClientRepository;
+
+import java.io.Closeable;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Routes accounts to shards by a case-insensitive hash of their email. Clients returned by
+ * {@link #findByEmail(String)} are detached copies, so balances change only through
+ * {@link #transfer(String, String, long)} and {@link #withdraw(String, long)}. A transfer within
+ * one shard is a single shard call; a transfer across shards is logged in a {@link TransferLog},
+ * prepares the credit, then the debit, and commits both only when both prepares succeeded, after
+ * logging the decision. Any failed prepare aborts both shards, since a prepare whose reply was lost
+ * may still have been applied.
+ * <p>
+ * Commit and abort are idempotent on every shard, so they are retried a few times; a transfer that
+ * still cannot be settled stays in doubt in the log and is finished by {@link #recover()}, which
+ * runs again whenever a coordinator reopens the log. A transfer whose commit was logged counts as
+ * done even if a shard has not applied it yet.
+ */
+public class PartitionedClientRepository implements ClientRepository, Closeable {
+    private static final int SETTLE_ATTEMPTS = 3;
+    private static final long SETTLE_BACKOFF_MILLIS = 10;
+
+    private final Shard[] shards;
+    private final TransferLog transferLog;
+
+    /**
+     * Keeps the transfer log in memory, so transfers in doubt when the coordinator stops are not
+     * recovered; use it only with shards that do not outlive the coordinator.
+     */
+    public PartitionedClientRepository(List<? extends Shard> shards) {
+        this(shards, TransferLog.inMemory());
+    }
+
+    /**
+     * Opens the transfer log at {@code transferLogFile}, forced on every cross-shard transfer, and
+     * settles the transfers it left in doubt.
+     */
+    public PartitionedClientRepository(List<? extends Shard> shards, Path transferLogFile) {
+        this(shards, TransferLog.open(transferLogFile));
+        recover();
+    }
+
+    private PartitionedClientRepository(List<? extends Shard> shards, TransferLog transferLog) {
+        if (shards.isEmpty()) {
+            transferLog.close();
+            throw new IllegalArgumentException("At least one shard is required!");
+        }
+        this.shards = shards.toArray(new Shard[0]);
+        this.transferLog = transferLog;
+    }
+
+    public static PartitionedClientRepository inProcess(int shardCount) {
+        final List<Shard> shards = new ArrayList<>();
+        for (int i = 0; i < shardCount; i++) {
+            shards.add(new LocalShard("shard-" + i));
+        }
+        return new PartitionedClientRepository(shards);
+    }
+
+    @Override
+    public void save(Client client) {
+        if (client.getEmail() == null) {
+            throw new IllegalArgumentException("Email cant be null");
+        }
+        shardFor(client.getEmail()).save(client);
+    }
+
+    @Override
+    public Client findByEmail(String email) {
+        if (email == null) {
+            throw new IllegalArgumentException("Email cant be null");
+        }
+        return shardFor(email).findByEmail(email);
+    }
+
+    @Override
+    public void delete(Client client) {
+        if (client.getEmail() == null) {
+            return;
+        }
+        shardFor(client.getEmail()).delete(client);
+    }
+
+    @Override
+    public void forEach(Consumer<? super Client> action) {
+        for (Shard shard : shards) {
+            shard.forEach(action);
+        }
+    }
+
+    public void withdraw(String email, long amount) {
+        shardFor(email).withdraw(email, amount);
+    }
+
+    public void transfer(String fromEmail, String toEmail, long amount) {
+        final Shard fromShard = shardFor(fromEmail);
+        final Shard toShard = shardFor(toEmail);
+        if (fromShard == toShard) {
+            fromShard.transfer(fromEmail, toEmail, amount);
+            return;
+        }
+        final TransferLog.Entry transfer = transferLog.begin(shardOf(fromEmail), shardOf(toEmail));
+        try {
+            try {
+                toShard.prepareCredit(transfer.id, toEmail, amount);
+                fromShard.prepareDebit(transfer.id, fromEmail, amount);
+            } catch (RuntimeException e) {
+                settle(transfer);
+                throw e;
+            }
+            transferLog.commit(transfer);
+            settle(transfer);
+        } finally {
+            transferLog.release(transfer);
+        }
+    }
+
+    /**
+     * Commits or aborts, as logged, every transfer left in doubt.
+     *
+     * @return the number of transfers still in doubt because a shard could not be reached
+     */
+    public int recover() {
+        int unsettled = 0;
+        for (TransferLog.Entry transfer : transferLog.inDoubt()) {
+            if (!settle(transfer)) {
+                unsettled++;
+            }
+        }
+        return unsettled;
+    }
+
+    public int shardOf(String email) {
+        int hash = 0;
+        for (int i = 0; i < email.length(); i++) {
+            hash = 31 * hash + Character.toLowerCase(Character.toUpperCase(email.charAt(i)));
+        }
+        hash *= 0x9E3779B9;
+        return Math.floorMod(hash ^ (hash >>> 16), shards.length);
+    }
+
+    public int shardCount() {
+        return shards.length;
+    }
+
+    @Override
+    public void close() {
+        for (Shard shard : shards) {
+            shard.close();
+        }
+        transferLog.close();
+    }
+
+    private Shard shardFor(String email) {
+        return shards[shardOf(email)];
+    }
+
+    private boolean settle(TransferLog.Entry transfer) {
+        final boolean fromSettled = settleOn(shards[transfer.fromShard], transfer);
+        final boolean toSettled = settleOn(shards[transfer.toShard], transfer);
+        if (fromSettled && toSettled) {
+            transferLog.end(transfer);
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean settleOn(Shard shard, TransferLog.Entry transfer) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                if (transfer.committed) {
+                    shard.commit(transfer.id);
+                } else {
+                    shard.abort(transfer.id);
+                }
+                return true;
+            } catch (RuntimeException e) {
+                if (attempt == SETTLE_ATTEMPTS) {
+                    return false;
+                }
+            }
+            try {
+                TimeUnit.MILLISECONDS.sleep(SETTLE_BACKOFF_MILLIS * attempt);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+}
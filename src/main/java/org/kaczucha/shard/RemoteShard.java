@@ -0,0 +1,215 @@
+package org.kaczucha.shard;
+
+import org.kaczucha.Client;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+
+/**
+ * {@link Shard} hosted by a {@link ShardServer}, usually in another process on the same machine.
+ * Calls borrow one of a fixed number of connections, so up to that many calls are in flight at
+ * once. A connection that fails is replaced on its next use.
+ */
+public class RemoteShard implements Shard {
+    private final InetAddress host;
+    private final int port;
+    private final BlockingQueue<Connection> idle;
+
+    public RemoteShard(InetAddress host, int port, int connections) {
+        if (connections <= 0) {
+            throw new IllegalArgumentException("Number of connections must be positive!");
+        }
+        this.host = host;
+        this.port = port;
+        this.idle = new ArrayBlockingQueue<>(connections);
+        for (int i = 0; i < connections; i++) {
+            idle.add(new Connection());
+        }
+    }
+
+    public static RemoteShard onLoopback(int port, int connections) {
+        return new RemoteShard(InetAddress.getLoopbackAddress(), port, connections);
+    }
+
+    @Override
+    public void save(Client client) {
+        call(connection -> {
+            connection.output.writeByte(ShardProtocol.SAVE);
+            ShardServer.writeClient(connection.output, client);
+            connection.awaitOk();
+            return null;
+        });
+    }
+
+    @Override
+    public Client findByEmail(String email) {
+        return call(connection -> {
+            connection.output.writeByte(ShardProtocol.FIND);
+            connection.output.writeUTF(email);
+            connection.awaitOk();
+            return ShardServer.readClient(connection.input);
+        });
+    }
+
+    @Override
+    public void delete(Client client) {
+        call(connection -> {
+            connection.output.writeByte(ShardProtocol.DELETE);
+            ShardServer.writeClient(connection.output, client);
+            connection.awaitOk();
+            return null;
+        });
+    }
+
+    @Override
+    public void forEach(Consumer<? super Client> action) {
+        final List<Client> clients = call(connection -> {
+            connection.output.writeByte(ShardProtocol.FOR_EACH);
+            connection.awaitOk();
+            final int count = connection.input.readInt();
+            final List<Client> received = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                received.add(ShardServer.readClient(connection.input));
+            }
+            return received;
+        });
+        clients.forEach(action);
+    }
+
+    @Override
+    public void withdraw(String email, long amount) {
+        call(connection -> {
+            connection.output.writeByte(ShardProtocol.WITHDRAW);
+            connection.output.writeUTF(email);
+            connection.output.writeLong(amount);
+            connection.awaitOk();
+            return null;
+        });
+    }
+
+    @Override
+    public void transfer(String fromEmail, String toEmail, long amount) {
+        call(connection -> {
+            connection.output.writeByte(ShardProtocol.TRANSFER);
+            connection.output.writeUTF(fromEmail);
+            connection.output.writeUTF(toEmail);
+            connection.output.writeLong(amount);
+            connection.awaitOk();
+            return null;
+        });
+    }
+
+    @Override
+    public void prepareDebit(long transferId, String email, long amount) {
+        prepare(ShardProtocol.PREPARE_DEBIT, transferId, email, amount);
+    }
+
+    @Override
+    public void prepareCredit(long transferId, String email, long amount) {
+        prepare(ShardProtocol.PREPARE_CREDIT, transferId, email, amount);
+    }
+
+    @Override
+    public void commit(long transferId) {
+        settle(ShardProtocol.COMMIT, transferId);
+    }
+
+    @Override
+    public void abort(long transferId) {
+        settle(ShardProtocol.ABORT, transferId);
+    }
+
+    @Override
+    public void close() {
+        for (Connection connection : idle) {
+            connection.disconnect();
+        }
+    }
+
+    private void prepare(byte opcode, long transferId, String email, long amount) {
+        call(connection -> {
+            connection.output.writeByte(opcode);
+            connection.output.writeLong(transferId);
+            connection.output.writeUTF(email);
+            connection.output.writeLong(amount);
+            connection.awaitOk();
+            return null;
+        });
+    }
+
+    private void settle(byte opcode, long transferId) {
+        call(connection -> {
+            connection.output.writeByte(opcode);
+            connection.output.writeLong(transferId);
+            connection.awaitOk();
+            return null;
+        });
+    }
+
+    private <T> T call(Exchange<T> exchange) {
+        final Connection connection;
+        try {
+            connection = idle.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a shard connection", e);
+        }
+        try {
+            connection.connectIfNeeded();
+            return exchange.run(connection);
+        } catch (IOException e) {
+            connection.disconnect();
+            throw new UncheckedIOException(e);
+        } finally {
+            idle.add(connection);
+        }
+    }
+
+    private interface Exchange<T> {
+        T run(Connection connection) throws IOException;
+    }
+
+    private final class Connection {
+        private Socket socket;
+        private DataInputStream input;
+        private DataOutputStream output;
+
+        private void connectIfNeeded() throws IOException {
+            if (socket != null) {
+                return;
+            }
+            socket = new Socket(host, port);
+            socket.setTcpNoDelay(true);
+            input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        private void awaitOk() throws IOException {
+            output.flush();
+            ShardProtocol.readStatus(input);
+        }
+
+        private void disconnect() {
+            if (socket == null) {
+                return;
+            }
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            } finally {
+                socket = null;
+            }
+        }
+    }
+}
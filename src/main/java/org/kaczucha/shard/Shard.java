@@ -0,0 +1,39 @@
+package org.kaczucha.shard;
+
+import org.kaczucha.Client;
+
+import java.io.Closeable;
+import java.util.function.Consumer;
+
+/**
+ * One partition of a {@link PartitionedClientRepository}. Amounts and balances are in minor units
+ * and clients handed out are detached copies. Transfers between shards use the two-phase
+ * operations: {@code prepareDebit} holds the funds, {@code prepareCredit} pins the receiving
+ * account, and {@code commit} or {@code abort} settles both sides under the same transfer id.
+ * Settling is idempotent: committing or aborting a transfer the shard does not hold, because it
+ * was never prepared there or is already settled, does nothing, so a coordinator may retry it.
+ */
+public interface Shard extends Closeable {
+    void save(Client client);
+
+    Client findByEmail(String email);
+
+    void delete(Client client);
+
+    void forEach(Consumer<? super Client> action);
+
+    void withdraw(String email, long amount);
+
+    void transfer(String fromEmail, String toEmail, long amount);
+
+    void prepareDebit(long transferId, String email, long amount);
+
+    void prepareCredit(long transferId, String email, long amount);
+
+    void commit(long transferId);
+
+    void abort(long transferId);
+
+    @Override
+    void close();
+}
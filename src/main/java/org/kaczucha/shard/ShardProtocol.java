@@ -0,0 +1,78 @@
+package org.kaczucha.shard;
+
+import org.kaczucha.service.NoSufficientFundsException;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.NoSuchElementException;
+
+/**
+ * Wire format between {@link RemoteShard} and {@link ShardServer}: an opcode byte followed by the
+ * operation's fields, answered by a status byte followed by the result or an error message.
+ */
+final class ShardProtocol {
+    static final byte SAVE = 1;
+    static final byte FIND = 2;
+    static final byte DELETE = 3;
+    static final byte FOR_EACH = 4;
+    static final byte WITHDRAW = 5;
+    static final byte TRANSFER = 6;
+    static final byte PREPARE_DEBIT = 7;
+    static final byte PREPARE_CREDIT = 8;
+    static final byte COMMIT = 9;
+    static final byte ABORT = 10;
+
+    static final byte OK = 0;
+    static final byte NOT_FOUND = 1;
+    static final byte INSUFFICIENT_FUNDS = 2;
+    static final byte INVALID_ARGUMENT = 3;
+    static final byte ILLEGAL_STATE = 4;
+
+    private ShardProtocol() {
+    }
+
+    static void writeError(DataOutput output, RuntimeException error) throws IOException {
+        final byte status;
+        if (error instanceof NoSuchElementException) {
+            status = NOT_FOUND;
+        } else if (error instanceof NoSufficientFundsException) {
+            status = INSUFFICIENT_FUNDS;
+        } else if (error instanceof IllegalArgumentException) {
+            status = INVALID_ARGUMENT;
+        } else {
+            status = ILLEGAL_STATE;
+        }
+        output.writeByte(status);
+        output.writeUTF(error.getMessage() == null ? error.getClass().getSimpleName() : error.getMessage());
+    }
+
+    static void readStatus(DataInput input) throws IOException {
+        final byte status = input.readByte();
+        if (status == OK) {
+            return;
+        }
+        final String message = input.readUTF();
+        switch (status) {
+            case NOT_FOUND:
+                throw new NoSuchElementException(message);
+            case INSUFFICIENT_FUNDS:
+                throw new NoSufficientFundsException(message);
+            case INVALID_ARGUMENT:
+                throw new IllegalArgumentException(message);
+            default:
+                throw new IllegalStateException(message);
+        }
+    }
+
+    static void writeNullable(DataOutput output, String value) throws IOException {
+        output.writeBoolean(value != null);
+        if (value != null) {
+            output.writeUTF(value);
+        }
+    }
+
+    static String readNullable(DataInput input) throws IOException {
+        return input.readBoolean() ? input.readUTF() : null;
+    }
+}
@@ -0,0 +1,186 @@
+package org.kaczucha.shard;
+
+import org.kaczucha.Client;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves a {@link Shard} to {@link RemoteShard} coordinators over the loopback interface, one
+ * thread per connection. Run {@link #main(String[])} to host a shard in its own process.
+ */
+public class ShardServer implements Closeable {
+    private final Shard shard;
+    private final ServerSocket serverSocket;
+    private final ExecutorService connectionExecutor;
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed;
+
+    public ShardServer(Shard shard, int port) {
+        this.shard = shard;
+        try {
+            this.serverSocket = new ServerSocket();
+            serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.connectionExecutor = Executors.newCachedThreadPool(runnable -> {
+            final Thread thread = new Thread(runnable, "shard-connection");
+            thread.setDaemon(true);
+            return thread;
+        });
+        connectionExecutor.execute(this::acceptLoop);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        final int port = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+        final ShardServer server = new ShardServer(new LocalShard("shard"), port);
+        final CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            stopped.countDown();
+        }));
+        System.out.println("Shard listening on port " + server.getPort());
+        stopped.await();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            serverSocket.close();
+            for (Socket connection : connections) {
+                connection.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            connectionExecutor.shutdown();
+            shard.close();
+        }
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            try {
+                final Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                connections.add(socket);
+                connectionExecutor.execute(() -> serve(socket));
+            } catch (IOException e) {
+                if (!closed) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+            while (true) {
+                handle(input.readByte(), input, output);
+                output.flush();
+            }
+        } catch (EOFException | SocketException e) {
+            // coordinator disconnected or the server is closing
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            connections.remove(socket);
+        }
+    }
+
+    private void handle(byte opcode, DataInputStream input, DataOutputStream output) throws IOException {
+        try {
+            switch (opcode) {
+                case ShardProtocol.SAVE:
+                    shard.save(readClient(input));
+                    output.writeByte(ShardProtocol.OK);
+                    break;
+                case ShardProtocol.FIND: {
+                    final Client client = shard.findByEmail(input.readUTF());
+                    output.writeByte(ShardProtocol.OK);
+                    writeClient(output, client);
+                    break;
+                }
+                case ShardProtocol.DELETE:
+                    shard.delete(readClient(input));
+                    output.writeByte(ShardProtocol.OK);
+                    break;
+                case ShardProtocol.FOR_EACH: {
+                    final List<Client> clients = new ArrayList<>();
+                    shard.forEach(clients::add);
+                    output.writeByte(ShardProtocol.OK);
+                    output.writeInt(clients.size());
+                    for (Client client : clients) {
+                        writeClient(output, client);
+                    }
+                    break;
+                }
+                case ShardProtocol.WITHDRAW:
+                    shard.withdraw(input.readUTF(), input.readLong());
+                    output.writeByte(ShardProtocol.OK);
+                    break;
+                case ShardProtocol.TRANSFER:
+                    shard.transfer(input.readUTF(), input.readUTF(), input.readLong());
+                    output.writeByte(ShardProtocol.OK);
+                    break;
+                case ShardProtocol.PREPARE_DEBIT:
+                    shard.prepareDebit(input.readLong(), input.readUTF(), input.readLong());
+                    output.writeByte(ShardProtocol.OK);
+                    break;
+                case ShardProtocol.PREPARE_CREDIT:
+                    shard.prepareCredit(input.readLong(), input.readUTF(), input.readLong());
+                    output.writeByte(ShardProtocol.OK);
+                    break;
+                case ShardProtocol.COMMIT:
+                    shard.commit(input.readLong());
+                    output.writeByte(ShardProtocol.OK);
+                    break;
+                case ShardProtocol.ABORT:
+                    shard.abort(input.readLong());
+                    output.writeByte(ShardProtocol.OK);
+                    break;
+                default:
+                    throw new IOException(String.format("Unknown opcode: %d", opcode));
+            }
+        } catch (RuntimeException e) {
+            ShardProtocol.writeError(output, e);
+        }
+    }
+
+    static Client readClient(DataInputStream input) throws IOException {
+        final String name = ShardProtocol.readNullable(input);
+        final String email = ShardProtocol.readNullable(input);
+        return Client.ofMinorUnits(name, email, input.readLong());
+    }
+
+    static void writeClient(DataOutputStream output, Client client) throws IOException {
+        ShardProtocol.writeNullable(output, client.getName());
+        ShardProtocol.writeNullable(output, client.getEmail());
+        output.writeLong(client.getBalanceMinor());
+    }
+}
@@ -0,0 +1,239 @@
+package org.kaczucha.shard;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.CRC32;
+
+/**
+ * Coordinator's log of cross-shard transfers. A transfer is logged when it begins, before either
+ * shard prepares it, and again when it is decided to commit; both records are forced to disk, so
+ * after a crash every transfer a shard may hold is known, and only one with a commit record may
+ * be committed. Transfers that are still open once reopened are in doubt and have to be settled.
+ * <p>
+ * Transfer ids are a random coordinator prefix in the high half and a counter in the low half;
+ * both are resumed from the log, so ids are not reused across restarts. The shard indexes refer to
+ * the shard list of the coordinator, which has to be reopened with the same shards in the same
+ * order. The file is rewritten with only the open transfers when it is opened.
+ */
+final class TransferLog implements Closeable {
+    private static final int MAGIC = 0x54524C47;
+    private static final byte BEGIN = 1;
+    private static final byte COMMIT = 2;
+    private static final byte END = 3;
+    private static final byte LAST_ID = 4;
+    private static final int RECORD_BYTES = 1 + Long.BYTES + 2 * Integer.BYTES + Integer.BYTES;
+
+    private final FileChannel channel;
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES);
+    private final CRC32 crc = new CRC32();
+    private final Map<Long, Entry> open = new LinkedHashMap<>();
+    private long lastId;
+
+    private TransferLog(FileChannel channel, long lastId) {
+        this.channel = channel;
+        this.lastId = lastId;
+    }
+
+    /**
+     * Log kept in memory only, for shards that do not outlive the coordinator either.
+     */
+    static TransferLog inMemory() {
+        return new TransferLog(null, newPrefix());
+    }
+
+    static TransferLog open(Path file) {
+        try {
+            long lastId = newPrefix();
+            final Map<Long, Entry> recovered = new LinkedHashMap<>();
+            if (Files.exists(file) && Files.size(file) > 0) {
+                lastId = read(file, recovered);
+            }
+            final Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+            final FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            final TransferLog log = new TransferLog(channel, lastId);
+            try {
+                channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(MAGIC).flip());
+                log.write(LAST_ID, lastId, -1, -1);
+                for (Entry entry : recovered.values()) {
+                    log.write(BEGIN, entry.id, entry.fromShard, entry.toShard);
+                    if (entry.committed) {
+                        log.write(COMMIT, entry.id, -1, -1);
+                    }
+                    log.open.put(entry.id, entry);
+                }
+                channel.force(true);
+                Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+            return log;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    synchronized Entry begin(int fromShard, int toShard) {
+        if ((int) (lastId + 1) == 0) {
+            lastId = newPrefix();
+        }
+        final Entry transfer = new Entry(++lastId, fromShard, toShard);
+        append(BEGIN, transfer.id, fromShard, toShard, true);
+        transfer.active = true;
+        open.put(transfer.id, transfer);
+        return transfer;
+    }
+
+    synchronized void commit(Entry transfer) {
+        append(COMMIT, transfer.id, -1, -1, true);
+        transfer.committed = true;
+    }
+
+    /**
+     * Not forced: losing the record only means the transfer is settled once more after a restart.
+     */
+    synchronized void end(Entry transfer) {
+        append(END, transfer.id, -1, -1, false);
+        open.remove(transfer.id);
+    }
+
+    /**
+     * Hands a transfer its coordinator could not settle over to {@link #inDoubt()}.
+     */
+    synchronized void release(Entry transfer) {
+        transfer.active = false;
+    }
+
+    /**
+     * @return copies of the open transfers no coordinator thread is still working on
+     */
+    synchronized List<Entry> inDoubt() {
+        final List<Entry> entries = new ArrayList<>();
+        for (Entry entry : open.values()) {
+            if (!entry.active) {
+                entries.add(entry.copy());
+            }
+        }
+        return entries;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void append(byte type, long id, int fromShard, int toShard, boolean force) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            write(type, id, fromShard, toShard);
+            if (force) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void write(byte type, long id, int fromShard, int toShard) throws IOException {
+        record.clear();
+        record.put(type).putLong(id).putInt(fromShard).putInt(toShard);
+        crc.reset();
+        crc.update(record.array(), 0, record.position());
+        record.putInt((int) crc.getValue()).flip();
+        while (record.hasRemaining()) {
+            channel.write(record);
+        }
+    }
+
+    /**
+     * @return the last id handed out; a torn or corrupt tail ends the log
+     */
+    private static long read(Path file, Map<Long, Entry> recovered) throws IOException {
+        final ByteBuffer content = ByteBuffer.wrap(Files.readAllBytes(file));
+        if (content.remaining() < Integer.BYTES || content.getInt() != MAGIC) {
+            throw new IllegalStateException(String.format("%s is not a transfer log", file));
+        }
+        final CRC32 crc = new CRC32();
+        long lastId = newPrefix();
+        while (content.remaining() >= RECORD_BYTES) {
+            final int start = content.position();
+            final byte type = content.get();
+            final long id = content.getLong();
+            final int fromShard = content.getInt();
+            final int toShard = content.getInt();
+            crc.reset();
+            crc.update(content.array(), start, RECORD_BYTES - Integer.BYTES);
+            if ((int) crc.getValue() != content.getInt()) {
+                break;
+            }
+            switch (type) {
+                case LAST_ID:
+                    lastId = id;
+                    break;
+                case BEGIN:
+                    lastId = id;
+                    recovered.put(id, new Entry(id, fromShard, toShard));
+                    break;
+                case COMMIT: {
+                    final Entry entry = recovered.get(id);
+                    if (entry != null) {
+                        entry.committed = true;
+                    }
+                    break;
+                }
+                case END:
+                    recovered.remove(id);
+                    break;
+                default:
+                    return lastId;
+            }
+        }
+        return lastId;
+    }
+
+    private static long newPrefix() {
+        return (long) ThreadLocalRandom.current().nextInt() << 32;
+    }
+
+    static final class Entry {
+        final long id;
+        final int fromShard;
+        final int toShard;
+        boolean committed;
+        private boolean active;
+
+        private Entry(long id, int fromShard, int toShard) {
+            this.id = id;
+            this.fromShard = fromShard;
+            this.toShard = toShard;
+        }
+
+        private Entry copy() {
+            final Entry copy = new Entry(id, fromShard, toShard);
+            copy.committed = committed;
+            return copy;
+        }
+    }
+}
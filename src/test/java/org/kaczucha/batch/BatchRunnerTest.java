@@ -0,0 +1,62 @@
+package org.kaczucha.batch;
+
+import org.junit.jupiter.api.Test;
+import org.kaczucha.repository.IndexedClientRepository;
+import org.kaczucha.service.BankService;
+import org.kaczucha.service.StripedAccountLocks;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class BatchRunnerTest {
+    private final BankService service = new BankService(new IndexedClientRepository(), new StripedAccountLocks());
+
+    @Test
+    public void run_script_appliesCommandsInOrder() {
+        //given
+        final String script = "# opening balances\n"
+                + "add Alek a@a.pl 1000\n"
+                + "add Bartek b@b.pl 500\n"
+                + "\n"
+                + "transfer a@a.pl b@b.pl 100.5\n"
+                + "withdraw b@b.pl 600\n"
+                + "withdraw b@b.pl 1000\n"
+                + "find b@b.pl\n"
+                + "deposit a@a.pl 5\n"
+                + "find\n";
+        final StringWriter results = new StringWriter();
+        //when
+        final BatchReport report = new BatchRunner(service, 2).run(new StringReader(script), results);
+        //then
+        assertEquals(String.join(System.lineSeparator(),
+                "OK",
+                "OK",
+                "OK",
+                "OK",
+                "ERROR 7: Balance must be higher or equal than amount",
+                "Client{name='Bartek', email='b@b.pl', balance=0.5}",
+                "ERROR 9: Unknown command: deposit",
+                "ERROR 10: Command find takes 1 arguments, got 0",
+                ""), results.toString());
+        assertEquals(8, report.getCommands());
+        assertEquals(3, report.getFailed());
+    }
+
+    @Test
+    public void run_manyCommands_allApplied() {
+        //given
+        final StringBuilder script = new StringBuilder("add Alek a@a.pl 10000\nadd Bartek b@b.pl 0\n");
+        for (int i = 0; i < 10_000; i++) {
+            script.append("transfer a@a.pl b@b.pl 1\n");
+        }
+        //when
+        final BatchReport report = new BatchRunner(service).run(new StringReader(script.toString()), new StringWriter());
+        //then
+        assertEquals(10_002, report.getCommands());
+        assertEquals(0, report.getFailed());
+        assertEquals(10_000, service.findByEmail("b@b.pl").getBalance());
+        assertEquals(0, service.findByEmail("a@a.pl").getBalance());
+    }
+}
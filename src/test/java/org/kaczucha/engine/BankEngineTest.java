@@ -0,0 +1,144 @@
+package org.kaczucha.engine;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.kaczucha.Client;
+import org.kaczucha.journal.Journal;
+import org.kaczucha.journal.JournalReader;
+import org.kaczucha.repository.AccountTable;
+import org.kaczucha.repository.IndexedClientRepository;
+import org.kaczucha.service.NoSufficientFundsException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BankEngineTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    public void commands_failures_completeFuturesExceptionally() throws Exception {
+        //given
+        try (BankEngine engine = new BankEngine(new IndexedClientRepository(), 8)) {
+            engine.save(new Client("Alek", "a@a.pl", 100)).get();
+            //when
+            final CompletableFuture<Void> overdraft = engine.withdraw("a@a.pl", 1000);
+            final CompletableFuture<Client> missing = engine.findByEmail("x@x.pl");
+            //then
+            assertEquals(NoSufficientFundsException.class,
+                    assertThrows(ExecutionException.class, overdraft::get).getCause().getClass());
+            assertEquals(NoSuchElementException.class,
+                    assertThrows(ExecutionException.class, missing::get).getCause().getClass());
+            assertEquals(new Client("Alek", "a@a.pl", 100), engine.findByEmail("a@a.pl").get());
+        }
+    }
+
+    @Test
+    public void transfer_manyProducers_totalBalancePreserved() throws Exception {
+        //given
+        final int accounts = 8;
+        final AccountTable repository = new AccountTable();
+        for (int i = 0; i < accounts; i++) {
+            repository.save(new Client("Client" + i, "client" + i + "@bank.pl", 100));
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        final List<Future<?>> producers = new ArrayList<>();
+        try (BankEngine engine = new BankEngine(repository, 1024)) {
+            //when
+            for (int p = 0; p < 8; p++) {
+                producers.add(executor.submit(() -> {
+                    final ThreadLocalRandom random = ThreadLocalRandom.current();
+                    final List<CompletableFuture<Void>> pending = new ArrayList<>();
+                    for (int i = 0; i < 20_000; i++) {
+                        final int from = random.nextInt(accounts);
+                        final int to = (from + 1 + random.nextInt(accounts - 1)) % accounts;
+                        pending.add(engine.transfer("client" + from + "@bank.pl", "client" + to + "@bank.pl", 1)
+                                .exceptionally(error -> null));
+                    }
+                    CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).join();
+                    return null;
+                }));
+            }
+            for (Future<?> producer : producers) {
+                producer.get();
+            }
+        }
+        executor.shutdown();
+        //then
+        final long[] total = {0};
+        repository.forEach(client -> total[0] += client.getBalanceMinor());
+        assertEquals(accounts * 100 * 100L, total[0]);
+    }
+
+    @Test
+    public void withdraw_journalAttached_syncedOncePerBatch() throws Exception {
+        //given
+        final Path journalFile = directory.resolve("bank.journal");
+        final IndexedClientRepository repository = new IndexedClientRepository();
+        final int withdrawals = 5_000;
+        final long batches;
+        try (Journal journal = new Journal(journalFile, Integer.MAX_VALUE, Duration.ofSeconds(10), false);
+             BankEngine engine = new BankEngine(repository, 1024, journal)) {
+            engine.save(new Client("Alek", "a@a.pl", withdrawals)).get();
+            final List<CompletableFuture<Void>> pending = new ArrayList<>();
+            //when
+            for (int i = 0; i < withdrawals; i++) {
+                pending.add(engine.withdraw("a@a.pl", 1));
+            }
+            CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).get();
+            //then
+            assertEquals(withdrawals + 1, journal.durableSequence());
+            assertTrue(journal.commits() <= engine.batches());
+            batches = engine.batches();
+        }
+        assertTrue(batches <= withdrawals + 1);
+        final IndexedClientRepository recovered = new IndexedClientRepository();
+        JournalReader.replay(journalFile, recovered);
+        assertEquals(0, recovered.findByEmail("a@a.pl").getBalanceMinor());
+    }
+
+    @Test
+    public void save_journalSyncFails_reportedAsAppliedButNotDurable() throws Exception {
+        //given
+        final IndexedClientRepository repository = new IndexedClientRepository();
+        try (Journal journal = new Journal(directory.resolve("bank.journal"), Integer.MAX_VALUE, Duration.ofSeconds(10), false) {
+            @Override
+            public void sync() {
+                throw new UncheckedIOException(new IOException("disk full"));
+            }
+        };
+             BankEngine engine = new BankEngine(repository, 8, journal)) {
+            //when
+            final CompletableFuture<Void> save = engine.save(new Client("Alek", "a@a.pl", 100));
+            //then
+            assertEquals(NotDurableException.class,
+                    assertThrows(ExecutionException.class, save::get).getCause().getClass());
+            assertEquals(new Client("Alek", "a@a.pl", 100), engine.findByEmail("a@a.pl").get());
+        }
+    }
+
+    @Test
+    public void constructor_journalWaitingForEachRecord_rejected() {
+        //given
+        try (Journal journal = new Journal(directory.resolve("bank.journal"), 1, Duration.ZERO, true)) {
+            //when
+            //then
+            assertThrows(IllegalArgumentException.class, () -> new BankEngine(new IndexedClientRepository(), 8, journal));
+        }
+    }
+}
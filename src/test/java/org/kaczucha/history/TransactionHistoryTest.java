@@ -0,0 +1,119 @@
+package org.kaczucha.history;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.kaczucha.Client;
+import org.kaczucha.repository.AccountTable;
+import org.kaczucha.service.BankService;
+import org.kaczucha.service.NoSufficientFundsException;
+
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TransactionHistoryTest {
+    private static final Instant NOW = Instant.parse("2026-01-01T12:00:00Z");
+
+    @TempDir
+    Path directory;
+
+    private BankService service;
+    private TransactionHistory history;
+
+    @BeforeEach
+    public void setup() {
+        service = new BankService(new AccountTable());
+        history = new TransactionHistory(directory.resolve("history.bin"), Clock.fixed(NOW, ZoneOffset.UTC));
+        service.addListener(history);
+        service.save(new Client("Alek", "a@a.pl", 1000));
+        service.save(new Client("Bartek", "b@b.pl", 500));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        history.close();
+    }
+
+    @Test
+    public void recent_transferAndWithdraw_recordedNewestFirst() {
+        //given
+        service.transfer("a@a.pl", "b@b.pl", 100);
+        service.withdraw("a@a.pl", 50);
+        //when
+        final List<Transaction> aHistory = history.recent("A@a.pl", 0, 10);
+        final List<Transaction> bHistory = history.recent("b@b.pl", 0, 10);
+        //then
+        assertEquals(List.of(
+                new Transaction(NOW, null, -5000, 85000),
+                new Transaction(NOW, "b@b.pl", -10000, 90000)), aHistory);
+        assertEquals(List.of(new Transaction(NOW, "a@a.pl", 10000, 60000)), bHistory);
+    }
+
+    @Test
+    public void recent_failedWithdraw_notRecorded() {
+        //given
+        //when
+        Assertions.assertThrows(NoSufficientFundsException.class, () -> service.withdraw("b@b.pl", 600));
+        //then
+        assertEquals(0, history.count("b@b.pl"));
+        assertTrue(history.recent("b@b.pl", 0, 10).isEmpty());
+    }
+
+    @Test
+    public void recent_pagesOverManySegments_returnsConsecutivePages() {
+        //given
+        for (int i = 1; i <= 300; i++) {
+            service.transfer("a@a.pl", "b@b.pl", 0.01 * i);
+        }
+        //when
+        final List<Transaction> first = history.recent("b@b.pl", 0, 100);
+        final List<Transaction> second = history.recent("b@b.pl", 100, 100);
+        final List<Transaction> last = history.recent("b@b.pl", 250, 100);
+        //then
+        assertEquals(300, history.count("b@b.pl"));
+        assertEquals(100, first.size());
+        assertEquals(300, first.get(0).getAmountMinor());
+        assertEquals(201, first.get(99).getAmountMinor());
+        assertEquals(200, second.get(0).getAmountMinor());
+        assertEquals(50, last.size());
+        assertEquals(1, last.get(49).getAmountMinor());
+        assertEquals(50001, last.get(49).getBalanceAfterMinor());
+    }
+
+    @Test
+    public void rollToDisk_oldSegments_stillReadable() {
+        //given
+        for (int i = 1; i <= 1000; i++) {
+            service.transfer("a@a.pl", "b@b.pl", 0.01);
+        }
+        final List<Transaction> before = history.recent("a@a.pl", 0, 1000);
+        //when
+        final int rolled = history.rollToDisk(1);
+        //then
+        assertEquals(12, rolled);
+        assertEquals(before, history.recent("a@a.pl", 0, 1000));
+        assertTrue(history.archivedBytes() < history.archivedRawBytes());
+        assertEquals(0, history.rollToDisk(1));
+    }
+
+    @Test
+    public void recent_deletedAccount_throwsNoSuchElementException() {
+        //given
+        service.transfer("a@a.pl", "b@b.pl", 100);
+        service.withdraw("b@b.pl", 600);
+        //when
+        service.delete(service.findByEmail("b@b.pl"));
+        //then
+        Assertions.assertThrows(NoSuchElementException.class, () -> history.recent("b@b.pl", 0, 10));
+        assertEquals("b@b.pl", history.recent("a@a.pl", 0, 10).get(0).getCounterparty());
+    }
+}
@@ -0,0 +1,117 @@
+package org.kaczucha.index;
+
+import org.junit.jupiter.api.Test;
+import org.kaczucha.Client;
+import org.kaczucha.repository.AccountTable;
+import org.kaczucha.repository.ClientRepository;
+import org.kaczucha.service.BankService;
+import org.kaczucha.service.NoSufficientFundsException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class BalanceIndexTest {
+    private static final int ACCOUNTS = 2000;
+
+    @Test
+    public void queries_afterRandomOperations_matchFullSort() {
+        //given
+        final AccountTable repository = new AccountTable();
+        final BankService service = new BankService(repository);
+        final Random random = new Random(7);
+        for (int i = 0; i < ACCOUNTS / 2; i++) {
+            service.save(new Client("Client" + i, email(i), random.nextInt(1000)));
+        }
+        final BalanceIndex index = BalanceIndex.attach(service, repository);
+        for (int i = ACCOUNTS / 2; i < ACCOUNTS; i++) {
+            service.save(new Client("Client" + i, email(i), random.nextInt(1000)));
+        }
+        //when
+        for (int i = 0; i < 20_000; i++) {
+            final int from = random.nextInt(ACCOUNTS);
+            final int to = (from + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+            try {
+                if (random.nextBoolean()) {
+                    service.transfer(email(from), email(to), 1 + random.nextInt(300));
+                } else {
+                    service.withdraw(email(from), 1 + random.nextInt(50));
+                }
+            } catch (NoSufficientFundsException ignored) {
+            }
+        }
+        service.withdraw(email(0), (int) service.findByEmail(email(0)).getBalance());
+        service.delete(service.findByEmail(email(0)));
+        //then
+        final List<Client> sorted = new ArrayList<>();
+        repository.forEach(client -> sorted.add(
+                Client.ofMinorUnits(client.getName(), client.getEmail(), client.getBalanceMinor())));
+        sorted.sort(Comparator.comparingLong(Client::getBalanceMinor).thenComparing(Client::getEmail));
+        final List<Client> descending = new ArrayList<>(sorted);
+        Collections.reverse(descending);
+        assertEquals(ACCOUNTS - 1, index.size());
+        assertEquals(descending.subList(0, 1000), index.top(1000));
+        assertEquals(descending, index.top(ACCOUNTS));
+        final List<Client> between = sorted.stream()
+                .filter(client -> client.getBalanceMinor() >= 20_000 && client.getBalanceMinor() < 60_000)
+                .collect(Collectors.toList());
+        assertEquals(between, index.range(20_000, 60_000));
+        assertEquals(between, index.stream(20_000, 60_000).collect(Collectors.toList()));
+        assertEquals(between.size(), index.countBetween(20_000, 60_000));
+        assertEquals(sorted.stream().filter(client -> client.getBalanceMinor() < 50_000).count(),
+                index.countBelow(50_000));
+        final Client richest = descending.get(0);
+        assertEquals(1, index.rankOf(richest.getEmail()));
+        final Client median = descending.get(ACCOUNTS / 2);
+        assertEquals(ACCOUNTS / 2 + 1, index.rankOf(median.getEmail().toUpperCase()));
+    }
+
+    @Test
+    public void attach_accountDeletedWhileLoading_notAdded() {
+        //given
+        final AccountTable repository = new AccountTable();
+        final BankService service = new BankService(repository);
+        service.save(new Client("Alek", "a@a.pl", 0));
+        service.save(new Client("Bartek", "b@b.pl", 10));
+        final ClientRepository loadedLate = new ClientRepository() {
+            @Override
+            public void save(Client client) {
+                repository.save(client);
+            }
+
+            @Override
+            public Client findByEmail(String email) {
+                return repository.findByEmail(email);
+            }
+
+            @Override
+            public void delete(Client client) {
+                repository.delete(client);
+            }
+
+            @Override
+            public void forEach(Consumer<? super Client> action) {
+                final List<Client> loaded = new ArrayList<>();
+                repository.forEach(client -> loaded.add(
+                        Client.ofMinorUnits(client.getName(), client.getEmail(), client.getBalanceMinor())));
+                service.delete(service.findByEmail("a@a.pl"));
+                loaded.forEach(action);
+            }
+        };
+        //when
+        final BalanceIndex index = BalanceIndex.attach(service, loadedLate);
+        //then
+        assertEquals(1, index.size());
+        assertEquals(List.of(new Client("Bartek", "b@b.pl", 10)), index.top(10));
+    }
+
+    private static String email(int i) {
+        return "client" + i + "@bank.pl";
+    }
+}
@@ -0,0 +1,176 @@
+package org.kaczucha.journal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.kaczucha.Client;
+import org.kaczucha.repository.AccountTable;
+import org.kaczucha.repository.IndexedClientRepository;
+import org.kaczucha.service.BankService;
+import org.kaczucha.service.StripedAccountLocks;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class JournalTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    public void replay_afterOperations_rebuildsRepository() {
+        //given
+        final Path file = directory.resolve("bank.journal");
+        try (Journal journal = new Journal(file, 4, Duration.ofMillis(1))) {
+            final BankService service = new BankService(new IndexedClientRepository());
+            service.addListener(journal);
+            service.save(new Client("Alek", "a@a.pl", 1000));
+            service.save(new Client("Bartek", "b@b.pl", 500));
+            service.save(new Client("Celina", "c@c.pl", 0));
+            service.transfer("a@a.pl", "b@b.pl", 100.5);
+            service.withdraw("b@b.pl", 50);
+            service.delete(new Client("Celina", "c@c.pl", 0));
+        }
+        final IndexedClientRepository recovered = new IndexedClientRepository();
+        //when
+        final long lastSequence = JournalReader.replay(file, recovered);
+        //then
+        assertEquals(6, lastSequence);
+        assertEquals(new Client("Alek", "a@a.pl", 899.5), recovered.findByEmail("a@a.pl"));
+        assertEquals(new Client("Bartek", "b@b.pl", 550.5), recovered.findByEmail("b@b.pl"));
+        assertThrows(NoSuchElementException.class, () -> recovered.findByEmail("c@c.pl"));
+    }
+
+    @Test
+    public void replay_deleteFromTableThatClearsSlots_deletedClientNotRecovered() {
+        //given
+        final Path file = directory.resolve("bank.journal");
+        try (Journal journal = new Journal(file, 1, Duration.ZERO)) {
+            final BankService service = new BankService(new AccountTable());
+            service.addListener(journal);
+            service.save(new Client("Alek", "a@a.pl", 0));
+            service.save(new Client("Bartek", "b@b.pl", 0));
+            service.delete(new Client("Alek", "a@a.pl", 0));
+        }
+        final AccountTable recovered = new AccountTable();
+        //when
+        final long lastSequence = JournalReader.replay(file, recovered);
+        //then
+        assertEquals(3, lastSequence);
+        assertEquals(1, recovered.size());
+        assertThrows(NoSuchElementException.class, () -> recovered.findByEmail("a@a.pl"));
+    }
+
+    @Test
+    public void replay_saveRejectedByRepository_clientNotRecoveredAndAppliedSequenceAdvances() {
+        //given
+        final Path file = directory.resolve("bank.journal");
+        final IndexedClientRepository repository = new IndexedClientRepository() {
+            @Override
+            public void save(Client client) {
+                if (client.getName().isEmpty()) {
+                    throw new IllegalArgumentException("Name cant be empty");
+                }
+                super.save(client);
+            }
+        };
+        try (Journal journal = new Journal(file, 1, Duration.ZERO)) {
+            final BankService service = new BankService(repository);
+            service.addListener(journal);
+            assertThrows(IllegalArgumentException.class, () -> service.save(new Client("", "a@a.pl", 50)));
+            assertEquals(journal.lastSequence(), journal.appliedSequence());
+            service.save(new Client("Bartek", "b@b.pl", 0));
+        }
+        final IndexedClientRepository recovered = new IndexedClientRepository();
+        //when
+        JournalReader.replay(file, recovered);
+        //then
+        assertThrows(NoSuchElementException.class, () -> recovered.findByEmail("a@a.pl"));
+        assertEquals(new Client("Bartek", "b@b.pl", 0), recovered.findByEmail("b@b.pl"));
+    }
+
+    @Test
+    public void transfer_journalUnavailable_failsWithNothingApplied() {
+        //given
+        final Path file = directory.resolve("bank.journal");
+        final BankService service = new BankService(new IndexedClientRepository());
+        service.save(new Client("Alek", "a@a.pl", 100));
+        service.save(new Client("Bartek", "b@b.pl", 0));
+        final Journal journal = new Journal(file, 1, Duration.ZERO);
+        service.addListener(journal);
+        journal.close();
+        //when
+        assertThrows(IllegalStateException.class, () -> service.transfer("a@a.pl", "b@b.pl", 40));
+        assertThrows(IllegalStateException.class, () -> service.withdraw("a@a.pl", 40));
+        //then
+        assertEquals(100, service.findByEmail("a@a.pl").getBalance());
+        assertEquals(0, service.findByEmail("b@b.pl").getBalance());
+    }
+
+    @Test
+    public void replay_tornTail_stopsAtLastCompleteRecordAndReopenContinues() throws Exception {
+        //given
+        final Path file = directory.resolve("bank.journal");
+        try (Journal journal = new Journal(file, 1, Duration.ZERO)) {
+            journal.beforeSave(new Client("Alek", "a@a.pl", 10));
+            journal.afterUnlock();
+        }
+        Files.write(file, new byte[]{0, 0, 0, 20, 1, 2, 3}, StandardOpenOption.APPEND);
+        //when
+        try (Journal journal = new Journal(file, 1, Duration.ZERO)) {
+            journal.beforeSave(new Client("Bartek", "b@b.pl", 20));
+            journal.afterUnlock();
+            assertEquals(2, journal.lastSequence());
+        }
+        final IndexedClientRepository recovered = new IndexedClientRepository();
+        //then
+        assertEquals(2, JournalReader.replay(file, recovered));
+        assertEquals(2, recovered.size());
+    }
+
+    @Test
+    public void append_concurrentOperations_shareGroupCommits() throws Exception {
+        //given
+        final int threads = 8;
+        final int operationsPerThread = 200;
+        final Path file = directory.resolve("bank.journal");
+        final BankService service = new BankService(new IndexedClientRepository(), new StripedAccountLocks());
+        final long commits;
+        try (Journal journal = new Journal(file, threads, Duration.ofMillis(2))) {
+            for (int t = 0; t < threads; t++) {
+                service.save(new Client("Client" + t, "client" + t + "@bank.pl", 10_000));
+            }
+            service.addListener(journal);
+            final ExecutorService executor = Executors.newFixedThreadPool(threads);
+            final List<Future<?>> futures = new ArrayList<>();
+            //when
+            for (int t = 0; t < threads; t++) {
+                final String email = "client" + t + "@bank.pl";
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < operationsPerThread; i++) {
+                        service.withdraw(email, 1);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            executor.shutdown();
+            commits = journal.commits();
+            //then
+            assertEquals(threads * operationsPerThread, journal.durableSequence());
+        }
+        assertTrue(commits < threads * operationsPerThread,
+                String.format("expected shared fsyncs, got %d commits", commits));
+    }
+}
@@ -0,0 +1,214 @@
+package org.kaczucha.journal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.kaczucha.Client;
+import org.kaczucha.repository.AccountTable;
+import org.kaczucha.repository.IndexedClientRepository;
+import org.kaczucha.service.BankService;
+import org.kaczucha.service.NoSufficientFundsException;
+import org.kaczucha.service.StripedAccountLocks;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RecoveryTest {
+    private static final int ACCOUNTS = 20;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void recover_snapshotAndJournalTail_onlyTailReplayed() {
+        //given
+        final Path journalFile = directory.resolve("bank.journal");
+        final SnapshotStore snapshots = new SnapshotStore(directory.resolve("snapshots"));
+        final IndexedClientRepository repository = new IndexedClientRepository();
+        try (Journal journal = new Journal(journalFile, 1, Duration.ZERO)) {
+            final BankService service = new BankService(repository);
+            service.addListener(journal);
+            service.save(new Client("Alek", "a@a.pl", 1000));
+            service.save(new Client("Bartek", "b@b.pl", 500));
+            snapshots.write(repository, journal.lastSequence());
+            service.transfer("a@a.pl", "b@b.pl", 250);
+            service.withdraw("a@a.pl", 50);
+        }
+        final AccountTable recovered = new AccountTable();
+        //when
+        final Recovery recovery = Recovery.recover(snapshots, journalFile, recovered);
+        //then
+        assertEquals(2, recovery.getSnapshotSequence());
+        assertEquals(2, recovery.getReplayedRecords());
+        assertEquals(new Client("Alek", "a@a.pl", 700), recovered.findByEmail("a@a.pl"));
+        assertEquals(new Client("Bartek", "b@b.pl", 750), recovered.findByEmail("b@b.pl"));
+    }
+
+    @Test
+    public void recover_snapshotTakenDuringTransfers_restoresFinalState() throws Exception {
+        //given
+        final Path journalFile = directory.resolve("bank.journal");
+        final SnapshotStore snapshots = new SnapshotStore(directory.resolve("snapshots"));
+        final IndexedClientRepository repository = new IndexedClientRepository();
+        final BankService service = new BankService(repository, new StripedAccountLocks());
+        for (int i = 0; i < ACCOUNTS; i++) {
+            service.save(new Client("Client" + i, email(i), 1000));
+        }
+        try (Journal journal = new Journal(journalFile, 64, Duration.ofMillis(1))) {
+            snapshots.write(repository, journal.lastSequence());
+            service.addListener(journal);
+            final ExecutorService executor = Executors.newFixedThreadPool(4);
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(executor.submit(() -> {
+                    final ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < 2000; i++) {
+                        final int from = random.nextInt(ACCOUNTS);
+                        final int to = (from + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+                        try {
+                            service.transfer(email(from), email(to), 1 + random.nextInt(50));
+                        } catch (NoSufficientFundsException ignored) {
+                        }
+                    }
+                }));
+            }
+            //when
+            snapshots.write(repository, journal);
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            executor.shutdown();
+        }
+        final IndexedClientRepository recovered = new IndexedClientRepository();
+        Recovery.recover(snapshots, journalFile, recovered);
+        //then
+        for (int i = 0; i < ACCOUNTS; i++) {
+            assertEquals(repository.findByEmail(email(i)), recovered.findByEmail(email(i)));
+        }
+    }
+
+    @Test
+    public void write_crashBeforeJournalSync_noSnapshotPublished() {
+        //given
+        final Path journalFile = directory.resolve("bank.journal");
+        final SnapshotStore snapshots = new SnapshotStore(directory.resolve("snapshots"));
+        final IndexedClientRepository repository = new IndexedClientRepository();
+        try (Journal journal = new Journal(journalFile, Integer.MAX_VALUE, Duration.ofSeconds(10), false)) {
+            final BankService service = new BankService(repository);
+            service.addListener(journal);
+            service.save(new Client("Alek", "a@a.pl", 1000));
+            //when
+            assertThrows(IllegalStateException.class, () -> snapshots.write(repository, journal.appliedSequence(), () -> {
+                throw new IllegalStateException("crashed before the journal sync");
+            }));
+            //then
+            assertTrue(snapshots.latest().isEmpty());
+            assertEquals(0, journal.durableSequence());
+        }
+    }
+
+    @Test
+    public void write_againstJournal_syncsJournalBeforePublishing() {
+        //given
+        final Path journalFile = directory.resolve("bank.journal");
+        final SnapshotStore snapshots = new SnapshotStore(directory.resolve("snapshots"));
+        final IndexedClientRepository repository = new IndexedClientRepository();
+        try (Journal journal = new Journal(journalFile, Integer.MAX_VALUE, Duration.ofSeconds(10), false)) {
+            final BankService service = new BankService(repository);
+            service.addListener(journal);
+            service.save(new Client("Alek", "a@a.pl", 1000));
+            service.withdraw("a@a.pl", 100);
+            //when
+            final Path snapshot = snapshots.write(repository, journal);
+            //then
+            assertEquals(Optional.of(snapshot), snapshots.latest());
+            assertEquals(2, journal.durableSequence());
+        }
+    }
+
+    @Test
+    public void write_againstJournal_coveredSegmentsDiscardedAndRecoveryReadsTail() {
+        //given
+        final Path journalFile = directory.resolve("bank.journal");
+        final SnapshotStore snapshots = new SnapshotStore(directory.resolve("snapshots"));
+        final IndexedClientRepository repository = new IndexedClientRepository();
+        try (Journal journal = new Journal(journalFile, 1, Duration.ZERO)) {
+            final BankService service = new BankService(repository);
+            service.addListener(journal);
+            service.save(new Client("Alek", "a@a.pl", 1000));
+            service.save(new Client("Bartek", "b@b.pl", 500));
+            snapshots.write(repository, journal);
+            service.transfer("a@a.pl", "b@b.pl", 250);
+            //when
+            snapshots.write(repository, journal);
+        }
+        //then
+        final List<Path> sealed = JournalReader.sealedSegments(journalFile);
+        assertEquals(List.of(JournalReader.sealedSegment(journalFile, 3)), sealed);
+        assertEquals(0, sealed.get(0).toFile().length());
+        try (Journal reopened = new Journal(journalFile, 1, Duration.ZERO)) {
+            assertEquals(3, reopened.lastSequence());
+            final BankService service = new BankService(repository);
+            service.addListener(reopened);
+            service.withdraw("a@a.pl", 50);
+        }
+        final AccountTable recovered = new AccountTable();
+        final Recovery recovery = Recovery.recover(snapshots, journalFile, recovered);
+        assertEquals(3, recovery.getSnapshotSequence());
+        assertEquals(1, recovery.getReplayedRecords());
+        assertEquals(new Client("Alek", "a@a.pl", 700), recovered.findByEmail("a@a.pl"));
+        assertEquals(new Client("Bartek", "b@b.pl", 750), recovered.findByEmail("b@b.pl"));
+    }
+
+    @Test
+    public void snapshot_storeUnwritable_failureReportedAndSchedulerKeepsRunning() throws Exception {
+        //given
+        final Path notADirectory = Files.createFile(directory.resolve("snapshots"));
+        final IndexedClientRepository repository = new IndexedClientRepository();
+        try (Journal journal = new Journal(directory.resolve("bank.journal"), 1, Duration.ZERO);
+             SnapshotScheduler scheduler = new SnapshotScheduler(repository, journal,
+                     new SnapshotStore(notADirectory), Duration.ofMillis(5), 1)) {
+            //when
+            final boolean taken = scheduler.snapshot();
+            final long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+            while (scheduler.failures() < 3 && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            //then
+            assertFalse(taken);
+            assertTrue(scheduler.failures() >= 3);
+        }
+    }
+
+    @Test
+    public void appliedSequence_recordAppendedButNotApplied_staysBelowIt() {
+        try (Journal journal = new Journal(directory.resolve("bank.journal"), 1, Duration.ZERO)) {
+            //given
+            final Client client = new Client("Alek", "a@a.pl", 10);
+            journal.beforeSave(client);
+            journal.beforeWithdraw(client, 100, 900);
+            //when
+            final long beforeApply = journal.appliedSequence();
+            journal.onWithdraw(client, 100);
+            //then
+            assertEquals(0, beforeApply);
+            assertEquals(2, journal.appliedSequence());
+        }
+    }
+
+    private static String email(int i) {
+        return "client" + i + "@bank.pl";
+    }
+}
@@ -0,0 +1,118 @@
+package org.kaczucha.loader;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.kaczucha.Client;
+import org.kaczucha.repository.AccountTable;
+import org.kaczucha.repository.InMemoryClientRepository;
+
+import java.io.BufferedWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class BulkLoaderTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    public void load_mixedRows_badRowsCountedAndSkipped() throws Exception {
+        //given
+        final Path csv = directory.resolve("accounts.csv");
+        Files.writeString(csv, "name,email,balance\n"
+                + "Alek,a@a.pl,100.5\r\n"
+                + "Bartek, b@b.pl ,0\n"
+                + "Alek2,A@A.pl,10\n"
+                + "Celina,c@c.pl,-5\n"
+                + "Darek,d@d.pl,1.234\n"
+                + "Ewa,e@e.pl,abc\n"
+                + "broken line\n"
+                + "\n"
+                + "Franek,f@f.pl,7\n"
+                + "Gosia,g@g.pl,3.07");
+        final AccountTable repository = new AccountTable();
+        repository.save(new Client("Existing", "f@f.pl", 1));
+        //when
+        final LoadReport report = new BulkLoader(repository, 4, 32).load(csv);
+        //then
+        assertEquals(3, report.getRowsLoaded());
+        assertEquals(1, report.getDuplicates());
+        assertEquals(1, report.getRefused());
+        assertEquals(3, report.getBadBalances());
+        assertEquals(1, report.getMalformedRows());
+        assertEquals(new Client("Alek", "a@a.pl", 100.5), repository.findByEmail("a@a.pl"));
+        assertEquals(new Client("Bartek", "b@b.pl", 0), repository.findByEmail("b@b.pl"));
+        assertEquals(new Client("Gosia", "g@g.pl", 3.07), repository.findByEmail("g@g.pl"));
+        assertEquals(new Client("Existing", "f@f.pl", 1), repository.findByEmail("f@f.pl"));
+    }
+
+    @Test
+    public void load_manyChunks_everyRowInsertedOnce() throws Exception {
+        //given
+        final int rows = 100_000;
+        final Path csv = directory.resolve("large.csv");
+        try (BufferedWriter writer = Files.newBufferedWriter(csv)) {
+            for (int i = 0; i < rows; i++) {
+                writer.write("Client" + i + ",client" + i + "@bank.pl," + i + ".25\n");
+            }
+        }
+        final List<Client> clients = new ArrayList<>();
+        final InMemoryClientRepository repository = new InMemoryClientRepository(clients);
+        //when
+        final LoadReport report = new BulkLoader(repository, 4, 64 * 1024).load(csv);
+        //then
+        assertEquals(rows, report.getRowsLoaded());
+        assertEquals(0, report.getRowsRejected());
+        assertEquals(rows, clients.size());
+        assertEquals(Client.ofMinorUnits("Client0", "client0@bank.pl", 25), clients.get(0));
+        assertEquals(Client.ofMinorUnits("Client99999", "client99999@bank.pl", 9_999_925), clients.get(rows - 1));
+    }
+
+    @Test
+    public void load_duplicateInLaterBatch_countedAsDuplicateAndFirstKept() throws Exception {
+        //given
+        final int rows = 10_000;
+        final Path csv = directory.resolve("repeated.csv");
+        try (BufferedWriter writer = Files.newBufferedWriter(csv)) {
+            for (int i = 0; i < rows; i++) {
+                writer.write("Client" + i + ",client" + i + "@bank.pl,1\n");
+            }
+            writer.write("Late,CLIENT0@bank.pl,99\n");
+        }
+        final AccountTable repository = new AccountTable();
+        //when
+        final LoadReport report = new BulkLoader(repository, 2, 4096).load(csv);
+        //then
+        assertEquals(rows, report.getRowsLoaded());
+        assertEquals(1, report.getDuplicates());
+        assertEquals(0, report.getRefused());
+        assertEquals(new Client("Client0", "client0@bank.pl", 1), repository.findByEmail("client0@bank.pl"));
+    }
+
+    @Test
+    public void load_duplicatesBatchesApartIntoAcceptingRepository_skipped() throws Exception {
+        //given
+        final int rows = 20_000;
+        final Path csv = directory.resolve("repeated.csv");
+        try (BufferedWriter writer = Files.newBufferedWriter(csv)) {
+            for (int i = 0; i < rows; i++) {
+                writer.write("Client" + i + ",client" + i + "@bank.pl,1\n");
+            }
+            for (int i = 0; i < rows; i += 1000) {
+                writer.write("Late" + i + ",Client" + i + "@bank.pl,99\n");
+            }
+        }
+        final List<Client> clients = new ArrayList<>();
+        final InMemoryClientRepository repository = new InMemoryClientRepository(clients);
+        //when
+        final LoadReport report = new BulkLoader(repository, 2, 4096).load(csv);
+        //then
+        assertEquals(rows, report.getRowsLoaded());
+        assertEquals(rows / 1000, report.getDuplicates());
+        assertEquals(rows, clients.size());
+        assertEquals(new Client("Client0", "client0@bank.pl", 1), clients.get(0));
+    }
+}
@@ -0,0 +1,62 @@
+package org.kaczucha.metrics;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kaczucha.Client;
+import org.kaczucha.repository.IndexedClientRepository;
+import org.kaczucha.service.NoSufficientFundsException;
+import org.kaczucha.service.StripedAccountLocks;
+
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class InstrumentedBankServiceTest {
+    private BankMetrics metrics;
+    private InstrumentedBankService service;
+
+    @BeforeEach
+    public void setup() {
+        metrics = new BankMetrics();
+        service = new InstrumentedBankService(new IndexedClientRepository(), new StripedAccountLocks(), metrics);
+        service.save(new Client("Alek", "a@a.pl", 100));
+        service.save(new Client("Bartek", "b@b.pl", 0));
+    }
+
+    @Test
+    public void transfer_successAndFailures_countedPerErrorType() {
+        //when
+        service.transfer("a@a.pl", "b@b.pl", 10);
+        Assertions.assertThrows(NoSufficientFundsException.class, () -> service.transfer("a@a.pl", "b@b.pl", 1000));
+        Assertions.assertThrows(NoSuchElementException.class, () -> service.transfer("a@a.pl", "x@x.pl", 1));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> service.transfer("a@a.pl", "b@b.pl", -1));
+        //then
+        final OperationMetrics transfer = metrics.transfer();
+        assertEquals(4, transfer.getCalls());
+        assertEquals(3, transfer.getErrors());
+        assertEquals(1, transfer.getInsufficientFunds());
+        assertEquals(1, transfer.getNotFound());
+        assertEquals(1, transfer.getInvalidArguments());
+        assertEquals(4, transfer.latency().getCount());
+        assertEquals(0, metrics.findByEmail().getCalls());
+    }
+
+    @Test
+    public void report_afterOperations_containsCountersAndPercentiles() {
+        //given
+        service.withdraw("a@a.pl", 10);
+        service.findByEmail("a@a.pl");
+        service.balanceOf("a@a.pl");
+        service.snapshotOf("a@a.pl");
+        //when
+        final String report = metrics.report();
+        //then
+        assertTrue(report.contains("bank_operation_calls{operation=\"withdraw\"} 1"));
+        assertTrue(report.contains("bank_operation_calls{operation=\"findByEmail\"} 1"));
+        assertTrue(report.contains("bank_operation_calls{operation=\"balanceOf\"} 1"));
+        assertTrue(report.contains("bank_operation_calls{operation=\"snapshotOf\"} 1"));
+        assertTrue(report.contains("bank_operation_latency_ns{operation=\"withdraw\",quantile=\"0.999\"}"));
+    }
+}
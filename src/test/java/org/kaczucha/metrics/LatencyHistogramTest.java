@@ -0,0 +1,77 @@
+package org.kaczucha.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LatencyHistogramTest {
+    @Test
+    public void valueAtPercentile_uniformValues_withinOnePercent() {
+        //given
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 1_000_000; value++) {
+            histogram.record(value * 10);
+        }
+        //when
+        final LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        //then
+        assertEquals(1_000_000, snapshot.getCount());
+        assertEquals(10_000_000, snapshot.getMax());
+        assertWithinOnePercent(5_000_000, snapshot.valueAtPercentile(50));
+        assertWithinOnePercent(9_900_000, snapshot.valueAtPercentile(99));
+        assertWithinOnePercent(9_990_000, snapshot.valueAtPercentile(99.9));
+    }
+
+    @Test
+    public void recordWithExpectedInterval_stall_backfillsMissedSamples() {
+        //given
+        final LatencyHistogram histogram = new LatencyHistogram();
+        //when
+        histogram.recordWithExpectedInterval(1000, 100);
+        //then
+        final LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(10, snapshot.getCount());
+        assertEquals(100, snapshot.valueAtPercentile(0));
+    }
+
+    @Test
+    public void record_concurrentThreads_everyValueCounted() throws InterruptedException {
+        //given
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 100_000; i++) {
+                    histogram.record(1000);
+                }
+            });
+        }
+        //when
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        //then
+        final LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(800_000, snapshot.getCount());
+        assertEquals(1000, snapshot.valueAtPercentile(50));
+        assertEquals(1000, snapshot.getMean());
+    }
+
+    @Test
+    public void bucketOf_highestValueIn_boundsContainValue() {
+        for (long value = 0; value < 1_000_000; value += 37) {
+            final int bucket = LatencyHistogram.bucketOf(value);
+            assertTrue(LatencyHistogram.highestValueIn(bucket) >= value);
+            assertTrue(bucket == 0 || LatencyHistogram.highestValueIn(bucket - 1) < value);
+        }
+    }
+
+    private static void assertWithinOnePercent(long expected, long actual) {
+        assertTrue(Math.abs(expected - actual) <= expected / 100,
+                String.format("expected %d but was %d", expected, actual));
+    }
+}
@@ -0,0 +1,131 @@
+package org.kaczucha.repository;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kaczucha.Client;
+
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AccountTableTest {
+    private AccountTable table;
+
+    @BeforeEach
+    public void setup() {
+        table = new AccountTable(4);
+    }
+
+    @Test
+    public void findByEmail_savedClient_returnsEqualView() {
+        //given
+        final Client client = new Client("Alek", "a@a.pl", 100.25);
+        table.save(client);
+        //when
+        final Client actualClient = table.findByEmail("A@a.pl");
+        //then
+        assertEquals(client, actualClient);
+        assertTrue(actualClient.isSameAccount(table.findByEmail("a@a.pl")));
+    }
+
+    @Test
+    public void setBalance_onView_writesThroughToTable() {
+        //given
+        table.save(new Client("Alek", "a@a.pl", 100));
+        final Client view = table.findByEmail("a@a.pl");
+        //when
+        view.setBalance(99.99);
+        //then
+        assertEquals(9999, table.balanceAt(table.slotOf("a@a.pl")));
+    }
+
+    @Test
+    public void save_duplicateEmail_throwsIllegalArgumentException() {
+        //given
+        table.save(new Client("Alek", "a@a.pl", 100));
+        final Client duplicate = new Client("Bartek", "A@A.PL", 0);
+        //when/then
+        Assertions.assertThrows(
+                IllegalArgumentException.class,
+                () -> table.save(duplicate)
+        );
+    }
+
+    @Test
+    public void save_manyClients_allFoundAfterGrowth() {
+        //given
+        final int accounts = 40_000;
+        //when
+        for (int i = 0; i < accounts; i++) {
+            table.save(new Client("Client" + i, "client" + i + "@bank.pl", i));
+        }
+        //then
+        assertEquals(accounts, table.size());
+        for (int i = 0; i < accounts; i++) {
+            assertEquals(i, table.findByEmail("client" + i + "@bank.pl").getBalance());
+        }
+    }
+
+    @Test
+    public void delete_savedClient_clientNotFound() {
+        //given
+        table.save(new Client("Alek", "a@a.pl", 0));
+        table.save(new Client("Bartek", "b@b.pl", 0));
+        //when
+        table.delete(table.findByEmail("a@a.pl"));
+        //then
+        assertEquals(1, table.size());
+        Assertions.assertThrows(
+                NoSuchElementException.class,
+                () -> table.findByEmail("a@a.pl")
+        );
+        assertEquals("Bartek", table.findByEmail("b@b.pl").getName());
+    }
+
+    @Test
+    public void save_afterDelete_reusesSlotAndOldViewReadsAsDeleted() {
+        //given
+        table.save(new Client("Alek", "a@a.pl", 100));
+        table.save(new Client("Bartek", "b@b.pl", 0));
+        final Client deleted = table.findByEmail("a@a.pl");
+        final int slot = table.slotOf("a@a.pl");
+        table.delete(deleted);
+        //when
+        table.save(new Client("Celina", "c@c.pl", 50));
+        //then
+        assertEquals(slot, table.slotOf("c@c.pl"));
+        assertEquals(2, table.slotCount());
+        assertEquals(new Client("Celina", "c@c.pl", 50), table.findByEmail("c@c.pl"));
+        assertFalse(deleted.isSameAccount(table.findByEmail("c@c.pl")));
+        assertNull(deleted.getEmail());
+        assertEquals(0, deleted.getBalanceMinor());
+        Assertions.assertThrows(
+                IllegalStateException.class,
+                () -> deleted.setBalance(1)
+        );
+        assertEquals(50, table.findByEmail("c@c.pl").getBalance());
+        Assertions.assertThrows(
+                NoSuchElementException.class,
+                () -> table.findByEmail("a@a.pl")
+        );
+    }
+
+    @Test
+    public void saveAndDelete_churn_slotCountStaysBounded() {
+        //given
+        table.save(new Client("Alek", "a@a.pl", 0));
+        //when
+        for (int i = 0; i < 10_000; i++) {
+            table.save(new Client("Client" + i, "client" + i + "@bank.pl", i));
+            table.delete(table.findByEmail("client" + i + "@bank.pl"));
+        }
+        //then
+        assertEquals(1, table.size());
+        assertEquals(2, table.slotCount());
+        assertEquals("Alek", table.findByEmail("a@a.pl").getName());
+    }
+}
@@ -0,0 +1,71 @@
+package org.kaczucha.repository;
+
+import org.junit.jupiter.api.Test;
+import org.kaczucha.Client;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ArenaCompactorTest {
+    private static final int ACCOUNTS = 100_000;
+
+    @Test
+    public void compact_whileReadersRun_readersSeeEveryLiveAccount() throws InterruptedException {
+        //given
+        final CompactAccountTable table = new CompactAccountTable(ACCOUNTS);
+        for (int i = 0; i < ACCOUNTS; i++) {
+            table.save(Client.ofMinorUnits("Client" + i, "client" + i + "@bank.pl", 0));
+        }
+        final AtomicInteger mismatches = new AtomicInteger();
+        final Thread reader = new Thread(() -> {
+            for (int round = 0; round < 20; round++) {
+                for (int i = 0; i < ACCOUNTS; i += 10) {
+                    if (!("Client" + i).equals(table.findByEmail("client" + i + "@bank.pl").getName())) {
+                        mismatches.incrementAndGet();
+                    }
+                }
+            }
+        });
+        //when
+        try (ArenaCompactor compactor = new ArenaCompactor(table, Duration.ofMillis(1), 256)) {
+            reader.start();
+            for (int i = 0; i < ACCOUNTS; i++) {
+                if (i % 10 != 0) {
+                    table.delete(table.findByEmail("client" + i + "@bank.pl"));
+                }
+            }
+            reader.join();
+            compactor.compact();
+            //then
+            assertEquals(0, mismatches.get());
+            assertTrue(table.reclaimedArenaBytes() > 0);
+            assertEquals(ACCOUNTS / 10, table.size());
+            assertTrue(compactor.report().contains("bank_compaction_retired_chunks " + table.retiredChunks()));
+        }
+    }
+
+    @Test
+    public void compact_stepThrows_failureReportedAndCompactorKeepsRunning() throws InterruptedException {
+        //given
+        final CompactAccountTable table = new CompactAccountTable() {
+            @Override
+            public synchronized boolean compact(int maxRecords) {
+                throw new IllegalStateException("broken arena");
+            }
+        };
+        //when
+        try (ArenaCompactor compactor = new ArenaCompactor(table, Duration.ofMillis(1), 256)) {
+            final long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+            while (compactor.failures() < 3 && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            //then
+            assertTrue(compactor.failures() >= 3);
+            assertFalse(compactor.compact());
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package org.kaczucha.repository;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kaczucha.Client;
+import org.kaczucha.service.BankService;
+
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CompactAccountTableTest {
+    private CompactAccountTable table;
+
+    @BeforeEach
+    public void setup() {
+        table = new CompactAccountTable(4);
+    }
+
+    @Test
+    public void findByEmail_savedClient_returnsEqualView() {
+        //given
+        final Client client = new Client("Alek", "a@a.pl", 100.25);
+        table.save(client);
+        //when
+        final Client actualClient = table.findByEmail("A@a.pl");
+        //then
+        assertEquals(client, actualClient);
+        assertTrue(actualClient.isSameAccount(table.findByEmail("a@a.pl")));
+    }
+
+    @Test
+    public void findByEmail_nonAsciiEmailAndNullName_roundTrips() {
+        //given
+        table.save(Client.ofMinorUnits(null, "\u017c\u00f3\u0142w@bank.pl", 5));
+        table.save(new Client("\u0141ukasz", "lukasz@bank.pl", 1));
+        //when
+        final Client turtle = table.findByEmail("\u017c\u00f3\u0142w@BANK.pl");
+        //then
+        assertNull(turtle.getName());
+        assertEquals("\u017c\u00f3\u0142w@bank.pl", turtle.getEmail());
+        assertEquals("\u0141ukasz", table.findByEmail("LUKASZ@bank.pl").getName());
+        Assertions.assertThrows(NoSuchElementException.class, () -> table.findByEmail("zolw@bank.pl"));
+    }
+
+    @Test
+    public void setBalance_onView_writesThroughToTable() {
+        //given
+        table.save(new Client("Alek", "a@a.pl", 100));
+        final Client view = table.findByEmail("a@a.pl");
+        //when
+        view.setBalance(99.99);
+        //then
+        assertEquals(9999, table.balanceAt(table.slotOf("a@a.pl")));
+    }
+
+    @Test
+    public void save_duplicateEmail_throwsIllegalArgumentException() {
+        //given
+        table.save(new Client("Alek", "a@a.pl", 100));
+        final Client duplicate = new Client("Bartek", "A@A.PL", 0);
+        //when/then
+        Assertions.assertThrows(
+                IllegalArgumentException.class,
+                () -> table.save(duplicate)
+        );
+    }
+
+    @Test
+    public void save_manyClients_allFoundAfterGrowth() {
+        //given
+        final int accounts = 100_000;
+        //when
+        for (int i = 0; i < accounts; i++) {
+            table.save(new Client("Client" + i, "client" + i + "@bank.pl", i));
+        }
+        //then
+        assertEquals(accounts, table.size());
+        for (int i = 0; i < accounts; i++) {
+            final Client client = table.findByEmail("client" + i + "@bank.pl");
+            assertEquals(i, client.getBalance());
+            assertEquals("Client" + i, client.getName());
+        }
+        assertTrue(table.footprintBytes() < accounts * 100L);
+    }
+
+    @Test
+    public void delete_savedClient_clientNotFound() {
+        //given
+        table.save(new Client("Alek", "a@a.pl", 0));
+        table.save(new Client("Bartek", "b@b.pl", 0));
+        //when
+        table.delete(table.findByEmail("a@a.pl"));
+        //then
+        assertEquals(1, table.size());
+        assertEquals(2 * Short.BYTES + "a@a.pl".length() + "Alek".length(), table.deadArenaBytes());
+        Assertions.assertThrows(
+                NoSuchElementException.class,
+                () -> table.findByEmail("a@a.pl")
+        );
+        assertEquals("Bartek", table.findByEmail("b@b.pl").getName());
+        assertEquals(1, table.stream().count());
+    }
+
+    @Test
+    public void save_afterDelete_reusesSlotAndOldViewReadsAsDeleted() {
+        //given
+        table.save(new Client("Alek", "a@a.pl", 100));
+        table.save(new Client("Bartek", "b@b.pl", 0));
+        final Client deleted = table.findByEmail("a@a.pl");
+        final int slot = table.slotOf("a@a.pl");
+        table.delete(deleted);
+        //when
+        table.save(new Client("Celina", "c@c.pl", 50));
+        //then
+        assertEquals(slot, table.slotOf("c@c.pl"));
+        assertEquals(2, table.slotCount());
+        assertEquals(new Client("Celina", "c@c.pl", 50), table.findByEmail("c@c.pl"));
+        assertFalse(deleted.isSameAccount(table.findByEmail("c@c.pl")));
+        assertNull(deleted.getEmail());
+        assertNull(deleted.getName());
+        assertEquals(0, deleted.getBalanceMinor());
+        Assertions.assertThrows(IllegalStateException.class, () -> deleted.setBalance(1));
+        assertEquals(50, table.findByEmail("c@c.pl").getBalance());
+    }
+
+    @Test
+    public void saveAndDelete_churnWhileCompacting_slotCountStaysBoundedAndAccountsFound() {
+        //given
+        table.save(new Client("Alek", "a@a.pl", 0));
+        //when
+        for (int i = 0; i < 10_000; i++) {
+            table.save(new Client("Client" + i, "client" + i + "@bank.pl", i));
+            if (i % 2 == 1) {
+                table.delete(table.findByEmail("client" + (i - 1) + "@bank.pl"));
+                table.delete(table.findByEmail("client" + i + "@bank.pl"));
+            }
+            table.compact(4);
+        }
+        while (table.compact(1000)) {
+            Thread.onSpinWait();
+        }
+        //then
+        assertEquals(1, table.size());
+        assertTrue(table.slotCount() < 100);
+        assertEquals("Alek", table.findByEmail("a@a.pl").getName());
+        assertEquals(1, table.stream().count());
+        table.save(new Client("Bartek", "b@b.pl", 0));
+        assertEquals("Bartek", table.findByEmail("B@B.PL").getName());
+    }
+
+    @Test
+    public void compact_mostAccountsDeleted_liveRecordsMovedAndChunksFreed() {
+        //given
+        final int accounts = 100_000;
+        final CompactAccountTable table = new CompactAccountTable(accounts);
+        for (int i = 0; i < accounts; i++) {
+            table.save(Client.ofMinorUnits("Client" + i, "client" + i + "@bank.pl", i % 4 == 0 ? i : 0));
+        }
+        final Client survivor = table.findByEmail("client40000@bank.pl");
+        for (int i = 0; i < accounts; i++) {
+            if (i % 4 != 0) {
+                table.delete(table.findByEmail("client" + i + "@bank.pl"));
+            }
+        }
+        final long deadBefore = table.deadArenaBytes();
+        final long footprintBefore = table.footprintBytes();
+        int steps = 0;
+        //when
+        while (table.compact(1000)) {
+            survivor.setBalanceMinor(survivor.getBalanceMinor() + 1);
+            steps++;
+        }
+        //then
+        assertTrue(table.retiredChunks() > 0);
+        assertTrue(table.relocatedRecords() > 0);
+        assertEquals(deadBefore, table.deadArenaBytes() + table.reclaimedArenaBytes());
+        assertTrue(table.footprintBytes() < footprintBefore);
+        assertEquals(1.0, table.compactionProgress());
+        assertEquals(accounts / 4, table.size());
+        for (int i = 0; i < accounts; i += 4) {
+            final Client client = table.findByEmail("client" + i + "@bank.pl");
+            assertEquals("Client" + i, client.getName());
+            assertEquals(i == 40000 ? i + steps : i, client.getBalanceMinor());
+        }
+        assertTrue(survivor.isSameAccount(table.findByEmail("client40000@bank.pl")));
+        Assertions.assertThrows(NoSuchElementException.class, () -> table.findByEmail("client1@bank.pl"));
+    }
+
+    @Test
+    public void compact_deletedEmailSavedAgain_newAccountKept() {
+        //given
+        table.save(new Client("Alek", "a@a.pl", 0));
+        table.delete(table.findByEmail("a@a.pl"));
+        table.save(new Client("Alek Nowy", "a@a.pl", 5));
+        //when
+        table.compact(10);
+        //then
+        assertEquals("Alek Nowy", table.findByEmail("a@a.pl").getName());
+        assertEquals(1, table.stream().count());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> table.compact(0));
+    }
+
+    @Test
+    public void compact_indexTombstonesPurgedOverSeveralSteps_changesMeanwhileKept() {
+        //given
+        for (int i = 0; i < 1000; i++) {
+            table.save(Client.ofMinorUnits("Client" + i, "client" + i + "@bank.pl", i));
+        }
+        for (int i = 0; i < 1000; i++) {
+            if (i % 10 != 0) {
+                table.delete(table.findByEmail("client" + i + "@bank.pl"));
+            }
+        }
+        //when
+        assertTrue(table.compact(16));
+        table.save(new Client("Late", "late@bank.pl", 7));
+        table.delete(table.findByEmail("client0@bank.pl"));
+        table.delete(table.findByEmail("client500@bank.pl"));
+        table.delete(table.findByEmail("client990@bank.pl"));
+        assertEquals(20, table.findByEmail("client20@bank.pl").getBalanceMinor());
+        int steps = 1;
+        while (table.compact(16)) {
+            steps++;
+        }
+        //then
+        assertTrue(steps > 1);
+        assertEquals(98, table.size());
+        assertEquals(98, table.stream().count());
+        assertEquals("Late", table.findByEmail("LATE@bank.pl").getName());
+        for (String deleted : new String[]{"client0@bank.pl", "client500@bank.pl", "client990@bank.pl", "client1@bank.pl"}) {
+            Assertions.assertThrows(NoSuchElementException.class, () -> table.findByEmail(deleted));
+        }
+        assertEquals(980, table.findByEmail("client980@bank.pl").getBalanceMinor());
+        table.save(new Client("Again", "client0@bank.pl", 1));
+        assertEquals("Again", table.findByEmail("client0@bank.pl").getName());
+    }
+
+    @Test
+    public void transfer_throughBankService_balancesUpdated() {
+        //given
+        final BankService service = new BankService(table);
+        service.save(new Client("Alek", "a@a.pl", 1000));
+        service.save(new Client("Bartek", "b@b.pl", 500));
+        //when
+        service.transfer("a@a.pl", "b@b.pl", 100);
+        //then
+        assertEquals(900, table.findByEmail("a@a.pl").getBalance());
+        assertEquals(600, table.findByEmail("b@b.pl").getBalance());
+    }
+}
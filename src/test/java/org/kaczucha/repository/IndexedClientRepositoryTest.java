@@ -0,0 +1,79 @@
+package org.kaczucha.repository;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kaczucha.Client;
+
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class IndexedClientRepositoryTest {
+    private IndexedClientRepository repository;
+
+    @BeforeEach
+    public void setup() {
+        repository = new IndexedClientRepository();
+    }
+
+    @Test
+    public void findByEmail_savedClient_returnsClient() {
+        //given
+        final Client client = new Client("Alek", "a@a.pl", 100);
+        repository.save(client);
+        //when
+        final Client actualClient = repository.findByEmail("a@a.pl");
+        //then
+        assertSame(client, actualClient);
+    }
+
+    @Test
+    public void findByEmail_upperCaseEmail_returnsClient() {
+        //given
+        final Client client = new Client("Alek", "a@a.pl", 100);
+        repository.save(client);
+        //when
+        final Client actualClient = repository.findByEmail("A@A.PL");
+        //then
+        assertSame(client, actualClient);
+    }
+
+    @Test
+    public void findByEmail_unknownEmail_throwsNoSuchElementException() {
+        //when/then
+        Assertions.assertThrows(
+                NoSuchElementException.class,
+                () -> repository.findByEmail("a@a.pl")
+        );
+    }
+
+    @Test
+    public void save_duplicateEmail_throwsIllegalArgumentException() {
+        //given
+        repository.save(new Client("Alek", "a@a.pl", 100));
+        final Client duplicate = new Client("Bartek", "A@a.pl", 500);
+        //when/then
+        Assertions.assertThrows(
+                IllegalArgumentException.class,
+                () -> repository.save(duplicate)
+        );
+        assertEquals(1, repository.size());
+    }
+
+    @Test
+    public void delete_savedClient_clientRemoved() {
+        //given
+        final Client client = new Client("Alek", "a@a.pl", 0);
+        repository.save(client);
+        //when
+        repository.delete(client);
+        //then
+        assertEquals(0, repository.size());
+        Assertions.assertThrows(
+                NoSuchElementException.class,
+                () -> repository.findByEmail("a@a.pl")
+        );
+    }
+}
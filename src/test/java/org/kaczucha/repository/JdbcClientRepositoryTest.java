@@ -0,0 +1,140 @@
+package org.kaczucha.repository;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.kaczucha.Client;
+import org.kaczucha.service.AccountLocks;
+import org.kaczucha.service.BankService;
+import org.kaczucha.service.NoSufficientFundsException;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class JdbcClientRepositoryTest {
+    @TempDir
+    Path directory;
+
+    private String url() {
+        return "jdbc:h2:" + directory.resolve("bank").toAbsolutePath();
+    }
+
+    @Test
+    public void findByEmail_afterReopen_returnsPersistedClient() {
+        //given
+        try (JdbcClientRepository repository = JdbcClientRepository.open(url())) {
+            repository.save(new Client("Alek", "a@a.pl", 100.5));
+            repository.findByEmail("A@A.PL").setBalance(50.25);
+        }
+        //when
+        try (JdbcClientRepository repository = JdbcClientRepository.open(url())) {
+            final Client actualClient = repository.findByEmail("a@a.pl");
+            //then
+            assertEquals(new Client("Alek", "a@a.pl", 50.25), actualClient);
+            Assertions.assertThrows(
+                    IllegalArgumentException.class,
+                    () -> repository.save(new Client("Alek", "A@a.pl", 0))
+            );
+        }
+    }
+
+    @Test
+    public void saveAll_batchWithDuplicate_othersSavedAndDuplicateRejected() {
+        //given
+        final List<Client> clients = new ArrayList<>();
+        for (int i = 0; i < 2500; i++) {
+            clients.add(Client.ofMinorUnits("Client" + i, "client" + i + "@bank.pl", i));
+        }
+        clients.set(1500, new Client("Copy", "client7@bank.pl", 0));
+        final List<Client> rejected = new ArrayList<>();
+        try (JdbcClientRepository repository = JdbcClientRepository.open(url(), 2, Duration.ZERO)) {
+            //when
+            repository.saveAll(clients, (client, error) -> rejected.add(client));
+            //then
+            assertEquals(List.of(clients.get(1500)), rejected);
+            assertEquals(2499, repository.size());
+            assertEquals(2499, repository.findByEmail("client2499@bank.pl").getBalanceMinor());
+            assertEquals("Client7", repository.findByEmail("client7@bank.pl").getName());
+        }
+    }
+
+    @Test
+    public void transfer_throughBankService_checksFundsInDatabase() {
+        try (JdbcClientRepository repository = JdbcClientRepository.open(url())) {
+            //given
+            final BankService service = new BankService(repository);
+            service.save(new Client("Alek", "a@a.pl", 1000));
+            service.save(new Client("Bartek", "b@b.pl", 500));
+            //when
+            service.transfer("a@a.pl", "b@b.pl", 100.5);
+            service.withdraw("b@b.pl", 600);
+            //then
+            assertEquals(899.5, repository.findByEmail("a@a.pl").getBalance());
+            assertEquals(0.5, repository.findByEmail("b@b.pl").getBalance());
+            Assertions.assertThrows(NoSufficientFundsException.class, () -> service.transfer("b@b.pl", "a@a.pl", 1));
+            Assertions.assertThrows(NoSufficientFundsException.class, () -> service.withdraw("b@b.pl", 1));
+            Assertions.assertThrows(NoSuchElementException.class, () -> service.transfer("a@a.pl", "c@c.pl", 1));
+            Assertions.assertThrows(NoSuchElementException.class, () -> service.withdraw("c@c.pl", 1));
+            assertEquals(899.5, repository.findByEmail("a@a.pl").getBalance());
+            assertEquals(0.5, repository.findByEmail("b@b.pl").getBalance());
+        }
+    }
+
+    @Test
+    public void transfer_concurrentOppositeDirections_balanceConserved() throws InterruptedException {
+        try (JdbcClientRepository repository = JdbcClientRepository.open(url(), 4, Duration.ZERO)) {
+            //given
+            final BankService service = new BankService(repository, AccountLocks.NONE);
+            for (int i = 0; i < 4; i++) {
+                service.save(new Client("Client" + i, "client" + i + "@bank.pl", 100));
+            }
+            final List<Thread> threads = new ArrayList<>();
+            //when
+            for (int t = 0; t < 4; t++) {
+                final int offset = t;
+                final Thread thread = new Thread(() -> {
+                    for (int i = 0; i < 250; i++) {
+                        final int from = (i + offset) % 4;
+                        final int to = (from + 1 + offset % 3) % 4;
+                        try {
+                            service.transfer("client" + from + "@bank.pl", "client" + to + "@bank.pl", 1);
+                        } catch (NoSufficientFundsException ignored) {
+                            // a drained account simply skips its turn
+                        }
+                    }
+                });
+                thread.start();
+                threads.add(thread);
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            //then
+            assertEquals(400_00, service.report().getTotalLiabilitiesMinor());
+        }
+    }
+
+    @Test
+    public void setBalance_withWriteBehind_visibleAtOnceAndFlushed() {
+        try (JdbcClientRepository repository = JdbcClientRepository.open(url(), 2, Duration.ofMinutes(1))) {
+            //given
+            repository.save(new Client("Alek", "a@a.pl", 10));
+            final Client client = repository.findByEmail("a@a.pl");
+            //when
+            client.setBalance(0);
+            //then
+            assertEquals(0, repository.findByEmail("a@a.pl").getBalance());
+            assertEquals(0, repository.stream().findFirst().orElseThrow().getBalance());
+            repository.delete(client);
+            Assertions.assertThrows(
+                    NoSuchElementException.class,
+                    () -> repository.findByEmail("a@a.pl")
+            );
+        }
+    }
+}
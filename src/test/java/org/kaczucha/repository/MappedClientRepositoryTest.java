@@ -0,0 +1,117 @@
+package org.kaczucha.repository;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.kaczucha.Client;
+
+import java.nio.file.Path;
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class MappedClientRepositoryTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    public void findByEmail_afterReopen_returnsPersistedClient() {
+        //given
+        final Path file = directory.resolve("accounts.bin");
+        try (MappedClientRepository repository = MappedClientRepository.open(file, 100)) {
+            repository.save(new Client("Alek", "a@a.pl", 100.5));
+            repository.findByEmail("A@A.PL").setBalance(50.25);
+        }
+        //when
+        try (MappedClientRepository repository = MappedClientRepository.open(file, 1)) {
+            final Client actualClient = repository.findByEmail("a@a.pl");
+            //then
+            assertEquals(new Client("Alek", "a@a.pl", 50.25), actualClient);
+            assertEquals(100, repository.capacity());
+        }
+    }
+
+    @Test
+    public void delete_savedClient_slotReused() {
+        //given
+        try (MappedClientRepository repository = MappedClientRepository.open(directory.resolve("accounts.bin"), 1)) {
+            repository.save(new Client("Alek", "a@a.pl", 0));
+            //when
+            repository.delete(repository.findByEmail("a@a.pl"));
+            repository.save(new Client("Bartek", "b@b.pl", 10));
+            //then
+            assertEquals(1, repository.size());
+            assertEquals("Bartek", repository.findByEmail("b@b.pl").getName());
+            Assertions.assertThrows(
+                    NoSuchElementException.class,
+                    () -> repository.findByEmail("a@a.pl")
+            );
+        }
+    }
+
+    @Test
+    public void save_fullRepository_throwsIllegalStateException() {
+        //given
+        try (MappedClientRepository repository = MappedClientRepository.open(directory.resolve("accounts.bin"), 1)) {
+            repository.save(new Client("Alek", "a@a.pl", 0));
+            final Client client = new Client("Bartek", "b@b.pl", 10);
+            //when/then
+            Assertions.assertThrows(
+                    IllegalStateException.class,
+                    () -> repository.save(client)
+            );
+        }
+    }
+
+    @Test
+    public void save_manyClientsWithDeletes_indexStaysConsistent() {
+        //given
+        try (MappedClientRepository repository = MappedClientRepository.open(directory.resolve("accounts.bin"), 64)) {
+            //when
+            for (int round = 0; round < 20; round++) {
+                for (int i = 0; i < 64; i++) {
+                    repository.save(new Client("Client", "client" + round + "." + i + "@bank.pl", 0));
+                }
+                for (int i = 0; i < 64; i++) {
+                    repository.delete(repository.findByEmail("client" + round + "." + i + "@bank.pl"));
+                }
+            }
+            repository.save(new Client("Alek", "a@a.pl", 1));
+            //then
+            assertEquals(1, repository.size());
+            assertEquals(1, repository.findByEmail("a@a.pl").getBalance());
+        }
+    }
+
+    @Test
+    public void delete_heldView_readsAsDeletedAndDoesNotCorruptFreeList() {
+        //given
+        final Path file = directory.resolve("accounts.bin");
+        try (MappedClientRepository repository = MappedClientRepository.open(file, 3)) {
+            repository.save(new Client("Alek", "a@a.pl", 0));
+            repository.save(new Client("Bartek", "b@b.pl", 0));
+            final Client deleted = repository.findByEmail("a@a.pl");
+            //when
+            repository.delete(deleted);
+            repository.delete(repository.findByEmail("b@b.pl"));
+            //then
+            assertNull(deleted.getEmail());
+            assertEquals(0, deleted.getBalanceMinor());
+            Assertions.assertThrows(
+                    IllegalStateException.class,
+                    () -> deleted.setBalance(7)
+            );
+            repository.save(new Client("Celina", "c@c.pl", 30));
+            repository.save(new Client("Dawid", "d@d.pl", 40));
+            repository.save(new Client("Edyta", "e@e.pl", 50));
+            assertNull(deleted.getEmail());
+        }
+        try (MappedClientRepository repository = MappedClientRepository.open(file, 3)) {
+            assertEquals(3, repository.size());
+            assertEquals(30, repository.findByEmail("c@c.pl").getBalance());
+            assertEquals(40, repository.findByEmail("d@d.pl").getBalance());
+            assertEquals(50, repository.findByEmail("e@e.pl").getBalance());
+        }
+    }
+}
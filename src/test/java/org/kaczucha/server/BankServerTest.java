@@ -0,0 +1,247 @@
+package org.kaczucha.server;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.kaczucha.Client;
+import org.kaczucha.repository.IndexedClientRepository;
+import org.kaczucha.service.BankService;
+import org.kaczucha.service.NoSufficientFundsException;
+import org.kaczucha.service.StripedAccountLocks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BankServerTest {
+    private final IndexedClientRepository repository = new IndexedClientRepository();
+    private BankServer server;
+
+    @AfterEach
+    public void tearDown() {
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Test
+    public void connect_maxConnectionsReached_nextClientServedOnceOneCloses() throws Exception {
+        //given
+        repository.save(new Client("Alek", "a@a.pl", 1000));
+        server = BankServer.startOnLoopback(new BankService(repository), 0, 1);
+        final BankClient first = BankClient.connectToLoopback(server.getPort());
+        first.findByEmail("a@a.pl");
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        final Future<Client> waiting = executor.submit(() -> {
+            try (BankClient second = BankClient.connectToLoopback(server.getPort())) {
+                return second.findByEmail("a@a.pl");
+            }
+        });
+        Thread.sleep(300);
+        assertFalse(waiting.isDone());
+        //when
+        first.close();
+        //then
+        assertEquals(new Client("Alek", "a@a.pl", 1000), waiting.get(5, TimeUnit.SECONDS));
+        executor.shutdown();
+    }
+
+    @Test
+    public void operations_overLoopback_behaveLikeLocalService() {
+        //given
+        server = BankServer.startOnLoopback(new BankService(repository, new StripedAccountLocks()), 0);
+        try (BankClient client = BankClient.connectToLoopback(server.getPort())) {
+            //when
+            client.save(new Client("Alek", "a@a.pl", 1000));
+            client.save(new Client("Bartek", "b@b.pl", 500));
+            client.transfer("a@a.pl", "b@b.pl", 250.5);
+            client.withdraw("b@b.pl", 50);
+            //then
+            assertEquals(new Client("Alek", "a@a.pl", 749.5), client.findByEmail("A@A.pl"));
+            assertEquals(new Client("Bartek", "b@b.pl", 700.5), client.findByEmail("b@b.pl"));
+            assertThrows(NoSuchElementException.class, () -> client.findByEmail("x@x.pl"));
+            assertThrows(NoSufficientFundsException.class, () -> client.withdraw("a@a.pl", 10_000));
+            assertThrows(IllegalArgumentException.class, () -> client.transfer("a@a.pl", "a@a.pl", 1));
+        }
+    }
+
+    @Test
+    public void transfer_retriedWithIdempotencyKey_appliedOnce() {
+        //given
+        server = BankServer.startOnLoopback(new BankService(repository, new StripedAccountLocks()), 0);
+        try (BankClient client = BankClient.connectToLoopback(server.getPort())) {
+            client.save(new Client("Alek", "a@a.pl", 1000));
+            client.save(new Client("Bartek", "b@b.pl", 500));
+            //when
+            client.transfer("retry-1", "a@a.pl", "b@b.pl", 100);
+            client.transfer("retry-1", "a@a.pl", "b@b.pl", 100);
+            client.withdraw("retry-2", "b@b.pl", 50);
+            client.withdraw("retry-2", "b@b.pl", 50);
+            //then
+            assertEquals(900, client.findByEmail("a@a.pl").getBalance());
+            assertEquals(550, client.findByEmail("b@b.pl").getBalance());
+            assertThrows(IllegalArgumentException.class, () -> client.withdraw("retry-2", "b@b.pl", 60));
+        }
+    }
+
+    @Test
+    public void transfer_manyConcurrentConnections_totalBalancePreserved() throws Exception {
+        //given
+        final int accounts = 8;
+        final int connections = 32;
+        server = BankServer.startOnLoopback(new BankService(repository, new StripedAccountLocks()), 0);
+        for (int i = 0; i < accounts; i++) {
+            repository.save(new Client("Client" + i, "client" + i + "@bank.pl", 1000));
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(connections);
+        final List<Future<?>> futures = new ArrayList<>();
+        //when
+        for (int c = 0; c < connections; c++) {
+            futures.add(executor.submit(() -> {
+                try (BankClient client = BankClient.connectToLoopback(server.getPort())) {
+                    final ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < 500; i++) {
+                        final int from = random.nextInt(accounts);
+                        final int to = (from + 1 + random.nextInt(accounts - 1)) % accounts;
+                        try {
+                            client.transfer("client" + from + "@bank.pl", "client" + to + "@bank.pl", 1);
+                        } catch (NoSufficientFundsException ignored) {
+                        }
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        //then
+        long total = 0;
+        for (int i = 0; i < accounts; i++) {
+            total += repository.findByEmail("client" + i + "@bank.pl").getBalanceMinor();
+        }
+        assertEquals(accounts * 1000 * 100L, total);
+    }
+
+    @Test
+    public void shutdown_operationInFlight_completesBeforeConnectionCloses() throws Exception {
+        //given
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final BankService slowService = new BankService(repository) {
+            @Override
+            public void withdraw(String email, int amount) {
+                entered.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.withdraw(email, amount);
+            }
+        };
+        repository.save(new Client("Alek", "a@a.pl", 1000));
+        server = BankServer.startOnLoopback(slowService, 0);
+        final int port = server.getPort();
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        final Future<?> withdrawal = executor.submit(() -> {
+            try (BankClient client = BankClient.connectToLoopback(port)) {
+                client.withdraw("a@a.pl", 100);
+            }
+        });
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+        //when
+        final Future<?> shutdown = executor.submit(() -> server.shutdown(Duration.ofSeconds(5)));
+        Thread.sleep(100);
+        release.countDown();
+        withdrawal.get(5, TimeUnit.SECONDS);
+        shutdown.get(5, TimeUnit.SECONDS);
+        executor.shutdown();
+        //then
+        assertEquals(900 * 100L, repository.findByEmail("a@a.pl").getBalanceMinor());
+        assertThrows(UncheckedIOException.class, () -> BankClient.connectToLoopback(port));
+    }
+
+    @Test
+    public void shutdown_pipelinedRequestBufferedBehindInFlightOne_bothComplete() throws Exception {
+        //given
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final BankService slowService = new BankService(repository) {
+            @Override
+            public void withdraw(String email, int amount) {
+                entered.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.withdraw(email, amount);
+            }
+        };
+        repository.save(new Client("Alek", "a@a.pl", 1000));
+        server = BankServer.startOnLoopback(slowService, 0);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+            final DataOutputStream output = new DataOutputStream(socket.getOutputStream());
+            final DataInputStream input = new DataInputStream(socket.getInputStream());
+            final ByteArrayOutputStream requests = new ByteArrayOutputStream();
+            final DataOutputStream pipelined = new DataOutputStream(requests);
+            for (int i = 0; i < 2; i++) {
+                pipelined.writeByte(BankProtocol.WITHDRAW);
+                pipelined.writeUTF("a@a.pl");
+                pipelined.writeInt(100);
+            }
+            output.write(requests.toByteArray());
+            output.flush();
+            assertTrue(entered.await(5, TimeUnit.SECONDS));
+            //when
+            final Future<?> shutdown = executor.submit(() -> server.shutdown(Duration.ofSeconds(5)));
+            Thread.sleep(100);
+            release.countDown();
+            //then
+            assertEquals(BankProtocol.OK, input.readByte());
+            assertEquals(BankProtocol.OK, input.readByte());
+            shutdown.get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(800 * 100L, repository.findByEmail("a@a.pl").getBalanceMinor());
+    }
+
+    @Test
+    public void request_unknownOpcode_answeredWithErrorAndConnectionClosed() throws Exception {
+        //given
+        server = BankServer.startOnLoopback(new BankService(repository), 0);
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+            final DataOutputStream output = new DataOutputStream(socket.getOutputStream());
+            final DataInputStream input = new DataInputStream(socket.getInputStream());
+            //when
+            output.writeByte(42);
+            output.writeUTF("payload the server cannot parse");
+            output.flush();
+            //then
+            assertEquals(BankProtocol.INVALID_ARGUMENT, input.readByte());
+            assertEquals("Unknown opcode: 42", input.readUTF());
+            assertEquals(-1, input.read());
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package org.kaczucha.service;
+
+import org.junit.jupiter.api.Test;
+import org.kaczucha.Client;
+import org.kaczucha.repository.AccountTable;
+import org.kaczucha.repository.ClientRepository;
+import org.kaczucha.repository.IndexedClientRepository;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class AccountBookReportTest {
+    private static final int ACCOUNTS = 50_000;
+
+    @Test
+    public void report_accountTable_exactTotalsHistogramAndDomains() {
+        verifyReport(new AccountTable());
+    }
+
+    @Test
+    public void report_indexedRepository_exactTotalsHistogramAndDomains() {
+        verifyReport(new IndexedClientRepository());
+    }
+
+    @Test
+    public void report_boundsNotIncreasing_throwsException() {
+        final BankService service = new BankService(new AccountTable());
+        assertThrows(IllegalArgumentException.class, () -> service.report(100, 100));
+    }
+
+    private static void verifyReport(ClientRepository repository) {
+        //given
+        final BankService service = new BankService(repository);
+        long expectedTotal = 0;
+        for (int i = 0; i < ACCOUNTS; i++) {
+            final String domain = i % 3 == 0 ? "bank.pl" : i % 3 == 1 ? "Mail.COM" : "mail.com";
+            final long balance = i % 1000 + 1;
+            service.save(Client.ofMinorUnits("Client" + i, "client" + i + "@" + domain, balance));
+            expectedTotal += balance;
+        }
+        service.save(Client.ofMinorUnits("Gone", "gone@gone.pl", 0));
+        service.delete(service.findByEmail("gone@gone.pl"));
+        //when
+        final AccountBookReport report = service.report(100, 500);
+        //then
+        assertEquals(ACCOUNTS, report.getAccounts());
+        assertEquals(expectedTotal, report.getTotalLiabilitiesMinor());
+        assertArrayEquals(new long[]{99 * 50, 400 * 50, 501 * 50}, report.getHistogramCounts());
+        final Map<String, Long> accountsByDomain = report.getAccountsByDomain();
+        assertEquals(2, accountsByDomain.size());
+        assertEquals(16_667, accountsByDomain.get("bank.pl"));
+        assertEquals(33_333, accountsByDomain.get("mail.com"));
+        assertEquals(expectedTotal,
+                report.getTotalsByDomain().get("bank.pl") + report.getTotalsByDomain().get("mail.com"));
+    }
+}
@@ -0,0 +1,93 @@
+package org.kaczucha.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kaczucha.Client;
+import org.kaczucha.repository.IndexedClientRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+
+public class AsyncBankServiceTest {
+    private AsyncBankService service;
+
+    @BeforeEach
+    public void setup() {
+        final BankService bankService = new BankService(new IndexedClientRepository(), new StripedAccountLocks());
+        bankService.save(new Client("Alek", "a@a.pl", 1000));
+        bankService.save(new Client("Bartek", "b@b.pl", 1000));
+        service = new AsyncBankService(bankService);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        service.close();
+    }
+
+    @Test
+    public void transferAsync_manyPipelinedTransfers_allApplied() {
+        //given
+        final List<CompletableFuture<Void>> futures = new ArrayList<>();
+        //when
+        for (int i = 0; i < 500; i++) {
+            futures.add(i % 2 == 0
+                    ? service.transferAsync("a@a.pl", "b@b.pl", 1)
+                    : service.transferAsync("b@b.pl", "a@a.pl", 2));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        //then
+        Assertions.assertEquals(1250, service.findByEmailAsync("a@a.pl").join().getBalance());
+        Assertions.assertEquals(750, service.balanceOfAsync("b@b.pl").join() / 100.0);
+    }
+
+    @Test
+    public void withdrawAsync_insufficientFunds_futureFailsWithoutThrowing() {
+        //given
+        //when
+        final CompletableFuture<Void> future = service.withdrawAsync("a@a.pl", 2000);
+        //then
+        final ExecutionException exception = Assertions.assertThrows(ExecutionException.class, future::get);
+        Assertions.assertTrue(exception.getCause() instanceof NoSufficientFundsException);
+        Assertions.assertEquals(1000, service.findByEmailAsync("a@a.pl").join().getBalance());
+    }
+
+    @Test
+    public void findByEmailAsync_unknownEmail_futureFailsWithOriginalException() {
+        //given
+        //when
+        final CompletableFuture<Client> future = service.findByEmailAsync("x@x.pl");
+        //then
+        final Throwable failure = future.handle((client, error) -> error).join();
+        Assertions.assertTrue(failure instanceof NoSuchElementException);
+    }
+
+    @Test
+    public void transferAsync_chainedOperations_runInOrder() {
+        //given
+        //when
+        final double balance = service.withdrawAsync("a@a.pl", 1000)
+                .thenCompose(ignored -> service.transferAsync("b@b.pl", "a@a.pl", 300))
+                .thenCompose(ignored -> service.findByEmailAsync("a@a.pl"))
+                .join()
+                .getBalance();
+        //then
+        Assertions.assertEquals(300, balance);
+    }
+
+    @Test
+    public void saveAsync_afterClose_futureFails() {
+        //given
+        service.close();
+        //when
+        final CompletableFuture<Void> future = service.saveAsync(new Client("Cezary", "c@c.pl", 10));
+        //then
+        final ExecutionException exception = Assertions.assertThrows(ExecutionException.class, future::get);
+        Assertions.assertTrue(exception.getCause() instanceof RejectedExecutionException);
+    }
+}
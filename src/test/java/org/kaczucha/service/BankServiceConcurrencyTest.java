@@ -0,0 +1,163 @@
+package org.kaczucha.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kaczucha.Client;
+import org.kaczucha.repository.IndexedClientRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class BankServiceConcurrencyTest {
+    private static final int ACCOUNTS = 8;
+    private static final int THREADS = 8;
+    private static final int OPERATIONS_PER_THREAD = 50_000;
+    private static final double INITIAL_BALANCE = 10_000;
+
+    private BankService service;
+
+    @BeforeEach
+    public void setup() {
+        service = new BankService(new IndexedClientRepository(), new StripedAccountLocks(16));
+        for (int i = 0; i < ACCOUNTS; i++) {
+            service.save(new Client("Client" + i, email(i), INITIAL_BALANCE));
+        }
+    }
+
+    @Test
+    public void transfer_manyThreads_totalBalanceConserved() throws Exception {
+        //given
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        final List<Future<?>> futures = new ArrayList<>();
+        //when
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(executor.submit(() -> {
+                final ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                    final int from = random.nextInt(ACCOUNTS);
+                    final int to = (from + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+                    try {
+                        service.transfer(email(from), email(to), 1 + random.nextInt(100));
+                    } catch (NoSufficientFundsException ignored) {
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        //then
+        double total = 0;
+        for (int i = 0; i < ACCOUNTS; i++) {
+            final double balance = service.findByEmail(email(i)).getBalance();
+            total += balance;
+        }
+        assertEquals(ACCOUNTS * INITIAL_BALANCE, total);
+    }
+
+    @Test
+    public void withdraw_manyThreads_noUpdateLost() throws Exception {
+        //given
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        final List<Future<?>> futures = new ArrayList<>();
+        //when
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    service.withdraw(email(0), 1);
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        //then
+        assertEquals(INITIAL_BALANCE - THREADS * 1000, service.findByEmail(email(0)).getBalance());
+    }
+
+    @Test
+    public void balanceOf_concurrentWithdrawals_readsNeverIncrease() throws Exception {
+        //given
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        final List<Future<Boolean>> readers = new ArrayList<>();
+        final Future<?> writer = executor.submit(() -> {
+            for (int i = 0; i < 5000; i++) {
+                service.withdraw(email(0), 1);
+            }
+        });
+        //when
+        for (int t = 1; t < THREADS; t++) {
+            readers.add(executor.submit(() -> {
+                long previous = Long.MAX_VALUE;
+                while (!writer.isDone()) {
+                    final long balance = service.balanceOf(email(0));
+                    if (balance > previous) {
+                        return false;
+                    }
+                    previous = balance;
+                }
+                return true;
+            }));
+        }
+        writer.get();
+        //then
+        for (Future<Boolean> reader : readers) {
+            assertEquals(true, reader.get());
+        }
+        executor.shutdown();
+        assertEquals((long) ((INITIAL_BALANCE - 5000) * 100), service.balanceOf(email(0)));
+        assertEquals(new Client("Client0", email(0), INITIAL_BALANCE - 5000), service.snapshotOf(email(0)));
+    }
+
+    @Test
+    public void transfer_payeeDeletedBetweenLookupAndLock_noMoneyLost() throws Exception {
+        //given
+        final CountDownLatch lookedUp = new CountDownLatch(1);
+        final CountDownLatch deleteAttempted = new CountDownLatch(1);
+        final BankService service = new BankService(new IndexedClientRepository() {
+            @Override
+            public Client findByEmail(String email) {
+                final Client client = super.findByEmail(email);
+                if (email.equals("payee@bank.pl") && Thread.currentThread().getName().equals("payer")) {
+                    lookedUp.countDown();
+                    try {
+                        deleteAttempted.await(200, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return client;
+            }
+        }, new StripedAccountLocks(16));
+        service.save(new Client("Payer", "payer@bank.pl", 100));
+        service.save(new Client("Payee", "payee@bank.pl", 0));
+        final Thread payer = new Thread(() -> service.transfer("payer@bank.pl", "payee@bank.pl", 10), "payer");
+        //when
+        payer.start();
+        lookedUp.await();
+        try {
+            service.delete(new Client("Payee", "payee@bank.pl", 0));
+        } catch (IllegalArgumentException ignored) {
+        } finally {
+            deleteAttempted.countDown();
+        }
+        payer.join();
+        //then
+        assertEquals(90, service.findByEmail("payer@bank.pl").getBalance());
+        assertEquals(10, service.findByEmail("payee@bank.pl").getBalance());
+    }
+
+    private static String email(int i) {
+        return "client" + i + "@bank.pl";
+    }
+}
@@ -6,6 +6,9 @@ import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.kaczucha.Client;
+import org.kaczucha.repository.AccountTable;
+import org.kaczucha.repository.ClientRepository;
+import org.kaczucha.repository.IndexedClientRepository;
 import org.kaczucha.repository.InMemoryClientRepository;
 
 import java.lang.ref.SoftReference;
@@ -82,6 +85,22 @@ public class BankServiceTest {
         softAssertions.assertAll();
     }
 
+    @Test
+    public void transfer_repeatedCentAmounts_noRoundingDrift() {
+        //given
+        final String emailFrom = "a@a.pl";
+        final String emailTo = "b@b.pl";
+        clients.add(new Client("Alek", emailFrom, 1));
+        clients.add(new Client("Bartek", emailTo, 0));
+        //when
+        for (int i = 0; i < 10; i++) {
+            service.transfer(emailFrom, emailTo, 0.1);
+        }
+        //then
+        Assertions.assertEquals(0, service.findByEmail(emailFrom).getBalance());
+        Assertions.assertEquals(1, service.findByEmail(emailTo).getBalance());
+    }
+
     @Test
     public void transfer_allFounds_fundsTransferred() {
         // given
@@ -193,6 +212,21 @@ public class BankServiceTest {
     }
 
 
+    @Test
+    public void transfer_betweenCaseVariantsOfOneEmail_thrownIllegalArgumentException() {
+        for (ClientRepository repository : List.of(new IndexedClientRepository(), new AccountTable())) {
+            // given
+            final BankService bank = new BankService(repository);
+            bank.save(new Client("Alek", "a@a.pl", 100));
+            // when/then
+            Assertions.assertThrows(
+                    IllegalArgumentException.class,
+                    () -> bank.transfer("A@a.pl", "a@a.pl", 10)
+            );
+            Assertions.assertEquals(10_000, bank.balanceOf("a@a.pl"));
+        }
+    }
+
     @Test
     public void transfer_negativeWithDotAmount_thrownIllegalArgumentException() {
         // given
@@ -344,6 +378,18 @@ public class BankServiceTest {
                 () -> service.delete(client));
     }
 
+    @Test
+    public void deleteClientWithoutFunds_clientRemoved() {
+        //given
+        final String email = "a@a.pl";
+        final Client client = new Client("Alek", email, 0);
+        clients.add(client);
+        //when
+        service.delete(client);
+        //then
+        Assertions.assertTrue(clients.isEmpty());
+    }
+
     @Test
     public void deleteClientWithicorrectEmail_throwsNoSuchElementEx() {
         //given
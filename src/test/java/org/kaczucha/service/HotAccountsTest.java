@@ -0,0 +1,217 @@
+package org.kaczucha.service;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.kaczucha.Client;
+import org.kaczucha.repository.AccountTable;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HotAccountsTest {
+    private static final int PAYERS = 8;
+    private final AccountTable table = new AccountTable();
+
+    private BankService serviceWith(HotAccounts hotAccounts) {
+        final BankService service = new BankService(table, new StripedAccountLocks(),
+                new IdempotencyCache(16, Duration.ofMinutes(1)), hotAccounts);
+        service.save(new Client("Merchant", "shop@bank.pl", 0));
+        for (int i = 0; i < PAYERS; i++) {
+            service.save(new Client("Payer" + i, "payer" + i + "@bank.pl", 1000));
+        }
+        return service;
+    }
+
+    @Test
+    public void transfer_manyPayersIntoHotAccount_creditsStripedAndConserved() throws InterruptedException {
+        //given
+        final BankService service = serviceWith(new HotAccounts());
+        service.markHot("shop@bank.pl");
+        final List<Thread> payers = new ArrayList<>();
+        //when
+        for (int i = 0; i < PAYERS; i++) {
+            final String payer = "payer" + i + "@bank.pl";
+            final Thread thread = new Thread(() -> {
+                for (int j = 0; j < 1000; j++) {
+                    service.transfer(payer, "shop@bank.pl", 1);
+                }
+            });
+            thread.start();
+            payers.add(thread);
+        }
+        for (Thread payer : payers) {
+            payer.join();
+        }
+        //then
+        assertEquals(PAYERS * 1000, service.balanceOf("shop@bank.pl") / 100);
+        assertEquals(PAYERS * 1000, service.findByEmail("shop@bank.pl").getBalance());
+        assertEquals(PAYERS * 1000, service.getHotAccounts().getStripedCredits());
+        assertEquals(PAYERS * 1000L * 100, service.report().getTotalLiabilitiesMinor());
+    }
+
+    @Test
+    public void withdraw_fromHotAccount_checksReconciledBalance() {
+        //given
+        final BankService service = serviceWith(new HotAccounts());
+        service.markHot("shop@bank.pl");
+        service.transfer("payer0@bank.pl", "shop@bank.pl", 100);
+        //when
+        service.withdraw("shop@bank.pl", 100);
+        //then
+        Assertions.assertThrows(NoSufficientFundsException.class, () -> service.withdraw("shop@bank.pl", 1));
+        assertEquals(0, service.balanceOf("shop@bank.pl"));
+        assertEquals(1, service.getHotAccounts().getReconciliations());
+    }
+
+    @Test
+    public void transfer_mostCreditsToOneAccount_accountDetectedAsHot() {
+        //given
+        final BankService service = serviceWith(new HotAccounts(true, 0.25));
+        //when
+        for (int i = 0; i < 20_000; i++) {
+            final int payer = (i / 4) % PAYERS;
+            final String to = i % 4 == 0 ? "payer" + payer + "@bank.pl" : "shop@bank.pl";
+            service.transfer("payer" + (payer + 1) % PAYERS + "@bank.pl", to, 0.01);
+        }
+        //then
+        final HotAccounts hotAccounts = service.getHotAccounts();
+        assertEquals(1, hotAccounts.size());
+        assertEquals(1, hotAccounts.getPromotions());
+        assertTrue(hotAccounts.isHot(table.findByEmail("shop@bank.pl")));
+        assertTrue(hotAccounts.getStripedCredits() > 0);
+        assertEquals(PAYERS * 1000, service.report().getTotalLiabilitiesMinor() / 100);
+        assertTrue(hotAccounts.report().contains("bank_hot_accounts 1"));
+    }
+
+    @Test
+    public void transfer_listenerRegistered_creditsAppliedUnderLock() {
+        //given
+        final BankService service = serviceWith(new HotAccounts());
+        service.markHot("shop@bank.pl");
+        final List<Long> seenBalances = new ArrayList<>();
+        service.addListener(new BankEventListener() {
+            @Override
+            public void onTransfer(Client fromClient, Client toClient, long amount) {
+                seenBalances.add(toClient.getBalanceMinor());
+            }
+        });
+        //when
+        service.transfer("payer0@bank.pl", "shop@bank.pl", 1);
+        service.transfer("payer1@bank.pl", "shop@bank.pl", 2);
+        //then
+        assertEquals(List.of(100L, 300L), seenBalances);
+        assertEquals(0, service.getHotAccounts().getStripedCredits());
+    }
+
+    @Test
+    public void findByEmail_hotAccountWithPendingCredits_trueBalanceReadWithoutReconciling() {
+        //given
+        final BankService service = serviceWith(new HotAccounts());
+        service.markHot("shop@bank.pl");
+        service.transfer("payer0@bank.pl", "shop@bank.pl", 100);
+        //when
+        final Client client = service.findByEmail("shop@bank.pl");
+        //then
+        assertEquals(new Client("Merchant", "shop@bank.pl", 100), client);
+        assertEquals(0, service.getHotAccounts().getReconciliations());
+        assertEquals(1, service.getHotAccounts().getStripedCredits());
+    }
+
+    @Test
+    public void markCold_pendingCredits_foldedInAndLaterCreditsLocked() {
+        //given
+        final BankService service = serviceWith(new HotAccounts());
+        service.markHot("shop@bank.pl");
+        service.transfer("payer0@bank.pl", "shop@bank.pl", 100);
+        //when
+        service.markCold("shop@bank.pl");
+        service.transfer("payer1@bank.pl", "shop@bank.pl", 50);
+        //then
+        final HotAccounts hotAccounts = service.getHotAccounts();
+        assertEquals(0, hotAccounts.size());
+        assertEquals(1, hotAccounts.getStripedCredits());
+        assertEquals(150, service.findByEmail("shop@bank.pl").getBalance());
+    }
+
+    @Test
+    public void delete_hotAccountWithPendingCredits_refusedAndStillStriped() {
+        //given
+        final BankService service = serviceWith(new HotAccounts());
+        service.markHot("shop@bank.pl");
+        service.transfer("payer0@bank.pl", "shop@bank.pl", 100);
+        //when
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> service.delete(Client.ofMinorUnits("Merchant", "shop@bank.pl", 0)));
+        service.transfer("payer1@bank.pl", "shop@bank.pl", 50);
+        //then
+        assertEquals(2, service.getHotAccounts().getStripedCredits());
+        assertEquals(150 * 100, service.balanceOf("shop@bank.pl"));
+    }
+
+    @Test
+    public void credit_afterRetire_refusedWithNothingPending() {
+        //given
+        final HotAccounts hotAccounts = new HotAccounts();
+        final Client client = new Client("Merchant", "shop@bank.pl", 0);
+        hotAccounts.markHot(client);
+        final HotAccounts.Cells cells = hotAccounts.cellsFor(client);
+        assertTrue(hotAccounts.credit(cells, 5));
+        //when
+        hotAccounts.retire(client);
+        //then
+        Assertions.assertFalse(hotAccounts.credit(cells, 7));
+        assertEquals(0, hotAccounts.pending(client));
+        assertEquals(5, client.getBalanceMinor());
+    }
+
+    @Test
+    public void delete_racingWithHotCredits_noCreditLost() throws InterruptedException {
+        //given
+        final BankService service = serviceWith(new HotAccounts());
+        service.markHot("shop@bank.pl");
+        final List<Thread> payers = new ArrayList<>();
+        for (int i = 0; i < PAYERS; i++) {
+            final String payer = "payer" + i + "@bank.pl";
+            final Thread thread = new Thread(() -> {
+                for (int j = 0; j < 1000; j++) {
+                    try {
+                        service.transfer(payer, "shop@bank.pl", 1);
+                    } catch (NoSuchElementException e) {
+                        return;
+                    }
+                }
+            });
+            thread.start();
+            payers.add(thread);
+        }
+        long withdrawn = 0;
+        //when
+        while (true) {
+            final int balance = (int) (service.balanceOf("shop@bank.pl") / 100);
+            if (balance > 0) {
+                service.withdraw("shop@bank.pl", balance);
+                withdrawn += balance;
+            }
+            try {
+                service.delete(Client.ofMinorUnits("Merchant", "shop@bank.pl", 0));
+                break;
+            } catch (IllegalArgumentException fundsArrivedMeanwhile) {
+                // withdraw them and try again
+            }
+        }
+        for (Thread payer : payers) {
+            payer.join();
+        }
+        //then
+        long payersLeft = 0;
+        for (int i = 0; i < PAYERS; i++) {
+            payersLeft += service.balanceOf("payer" + i + "@bank.pl");
+        }
+        assertEquals(PAYERS * 1000 * 100L, payersLeft + withdrawn * 100);
+    }
+}
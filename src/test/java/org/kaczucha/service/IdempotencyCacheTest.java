@@ -0,0 +1,210 @@
+package org.kaczucha.service;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kaczucha.Client;
+import org.kaczucha.repository.InMemoryClientRepository;
+import org.kaczucha.repository.IndexedClientRepository;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class IdempotencyCacheTest {
+    private BankService service;
+
+    @BeforeEach
+    public void setup() {
+        final List<Client> clients = new ArrayList<>();
+        clients.add(new Client("Alek", "a@a.pl", 1000));
+        clients.add(new Client("Bartek", "b@b.pl", 500));
+        service = new BankService(new InMemoryClientRepository(clients), new StripedAccountLocks(),
+                new IdempotencyCache(16, Duration.ofMinutes(1)));
+    }
+
+    @Test
+    public void transfer_retriedWithSameKey_fundsMovedOnce() {
+        //given
+        service.transfer("key-1", "a@a.pl", "b@b.pl", 100);
+        //when
+        service.transfer("key-1", "a@a.pl", "b@b.pl", 100);
+        //then
+        Assertions.assertEquals(900, service.findByEmail("a@a.pl").getBalance());
+        Assertions.assertEquals(600, service.findByEmail("b@b.pl").getBalance());
+        Assertions.assertEquals(1, service.getIdempotencyCache().getHits());
+        Assertions.assertEquals(1, service.getIdempotencyCache().getMisses());
+    }
+
+    @Test
+    public void transfer_sameKeyDifferentRequest_throwsException() {
+        //given
+        service.transfer("key-1", "a@a.pl", "b@b.pl", 100);
+        //when
+        //then
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> service.transfer("key-1", "a@a.pl", "b@b.pl", 200));
+        Assertions.assertEquals(900, service.findByEmail("a@a.pl").getBalance());
+    }
+
+    @Test
+    public void transfer_retriedWithDifferentEmailCase_fundsMovedOnce() {
+        //given
+        final BankService service = new BankService(new IndexedClientRepository(), new StripedAccountLocks(),
+                new IdempotencyCache(16, Duration.ofMinutes(1)));
+        service.save(new Client("Alek", "a@a.pl", 1000));
+        service.save(new Client("Bartek", "b@b.pl", 500));
+        service.transfer("key-1", "A@a.pl", "b@B.pl", 100);
+        //when
+        service.transfer("key-1", "a@a.pl", "b@b.pl", 100);
+        //then
+        Assertions.assertEquals(900, service.findByEmail("a@a.pl").getBalance());
+        Assertions.assertEquals(1, service.getIdempotencyCache().getHits());
+    }
+
+    @Test
+    public void withdraw_retriedAfterInsufficientFunds_sameOutcomeReturned() {
+        //given
+        Assertions.assertThrows(NoSufficientFundsException.class, () -> service.withdraw("key-1", "b@b.pl", 600));
+        service.transfer("a@a.pl", "b@b.pl", 500);
+        //when
+        //then
+        Assertions.assertThrows(NoSufficientFundsException.class, () -> service.withdraw("key-1", "b@b.pl", 600));
+        Assertions.assertEquals(1000, service.findByEmail("b@b.pl").getBalance());
+    }
+
+    @Test
+    public void execute_unexpectedFailure_keyCanBeRetried() {
+        //given
+        final IdempotencyCache cache = new IdempotencyCache(16, Duration.ofMinutes(1));
+        final AtomicInteger runs = new AtomicInteger();
+        Assertions.assertThrows(IllegalStateException.class, () -> cache.execute("key-1", "request", () -> {
+            runs.incrementAndGet();
+            throw new IllegalStateException("timeout");
+        }));
+        //when
+        cache.execute("key-1", "request", runs::incrementAndGet);
+        //then
+        Assertions.assertEquals(2, runs.get());
+    }
+
+    @Test
+    public void execute_moreKeysThanCapacity_oldestEvicted() {
+        //given
+        final IdempotencyCache cache = new IdempotencyCache(4, Duration.ofMinutes(1));
+        final AtomicInteger runs = new AtomicInteger();
+        //when
+        for (int i = 0; i < 10; i++) {
+            cache.execute("key-" + i, "request", runs::incrementAndGet);
+        }
+        cache.execute("key-0", "request", runs::incrementAndGet);
+        cache.execute("key-9", "request", runs::incrementAndGet);
+        //then
+        Assertions.assertEquals(11, runs.get());
+        Assertions.assertEquals(4, cache.size());
+        Assertions.assertEquals(7, cache.getEvictions());
+        Assertions.assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void execute_entryOlderThanTimeToLive_evicted() {
+        //given
+        final IdempotencyCache cache = new IdempotencyCache(16, Duration.ZERO);
+        final AtomicInteger runs = new AtomicInteger();
+        cache.execute("key-1", "request", runs::incrementAndGet);
+        //when
+        cache.execute("key-1", "request", runs::incrementAndGet);
+        //then
+        Assertions.assertEquals(2, runs.get());
+        Assertions.assertTrue(cache.getEvictions() >= 1);
+    }
+
+    @Test
+    public void execute_concurrentRetries_operationRunsOnce() throws InterruptedException {
+        //given
+        final IdempotencyCache cache = new IdempotencyCache(16, Duration.ofMinutes(1));
+        final AtomicInteger runs = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Thread original = new Thread(() -> cache.execute("key-1", "request", () -> {
+            runs.incrementAndGet();
+            started.countDown();
+            awaitQuietly(release);
+        }));
+        original.start();
+        started.await();
+        final List<Thread> retries = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            final Thread retry = new Thread(() -> cache.execute("key-1", "request", runs::incrementAndGet));
+            retry.start();
+            retries.add(retry);
+        }
+        //when
+        release.countDown();
+        original.join();
+        for (Thread retry : retries) {
+            retry.join();
+        }
+        //then
+        Assertions.assertEquals(1, runs.get());
+        Assertions.assertEquals(4, cache.getHits());
+    }
+
+    @Test
+    public void execute_operationThrowsError_keyCanBeRetried() {
+        //given
+        final IdempotencyCache cache = new IdempotencyCache(16, Duration.ofMinutes(1));
+        final AtomicInteger runs = new AtomicInteger();
+        Assertions.assertThrows(AssertionError.class, () -> cache.execute("key-1", "request", () -> {
+            runs.incrementAndGet();
+            throw new AssertionError("boom");
+        }));
+        //when
+        Assertions.assertTimeoutPreemptively(Duration.ofSeconds(10),
+                () -> cache.execute("key-1", "request", runs::incrementAndGet));
+        //then
+        Assertions.assertEquals(2, runs.get());
+    }
+
+    @Test
+    public void execute_capacityExceededWhileCallRunning_runningEntryKept() throws InterruptedException {
+        //given
+        final IdempotencyCache cache = new IdempotencyCache(1, Duration.ofMinutes(1));
+        final AtomicInteger runs = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Thread original = new Thread(() -> cache.execute("key-1", "request", () -> {
+            runs.incrementAndGet();
+            started.countDown();
+            awaitQuietly(release);
+        }));
+        original.start();
+        started.await();
+        cache.execute("key-2", "request", () -> {
+        });
+        cache.execute("key-3", "request", () -> {
+        });
+        //when
+        final Thread retry = new Thread(() -> cache.execute("key-1", "request", runs::incrementAndGet));
+        retry.start();
+        while (cache.getHits() == 0 && retry.isAlive()) {
+            Thread.onSpinWait();
+        }
+        release.countDown();
+        original.join();
+        retry.join();
+        //then
+        Assertions.assertEquals(1, runs.get());
+        Assertions.assertEquals(1, cache.getHits());
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
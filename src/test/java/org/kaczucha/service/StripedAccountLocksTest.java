@@ -0,0 +1,49 @@
+package org.kaczucha.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StripedAccountLocksTest {
+    private final StripedAccountLocks locks = new StripedAccountLocks(16);
+
+    @Test
+    public void validate_noWriteSinceStamp_succeeds() {
+        //given
+        final int stripe = locks.stripeOf("a@a.pl");
+        //when
+        final long stamp = locks.tryOptimisticRead(stripe);
+        //then
+        assertTrue(locks.validate(stripe, stamp));
+    }
+
+    @Test
+    public void validate_writeSinceStamp_fails() {
+        //given
+        final int stripe = locks.stripeOf("a@a.pl");
+        final long stamp = locks.tryOptimisticRead(stripe);
+        //when
+        locks.lock(stripe);
+        locks.unlock(stripe);
+        //then
+        assertFalse(locks.validate(stripe, stamp));
+    }
+
+    @Test
+    public void tryOptimisticRead_stripeLocked_returnsZero() {
+        //given
+        final int stripe = locks.stripeOf("a@a.pl");
+        locks.lock(stripe);
+        locks.lock(stripe);
+        locks.unlock(stripe);
+        //when
+        final long stamp = locks.tryOptimisticRead(stripe);
+        locks.unlock(stripe);
+        //then
+        assertEquals(0, stamp);
+        assertFalse(locks.validate(stripe, stamp));
+        assertTrue(locks.validate(stripe, locks.tryOptimisticRead(stripe)));
+    }
+}
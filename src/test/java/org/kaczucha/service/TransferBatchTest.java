@@ -0,0 +1,186 @@
+package org.kaczucha.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kaczucha.Client;
+import org.kaczucha.repository.IndexedClientRepository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TransferBatchTest {
+    private BankService service;
+
+    @BeforeEach
+    public void setup() {
+        service = new BankService(new IndexedClientRepository(), new StripedAccountLocks());
+        service.save(new Client("Alek", "a@a.pl", 100));
+        service.save(new Client("Bartek", "b@b.pl", 0));
+        service.save(new Client("Celina", "c@c.pl", 50));
+        service.save(new Client("Dawid", "d@d.pl", 0));
+    }
+
+    @Test
+    public void transferAll_nettedBalancesSufficient_allTransfersCompleted() {
+        //given
+        final List<TransferRequest> requests = Arrays.asList(
+                new TransferRequest("b@b.pl", "a@a.pl", 150),
+                new TransferRequest("a@a.pl", "b@b.pl", 200)
+        );
+        //when
+        final List<TransferResult> results = service.transferAll(requests);
+        //then
+        assertEquals(TransferResult.Status.COMPLETED, results.get(0).getStatus());
+        assertEquals(TransferResult.Status.COMPLETED, results.get(1).getStatus());
+        assertEquals(50, service.findByEmail("a@a.pl").getBalance());
+        assertEquals(50, service.findByEmail("b@b.pl").getBalance());
+    }
+
+    @Test
+    public void transferAll_invalidItems_reportedPerItemAndOthersApplied() {
+        //given
+        final List<TransferRequest> requests = Arrays.asList(
+                new TransferRequest("a@a.pl", "b@b.pl", 10),
+                new TransferRequest("a@a.pl", "x@x.pl", 10),
+                new TransferRequest("c@c.pl", "d@d.pl", -5),
+                new TransferRequest("c@c.pl", "C@C.PL", 5)
+        );
+        //when
+        final List<TransferResult> results = service.transferAll(requests);
+        //then
+        assertEquals(TransferResult.Status.COMPLETED, results.get(0).getStatus());
+        assertEquals(TransferResult.Status.NOT_FOUND, results.get(1).getStatus());
+        assertEquals(TransferResult.Status.INVALID, results.get(2).getStatus());
+        assertEquals(TransferResult.Status.INVALID, results.get(3).getStatus());
+        assertEquals(90, service.findByEmail("a@a.pl").getBalance());
+    }
+
+    @Test
+    public void transferAll_nonFiniteOrHugeAmounts_itemsInvalidAndOthersApplied() {
+        //given
+        final List<TransferRequest> requests = Arrays.asList(
+                new TransferRequest("a@a.pl", "b@b.pl", Double.NaN),
+                new TransferRequest("a@a.pl", "b@b.pl", Double.POSITIVE_INFINITY),
+                new TransferRequest("a@a.pl", "b@b.pl", 1e300),
+                new TransferRequest("a@a.pl", "b@b.pl", 10)
+        );
+        //when
+        final List<TransferResult> results = service.transferAll(requests);
+        //then
+        assertEquals(TransferResult.Status.INVALID, results.get(0).getStatus());
+        assertEquals(TransferResult.Status.INVALID, results.get(1).getStatus());
+        assertEquals(TransferResult.Status.INVALID, results.get(2).getStatus());
+        assertEquals(TransferResult.Status.COMPLETED, results.get(3).getStatus());
+        assertEquals(90, service.findByEmail("a@a.pl").getBalance());
+    }
+
+    @Test
+    public void transferAll_componentOverdrawn_itemsRetriedOneByOne() {
+        //given
+        final List<TransferRequest> requests = Arrays.asList(
+                new TransferRequest("a@a.pl", "b@b.pl", 60),
+                new TransferRequest("a@a.pl", "b@b.pl", 60),
+                new TransferRequest("c@c.pl", "d@d.pl", 50)
+        );
+        //when
+        final List<TransferResult> results = service.transferAll(requests);
+        //then
+        assertEquals(TransferResult.Status.COMPLETED, results.get(0).getStatus());
+        assertEquals(TransferResult.Status.INSUFFICIENT_FUNDS, results.get(1).getStatus());
+        assertEquals(TransferResult.Status.COMPLETED, results.get(2).getStatus());
+        assertEquals(40, service.findByEmail("a@a.pl").getBalance());
+        assertEquals(60, service.findByEmail("b@b.pl").getBalance());
+        assertEquals(50, service.findByEmail("d@d.pl").getBalance());
+    }
+
+    @Test
+    public void transferAll_withListener_eachItemSeenWithItsOwnBalances() {
+        //given
+        final List<String> seen = new ArrayList<>();
+        service.addListener(new BankEventListener() {
+            @Override
+            public void onTransfer(Client fromClient, Client toClient, long amount) {
+                seen.add(fromClient.getBalanceMinor() + "/" + toClient.getBalanceMinor());
+            }
+        });
+        final List<TransferRequest> requests = Arrays.asList(
+                new TransferRequest("a@a.pl", "b@b.pl", 30),
+                new TransferRequest("b@b.pl", "c@c.pl", 20)
+        );
+        //when
+        service.transferAll(requests);
+        //then
+        assertEquals(Arrays.asList("7000/3000", "1000/7000"), seen);
+    }
+
+    @Test
+    public void transferAll_balanceWouldOverflow_itemInvalidAndNothingChanged() {
+        //given
+        service.save(Client.ofMinorUnits("Rich", "rich@bank.pl", Long.MAX_VALUE - 50));
+        final List<TransferRequest> requests = Arrays.asList(
+                new TransferRequest("a@a.pl", "rich@bank.pl", 1),
+                new TransferRequest("a@a.pl", "b@b.pl", 10)
+        );
+        //when
+        final List<TransferResult> results = service.transferAll(requests);
+        //then
+        assertEquals(TransferResult.Status.INVALID, results.get(0).getStatus());
+        assertEquals(TransferResult.Status.COMPLETED, results.get(1).getStatus());
+        assertEquals(Long.MAX_VALUE - 50, service.findByEmail("rich@bank.pl").getBalanceMinor());
+        assertEquals(90, service.findByEmail("a@a.pl").getBalance());
+    }
+
+    @Test
+    public void transferAll_accountDeletedAfterResolve_itemNotFoundAndPayerUntouched() {
+        //given
+        final IndexedClientRepository repository = new IndexedClientRepository() {
+            private boolean deleted;
+
+            @Override
+            public Client findByEmail(String email) {
+                final Client client = super.findByEmail(email);
+                if (!deleted && email.equals("b@b.pl")) {
+                    deleted = true;
+                    delete(client);
+                }
+                return client;
+            }
+        };
+        final BankService deleting = new BankService(repository, new StripedAccountLocks());
+        deleting.save(new Client("Alek", "a@a.pl", 100));
+        deleting.save(new Client("Bartek", "b@b.pl", 0));
+        //when
+        final List<TransferResult> results = deleting.transferAll(Arrays.asList(
+                new TransferRequest("a@a.pl", "b@b.pl", 10)));
+        //then
+        assertEquals(TransferResult.Status.NOT_FOUND, results.get(0).getStatus());
+        assertEquals(100, deleting.findByEmail("a@a.pl").getBalance());
+    }
+
+    @Test
+    public void transferAll_largeBatchAcrossManyAccounts_totalConserved() {
+        //given
+        final int accounts = 500;
+        for (int i = 0; i < accounts; i++) {
+            service.save(new Client("Client" + i, "client" + i + "@bank.pl", 100));
+        }
+        final List<TransferRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            final int from = (i * 7) % accounts;
+            final int to = (from + 1 + i % 3) % accounts;
+            requests.add(new TransferRequest("client" + from + "@bank.pl", "client" + to + "@bank.pl", 1 + i % 5));
+        }
+        //when
+        service.transferAll(requests);
+        //then
+        long total = 0;
+        for (int i = 0; i < accounts; i++) {
+            final long balance = service.findByEmail("client" + i + "@bank.pl").getBalanceMinor();
+            total += balance;
+        }
+        assertEquals(accounts * 100 * 100L, total);
+    }
+}
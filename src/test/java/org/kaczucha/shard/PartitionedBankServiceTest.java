@@ -0,0 +1,182 @@
+package org.kaczucha.shard;
+
+import org.junit.jupiter.api.Test;
+import org.kaczucha.Client;
+import org.kaczucha.service.NoSufficientFundsException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class PartitionedBankServiceTest {
+    private static final int ACCOUNTS = 16;
+
+    @Test
+    public void transfer_acrossShards_movesFundsExactly() {
+        //given
+        try (PartitionedClientRepository repository = PartitionedClientRepository.inProcess(4)) {
+            final PartitionedBankService service = new PartitionedBankService(repository);
+            final String[] emails = crossShardPair(repository);
+            service.save(new Client("Alek", emails[0], 100));
+            service.save(new Client("Bartek", emails[1], 50));
+            //when
+            service.transfer(emails[0], emails[1], 30.25);
+            //then
+            assertEquals(6975, service.findByEmail(emails[0]).getBalanceMinor());
+            assertEquals(8025, service.findByEmail(emails[1]).getBalanceMinor());
+        }
+    }
+
+    @Test
+    public void transfer_acrossShardsFailing_neitherSideChanges() {
+        //given
+        try (PartitionedClientRepository repository = PartitionedClientRepository.inProcess(4)) {
+            final PartitionedBankService service = new PartitionedBankService(repository);
+            final String[] emails = crossShardPair(repository);
+            service.save(new Client("Alek", emails[0], 100));
+            service.save(new Client("Bartek", emails[1], 50));
+            //when
+            assertThrows(NoSufficientFundsException.class, () -> service.transfer(emails[0], emails[1], 1000));
+            assertThrows(NoSuchElementException.class, () -> service.transfer(emails[0], "nobody@bank.pl", 1));
+            //then
+            assertEquals(10_000, service.findByEmail(emails[0]).getBalanceMinor());
+            assertEquals(5_000, service.findByEmail(emails[1]).getBalanceMinor());
+            service.transfer(emails[1], emails[0], 50);
+            service.delete(service.findByEmail(emails[1]));
+            assertThrows(NoSuchElementException.class, () -> service.findByEmail(emails[1]));
+        }
+    }
+
+    @Test
+    public void transfer_sameIdempotencyKeyTwice_appliedOnceAndReported() {
+        //given
+        try (PartitionedClientRepository repository = PartitionedClientRepository.inProcess(4)) {
+            final PartitionedBankService service = new PartitionedBankService(repository);
+            final String[] emails = crossShardPair(repository);
+            service.save(new Client("Alek", emails[0], 100));
+            service.save(new Client("Bartek", emails[1], 50));
+            //when
+            service.transfer("key-1", emails[0], emails[1], 30);
+            service.transfer("key-1", emails[0], emails[1], 30);
+            //then
+            assertEquals(7_000, service.balanceOf(emails[0]));
+            assertEquals(8_000, service.balanceOf(emails[1]));
+            assertEquals(15_000, service.report().getTotalLiabilitiesMinor());
+        }
+    }
+
+    @Test
+    public void delete_pendingTransfer_rejected() {
+        //given
+        try (LocalShard shard = new LocalShard("shard")) {
+            shard.save(new Client("Alek", "a@a.pl", 0));
+            shard.prepareCredit(1, "a@a.pl", 100);
+            //when
+            assertThrows(IllegalStateException.class, () -> shard.delete(new Client("Alek", "a@a.pl", 0)));
+            shard.abort(1);
+            shard.delete(new Client("Alek", "a@a.pl", 0));
+            //then
+            assertThrows(NoSuchElementException.class, () -> shard.findByEmail("a@a.pl"));
+        }
+    }
+
+    @Test
+    public void delete_copyWithDifferentCase_storedAccountDeleted() {
+        //given
+        try (LocalShard shard = new LocalShard("shard")) {
+            shard.save(new Client("Alek", "a@a.pl", 0));
+            //when
+            shard.delete(new Client("Alek", "A@A.PL", 0));
+            //then
+            assertThrows(NoSuchElementException.class, () -> shard.findByEmail("a@a.pl"));
+        }
+    }
+
+    @Test
+    public void delete_staleCopy_rejectedAndAccountKept() {
+        //given
+        try (LocalShard shard = new LocalShard("shard")) {
+            shard.save(new Client("Alek", "a@a.pl", 0));
+            final Client copy = shard.findByEmail("a@a.pl");
+            shard.prepareCredit(1, "a@a.pl", 100);
+            shard.commit(1);
+            //when
+            assertThrows(IllegalStateException.class, () -> shard.delete(copy));
+            //then
+            assertEquals(100, shard.findByEmail("a@a.pl").getBalanceMinor());
+        }
+    }
+
+    @Test
+    public void transfer_concurrentInProcessShards_totalBalancePreserved() throws Exception {
+        try (PartitionedClientRepository repository = PartitionedClientRepository.inProcess(4)) {
+            assertTotalPreserved(repository);
+        }
+    }
+
+    @Test
+    public void transfer_concurrentShardsOverLoopback_totalBalancePreserved() throws Exception {
+        //given
+        final List<ShardServer> servers = new ArrayList<>();
+        final List<RemoteShard> shards = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            final ShardServer server = new ShardServer(new LocalShard("shard-" + i), 0);
+            servers.add(server);
+            shards.add(RemoteShard.onLoopback(server.getPort(), 4));
+        }
+        try (PartitionedClientRepository repository = new PartitionedClientRepository(shards)) {
+            assertTotalPreserved(repository);
+        } finally {
+            servers.forEach(ShardServer::close);
+        }
+    }
+
+    private static void assertTotalPreserved(PartitionedClientRepository repository) throws Exception {
+        final PartitionedBankService service = new PartitionedBankService(repository);
+        for (int i = 0; i < ACCOUNTS; i++) {
+            service.save(new Client("Client" + i, "client" + i + "@bank.pl", 10));
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        final List<Future<?>> futures = new ArrayList<>();
+        //when
+        for (int t = 0; t < 8; t++) {
+            futures.add(executor.submit(() -> {
+                final ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < 500; i++) {
+                    final int from = random.nextInt(ACCOUNTS);
+                    final int to = (from + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+                    try {
+                        service.transfer("client" + from + "@bank.pl", "client" + to + "@bank.pl", 1);
+                    } catch (NoSufficientFundsException ignored) {
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        //then
+        final long[] total = {0};
+        repository.forEach(client -> total[0] += client.getBalanceMinor());
+        assertEquals(ACCOUNTS * 10 * 100L, total[0]);
+    }
+
+    private static String[] crossShardPair(PartitionedClientRepository repository) {
+        final String first = "client0@bank.pl";
+        for (int i = 1; ; i++) {
+            final String second = "client" + i + "@bank.pl";
+            if (repository.shardOf(second) != repository.shardOf(first)) {
+                return new String[]{first, second};
+            }
+        }
+    }
+}
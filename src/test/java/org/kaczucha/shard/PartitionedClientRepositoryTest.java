@@ -0,0 +1,219 @@
+package org.kaczucha.shard;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.kaczucha.Client;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class PartitionedClientRepositoryTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    public void transfer_debitPrepareReplyLost_bothShardsAborted() {
+        //given
+        final FlakyShard first = new FlakyShard(new LocalShard("shard-0"));
+        final FlakyShard second = new FlakyShard(new LocalShard("shard-1"));
+        try (PartitionedClientRepository repository = new PartitionedClientRepository(List.of(first, second))) {
+            final String[] emails = crossShardPair(repository);
+            repository.save(Client.ofMinorUnits("Alek", emails[0], 100));
+            repository.save(Client.ofMinorUnits("Bartek", emails[1], 0));
+            shardOf(repository, emails[0], first, second).loseDebitReplies = true;
+            //when
+            assertThrows(UncheckedIOException.class, () -> repository.transfer(emails[0], emails[1], 40));
+            //then
+            assertEquals(100, repository.findByEmail(emails[0]).getBalanceMinor());
+            assertEquals(0, repository.findByEmail(emails[1]).getBalanceMinor());
+            repository.delete(repository.findByEmail(emails[0]));
+            repository.delete(repository.findByEmail(emails[1]));
+            assertEquals(0, repository.recover());
+        }
+    }
+
+    @Test
+    public void transfer_commitFailsOnce_retriedAndApplied() {
+        //given
+        final FlakyShard first = new FlakyShard(new LocalShard("shard-0"));
+        final FlakyShard second = new FlakyShard(new LocalShard("shard-1"));
+        try (PartitionedClientRepository repository = new PartitionedClientRepository(List.of(first, second))) {
+            final String[] emails = crossShardPair(repository);
+            repository.save(Client.ofMinorUnits("Alek", emails[0], 100));
+            repository.save(Client.ofMinorUnits("Bartek", emails[1], 0));
+            first.failingSettles = 1;
+            second.failingSettles = 1;
+            //when
+            repository.transfer(emails[0], emails[1], 40);
+            //then
+            assertEquals(60, repository.findByEmail(emails[0]).getBalanceMinor());
+            assertEquals(40, repository.findByEmail(emails[1]).getBalanceMinor());
+            assertEquals(0, repository.recover());
+        }
+    }
+
+    @Test
+    public void reopen_committedTransferInDoubt_finishedOnBothShards() {
+        //given
+        final Path log = directory.resolve("transfers.log");
+        final FlakyShard first = new FlakyShard(new LocalShard("shard-0"));
+        final FlakyShard second = new FlakyShard(new LocalShard("shard-1"));
+        final String[] emails;
+        try (PartitionedClientRepository repository = new PartitionedClientRepository(List.of(first, second), log)) {
+            emails = crossShardPair(repository);
+            repository.save(Client.ofMinorUnits("Alek", emails[0], 100));
+            repository.save(Client.ofMinorUnits("Bartek", emails[1], 0));
+            shardOf(repository, emails[1], first, second).failingSettles = Integer.MAX_VALUE;
+            repository.transfer(emails[0], emails[1], 40);
+            assertEquals(0, repository.findByEmail(emails[1]).getBalanceMinor());
+            assertEquals(1, repository.recover());
+        }
+        first.failingSettles = 0;
+        second.failingSettles = 0;
+        //when
+        try (PartitionedClientRepository repository = new PartitionedClientRepository(List.of(first, second), log)) {
+            //then
+            assertEquals(60, repository.findByEmail(emails[0]).getBalanceMinor());
+            assertEquals(40, repository.findByEmail(emails[1]).getBalanceMinor());
+            assertEquals(0, repository.recover());
+        } finally {
+            first.delegate.close();
+            second.delegate.close();
+        }
+    }
+
+    @Test
+    public void reopen_preparedTransferInDoubt_rolledBackOnBothShards() {
+        //given
+        final Path log = directory.resolve("transfers.log");
+        final FlakyShard first = new FlakyShard(new LocalShard("shard-0"));
+        final FlakyShard second = new FlakyShard(new LocalShard("shard-1"));
+        final String[] emails;
+        try (PartitionedClientRepository repository = new PartitionedClientRepository(List.of(first, second), log)) {
+            emails = crossShardPair(repository);
+            repository.save(Client.ofMinorUnits("Alek", emails[0], 100));
+            repository.save(Client.ofMinorUnits("Bartek", emails[1], 0));
+            final FlakyShard payer = shardOf(repository, emails[0], first, second);
+            payer.loseDebitReplies = true;
+            payer.failingSettles = Integer.MAX_VALUE;
+            assertThrows(UncheckedIOException.class, () -> repository.transfer(emails[0], emails[1], 40));
+            assertEquals(60, repository.findByEmail(emails[0]).getBalanceMinor());
+        }
+        first.loseDebitReplies = false;
+        second.loseDebitReplies = false;
+        first.failingSettles = 0;
+        second.failingSettles = 0;
+        //when
+        try (PartitionedClientRepository repository = new PartitionedClientRepository(List.of(first, second), log)) {
+            //then
+            assertEquals(100, repository.findByEmail(emails[0]).getBalanceMinor());
+            assertEquals(0, repository.findByEmail(emails[1]).getBalanceMinor());
+            repository.transfer(emails[0], emails[1], 40);
+            assertEquals(40, repository.findByEmail(emails[1]).getBalanceMinor());
+        } finally {
+            first.delegate.close();
+            second.delegate.close();
+        }
+    }
+
+    private static FlakyShard shardOf(PartitionedClientRepository repository, String email, FlakyShard first,
+                                      FlakyShard second) {
+        return repository.shardOf(email) == 0 ? first : second;
+    }
+
+    private static String[] crossShardPair(PartitionedClientRepository repository) {
+        final String first = "client0@bank.pl";
+        for (int i = 1; ; i++) {
+            final String second = "client" + i + "@bank.pl";
+            if (repository.shardOf(second) != repository.shardOf(first)) {
+                return new String[]{first, second};
+            }
+        }
+    }
+
+    /**
+     * Shard whose replies can be lost after the call was applied. Closing it leaves the delegate
+     * running, the way a shard process outlives a coordinator.
+     */
+    private static final class FlakyShard implements Shard {
+        private final LocalShard delegate;
+        private volatile boolean loseDebitReplies;
+        private volatile int failingSettles;
+
+        private FlakyShard(LocalShard delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void save(Client client) {
+            delegate.save(client);
+        }
+
+        @Override
+        public Client findByEmail(String email) {
+            return delegate.findByEmail(email);
+        }
+
+        @Override
+        public void delete(Client client) {
+            delegate.delete(client);
+        }
+
+        @Override
+        public void forEach(Consumer<? super Client> action) {
+            delegate.forEach(action);
+        }
+
+        @Override
+        public void withdraw(String email, long amount) {
+            delegate.withdraw(email, amount);
+        }
+
+        @Override
+        public void transfer(String fromEmail, String toEmail, long amount) {
+            delegate.transfer(fromEmail, toEmail, amount);
+        }
+
+        @Override
+        public void prepareDebit(long transferId, String email, long amount) {
+            delegate.prepareDebit(transferId, email, amount);
+            if (loseDebitReplies) {
+                throw new UncheckedIOException(new IOException("Connection reset"));
+            }
+        }
+
+        @Override
+        public void prepareCredit(long transferId, String email, long amount) {
+            delegate.prepareCredit(transferId, email, amount);
+        }
+
+        @Override
+        public void commit(long transferId) {
+            failSettle();
+            delegate.commit(transferId);
+        }
+
+        @Override
+        public void abort(long transferId) {
+            failSettle();
+            delegate.abort(transferId);
+        }
+
+        @Override
+        public void close() {
+        }
+
+        private void failSettle() {
+            if (failingSettles > 0) {
+                failingSettles--;
+                throw new UncheckedIOException(new IOException("Connection reset"));
+            }
+        }
+    }
+}